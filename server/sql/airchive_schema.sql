@@ -113,6 +113,24 @@ CREATE TABLE `collection_item` (
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
 /*!40101 SET character_set_client = @saved_cs_client */;
 
+--
+-- Table structure for table `collection_topic_profile`
+--
+
+DROP TABLE IF EXISTS `collection_topic_profile`;
+/*!40101 SET @saved_cs_client     = @@character_set_client */;
+/*!50503 SET character_set_client = utf8mb4 */;
+CREATE TABLE `collection_topic_profile` (
+  `collection_id` int NOT NULL,
+  `topic_id` int NOT NULL,
+  `weight` int NOT NULL,
+  PRIMARY KEY (`collection_id`,`topic_id`),
+  KEY `idx_profile_topic` (`topic_id`),
+  CONSTRAINT `collection_topic_profile_ibfk_1` FOREIGN KEY (`collection_id`) REFERENCES `collection` (`collection_id`) ON DELETE CASCADE,
+  CONSTRAINT `collection_topic_profile_ibfk_2` FOREIGN KEY (`topic_id`) REFERENCES `topic` (`topic_id`) ON DELETE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
+/*!40101 SET character_set_client = @saved_cs_client */;
+
 --
 -- Table structure for table `person`
 --
@@ -130,6 +148,26 @@ CREATE TABLE `person` (
 ) ENGINE=InnoDB AUTO_INCREMENT=58 DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
 /*!40101 SET character_set_client = @saved_cs_client */;
 
+--
+-- Table structure for table `precomputed_recommendation`
+--
+
+DROP TABLE IF EXISTS `precomputed_recommendation`;
+/*!40101 SET @saved_cs_client     = @@character_set_client */;
+/*!50503 SET character_set_client = utf8mb4 */;
+CREATE TABLE `precomputed_recommendation` (
+  `account_id` int NOT NULL,
+  `position` smallint NOT NULL,
+  `pub_id` int NOT NULL,
+  `computed_at` datetime NOT NULL,
+  PRIMARY KEY (`account_id`,`position`),
+  KEY `idx_precomputed_pub` (`pub_id`),
+  KEY `idx_precomputed_computed_at` (`computed_at`),
+  CONSTRAINT `precomputed_recommendation_ibfk_1` FOREIGN KEY (`account_id`) REFERENCES `account` (`account_id`) ON DELETE CASCADE,
+  CONSTRAINT `precomputed_recommendation_ibfk_2` FOREIGN KEY (`pub_id`) REFERENCES `publication` (`pub_id`) ON DELETE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
+/*!40101 SET character_set_client = @saved_cs_client */;
+
 --
 -- Table structure for table `publication`
 --
@@ -153,6 +191,7 @@ CREATE TABLE `publication` (
   KEY `submitter_id` (`submitter_id`),
   KEY `idx_publication_published` (`published_at`),
   KEY `idx_publication_status_kind` (`status`,`kind`),
+  KEY `idx_publication_submitted` (`submitted_at`),
   FULLTEXT KEY `ft_pub_title` (`title`),
   CONSTRAINT `publication_ibfk_1` FOREIGN KEY (`submitter_id`) REFERENCES `account` (`account_id`) ON DELETE SET NULL
 ) ENGINE=InnoDB AUTO_INCREMENT=18 DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
@@ -194,6 +233,62 @@ CREATE TABLE `publication_like` (
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
 /*!40101 SET character_set_client = @saved_cs_client */;
 
+--
+-- Table structure for table `publication_neighbor`
+--
+
+DROP TABLE IF EXISTS `publication_neighbor`;
+/*!40101 SET @saved_cs_client     = @@character_set_client */;
+/*!50503 SET character_set_client = utf8mb4 */;
+CREATE TABLE `publication_neighbor` (
+  `pub_id` int NOT NULL,
+  `neighbor_id` int NOT NULL,
+  `similarity` float NOT NULL,
+  PRIMARY KEY (`pub_id`,`neighbor_id`),
+  KEY `idx_neighbor_pub` (`neighbor_id`),
+  CONSTRAINT `publication_neighbor_ibfk_1` FOREIGN KEY (`pub_id`) REFERENCES `publication` (`pub_id`) ON DELETE CASCADE,
+  CONSTRAINT `publication_neighbor_ibfk_2` FOREIGN KEY (`neighbor_id`) REFERENCES `publication` (`pub_id`) ON DELETE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
+/*!40101 SET character_set_client = @saved_cs_client */;
+
+--
+-- Table structure for table `publication_popularity`
+--
+
+DROP TABLE IF EXISTS `publication_popularity`;
+/*!40101 SET @saved_cs_client     = @@character_set_client */;
+/*!50503 SET character_set_client = utf8mb4 */;
+CREATE TABLE `publication_popularity` (
+  `pub_id` int NOT NULL,
+  `view_score` double NOT NULL DEFAULT '0',
+  `like_score` double NOT NULL DEFAULT '0',
+  `save_score` double NOT NULL DEFAULT '0',
+  `popularity_score` double NOT NULL DEFAULT '0',
+  `decayed_at` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  PRIMARY KEY (`pub_id`),
+  KEY `idx_popularity_score` (`popularity_score`),
+  CONSTRAINT `publication_popularity_ibfk_1` FOREIGN KEY (`pub_id`) REFERENCES `publication` (`pub_id`) ON DELETE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
+/*!40101 SET character_set_client = @saved_cs_client */;
+
+--
+-- Table structure for table `publication_stats`
+--
+
+DROP TABLE IF EXISTS `publication_stats`;
+/*!40101 SET @saved_cs_client     = @@character_set_client */;
+/*!50503 SET character_set_client = utf8mb4 */;
+CREATE TABLE `publication_stats` (
+  `pub_id` int NOT NULL,
+  `view_count` int NOT NULL DEFAULT '0',
+  `like_count` int NOT NULL DEFAULT '0',
+  `save_count` int NOT NULL DEFAULT '0',
+  `last_interaction_at` datetime DEFAULT NULL,
+  PRIMARY KEY (`pub_id`),
+  CONSTRAINT `publication_stats_ibfk_1` FOREIGN KEY (`pub_id`) REFERENCES `publication` (`pub_id`) ON DELETE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
+/*!40101 SET character_set_client = @saved_cs_client */;
+
 --
 -- Table structure for table `publication_topic`
 --
@@ -1,8 +1,20 @@
 package com.airchive.bootstrap;
 
 import com.airchive.db.DbConnectionManager;
+import com.airchive.recommendation.CandidateGenerator;
+import com.airchive.recommendation.PublicationCounters;
+import com.airchive.recommendation.RecommendationProfiler;
+import com.airchive.recommendation.SeenPublicationCache;
+import com.airchive.recommendation.TopicLeaderboards;
+import com.airchive.recommendation.TrendingCounters;
 import com.airchive.repository.*;
 import com.airchive.service.*;
+import com.airchive.util.PropertyUtils;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import javax.servlet.ServletContext;
 import javax.servlet.ServletContextEvent;
 import javax.servlet.ServletContextListener;
@@ -17,12 +29,38 @@ import javax.servlet.ServletContextListener;
  * These services can then be retrieved throughout the application, specifically within our REST resources, via
  * {@code context.getAttribute(...)}, enabling simple and manual dependency injection.
  * <p>
- * On shutdown, it cleans up shared resources such as the HikariCP database connection pool.
+ * It also owns two background schedulers for periodic maintenance jobs. The maintenance scheduler runs
+ * the long jobs, such as re-decaying the materialized publication popularity scores, reloading the
+ * in-memory recommendation index, rebuilding the item-item similarity matrix and the related
+ * publications index, recomputing the public collection topic profiles, precomputing the feeds of
+ * active users and reconciling the denormalized publication stats. The refresh scheduler runs the
+ * frequent, short jobs, such as persisting popularity sums, indexing newly published publications and
+ * reloading the anonymous feed snapshot, the trending ranking and the public collection profiles, so
+ * they never wait behind a rebuild.
+ * <p>
+ * When {@code recommendation.indexSnapshotPath} is set, the recommendation candidate index is restored
+ * from that snapshot file on startup, and saved to it after every full reload and on shutdown, so a
+ * redeploy does not have to reload it from the database; {@code recommendation.relatedSnapshotPath}
+ * does the same for the related publications index. After a restore, the rebuilds whose results are
+ * restored or stored in the database wait a whole period: the item neighbours are loaded from their
+ * stored rows and the collection profile index from the stored profiles instead.
+ * <p>
+ * On shutdown, it cleans up shared resources such as the schedulers, the recommendation candidate executor,
+ * the view and affinity write-behind buffers and the HikariCP database connection pool.
  * <p>
  * This class should be registered in {@code web.xml} so that it can be loaded by the servlet container.
  */
 public class AppBootstrap implements ServletContextListener {
 
+  private ScheduledExecutorService scheduler;
+  private ScheduledExecutorService refreshScheduler;
+  private CandidateGenerator candidateGenerator;
+  private PopularityRepository popularityRepository;
+  private InteractionRepository interactionRepository;
+  private RecommendationRepository recommendationRepository;
+  private Path indexSnapshot;
+  private Path relatedSnapshot;
+
   /**
    * Called automatically when the application context is initialized.
    * <p>
@@ -36,6 +74,14 @@ public class AppBootstrap implements ServletContextListener {
     ServletContext ctx = sce.getServletContext();
 
     // Initialize repository layer
+    var seenPublications = new SeenPublicationCache(
+        PropertyUtils.getIntProperty("recommendation.seenCacheSize", 10000));
+    var topicLeaderboards = new TopicLeaderboards(
+        PropertyUtils.getIntProperty("recommendation.topicLeaderboardSize", 500));
+    var trendingCounters = new TrendingCounters(
+        PropertyUtils.getIntProperty("recommendation.trendingWindowMinutes", 180),
+        PropertyUtils.getIntProperty("recommendation.trendingRecentMinutes", 30));
+    popularityRepository = new PopularityRepository(topicLeaderboards, trendingCounters);
     var personRepository = new PersonRepository();
     var accountRepository = new AccountRepository();
     var authorRequestRepository = new AuthorRequestRepository();
@@ -44,9 +90,19 @@ public class AppBootstrap implements ServletContextListener {
     var publicationTopicRepository = new PublicationTopicRepository();
     var publicationAuthorRepository = new PublicationAuthorRepository();
     var collectionRepository = new CollectionRepository();
-    var collectionItemRepository = new CollectionItemRepository();
-    var interactionRepository = new InteractionRepository();
-    var recommendationRepository = new RecommendationRepository();
+    var publicationStatsRepository = new PublicationStatsRepository(new PublicationCounters());
+    var collectionItemRepository = new CollectionItemRepository(popularityRepository, publicationStatsRepository);
+    interactionRepository = new InteractionRepository(popularityRepository, seenPublications,
+        publicationStatsRepository);
+    if (PropertyUtils.getBooleanProperty("recommendation.parallelSources", true)) {
+      candidateGenerator = new CandidateGenerator(
+          PropertyUtils.getIntProperty("recommendation.sourceThreads", 4),
+          PropertyUtils.getIntProperty("recommendation.sourceQueueCapacity", 64),
+          PropertyUtils.getIntProperty("recommendation.sourceDeadlineMillis", 250));
+    }
+    var recommendationProfiler = new RecommendationProfiler();
+    recommendationRepository = new RecommendationRepository(candidateGenerator, seenPublications,
+        recommendationProfiler, topicLeaderboards, trendingCounters);
 
     // Initialize service layer
     var personAccountService = new PersonAccountService(
@@ -62,7 +118,8 @@ public class AppBootstrap implements ServletContextListener {
     );
 
     var topicService = new TopicService(
-        topicRepository
+        topicRepository,
+        recommendationRepository
     );
 
     var publicationService = new PublicationService(
@@ -70,17 +127,20 @@ public class AppBootstrap implements ServletContextListener {
         publicationTopicRepository,
         publicationAuthorRepository,
         interactionRepository,
+        publicationStatsRepository,
         recommendationRepository,
         personRepository,
         topicRepository,
-        collectionItemRepository
+        collectionItemRepository,
+        popularityRepository,
+        recommendationProfiler
     );
 
     var collectionService = new CollectionService(
         collectionRepository,
         collectionItemRepository,
         recommendationRepository,
-        interactionRepository,
+        publicationStatsRepository,
         publicationAuthorRepository,
         publicationTopicRepository,
         publicationRepository
@@ -99,18 +159,232 @@ public class AppBootstrap implements ServletContextListener {
     ctx.setAttribute("publicationService", publicationService);
     ctx.setAttribute("collectionService", collectionService);
     ctx.setAttribute("interactionService", interactionService);
+
+    // Schedule background maintenance jobs: long rebuilds on one scheduler, frequent refreshes on another
+    scheduler = newScheduler("airchive-maintenance", 1);
+    // Two threads, so the others keep running while publication indexing waits for an index reload
+    refreshScheduler = newScheduler("airchive-refresh", 2);
+
+    // Restore the candidate index from its snapshot, if any, so the full reload can wait a whole period
+    String snapshotPath = PropertyUtils.getProperty("recommendation.indexSnapshotPath");
+    indexSnapshot = snapshotPath == null || snapshotPath.isBlank() ? null : Path.of(snapshotPath);
+    boolean restored = false;
+    if (indexSnapshot != null) {
+      try {
+        restored = recommendationRepository.restoreCandidateIndex(indexSnapshot);
+        if (restored) popularityRepository.loadAccumulators();
+      } catch (Exception e) {
+        System.err.println("Failed to restore the candidate index snapshot");
+        e.printStackTrace();
+        restored = false;
+      }
+    }
+
+    String relatedSnapshotPath = PropertyUtils.getProperty("recommendation.relatedSnapshotPath");
+    relatedSnapshot = relatedSnapshotPath == null || relatedSnapshotPath.isBlank()
+        ? null : Path.of(relatedSnapshotPath);
+    boolean relatedRestored = false;
+    if (relatedSnapshot != null) {
+      try {
+        relatedRestored = recommendationRepository.restoreRelatedIndex(relatedSnapshot);
+      } catch (Exception e) {
+        System.err.println("Failed to restore the related publications snapshot");
+        e.printStackTrace();
+      }
+    }
+
+    // The neighbour lists of the last rebuild are stored, so they are only recomputed right away if missing
+    boolean neighborsStored = false;
+    try {
+      neighborsStored = recommendationRepository.loadItemNeighbors() > 0;
+    } catch (Exception e) {
+      System.err.println("Failed to load the stored item neighbours");
+      e.printStackTrace();
+    }
+
+    boolean statsEmpty = false;
+    try {
+      statsEmpty = publicationStatsRepository.loadCounters() == 0;
+    } catch (Exception e) {
+      System.err.println("Failed to load the publication view and like counters");
+      e.printStackTrace();
+    }
+
+    int decayMinutes = PropertyUtils.getIntProperty("popularity.decayIntervalMinutes", 15);
+    int rebuildHours = PropertyUtils.getIntProperty("popularity.rebuildIntervalHours", 24);
+    schedule(scheduler, "popularity rebuild", () -> {
+      popularityRepository.rebuildAll();
+      recommendationRepository.refreshCandidateIndex();
+      if (indexSnapshot != null) recommendationRepository.saveCandidateIndex(indexSnapshot);
+    }, restored ? rebuildHours * 60L : 0, rebuildHours * 60L, TimeUnit.MINUTES);
+
+    // The full recount only runs on startup to seed an empty publication_stats, after the index load
+    int reconcileHours = PropertyUtils.getIntProperty("stats.reconcileIntervalHours", 24);
+    schedule(scheduler, "publication stats reconciliation", () -> publicationStatsRepository.reconcile(
+        PropertyUtils.getIntProperty("stats.reconcileChunkSize", 1000)),
+        statsEmpty ? 0 : reconcileHours * 60L, reconcileHours * 60L, TimeUnit.MINUTES);
+    int persistSeconds = PropertyUtils.getIntProperty("popularity.persistIntervalSeconds", 10);
+    schedule(refreshScheduler, "popularity persist", popularityRepository::persist,
+        persistSeconds, persistSeconds, TimeUnit.SECONDS);
+    schedule(scheduler, "popularity decay", () -> {
+      popularityRepository.decayAll();
+      recommendationRepository.refreshCandidatePopularity();
+    }, decayMinutes, decayMinutes, TimeUnit.MINUTES);
+
+    int indexPublishSeconds = PropertyUtils.getIntProperty("recommendation.indexPublishSeconds", 5);
+    schedule(refreshScheduler, "published publications indexing",
+        recommendationRepository::applyPendingPublications,
+        indexPublishSeconds, indexPublishSeconds, TimeUnit.SECONDS);
+
+    int neighborHours = PropertyUtils.getIntProperty("recommendation.itemNeighborsIntervalHours", 24);
+    schedule(scheduler, "item neighbours rebuild", recommendationRepository::rebuildItemNeighbors,
+        neighborsStored ? neighborHours * 60L : 0, neighborHours * 60L, TimeUnit.MINUTES);
+
+    int precomputeHours = PropertyUtils.getIntProperty("recommendation.precomputeIntervalHours", 24);
+    // Run right away when the stored pools are older than a period, e.g. after failed or missed runs
+    boolean precomputeDue = true;
+    try {
+      precomputeDue = recommendationRepository.isPrecomputeDue(precomputeHours);
+    } catch (Exception e) {
+      System.err.println("Failed to check the age of the precomputed recommendations");
+      e.printStackTrace();
+    }
+    schedule(scheduler, "recommendation precompute", () -> recommendationRepository.precomputeRecommendations(
+        PropertyUtils.getIntProperty("recommendation.precomputeActiveDays", 7),
+        PropertyUtils.getIntProperty("recommendation.precomputeThreads", 4),
+        PropertyUtils.getIntProperty("recommendation.precomputeChunkSize", 200)),
+        precomputeDue ? 0 : precomputeHours * 60L, precomputeHours * 60L, TimeUnit.MINUTES);
+
+    int anonymousFeedSeconds = PropertyUtils.getIntProperty("recommendation.anonymousFeedRefreshSeconds", 30);
+    schedule(refreshScheduler, "anonymous feed refresh", recommendationRepository::refreshAnonymousFeed,
+        0, anonymousFeedSeconds, TimeUnit.SECONDS);
+
+    int trendingSeconds = PropertyUtils.getIntProperty("recommendation.trendingRefreshSeconds", 15);
+    schedule(refreshScheduler, "trending refresh", recommendationRepository::refreshTrending,
+        trendingSeconds, trendingSeconds, TimeUnit.SECONDS);
+
+    int relatedHours = PropertyUtils.getIntProperty("recommendation.relatedRebuildIntervalHours", 24);
+    schedule(scheduler, "related publications rebuild", () -> {
+      recommendationRepository.rebuildRelatedIndex();
+      if (relatedSnapshot != null) recommendationRepository.saveRelatedIndex(relatedSnapshot);
+    }, relatedRestored ? relatedHours * 60L : 0, relatedHours * 60L, TimeUnit.MINUTES);
+
+    int profileRebuildHours = PropertyUtils.getIntProperty("recommendation.collectionProfileRebuildHours", 24);
+    int profileRefreshMinutes = PropertyUtils.getIntProperty("recommendation.collectionProfileRefreshMinutes", 5);
+    schedule(scheduler, "collection profiles rebuild", () -> {
+      collectionRepository.rebuildTopicProfiles();
+      collectionRepository.refreshProfileIndex();
+    }, restored ? profileRebuildHours * 60L : 0, profileRebuildHours * 60L, TimeUnit.MINUTES);
+    // After a restore the stored profiles are loaded right away, since the rebuild waits a whole period
+    schedule(refreshScheduler, "collection profile index refresh", collectionRepository::refreshProfileIndex,
+        restored ? 0 : profileRefreshMinutes, profileRefreshMinutes, TimeUnit.MINUTES);
+  }
+
+  private static ScheduledExecutorService newScheduler(String threadName, int threads) {
+    return Executors.newScheduledThreadPool(threads, r -> {
+      Thread t = new Thread(r, threadName);
+      t.setDaemon(true);
+      return t;
+    });
+  }
+
+  /**
+   * Schedules a periodic maintenance job. Failures are logged and swallowed so that a single failed
+   * run does not cancel future runs of the job.
+   */
+  private void schedule(ScheduledExecutorService executor, String name, Runnable job, long initialDelay,
+      long period, TimeUnit unit) {
+    executor.scheduleWithFixedDelay(() -> {
+      try {
+        job.run();
+      } catch (Exception e) {
+        System.err.println("Scheduled job failed: " + name);
+        e.printStackTrace();
+      }
+    }, initialDelay, period, unit);
   }
 
   /**
    * Called automatically when the application context is being destroyed.
    * <p>
-   * This method ensures proper shutdown and cleanup of shared application resources. At the moment the only
-   * resource that needs to be closed is the HikariCP database connection pool.
+   * This method ensures proper shutdown and cleanup of shared application resources: the maintenance and
+   * refresh schedulers and the candidate executor are stopped first, and running jobs are given up to
+   * {@code shutdown.awaitSeconds} to return, so they do not race what follows. Then buffered views and
+   * affinity updates are written, popularity sums still held in memory are persisted and the index
+   * snapshots are saved, and finally the HikariCP database connection pool is closed.
    *
    * @param sce the context event provided by the servlet container
    */
   @Override
   public void contextDestroyed(ServletContextEvent sce) {
+    if (scheduler != null) {
+      scheduler.shutdownNow();
+    }
+    if (refreshScheduler != null) {
+      refreshScheduler.shutdownNow();
+    }
+    long deadline = System.nanoTime()
+        + TimeUnit.SECONDS.toNanos(PropertyUtils.getIntProperty("shutdown.awaitSeconds", 30));
+    awaitTermination(scheduler, "airchive-maintenance", deadline);
+    awaitTermination(refreshScheduler, "airchive-refresh", deadline);
+    if (candidateGenerator != null) {
+      candidateGenerator.shutdown();
+    }
+    if (interactionRepository != null) {
+      try {
+        interactionRepository.shutdown();
+      } catch (Exception e) {
+        System.err.println("Failed to write buffered views on shutdown");
+        e.printStackTrace();
+      }
+    }
+    if (recommendationRepository != null) {
+      try {
+        recommendationRepository.shutdown();
+      } catch (Exception e) {
+        System.err.println("Failed to apply buffered affinity updates on shutdown");
+        e.printStackTrace();
+      }
+    }
+    if (popularityRepository != null) {
+      try {
+        popularityRepository.persist();
+      } catch (Exception e) {
+        System.err.println("Failed to persist popularity accumulators on shutdown");
+        e.printStackTrace();
+      }
+    }
+    if (recommendationRepository != null && indexSnapshot != null) {
+      try {
+        recommendationRepository.saveCandidateIndex(indexSnapshot);
+      } catch (Exception e) {
+        System.err.println("Failed to save the candidate index snapshot on shutdown");
+        e.printStackTrace();
+      }
+    }
+    if (recommendationRepository != null && relatedSnapshot != null) {
+      try {
+        recommendationRepository.saveRelatedIndex(relatedSnapshot);
+      } catch (Exception e) {
+        System.err.println("Failed to save the related publications snapshot on shutdown");
+        e.printStackTrace();
+      }
+    }
     DbConnectionManager.closePool();
   }
+
+  /**
+   * Waits for a stopped scheduler's running job to return, at most until the deadline. A job still
+   * running then is logged and left behind.
+   */
+  private static void awaitTermination(ExecutorService executor, String name, long deadline) {
+    if (executor == null) return;
+    try {
+      if (!executor.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+        System.err.println("Background jobs did not stop in time: " + name);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
 }
\ No newline at end of file
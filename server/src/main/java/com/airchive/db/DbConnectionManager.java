@@ -34,6 +34,9 @@ public class DbConnectionManager {
   private static final boolean USE_POOL = PropertyUtils.getBooleanProperty("db.usePool", false);
   private static HikariDataSource dataSource;
 
+  // Counts the connections obtained by each thread, so callers can measure how many a unit of work borrows
+  private static final ThreadLocal<int[]> BORROWED = ThreadLocal.withInitial(() -> new int[1]);
+
   static {
     try {
       Class.forName(PropertyUtils.getProperty("db.driver"));
@@ -68,6 +71,7 @@ public class DbConnectionManager {
    * @throws SQLException if a database access error occurs
    */
   public static Connection getConnection() throws SQLException {
+    BORROWED.get()[0]++;
     if (USE_POOL) {
       return dataSource.getConnection();
     } else {
@@ -75,6 +79,16 @@ public class DbConnectionManager {
     }
   }
 
+  /**
+   * Returns the number of connections obtained by the current thread since it started. Only the
+   * difference between two calls is meaningful.
+   *
+   * @return the running count of connections obtained by the current thread
+   */
+  public static int borrowedByCurrentThread() {
+    return BORROWED.get()[0];
+  }
+
   /**
    * If pooling is enabled, this method shuts down the Hikari connection pool.
    * <p>
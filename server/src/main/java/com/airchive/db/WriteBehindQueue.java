@@ -0,0 +1,248 @@
+package com.airchive.db;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * A bounded, write-behind buffer that collects high-volume writes in memory and hands them to a
+ * writer in batches, from a single background thread.
+ * <p>
+ * A batch is flushed as soon as it holds {@code maxBatchSize} items, or {@code flushMillis} after its
+ * first item was taken, whichever comes first, so one transaction and one multi-row statement replace
+ * a connection, a statement and a commit per item.
+ * <p>
+ * When the buffer is full, {@link #offer(Object)} waits up to {@code offerTimeoutMillis} for room and
+ * then gives up, so callers can write the item themselves: producers are slowed down to the speed of
+ * the database instead of growing the buffer without bound or dropping writes.
+ * <p>
+ * A batch whose writer fails is retried up to {@code maxAttempts} times in all, waiting a little longer
+ * before each attempt, while the next batches wait behind it; a batch that fails every attempt is logged
+ * and lost. The writer must therefore leave no partial effect behind when it throws, e.g. by writing
+ * the batch in one transaction. {@link #close()} must be called when the application
+ * stops; it flushes every buffered item before returning. The flusher thread is stopped by a sentinel
+ * item queued behind them, never interrupted, so a batch being written when the buffer is closed is not
+ * aborted.
+ *
+ * @param <T> the type of buffered items
+ */
+public class WriteBehindQueue<T> implements AutoCloseable {
+
+  /** Queued by {@link #close()} behind the buffered items to stop the flusher thread. */
+  private static final Object CLOSED = new Object();
+
+  private final BlockingQueue<Object> queue;
+  private final Consumer<List<T>> writer;
+  private final int maxBatchSize;
+  private final long flushMillis;
+  private final long offerTimeoutMillis;
+  private final int maxAttempts;
+  private final Thread flusher;
+  private volatile boolean closed;
+
+  private final LongAdder accepted = new LongAdder();
+  private final LongAdder rejected = new LongAdder();
+  private final LongAdder batches = new LongAdder();
+  private final LongAdder written = new LongAdder();
+  private final LongAdder failed = new LongAdder();
+  private final LongAdder retried = new LongAdder();
+  private final LongAdder flushNanos = new LongAdder();
+
+  /**
+   * Creates the buffer and starts its flusher thread.
+   *
+   * @param name the name of the flusher thread
+   * @param capacity the maximum number of buffered items
+   * @param maxBatchSize the maximum number of items handed to the writer at once
+   * @param flushMillis how long the first item of a batch may wait for more, in milliseconds
+   * @param offerTimeoutMillis how long {@link #offer(Object)} waits for room when the buffer is full
+   * @param maxAttempts how many times a batch is handed to the writer before it is given up
+   * @param writer writes one batch; called from the flusher thread only
+   */
+  public WriteBehindQueue(String name, int capacity, int maxBatchSize, long flushMillis, long offerTimeoutMillis,
+      int maxAttempts, Consumer<List<T>> writer) {
+    this.queue = new ArrayBlockingQueue<>(capacity);
+    this.writer = writer;
+    this.maxBatchSize = maxBatchSize;
+    this.flushMillis = flushMillis;
+    this.offerTimeoutMillis = offerTimeoutMillis;
+    this.maxAttempts = Math.max(1, maxAttempts);
+    this.flusher = new Thread(this::run, name);
+    this.flusher.setDaemon(true);
+    this.flusher.start();
+  }
+
+  /**
+   * Buffers an item, waiting for room if the buffer is full.
+   *
+   * @param item the item to write
+   * @return {@code true} if the item was buffered; {@code false} if the buffer stayed full, the
+   * calling thread was interrupted, or the buffer is closed, in which case the caller must write the
+   * item itself
+   */
+  public boolean offer(T item) {
+    if (closed) {
+      rejected.increment();
+      return false;
+    }
+    try {
+      if (queue.offer(item, offerTimeoutMillis, TimeUnit.MILLISECONDS)) {
+        accepted.increment();
+        return true;
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    rejected.increment();
+    return false;
+  }
+
+  /**
+   * @return the counters of this buffer since it was created
+   */
+  public Stats stats() {
+    long batchCount = batches.sum();
+    return new Stats(accepted.sum(), rejected.sum(), queue.size(), batchCount, written.sum(), failed.sum(),
+        retried.sum(), batchCount == 0 ? 0 : (double) written.sum() / batchCount,
+        batchCount == 0 ? 0 : flushNanos.sum() / 1_000_000.0 / batchCount);
+  }
+
+  /**
+   * Stops accepting items, flushes every buffered item and stops the flusher thread.
+   */
+  @Override
+  public void close() {
+    if (closed) return;
+    closed = true;
+    try {
+      queue.put(CLOSED);
+      flusher.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void run() {
+    List<T> batch = new ArrayList<>(maxBatchSize);
+    List<Object> drained = new ArrayList<>(maxBatchSize);
+    boolean stopping = false;
+    while (!stopping) {
+      try {
+        Object first = queue.poll(flushMillis, TimeUnit.MILLISECONDS);
+        if (first == null) continue;
+        if (first == CLOSED) break;
+        batch.add(cast(first));
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushMillis);
+        while (!stopping && batch.size() < maxBatchSize) {
+          queue.drainTo(drained, maxBatchSize - batch.size());
+          stopping = addAll(drained, batch);
+          long remaining = deadline - System.nanoTime();
+          if (stopping || batch.size() >= maxBatchSize || remaining <= 0) break;
+          Object next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+          if (next == CLOSED) {
+            stopping = true;
+          } else if (next != null) {
+            batch.add(cast(next));
+          }
+        }
+      } catch (InterruptedException e) {
+        // Only an abrupt container shutdown interrupts the flusher; the remaining items are flushed below
+        stopping = true;
+      }
+      write(batch);
+    }
+
+    // Items offered while close() was queuing the sentinel may still follow it
+    queue.drainTo(drained);
+    addAll(drained, batch);
+    while (!batch.isEmpty()) {
+      List<T> chunk = new ArrayList<>(batch.subList(0, Math.min(batch.size(), maxBatchSize)));
+      batch.subList(0, chunk.size()).clear();
+      write(chunk);
+    }
+  }
+
+  /** Moves drained items to the batch, dropping the sentinel, and tells whether it was among them. */
+  private boolean addAll(List<Object> drained, List<T> batch) {
+    boolean sentinel = false;
+    for (Object item : drained) {
+      if (item == CLOSED) {
+        sentinel = true;
+      } else {
+        batch.add(cast(item));
+      }
+    }
+    drained.clear();
+    return sentinel;
+  }
+
+  @SuppressWarnings("unchecked")
+  private T cast(Object item) {
+    return (T) item;
+  }
+
+  private void write(List<T> batch) {
+    if (batch.isEmpty()) return;
+    long start = System.nanoTime();
+    try {
+      for (int attempt = 1; ; attempt++) {
+        try {
+          writer.accept(batch);
+          written.add(batch.size());
+          return;
+        } catch (Exception e) {
+          if (attempt >= maxAttempts) {
+            failed.add(batch.size());
+            System.err.println("Write-behind batch of " + batch.size() + " items failed " + attempt
+                + " times and was dropped: " + flusher.getName());
+            e.printStackTrace();
+            return;
+          }
+          retried.increment();
+          System.err.println("Write-behind batch of " + batch.size() + " items failed, retrying: "
+              + flusher.getName() + ": " + e);
+          if (!backOff(attempt)) {
+            // Interrupted by an abrupt shutdown: one last attempt without waiting
+            attempt = maxAttempts - 1;
+          }
+        }
+      }
+    } finally {
+      batches.increment();
+      flushNanos.add(System.nanoTime() - start);
+      batch.clear();
+    }
+  }
+
+  /** Waits before the next attempt at a failed batch, and tells whether the wait was not interrupted. */
+  private boolean backOff(int attempt) {
+    try {
+      Thread.sleep(flushMillis * attempt);
+      return true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  /**
+   * The counters of a write-behind buffer.
+   *
+   * @param accepted the number of items buffered
+   * @param rejected the number of items refused because the buffer stayed full or was closed
+   * @param pending the number of items currently buffered
+   * @param batches the number of batches handed to the writer
+   * @param written the number of items written successfully
+   * @param failed the number of items in batches dropped after failing every attempt
+   * @param retried the number of times a failed batch was handed to the writer again
+   * @param meanBatchSize the mean number of items per batch
+   * @param meanFlushMillis the mean time taken to write a batch, in milliseconds
+   */
+  public record Stats(long accepted, long rejected, int pending, long batches, long written, long failed,
+      long retried, double meanBatchSize, double meanFlushMillis) {}
+}
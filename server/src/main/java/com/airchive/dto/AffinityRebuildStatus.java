@@ -0,0 +1,22 @@
+package com.airchive.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * Response body describing the progress of a bulk affinity rebuild across all accounts.
+ *
+ * @param running whether a rebuild is currently in progress
+ * @param processedAccounts the number of accounts rebuilt so far
+ * @param totalAccounts the number of accounts the rebuild covers
+ * @param startedAt when the last rebuild started, or {@code null} if none has run
+ * @param finishedAt when the last rebuild finished, or {@code null} if it is still running or none has run
+ * @param error the failure message of the last rebuild, or {@code null} if it did not fail
+ */
+public record AffinityRebuildStatus(
+    boolean running,
+    int processedAccounts,
+    int totalAccounts,
+    LocalDateTime startedAt,
+    LocalDateTime finishedAt,
+    String error
+) {}
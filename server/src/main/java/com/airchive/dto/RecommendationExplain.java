@@ -0,0 +1,20 @@
+package com.airchive.dto;
+
+import com.airchive.recommendation.RecommendationProfiler;
+import java.util.List;
+
+/**
+ * A page of publication recommendations together with the measurements of each stage of the pipeline
+ * that built it, returned by {@code GET /publications/recommendations?explain=true}.
+ *
+ * @param items the recommended publications on this page
+ * @param nextCursor an opaque cursor for the next page, or {@code null} if there are no more results
+ * @param stages the wall time, rows, discarded duplicates and borrowed connections of each stage
+ *
+ * @see RecommendationPage
+ */
+public record RecommendationExplain(
+    List<MiniPublication> items,
+    String nextCursor,
+    List<RecommendationProfiler.StageReport> stages
+) {}
@@ -0,0 +1,19 @@
+package com.airchive.dto;
+
+import java.util.List;
+
+/**
+ * A single page of publication recommendations together with the cursor for the next page.
+ * <p>
+ * The items are returned as the response body of {@code GET /publications/recommendations}, while the
+ * cursor is returned in the {@code X-Next-Cursor} response header so the body stays a plain list.
+ *
+ * @param items the recommended publications on this page
+ * @param nextCursor an opaque cursor for the next page, or {@code null} if there are no more results
+ *
+ * @see MiniPublication
+ */
+public record RecommendationPage(
+    List<MiniPublication> items,
+    String nextCursor
+) {}
@@ -0,0 +1,216 @@
+package com.airchive.recommendation;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded, least-recently-used cache of per-account affinity profiles, so recommendation queries and
+ * candidate scoring read a user's topic and author affinities from memory instead of the
+ * {@code topic_affinity} and {@code author_affinity} tables.
+ * <p>
+ * Each {@link Dimension} of a profile keeps at most {@code maxEntries} ids with their scores, strongest
+ * first, in parallel primitive arrays. Like the stored rows, scores decay exponentially from a reference
+ * time; since every score of a profile shares the same reference time, they are decayed with a single
+ * factor when read, and rescaled in place before an increment.
+ * <p>
+ * Profiles are loaded lazily by the reader on a miss and updated in place by the affinity writer, after
+ * it has written the same increment to the database, through {@link #recordInteraction}. A loader first
+ * calls {@link #acquire(int)}; a profile loaded while an interaction was recorded for the account is
+ * discarded by {@link #put}, since it may predate that interaction. An increment for an id missing from
+ * a profile that was truncated at load, or that is already full, drops that dimension so the next read
+ * reloads it.
+ * <p>
+ * This class is thread-safe.
+ */
+public class AffinityProfileCache {
+
+  /** The kind of affinity a profile dimension holds. */
+  public enum Dimension {
+    TOPIC,
+    AUTHOR
+  }
+
+  private final Map<Integer, Account> accounts;
+  private final int maxEntries;
+  private final double decayMillis;
+  private final double maxScore;
+
+  /**
+   * @param maxAccounts the maximum number of accounts whose profiles are kept in memory
+   * @param maxEntries the maximum number of ids kept per profile dimension
+   * @param decayHours the decay time constant of affinity scores, in hours
+   * @param maxScore the cap applied to scores after an increment
+   */
+  public AffinityProfileCache(int maxAccounts, int maxEntries, int decayHours, double maxScore) {
+    this.accounts = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Integer, Account> eldest) {
+        return size() > maxAccounts;
+      }
+    };
+    this.maxEntries = maxEntries;
+    this.decayMillis = decayHours * 3_600_000.0;
+    this.maxScore = maxScore;
+  }
+
+  /**
+   * @return the maximum number of ids kept per profile dimension
+   */
+  public int maxEntries() {
+    return maxEntries;
+  }
+
+  /**
+   * Returns the account's affinities of one dimension, decayed to the current time.
+   *
+   * @param accountId the account id
+   * @param dimension the profile dimension
+   * @param minScore the exclusive lower bound of returned scores
+   * @param now the current time, in epoch milliseconds
+   * @return the scores by id, or {@code null} if the dimension is not loaded
+   */
+  public synchronized Map<Integer, Double> get(int accountId, Dimension dimension, double minScore, long now) {
+    Account account = accounts.get(accountId);
+    Profile profile = account == null ? null : account.profiles[dimension.ordinal()];
+    if (profile == null) return null;
+
+    double factor = profile.decayFactor(now);
+    Map<Integer, Double> scores = new HashMap<>();
+    for (int i = 0; i < profile.size; i++) {
+      double score = profile.scores[i] * factor;
+      if (score > minScore) scores.put(profile.ids[i], score);
+    }
+    return scores;
+  }
+
+  /**
+   * @param accountId the account id
+   * @return {@code true} if the account has a cached profile or one being loaded, so that interactions
+   * must be recorded for it
+   */
+  public synchronized boolean isTracked(int accountId) {
+    return accounts.containsKey(accountId);
+  }
+
+  /**
+   * Registers a profile load for the account.
+   *
+   * @param accountId the account id
+   * @return the version to pass to {@link #put}
+   */
+  public synchronized long acquire(int accountId) {
+    return accounts.computeIfAbsent(accountId, id -> new Account()).version;
+  }
+
+  /**
+   * Stores a freshly loaded profile dimension, unless the account was invalidated or an interaction was
+   * recorded for it since {@link #acquire(int)}.
+   *
+   * @param accountId the account id
+   * @param dimension the profile dimension
+   * @param ids the ids, strongest first; more than {@link #maxEntries()} marks the dimension truncated
+   * @param scores the score of each id, as of {@code asOf}
+   * @param asOf the time the scores were decayed to, in epoch milliseconds
+   * @param version the version returned by {@link #acquire(int)}
+   */
+  public synchronized void put(int accountId, Dimension dimension, int[] ids, double[] scores, long asOf,
+      long version) {
+    Account account = accounts.get(accountId);
+    if (account == null || account.version != version) return;
+
+    Profile profile = new Profile(maxEntries, ids.length > maxEntries, asOf);
+    for (int i = 0; i < ids.length && i < maxEntries; i++) {
+      profile.ids[i] = ids[i];
+      profile.scores[i] = (float) scores[i];
+    }
+    profile.size = Math.min(ids.length, maxEntries);
+    account.profiles[dimension.ordinal()] = profile;
+  }
+
+  /**
+   * Adds an interaction weight to the account's affinity for each of the given ids, mirroring the
+   * database upsert: the weight is clamped between zero and the cap, so a negative weight changes
+   * nothing, and existing scores are decayed to now and capped after the increment. Does nothing if
+   * the account is not tracked.
+   *
+   * @param accountId the account id
+   * @param dimension the profile dimension
+   * @param ids the topic or author ids of the publication interacted with
+   * @param weight the interaction weight
+   * @param now the current time, in epoch milliseconds
+   */
+  public synchronized void recordInteraction(int accountId, Dimension dimension, int[] ids, double weight,
+      long now) {
+    Account account = accounts.get(accountId);
+    if (account == null) return;
+
+    account.version++;
+    Profile profile = account.profiles[dimension.ordinal()];
+    if (profile == null) return;
+
+    double increment = Math.max(0, Math.min(maxScore, weight));
+    profile.decayTo(now);
+    for (int id : ids) {
+      int i = profile.indexOf(id);
+      if (i >= 0) {
+        profile.scores[i] = (float) Math.min(maxScore, profile.scores[i] + increment);
+      } else if (!profile.truncated && profile.size < maxEntries) {
+        profile.ids[profile.size] = id;
+        profile.scores[profile.size++] = (float) increment;
+      } else {
+        account.profiles[dimension.ordinal()] = null;
+        return;
+      }
+    }
+  }
+
+  /**
+   * Drops the account's profile, e.g. after its affinities were recomputed.
+   *
+   * @param accountId the account id
+   */
+  public synchronized void invalidate(int accountId) {
+    accounts.remove(accountId);
+  }
+
+  private static final class Account {
+    private final Profile[] profiles = new Profile[Dimension.values().length];
+    private long version;
+  }
+
+  /**
+   * One dimension of a profile: the first {@code size} ids and their scores as of {@code asOf}.
+   */
+  private final class Profile {
+    private final int[] ids;
+    private final float[] scores;
+    private final boolean truncated;
+    private int size;
+    private long asOf;
+
+    Profile(int capacity, boolean truncated, long asOf) {
+      this.ids = new int[capacity];
+      this.scores = new float[capacity];
+      this.truncated = truncated;
+      this.asOf = asOf;
+    }
+
+    int indexOf(int id) {
+      for (int i = 0; i < size; i++) {
+        if (ids[i] == id) return i;
+      }
+      return -1;
+    }
+
+    double decayFactor(long now) {
+      return now <= asOf ? 1 : Math.exp(-(now - asOf) / decayMillis);
+    }
+
+    void decayTo(long now) {
+      double factor = decayFactor(now);
+      for (int i = 0; i < size; i++) scores[i] *= factor;
+      if (now > asOf) asOf = now;
+    }
+  }
+}
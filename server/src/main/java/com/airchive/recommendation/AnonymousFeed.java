@@ -0,0 +1,109 @@
+package com.airchive.recommendation;
+
+import com.airchive.entity.Publication;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An immutable snapshot of the ranked feed served to anonymous visitors: the most popular published
+ * publications for every combination of {@link Publication.Kind}s, each truncated to the same depth.
+ * <p>
+ * The snapshot is recomputed in the background every few seconds and swapped in as a whole, so a page
+ * of the anonymous feed is a slice of an array, without any database round trip. Pages reaching past the
+ * truncated depth are not answered and fall back to the regular popularity source.
+ */
+public final class AnonymousFeed {
+
+  private static final int ALL_KINDS = (1 << Publication.Kind.values().length) - 1;
+
+  private final int depth;
+  /** The ranked ids of every kind combination, indexed by the bit mask of the kind ordinals. */
+  private final int[][] rankedByKinds;
+
+  private AnonymousFeed(int depth, int[][] rankedByKinds) {
+    this.depth = depth;
+    this.rankedByKinds = rankedByKinds;
+  }
+
+  /**
+   * Builds a snapshot from the popularity-ranked publications of each kind.
+   *
+   * @param depth the number of ids kept per kind combination
+   * @param rankedByKind the ranked ids of each kind, indexed by kind ordinal, at least {@code depth} long
+   * or complete
+   * @param popularity the popularity score of each id, used to merge the kinds of a combination
+   * @return the new snapshot
+   */
+  public static AnonymousFeed of(int depth, int[][] rankedByKind, ScoreLookup popularity) {
+    int[][] rankedByKinds = new int[ALL_KINDS + 1][];
+    rankedByKinds[0] = new int[0];
+    for (int mask = 1; mask <= ALL_KINDS; mask++) {
+      int[] merged = new int[depth];
+      int n = 0;
+      int[] cursors = new int[rankedByKind.length];
+      while (n < depth) {
+        int best = -1;
+        for (int k = 0; k < rankedByKind.length; k++) {
+          if ((mask & (1 << k)) == 0 || cursors[k] >= rankedByKind[k].length) continue;
+          if (best < 0 || popularity.score(rankedByKind[k][cursors[k]])
+              > popularity.score(rankedByKind[best][cursors[best]])) {
+            best = k;
+          }
+        }
+        if (best < 0) break;
+        merged[n++] = rankedByKind[best][cursors[best]++];
+      }
+      rankedByKinds[mask] = Arrays.copyOf(merged, n);
+    }
+    return new AnonymousFeed(depth, rankedByKinds);
+  }
+
+  /**
+   * Builds a snapshot from the popularity order of a candidate index.
+   *
+   * @param depth the number of ids kept per kind combination
+   * @param index the candidate index to rank
+   * @return the new snapshot
+   */
+  public static AnonymousFeed of(int depth, CandidateIndex index) {
+    int[][] rankedByKind = new int[Publication.Kind.values().length][];
+    for (Publication.Kind kind : Publication.Kind.values()) {
+      int[] ranked = new int[depth];
+      int[] n = {0};
+      index.forEachByPopularity(List.of(kind), ordinal -> {
+        if (n[0] == depth) return false;
+        ranked[n[0]++] = index.pubId(ordinal);
+        return true;
+      });
+      rankedByKind[kind.ordinal()] = Arrays.copyOf(ranked, n[0]);
+    }
+    return of(depth, rankedByKind, pubId -> index.popularity(index.ordinalOf(pubId)));
+  }
+
+  /**
+   * Returns a page of the anonymous feed.
+   *
+   * @param kinds the kinds to include, or {@code null}/empty for all kinds
+   * @param limit the page size
+   * @param offset the position of the first id
+   * @return the ranked ids of the page, or {@code null} if the page reaches past the snapshot's depth
+   */
+  public List<Integer> page(List<Publication.Kind> kinds, int limit, int offset) {
+    int mask = 0;
+    if (kinds == null || kinds.isEmpty()) {
+      mask = ALL_KINDS;
+    } else {
+      for (Publication.Kind kind : kinds) mask |= 1 << kind.ordinal();
+    }
+
+    int[] ranked = rankedByKinds[mask];
+    if (offset + limit > ranked.length && ranked.length >= depth) return null;
+    if (offset >= ranked.length) return List.of();
+    return Arrays.stream(ranked, offset, Math.min(offset + limit, ranked.length)).boxed().toList();
+  }
+
+  @FunctionalInterface
+  public interface ScoreLookup {
+    double score(int pubId);
+  }
+}
@@ -0,0 +1,131 @@
+package com.airchive.recommendation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs independent recommendation candidate sources concurrently on a dedicated, bounded executor,
+ * under a per-request deadline.
+ * <p>
+ * Each request submits its sources (for example topic-based, author-based and popular candidates) and
+ * waits at most {@code deadlineMillis} for all of them. Sources that have not finished by then, that
+ * fail, or that cannot be queued because the executor is saturated are dropped, and the caller builds
+ * its page from the sources that did finish. This keeps feed latency bounded by the deadline rather than
+ * by the slowest query.
+ * <p>
+ * Because the executor has a fixed number of threads, it also caps how many database connections
+ * candidate generation can hold at once, no matter how many requests are in flight.
+ * <p>
+ * {@link #shutdown()} must be called when the application stops.
+ */
+public class CandidateGenerator {
+
+  private final ThreadPoolExecutor executor;
+  private final long deadlineMillis;
+
+  /**
+   * @param threads the number of worker threads
+   * @param queueCapacity the number of sources that may wait for a free worker
+   * @param deadlineMillis how long a request waits for its sources, in milliseconds
+   */
+  public CandidateGenerator(int threads, int queueCapacity, long deadlineMillis) {
+    AtomicInteger counter = new AtomicInteger();
+    this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(queueCapacity),
+        r -> {
+          Thread t = new Thread(r, "airchive-candidates-" + counter.incrementAndGet());
+          t.setDaemon(true);
+          return t;
+        },
+        new ThreadPoolExecutor.AbortPolicy());
+    this.deadlineMillis = deadlineMillis;
+  }
+
+  /**
+   * Runs the given sources concurrently and collects their results until the deadline passes.
+   *
+   * @param sources the candidate sources to run
+   * @return the results, in the same order as {@code sources}
+   */
+  public Result generate(List<Source> sources) {
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(deadlineMillis);
+
+    List<Future<List<Integer>>> futures = new ArrayList<>(sources.size());
+    for (Source source : sources) {
+      try {
+        futures.add(executor.submit(source.task()));
+      } catch (RejectedExecutionException e) {
+        futures.add(null);
+      }
+    }
+
+    List<List<Integer>> results = new ArrayList<>(sources.size());
+    List<String> dropped = new ArrayList<>();
+    for (int i = 0; i < sources.size(); i++) {
+      Future<List<Integer>> future = futures.get(i);
+      List<Integer> result = null;
+      if (future != null) {
+        try {
+          result = future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+          future.cancel(true);
+        } catch (ExecutionException e) {
+          System.err.println("Candidate source failed: " + sources.get(i).name());
+          e.getCause().printStackTrace();
+        } catch (InterruptedException e) {
+          future.cancel(true);
+          Thread.currentThread().interrupt();
+        }
+      }
+
+      if (result == null) {
+        dropped.add(sources.get(i).name());
+        results.add(List.of());
+      } else {
+        results.add(result);
+      }
+    }
+
+    return new Result(results, dropped);
+  }
+
+  /**
+   * Stops the worker threads, interrupting any running sources.
+   */
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+
+  /**
+   * A named candidate source.
+   *
+   * @param name a short name used when reporting dropped sources
+   * @param task the task producing ranked publication ids
+   */
+  public record Source(String name, Callable<List<Integer>> task) {}
+
+  /**
+   * The outcome of a {@link #generate(List)} call.
+   *
+   * @param results the ranked ids of each source, in submission order; empty for dropped sources
+   * @param dropped the names of the sources that missed the deadline, failed or were rejected
+   */
+  public record Result(List<List<Integer>> results, List<String> dropped) {
+
+    /**
+     * @return {@code true} if every source finished in time
+     */
+    public boolean complete() {
+      return dropped.isEmpty();
+    }
+  }
+}
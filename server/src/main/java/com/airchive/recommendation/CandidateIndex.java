@@ -0,0 +1,618 @@
+package com.airchive.recommendation;
+
+import com.airchive.entity.Publication;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * An immutable, in-memory index of published publications used by the recommendation engine to
+ * generate and score candidates without issuing multi-join SQL queries.
+ * <p>
+ * Publications are addressed by a dense <em>ordinal</em>, their position in ascending {@code pub_id}
+ * order. For every {@link Publication.Kind} the index keeps two adjacency lists in CSR (compressed
+ * sparse row) layout: topic id to publication ordinals, and author (person) id to publication ordinals.
+ * A CSR list is made of two {@code int[]} arrays, where the postings of key {@code k} are
+ * {@code postings[offsets[k]]} up to (but excluding) {@code postings[offsets[k + 1]]}. Topic and person
+ * ids are small auto-increment keys, so they are used to index {@code offsets} directly.
+ * <p>
+ * Alongside the postings, the index keeps each publication's kind and current popularity score, plus
+ * all ordinals pre-sorted by popularity so the popular feed is a simple scan.
+ * <p>
+ * Instances are never mutated. Updates such as {@link #withPopularity(Map)} or
+ * {@link Builder#add(int, Publication.Kind, List, List)} produce a new snapshot, which owners publish
+ * through a {@code volatile} field so readers never observe a partially built index.
+ * <p>
+ * An index can be saved to a versioned snapshot file with {@link #writeSnapshot(Path, long)} and read
+ * back with {@link #readSnapshot(Path)}, which memory-maps the file and bulk-copies every array out of
+ * it, so a restarted application does not have to reload the index from the database. The file holds
+ * the raw arrays, big-endian, each prefixed with its length, followed by a CRC-32 of everything before
+ * it.
+ */
+public final class CandidateIndex {
+
+  private static final Publication.Kind[] KINDS = Publication.Kind.values();
+
+  /** The first bytes of a snapshot file, "AICI". */
+  private static final int SNAPSHOT_MAGIC = 0x41494349;
+  /** The snapshot layout version, bumped whenever the layout changes. */
+  private static final int SNAPSHOT_VERSION = 1;
+
+  private final int[] pubIds;
+  private final byte[] kinds;
+  private final double[] popularity;
+  private final int[] popularityOrder;
+  private final Csr[] topicPostings;
+  private final Csr[] authorPostings;
+
+  private CandidateIndex(int[] pubIds, byte[] kinds, double[] popularity, Csr[] topicPostings,
+      Csr[] authorPostings) {
+    this(pubIds, kinds, popularity, sortByPopularity(pubIds, popularity), topicPostings, authorPostings);
+  }
+
+  private CandidateIndex(int[] pubIds, byte[] kinds, double[] popularity, int[] popularityOrder,
+      Csr[] topicPostings, Csr[] authorPostings) {
+    this.pubIds = pubIds;
+    this.kinds = kinds;
+    this.popularity = popularity;
+    this.popularityOrder = popularityOrder;
+    this.topicPostings = topicPostings;
+    this.authorPostings = authorPostings;
+  }
+
+  /**
+   * Creates a new, empty {@link Builder}.
+   *
+   * @return a builder with no publications
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * @return the number of publications in the index
+   */
+  public int size() {
+    return pubIds.length;
+  }
+
+  /**
+   * @param ordinal the ordinal of a publication
+   * @return the publication's {@code pub_id}
+   */
+  public int pubId(int ordinal) {
+    return pubIds[ordinal];
+  }
+
+  /**
+   * @param ordinal the ordinal of a publication
+   * @return the publication's kind
+   */
+  public Publication.Kind kind(int ordinal) {
+    return KINDS[kinds[ordinal]];
+  }
+
+  /**
+   * @param ordinal the ordinal of a publication
+   * @return the publication's popularity score at the time of the last refresh
+   */
+  public double popularity(int ordinal) {
+    return popularity[ordinal];
+  }
+
+  /**
+   * Finds the ordinal of a publication.
+   *
+   * @param pubId the publication's {@code pub_id}
+   * @return the ordinal, or {@code -1} if the publication is not indexed
+   */
+  public int ordinalOf(int pubId) {
+    int ordinal = Arrays.binarySearch(pubIds, pubId);
+    return ordinal >= 0 ? ordinal : -1;
+  }
+
+  /**
+   * Visits the ordinals of every indexed publication tagged with the given topic.
+   *
+   * @param topicId the topic id
+   * @param kinds the kinds to include, or {@code null}/empty for all kinds
+   * @param action the callback receiving each publication ordinal
+   */
+  public void forEachWithTopic(int topicId, List<Publication.Kind> kinds, IntConsumer action) {
+    forEach(topicPostings, topicId, kinds, action);
+  }
+
+  /**
+   * Visits the ordinals of every indexed publication written by the given author.
+   *
+   * @param personId the author's person id
+   * @param kinds the kinds to include, or {@code null}/empty for all kinds
+   * @param action the callback receiving each publication ordinal
+   */
+  public void forEachWithAuthor(int personId, List<Publication.Kind> kinds, IntConsumer action) {
+    forEach(authorPostings, personId, kinds, action);
+  }
+
+  /**
+   * Visits publication ordinals in descending popularity order until the action returns {@code false}.
+   *
+   * @param kinds the kinds to include, or {@code null}/empty for all kinds
+   * @param action the callback receiving each ordinal; returns {@code false} to stop the scan
+   */
+  public void forEachByPopularity(List<Publication.Kind> kinds, IntPredicate action) {
+    boolean allKinds = kinds == null || kinds.isEmpty();
+    for (int ordinal : popularityOrder) {
+      if (!allKinds && !kinds.contains(kind(ordinal))) continue;
+      if (!action.test(ordinal)) return;
+    }
+  }
+
+  /**
+   * Returns a page of the indexed publications in descending popularity order.
+   *
+   * @param kinds the kinds to include, or {@code null}/empty for all kinds
+   * @param limit the maximum number of ids to return
+   * @param offset the number of top-ranked ids to skip
+   * @return the publication ids of the page
+   */
+  public List<Integer> pageByPopularity(List<Publication.Kind> kinds, int limit, int offset) {
+    List<Integer> page = new ArrayList<>(Math.min(limit, 64));
+    int[] skipped = {0};
+    forEachByPopularity(kinds, ordinal -> {
+      if (skipped[0]++ >= offset) page.add(pubIds[ordinal]);
+      return page.size() < limit;
+    });
+    return page;
+  }
+
+  /**
+   * Ranks the publications tagged with any of the reader's topics by {@code affinity(topic) * popularity},
+   * each publication keeping its best topic, in descending score order with ties broken by descending id.
+   *
+   * @param affinities the reader's affinity for each topic; topics with a non-positive affinity are ignored
+   * @param kinds the kinds to include, or {@code null}/empty for all kinds
+   * @param excluded ids to skip, such as those already viewed
+   * @param limit the maximum number of ids to return
+   * @param offset the number of top-ranked ids to skip
+   * @return the ranked publication ids
+   */
+  public List<Integer> rankByTopicAffinity(Map<Integer, Double> affinities, List<Publication.Kind> kinds,
+      IntPredicate excluded, int limit, int offset) {
+    return rankByAffinity(topicPostings, affinities, kinds, excluded, limit, offset);
+  }
+
+  /**
+   * Ranks the publications written by any of the reader's authors the same way
+   * {@link #rankByTopicAffinity} ranks topics.
+   *
+   * @param affinities the reader's affinity for each author, keyed by person id
+   * @param kinds the kinds to include, or {@code null}/empty for all kinds
+   * @param excluded ids to skip, such as those already viewed
+   * @param limit the maximum number of ids to return
+   * @param offset the number of top-ranked ids to skip
+   * @return the ranked publication ids
+   */
+  public List<Integer> rankByAuthorAffinity(Map<Integer, Double> affinities, List<Publication.Kind> kinds,
+      IntPredicate excluded, int limit, int offset) {
+    return rankByAffinity(authorPostings, affinities, kinds, excluded, limit, offset);
+  }
+
+  /**
+   * @param pubId a publication id
+   * @param kinds the kinds to accept, or {@code null}/empty for all kinds
+   * @return {@code true} if the publication is indexed with one of the given kinds
+   */
+  public boolean contains(int pubId, List<Publication.Kind> kinds) {
+    int ordinal = ordinalOf(pubId);
+    return ordinal >= 0 && (kinds == null || kinds.isEmpty() || kinds.contains(kind(ordinal)));
+  }
+
+  /**
+   * Returns a copy of this index with refreshed popularity scores. Postings are shared with this index.
+   *
+   * @param scores popularity scores keyed by {@code pub_id}; publications missing from the map score zero
+   * @return the new snapshot
+   */
+  public CandidateIndex withPopularity(Map<Integer, Double> scores) {
+    double[] updated = new double[pubIds.length];
+    for (int i = 0; i < pubIds.length; i++) {
+      updated[i] = scores.getOrDefault(pubIds[i], 0.0);
+    }
+    return new CandidateIndex(pubIds, kinds, updated, topicPostings, authorPostings);
+  }
+
+  /**
+   * Returns a builder pre-populated with every publication in this index, used to apply incremental
+   * changes such as a newly published draft or a publication whose topics changed.
+   *
+   * @return a new builder
+   */
+  public Builder toBuilder() {
+    Builder builder = new Builder();
+    for (int ordinal = 0; ordinal < pubIds.length; ordinal++) {
+      builder.add(pubIds[ordinal], kind(ordinal), List.of(), List.of());
+      builder.setPopularity(pubIds[ordinal], popularity[ordinal]);
+    }
+    for (int k = 0; k < KINDS.length; k++) {
+      topicPostings[k].forEachEdge((key, ordinal) -> builder.addTopic(pubIds[ordinal], key));
+      authorPostings[k].forEachEdge((key, ordinal) -> builder.addAuthor(pubIds[ordinal], key));
+    }
+    return builder;
+  }
+
+  /**
+   * Writes this index to a snapshot file. The file is written next to the target and then moved over
+   * it, so a crash never leaves a partially written snapshot behind.
+   *
+   * @param file the snapshot file
+   * @param savedAt the time the index was current, in epoch milliseconds
+   * @throws IOException if the file cannot be written
+   */
+  public void writeSnapshot(Path file, long savedAt) throws IOException {
+    Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+    try (OutputStream raw = new BufferedOutputStream(Files.newOutputStream(temp))) {
+      CheckedOutputStream checked = new CheckedOutputStream(raw, new CRC32());
+      DataOutputStream out = new DataOutputStream(checked);
+      out.writeInt(SNAPSHOT_MAGIC);
+      out.writeInt(SNAPSHOT_VERSION);
+      out.writeLong(savedAt);
+      out.writeInt(KINDS.length);
+      writeInts(out, pubIds);
+      out.write(kinds);
+      for (double score : popularity) out.writeDouble(score);
+      writeInts(out, popularityOrder);
+      for (Csr csr : topicPostings) csr.writeTo(out);
+      for (Csr csr : authorPostings) csr.writeTo(out);
+      out.flush();
+      new DataOutputStream(raw).writeLong(checked.getChecksum().getValue());
+    }
+    Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Reads an index from a snapshot file written by {@link #writeSnapshot(Path, long)}.
+   *
+   * @param file the snapshot file
+   * @return the index, with the time it was saved
+   * @throws IOException if the file cannot be read, is corrupt, or has another layout version
+   */
+  public static SavedIndex readSnapshot(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      int payloadEnd = buffer.capacity() - Long.BYTES;
+      if (payloadEnd < 4 * Integer.BYTES + Long.BYTES) {
+        throw new IOException("Candidate index snapshot is truncated: " + file);
+      }
+
+      CRC32 crc = new CRC32();
+      crc.update(buffer.duplicate().limit(payloadEnd));
+      if (crc.getValue() != buffer.getLong(payloadEnd)) {
+        throw new IOException("Candidate index snapshot checksum mismatch: " + file);
+      }
+      if (buffer.getInt() != SNAPSHOT_MAGIC || buffer.getInt() != SNAPSHOT_VERSION) {
+        throw new IOException("Unsupported candidate index snapshot: " + file);
+      }
+      long savedAt = buffer.getLong();
+      if (buffer.getInt() != KINDS.length) {
+        throw new IOException("Candidate index snapshot has a different number of kinds: " + file);
+      }
+
+      int[] pubIds = readInts(buffer);
+      byte[] kinds = new byte[pubIds.length];
+      buffer.get(kinds);
+      double[] popularity = new double[pubIds.length];
+      buffer.asDoubleBuffer().get(popularity);
+      buffer.position(buffer.position() + popularity.length * Double.BYTES);
+      int[] popularityOrder = readInts(buffer);
+
+      Csr[] topicPostings = new Csr[KINDS.length];
+      for (int k = 0; k < KINDS.length; k++) topicPostings[k] = Csr.readFrom(buffer);
+      Csr[] authorPostings = new Csr[KINDS.length];
+      for (int k = 0; k < KINDS.length; k++) authorPostings[k] = Csr.readFrom(buffer);
+
+      return new SavedIndex(new CandidateIndex(pubIds, kinds, popularity, popularityOrder, topicPostings,
+          authorPostings), savedAt);
+    }
+  }
+
+  /**
+   * An index read from a snapshot file.
+   *
+   * @param index the index
+   * @param savedAt the time the index was current, in epoch milliseconds
+   */
+  public record SavedIndex(CandidateIndex index, long savedAt) {}
+
+  private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+    out.writeInt(values.length);
+    for (int value : values) out.writeInt(value);
+  }
+
+  private static int[] readInts(ByteBuffer buffer) {
+    int[] values = new int[buffer.getInt()];
+    buffer.asIntBuffer().get(values);
+    buffer.position(buffer.position() + values.length * Integer.BYTES);
+    return values;
+  }
+
+  /**
+   * Visits the id of every topic with at least one indexed publication, in ascending order.
+   *
+   * @param action the callback receiving each topic id
+   */
+  public void forEachTopic(IntConsumer action) {
+    int keys = 0;
+    for (Csr csr : topicPostings) keys = Math.max(keys, csr.keyCount());
+    for (int key = 0; key < keys; key++) {
+      for (Csr csr : topicPostings) {
+        if (csr.hasPostings(key)) {
+          action.accept(key);
+          break;
+        }
+      }
+    }
+  }
+
+  /**
+   * Visits every (topic id, publication ordinal) edge of the index, across all kinds.
+   *
+   * @param action the callback receiving each edge
+   */
+  void forEachTopicEdge(EdgeConsumer action) {
+    for (Csr csr : topicPostings) csr.forEachEdge(action);
+  }
+
+  private void forEach(Csr[] postings, int key, List<Publication.Kind> kinds, IntConsumer action) {
+    if (kinds == null || kinds.isEmpty()) {
+      for (Csr csr : postings) csr.forEach(key, action);
+    } else {
+      for (Publication.Kind kind : kinds) postings[kind.ordinal()].forEach(key, action);
+    }
+  }
+
+  private List<Integer> rankByAffinity(Csr[] postings, Map<Integer, Double> affinities,
+      List<Publication.Kind> kinds, IntPredicate excluded, int limit, int offset) {
+    if (affinities.isEmpty()) return List.of();
+
+    double[] best = new double[pubIds.length];
+    for (Map.Entry<Integer, Double> affinity : affinities.entrySet()) {
+      double score = affinity.getValue();
+      forEach(postings, affinity.getKey(), kinds, ordinal -> best[ordinal] = Math.max(best[ordinal], score));
+    }
+
+    List<Integer> candidates = new ArrayList<>();
+    for (int ordinal = 0; ordinal < best.length; ordinal++) {
+      if (best[ordinal] > 0 && !excluded.test(pubIds[ordinal])) {
+        candidates.add(ordinal);
+      }
+    }
+
+    candidates.sort(Comparator.comparingDouble((Integer ordinal) -> best[ordinal] * popularity[ordinal])
+        .reversed()
+        .thenComparing(Comparator.reverseOrder()));
+
+    return candidates.stream()
+        .skip(offset)
+        .limit(limit)
+        .map(ordinal -> pubIds[ordinal])
+        .toList();
+  }
+
+  private static int[] sortByPopularity(int[] pubIds, double[] popularity) {
+    Integer[] order = new Integer[pubIds.length];
+    for (int i = 0; i < order.length; i++) order[i] = i;
+    Arrays.sort(order, (a, b) -> {
+      int cmp = Double.compare(popularity[b], popularity[a]);
+      return cmp != 0 ? cmp : Integer.compare(pubIds[b], pubIds[a]);
+    });
+    return Arrays.stream(order).mapToInt(Integer::intValue).toArray();
+  }
+
+  /**
+   * A single adjacency list in CSR layout.
+   */
+  private static final class Csr {
+    private final int[] offsets;
+    private final int[] postings;
+
+    private Csr(int[] offsets, int[] postings) {
+      this.offsets = offsets;
+      this.postings = postings;
+    }
+
+    void forEach(int key, IntConsumer action) {
+      if (key < 0 || key + 1 >= offsets.length) return;
+      for (int i = offsets[key], end = offsets[key + 1]; i < end; i++) {
+        action.accept(postings[i]);
+      }
+    }
+
+    int keyCount() {
+      return offsets.length - 1;
+    }
+
+    boolean hasPostings(int key) {
+      return key >= 0 && key + 1 < offsets.length && offsets[key + 1] > offsets[key];
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+      writeInts(out, offsets);
+      writeInts(out, postings);
+    }
+
+    static Csr readFrom(ByteBuffer buffer) {
+      int[] offsets = readInts(buffer);
+      return new Csr(offsets, readInts(buffer));
+    }
+
+    void forEachEdge(EdgeConsumer action) {
+      for (int key = 0; key + 1 < offsets.length; key++) {
+        for (int i = offsets[key], end = offsets[key + 1]; i < end; i++) {
+          action.accept(key, postings[i]);
+        }
+      }
+    }
+
+    /**
+     * Builds a CSR list from parallel key/ordinal edge arrays. Postings of each key keep the order in
+     * which the edges were given, which is ascending ordinal order for edges emitted by the builder.
+     */
+    static Csr build(int[] keys, int[] ordinals, int edgeCount) {
+      int maxKey = -1;
+      for (int i = 0; i < edgeCount; i++) maxKey = Math.max(maxKey, keys[i]);
+
+      int[] offsets = new int[maxKey + 2];
+      for (int i = 0; i < edgeCount; i++) offsets[keys[i] + 1]++;
+      for (int k = 1; k < offsets.length; k++) offsets[k] += offsets[k - 1];
+
+      int[] cursor = Arrays.copyOf(offsets, offsets.length);
+      int[] postings = new int[edgeCount];
+      for (int i = 0; i < edgeCount; i++) postings[cursor[keys[i]]++] = ordinals[i];
+      return new Csr(offsets, postings);
+    }
+  }
+
+  @FunctionalInterface
+  interface EdgeConsumer {
+    void accept(int key, int ordinal);
+  }
+
+  /**
+   * Collects publications with their topics and authors and builds an immutable {@link CandidateIndex}.
+   * Builders are not thread-safe.
+   */
+  public static final class Builder {
+    private final TreeMap<Integer, Entry> entries = new TreeMap<>();
+
+    private Builder() {}
+
+    /**
+     * Adds a publication, or replaces its kind if it was already added, and merges in the given topics
+     * and authors.
+     *
+     * @param pubId the publication id
+     * @param kind the publication kind
+     * @param topicIds the publication's topic ids
+     * @param personIds the publication's author person ids
+     * @return this builder
+     */
+    public Builder add(int pubId, Publication.Kind kind, List<Integer> topicIds, List<Integer> personIds) {
+      Entry entry = entries.computeIfAbsent(pubId, id -> new Entry());
+      entry.kind = kind;
+      entry.topicIds.addAll(topicIds);
+      entry.personIds.addAll(personIds);
+      return this;
+    }
+
+    /**
+     * Removes a publication with its topics and authors, if it was added.
+     *
+     * @param pubId the publication id
+     * @return this builder
+     */
+    public Builder remove(int pubId) {
+      entries.remove(pubId);
+      return this;
+    }
+
+    /**
+     * Tags an already added publication with a topic. Unknown publications are ignored.
+     */
+    public Builder addTopic(int pubId, int topicId) {
+      Entry entry = entries.get(pubId);
+      if (entry != null) entry.topicIds.add(topicId);
+      return this;
+    }
+
+    /**
+     * Records an author of an already added publication. Unknown publications are ignored.
+     */
+    public Builder addAuthor(int pubId, int personId) {
+      Entry entry = entries.get(pubId);
+      if (entry != null) entry.personIds.add(personId);
+      return this;
+    }
+
+    /**
+     * Sets the popularity score of an already added publication. Unknown publications are ignored.
+     */
+    public Builder setPopularity(int pubId, double score) {
+      Entry entry = entries.get(pubId);
+      if (entry != null) entry.popularity = score;
+      return this;
+    }
+
+    /**
+     * @return a new immutable index containing every added publication
+     */
+    public CandidateIndex build() {
+      int n = entries.size();
+      int[] pubIds = new int[n];
+      byte[] kinds = new byte[n];
+      double[] popularity = new double[n];
+
+      int ordinal = 0;
+      for (Map.Entry<Integer, Entry> e : entries.entrySet()) {
+        pubIds[ordinal] = e.getKey();
+        kinds[ordinal] = (byte) e.getValue().kind.ordinal();
+        popularity[ordinal] = e.getValue().popularity;
+        ordinal++;
+      }
+
+      return new CandidateIndex(pubIds, kinds, popularity,
+          buildPostings(true), buildPostings(false));
+    }
+
+    private Csr[] buildPostings(boolean topics) {
+      Csr[] result = new Csr[KINDS.length];
+      for (Publication.Kind kind : KINDS) {
+        List<int[]> edges = new ArrayList<>();
+        int ordinal = 0;
+        for (Entry entry : entries.values()) {
+          if (entry.kind == kind) {
+            for (int key : topics ? entry.topicIds : entry.personIds) {
+              edges.add(new int[] {key, ordinal});
+            }
+          }
+          ordinal++;
+        }
+
+        int[] keys = new int[edges.size()];
+        int[] ordinals = new int[edges.size()];
+        for (int i = 0; i < edges.size(); i++) {
+          keys[i] = edges.get(i)[0];
+          ordinals[i] = edges.get(i)[1];
+        }
+        result[kind.ordinal()] = Csr.build(keys, ordinals, keys.length);
+      }
+      return result;
+    }
+
+    private static final class Entry {
+      private Publication.Kind kind;
+      private double popularity;
+      private final Set<Integer> topicIds = new LinkedHashSet<>();
+      private final Set<Integer> personIds = new LinkedHashSet<>();
+    }
+  }
+}
@@ -0,0 +1,175 @@
+package com.airchive.recommendation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable snapshot of the public collections and their topic profiles, used to rank collections
+ * for a reader without aggregating collection items per request.
+ * <p>
+ * A collection's topic profile counts, for every topic, how many of its publications are tagged with
+ * it. The relevance of a collection to a reader is the dot product of that profile with the reader's
+ * topic affinity vector, which equals summing the reader's affinity over every (item, topic) pair of
+ * the collection. Profiles are stored inverted, as per-topic posting lists, so ranking only touches
+ * the collections that share a topic with the reader.
+ * <p>
+ * Collections are kept newest first; that order is also the precomputed ranking served to anonymous
+ * readers and used to fill pages once the affinity-ranked collections run out.
+ */
+public final class CollectionProfileIndex {
+
+  private static final CollectionProfileIndex EMPTY = new CollectionProfileIndex(new int[0], Map.of());
+
+  private final int[] collectionIds;
+  private final Map<Integer, Postings> byTopic;
+
+  private CollectionProfileIndex(int[] collectionIds, Map<Integer, Postings> byTopic) {
+    this.collectionIds = collectionIds;
+    this.byTopic = byTopic;
+  }
+
+  /**
+   * Creates a new, empty {@link Builder}.
+   *
+   * @return a builder with no collections
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * @return an index without any collections
+   */
+  public static CollectionProfileIndex empty() {
+    return EMPTY;
+  }
+
+  /**
+   * @return the number of public collections in the index
+   */
+  public int size() {
+    return collectionIds.length;
+  }
+
+  /**
+   * Returns a page of the public collections, newest first.
+   *
+   * @param limit the maximum number of ids to return
+   * @param offset the number of ids to skip
+   * @return the collection ids
+   */
+  public List<Integer> recent(int limit, int offset) {
+    int from = Math.max(0, Math.min(offset, collectionIds.length));
+    // from + limit would overflow for a limit near Integer.MAX_VALUE
+    int to = from + Math.max(0, Math.min(limit, collectionIds.length - from));
+    List<Integer> page = new ArrayList<>(to - from);
+    for (int i = from; i < to; i++) page.add(collectionIds[i]);
+    return page;
+  }
+
+  /**
+   * Ranks the public collections by the dot product of their topic profile with the given affinities.
+   * Ties are broken by recency. Collections sharing no topic with the affinities are not returned.
+   *
+   * @param affinities the reader's affinity score per topic id
+   * @param limit the maximum number of ids to return
+   * @return the collection ids, most relevant first
+   */
+  public List<Integer> rank(Map<Integer, Double> affinities, int limit) {
+    double[] scores = new double[collectionIds.length];
+    int[] touched = new int[collectionIds.length];
+    int touchedCount = 0;
+
+    for (Map.Entry<Integer, Double> affinity : affinities.entrySet()) {
+      Postings postings = byTopic.get(affinity.getKey());
+      double score = affinity.getValue();
+      if (postings == null || score <= 0) continue;
+      for (int p = 0; p < postings.ordinals.length; p++) {
+        int ordinal = postings.ordinals[p];
+        if (scores[ordinal] == 0) touched[touchedCount++] = ordinal;
+        scores[ordinal] += score * postings.weights[p];
+      }
+    }
+
+    Integer[] order = new Integer[touchedCount];
+    for (int i = 0; i < touchedCount; i++) order[i] = touched[i];
+    Arrays.sort(order, (a, b) -> {
+      int cmp = Double.compare(scores[b], scores[a]);
+      return cmp != 0 ? cmp : Integer.compare(a, b);
+    });
+
+    List<Integer> ranked = new ArrayList<>(Math.min(limit, touchedCount));
+    for (int i = 0; i < order.length && ranked.size() < limit; i++) {
+      if (scores[order[i]] > 0) ranked.add(collectionIds[order[i]]);
+    }
+    return ranked;
+  }
+
+  /**
+   * The collections tagged with one topic, as ordinals into {@code collectionIds}, with their weights.
+   */
+  private record Postings(int[] ordinals, int[] weights) {}
+
+  /**
+   * Collects public collections and their topic weights and builds an immutable
+   * {@link CollectionProfileIndex}. Collections must be added newest first, before their weights.
+   * Builders are not thread-safe.
+   */
+  public static final class Builder {
+    private final Map<Integer, Integer> ordinals = new HashMap<>();
+    private final List<Integer> collectionIds = new ArrayList<>();
+    private final Map<Integer, List<int[]>> byTopic = new HashMap<>();
+
+    private Builder() {}
+
+    /**
+     * Adds a public collection after all previously added, newer ones.
+     *
+     * @param collectionId the collection id
+     * @return this builder
+     */
+    public Builder addCollection(int collectionId) {
+      if (ordinals.putIfAbsent(collectionId, collectionIds.size()) == null) {
+        collectionIds.add(collectionId);
+      }
+      return this;
+    }
+
+    /**
+     * Sets the weight of a topic in a collection's profile. Weights of unknown collections are ignored.
+     *
+     * @param collectionId the collection id
+     * @param topicId the topic id
+     * @param weight the number of the collection's publications tagged with the topic
+     * @return this builder
+     */
+    public Builder addWeight(int collectionId, int topicId, int weight) {
+      Integer ordinal = ordinals.get(collectionId);
+      if (ordinal != null && weight > 0) {
+        byTopic.computeIfAbsent(topicId, t -> new ArrayList<>()).add(new int[] {ordinal, weight});
+      }
+      return this;
+    }
+
+    /**
+     * @return a new immutable instance containing every added collection
+     */
+    public CollectionProfileIndex build() {
+      Map<Integer, Postings> postings = new HashMap<>();
+      byTopic.forEach((topicId, entries) -> {
+        int[] ordinalArray = new int[entries.size()];
+        int[] weightArray = new int[entries.size()];
+        for (int i = 0; i < entries.size(); i++) {
+          ordinalArray[i] = entries.get(i)[0];
+          weightArray[i] = entries.get(i)[1];
+        }
+        postings.put(topicId, new Postings(ordinalArray, weightArray));
+      });
+      return new CollectionProfileIndex(
+          collectionIds.stream().mapToInt(Integer::intValue).toArray(), postings);
+    }
+  }
+}
@@ -0,0 +1,191 @@
+package com.airchive.recommendation;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntPredicate;
+
+/**
+ * An immutable, compact store of the top-K most similar publications of every publication, produced
+ * by {@link ItemSimilarityJob} from co-interaction data.
+ * <p>
+ * The lists are kept in CSR layout: {@code pubIds} is sorted ascending, and the neighbours of
+ * {@code pubIds[i]} are {@code neighborIds[offsets[i]]} up to (but excluding)
+ * {@code neighborIds[offsets[i + 1]]}, with their similarities in the parallel {@code similarities}
+ * array, in descending similarity order. A publication with K neighbours costs {@code 8 * K} bytes.
+ */
+public final class ItemNeighbors {
+
+  private static final ItemNeighbors EMPTY = new ItemNeighbors(new int[0], new int[] {0}, new int[0], new float[0]);
+
+  private final int[] pubIds;
+  private final int[] offsets;
+  private final int[] neighborIds;
+  private final float[] similarities;
+
+  /**
+   * @param pubIds the publications that have neighbours, sorted ascending
+   * @param offsets the start of each publication's list, with a final entry equal to the edge count
+   * @param neighborIds the neighbour publication ids
+   * @param similarities the similarity of each neighbour, parallel to {@code neighborIds}
+   */
+  private ItemNeighbors(int[] pubIds, int[] offsets, int[] neighborIds, float[] similarities) {
+    this.pubIds = pubIds;
+    this.offsets = offsets;
+    this.neighborIds = neighborIds;
+    this.similarities = similarities;
+  }
+
+  /**
+   * Creates a new, empty {@link Builder}.
+   *
+   * @return a builder with no edges
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * @return an instance without any neighbours
+   */
+  public static ItemNeighbors empty() {
+    return EMPTY;
+  }
+
+  /**
+   * @return the number of publications that have at least one neighbour
+   */
+  public int size() {
+    return pubIds.length;
+  }
+
+  /**
+   * @return the total number of stored neighbour edges
+   */
+  public int edgeCount() {
+    return neighborIds.length;
+  }
+
+  /**
+   * Visits the neighbours of a publication in descending similarity order.
+   *
+   * @param pubId the publication id
+   * @param action the callback receiving each neighbour id and its similarity
+   */
+  public void forEachNeighbor(int pubId, NeighborConsumer action) {
+    int i = Arrays.binarySearch(pubIds, pubId);
+    if (i < 0) return;
+    for (int e = offsets[i], end = offsets[i + 1]; e < end; e++) {
+      action.accept(neighborIds[e], similarities[e]);
+    }
+  }
+
+  /**
+   * Ranks the neighbours of the given seed publications by the sum of their similarities to the seeds
+   * they neighbour, in descending score order with ties broken by descending id. Seeds are never
+   * returned.
+   *
+   * @param seeds the seed publication ids, such as the reader's most recent interactions
+   * @param excluded ids to skip, such as those already viewed
+   * @param limit the maximum number of ids to return
+   * @param offset the number of top-ranked ids to skip
+   * @return the ranked neighbour ids
+   */
+  public List<Integer> rank(List<Integer> seeds, IntPredicate excluded, int limit, int offset) {
+    Map<Integer, Double> scores = new HashMap<>();
+    for (int seed : seeds) {
+      forEachNeighbor(seed, (neighborId, similarity) -> scores.merge(neighborId, (double) similarity, Double::sum));
+    }
+    seeds.forEach(scores::remove);
+
+    return scores.entrySet().stream()
+        .filter(e -> !excluded.test(e.getKey()))
+        .sorted(Map.Entry.<Integer, Double>comparingByValue().reversed()
+            .thenComparing(Map.Entry.<Integer, Double>comparingByKey().reversed()))
+        .skip(offset)
+        .limit(limit)
+        .map(Map.Entry::getKey)
+        .toList();
+  }
+
+  /**
+   * Visits every stored edge, grouped by publication.
+   *
+   * @param action the callback receiving the publication id, its neighbour id and their similarity
+   */
+  public void forEachEdge(EdgeConsumer action) {
+    for (int i = 0; i < pubIds.length; i++) {
+      for (int e = offsets[i], end = offsets[i + 1]; e < end; e++) {
+        action.accept(pubIds[i], neighborIds[e], similarities[e]);
+      }
+    }
+  }
+
+  @FunctionalInterface
+  public interface NeighborConsumer {
+    void accept(int neighborId, float similarity);
+  }
+
+  @FunctionalInterface
+  public interface EdgeConsumer {
+    void accept(int pubId, int neighborId, float similarity);
+  }
+
+  /**
+   * Collects edges grouped by publication and builds an immutable {@link ItemNeighbors}. Publications
+   * must be added in ascending id order, each with its neighbours in descending similarity order.
+   * Builders are not thread-safe.
+   */
+  public static final class Builder {
+    private int[] pubIds = new int[16];
+    private int[] offsets = new int[17];
+    private int[] neighborIds = new int[64];
+    private float[] similarities = new float[64];
+    private int pubCount;
+    private int edgeCount;
+
+    private Builder() {}
+
+    /**
+     * Adds an edge. Edges of the same publication must be added consecutively.
+     *
+     * @param pubId the publication id
+     * @param neighborId the neighbour publication id
+     * @param similarity their similarity
+     * @return this builder
+     */
+    public Builder add(int pubId, int neighborId, float similarity) {
+      if (pubCount == 0 || pubIds[pubCount - 1] != pubId) {
+        if (pubCount > 0 && pubId < pubIds[pubCount - 1]) {
+          throw new IllegalArgumentException("Publications must be added in ascending id order");
+        }
+        if (pubCount == pubIds.length) {
+          pubIds = Arrays.copyOf(pubIds, pubCount * 2);
+          offsets = Arrays.copyOf(offsets, pubCount * 2 + 1);
+        }
+        pubIds[pubCount] = pubId;
+        offsets[pubCount] = edgeCount;
+        pubCount++;
+      }
+      if (edgeCount == neighborIds.length) {
+        neighborIds = Arrays.copyOf(neighborIds, edgeCount * 2);
+        similarities = Arrays.copyOf(similarities, edgeCount * 2);
+      }
+      neighborIds[edgeCount] = neighborId;
+      similarities[edgeCount] = similarity;
+      edgeCount++;
+      return this;
+    }
+
+    /**
+     * @return a new immutable instance containing every added edge
+     */
+    public ItemNeighbors build() {
+      int[] finalOffsets = Arrays.copyOf(offsets, pubCount + 1);
+      finalOffsets[pubCount] = edgeCount;
+      return new ItemNeighbors(Arrays.copyOf(pubIds, pubCount), finalOffsets,
+          Arrays.copyOf(neighborIds, edgeCount), Arrays.copyOf(similarities, edgeCount));
+    }
+  }
+}
@@ -0,0 +1,311 @@
+package com.airchive.recommendation;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Builds an item-item similarity matrix from co-interaction data and keeps the top-K neighbours of
+ * every publication.
+ * <p>
+ * Each account is a sparse vector of interaction weights over publications. The similarity of two
+ * publications is the cosine of their account-weight columns: the weighted number of accounts that
+ * interacted with both, normalized by how much each was interacted with overall. Pairs supported by
+ * fewer than {@code minSupport} accounts are ignored as noise.
+ * <p>
+ * Publications are split into ranges that are scored in parallel on a {@link ForkJoinPool}. Each leaf
+ * walks the accounts that touched a publication and accumulates co-occurrence with everything those
+ * accounts touched, so the work is proportional to the number of co-interaction pairs rather than to
+ * the square of the catalogue size. The most active accounts are capped to their
+ * {@code maxItemsPerUser} heaviest interactions, since they add many pairs but little signal.
+ */
+public final class ItemSimilarityJob {
+
+  /** The number of publications scored by a single fork-join leaf task. */
+  private static final int LEAF_SIZE = 256;
+
+  private final int neighborsPerItem;
+  private final int minSupport;
+  private final int maxItemsPerUser;
+  private final int parallelism;
+
+  /**
+   * @param neighborsPerItem the number of neighbours (K) kept per publication
+   * @param minSupport the minimum number of accounts that must share a pair of publications
+   * @param maxItemsPerUser the maximum number of interactions considered per account
+   * @param parallelism the number of fork-join worker threads
+   */
+  public ItemSimilarityJob(int neighborsPerItem, int minSupport, int maxItemsPerUser, int parallelism) {
+    this.neighborsPerItem = neighborsPerItem;
+    this.minSupport = minSupport;
+    this.maxItemsPerUser = maxItemsPerUser;
+    this.parallelism = parallelism;
+  }
+
+  /**
+   * Computes the top-K neighbours of every publication.
+   *
+   * @param interactions the aggregated interaction weight of each (account, publication) pair
+   * @return the neighbour lists
+   */
+  public ItemNeighbors compute(Interactions interactions) {
+    int n = interactions.size;
+    if (n == 0) return ItemNeighbors.empty();
+
+    int[] items = Arrays.stream(interactions.pubIds, 0, n).distinct().sorted().toArray();
+
+    // Group interactions by account, keeping the heaviest maxItemsPerUser of each account.
+    long[] byAccount = new long[n];
+    for (int i = 0; i < n; i++) byAccount[i] = ((long) interactions.accountIds[i] << 32) | i;
+    Arrays.sort(byAccount);
+
+    int[] userOffsets = new int[n + 1];
+    int[] userItems = new int[n];
+    float[] userWeights = new float[n];
+    int users = 0;
+    int edges = 0;
+    for (int start = 0; start < n; ) {
+      int account = (int) (byAccount[start] >>> 32);
+      int end = start;
+      while (end < n && (int) (byAccount[end] >>> 32) == account) end++;
+
+      Integer[] rows = new Integer[end - start];
+      for (int k = start; k < end; k++) rows[k - start] = (int) byAccount[k];
+      if (rows.length > maxItemsPerUser) {
+        Arrays.sort(rows, (a, b) -> Float.compare(interactions.weights[b], interactions.weights[a]));
+      }
+
+      userOffsets[users] = edges;
+      for (int k = 0; k < Math.min(rows.length, maxItemsPerUser); k++) {
+        userItems[edges] = Arrays.binarySearch(items, interactions.pubIds[rows[k]]);
+        userWeights[edges] = interactions.weights[rows[k]];
+        edges++;
+      }
+      users++;
+      start = end;
+    }
+    userOffsets[users] = edges;
+
+    // Transpose into per-publication account lists and compute each publication's norm.
+    int[] itemOffsets = new int[items.length + 1];
+    for (int e = 0; e < edges; e++) itemOffsets[userItems[e] + 1]++;
+    for (int i = 1; i < itemOffsets.length; i++) itemOffsets[i] += itemOffsets[i - 1];
+
+    int[] cursor = Arrays.copyOf(itemOffsets, itemOffsets.length);
+    int[] itemUsers = new int[edges];
+    float[] itemWeights = new float[edges];
+    double[] norms = new double[items.length];
+    for (int u = 0; u < users; u++) {
+      for (int e = userOffsets[u]; e < userOffsets[u + 1]; e++) {
+        int item = userItems[e];
+        itemUsers[cursor[item]] = u;
+        itemWeights[cursor[item]++] = userWeights[e];
+        norms[item] += (double) userWeights[e] * userWeights[e];
+      }
+    }
+    for (int i = 0; i < norms.length; i++) norms[i] = Math.sqrt(norms[i]);
+
+    Matrix matrix = new Matrix(items, userOffsets, userItems, userWeights, itemOffsets, itemUsers, itemWeights, norms);
+    int[][] neighbors = new int[items.length][];
+    float[][] similarities = new float[items.length][];
+    // The pool's threads end with this call, so their scratch arrays are dropped with it
+    ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(() -> new Scratch(items.length));
+
+    ForkJoinPool pool = new ForkJoinPool(parallelism);
+    try {
+      pool.invoke(new ScoreRange(matrix, 0, items.length, neighbors, similarities, scratch));
+    } finally {
+      pool.shutdown();
+    }
+
+    ItemNeighbors.Builder builder = ItemNeighbors.builder();
+    for (int i = 0; i < items.length; i++) {
+      for (int k = 0; k < neighbors[i].length; k++) {
+        builder.add(items[i], items[neighbors[i][k]], similarities[i][k]);
+      }
+    }
+    return builder.build();
+  }
+
+  private record Matrix(int[] items, int[] userOffsets, int[] userItems, float[] userWeights,
+      int[] itemOffsets, int[] itemUsers, float[] itemWeights, double[] norms) {}
+
+  /**
+   * The per-thread accumulators of a leaf, sized by the number of publications. Every entry a leaf
+   * touches is reset to zero before it moves on, so the arrays are reused across leaves.
+   */
+  private static final class Scratch {
+    private final double[] dot;
+    private final int[] support;
+    private final int[] touched;
+
+    Scratch(int itemCount) {
+      this.dot = new double[itemCount];
+      this.support = new int[itemCount];
+      this.touched = new int[itemCount];
+    }
+  }
+
+  /**
+   * Scores a range of publications, splitting it in halves until it is small enough for one leaf.
+   */
+  @SuppressWarnings("serial")
+  private final class ScoreRange extends RecursiveAction {
+    private final Matrix m;
+    private final int from;
+    private final int to;
+    private final int[][] neighbors;
+    private final float[][] similarities;
+    private final ThreadLocal<Scratch> scratch;
+
+    ScoreRange(Matrix m, int from, int to, int[][] neighbors, float[][] similarities, ThreadLocal<Scratch> scratch) {
+      this.m = m;
+      this.from = from;
+      this.to = to;
+      this.neighbors = neighbors;
+      this.similarities = similarities;
+      this.scratch = scratch;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from > LEAF_SIZE) {
+        int mid = (from + to) >>> 1;
+        invokeAll(new ScoreRange(m, from, mid, neighbors, similarities, scratch),
+            new ScoreRange(m, mid, to, neighbors, similarities, scratch));
+        return;
+      }
+
+      Scratch local = scratch.get();
+      double[] dot = local.dot;
+      int[] support = local.support;
+      int[] touched = local.touched;
+
+      for (int i = from; i < to; i++) {
+        int touchedCount = 0;
+        for (int e = m.itemOffsets()[i]; e < m.itemOffsets()[i + 1]; e++) {
+          int user = m.itemUsers()[e];
+          double weight = m.itemWeights()[e];
+          for (int f = m.userOffsets()[user]; f < m.userOffsets()[user + 1]; f++) {
+            int j = m.userItems()[f];
+            if (j == i) continue;
+            if (support[j]++ == 0) touched[touchedCount++] = j;
+            dot[j] += weight * m.userWeights()[f];
+          }
+        }
+
+        TopK top = new TopK(neighborsPerItem);
+        for (int t = 0; t < touchedCount; t++) {
+          int j = touched[t];
+          if (support[j] >= minSupport) {
+            top.offer(j, (float) (dot[j] / (m.norms()[i] * m.norms()[j])));
+          }
+          dot[j] = 0;
+          support[j] = 0;
+        }
+        neighbors[i] = top.ids();
+        similarities[i] = top.scores();
+      }
+    }
+  }
+
+  /**
+   * A fixed-capacity min-heap keeping the highest scoring ids.
+   */
+  private static final class TopK {
+    private final int[] ids;
+    private final float[] scores;
+    private int size;
+
+    TopK(int capacity) {
+      this.ids = new int[capacity];
+      this.scores = new float[capacity];
+    }
+
+    void offer(int id, float score) {
+      if (size < ids.length) {
+        int i = size++;
+        while (i > 0 && scores[(i - 1) / 2] > score) {
+          ids[i] = ids[(i - 1) / 2];
+          scores[i] = scores[(i - 1) / 2];
+          i = (i - 1) / 2;
+        }
+        ids[i] = id;
+        scores[i] = score;
+      } else if (size > 0 && score > scores[0]) {
+        int i = 0;
+        while (true) {
+          int child = 2 * i + 1;
+          if (child >= size) break;
+          if (child + 1 < size && scores[child + 1] < scores[child]) child++;
+          if (scores[child] >= score) break;
+          ids[i] = ids[child];
+          scores[i] = scores[child];
+          i = child;
+        }
+        ids[i] = id;
+        scores[i] = score;
+      }
+    }
+
+    /** Returns the kept ids in descending score order. */
+    int[] ids() {
+      return Arrays.stream(order()).map(i -> ids[i]).toArray();
+    }
+
+    /** Returns the kept scores in descending score order. */
+    float[] scores() {
+      int[] order = order();
+      float[] result = new float[order.length];
+      for (int k = 0; k < order.length; k++) result[k] = scores[order[k]];
+      return result;
+    }
+
+    private int[] order() {
+      Integer[] order = new Integer[size];
+      for (int i = 0; i < size; i++) order[i] = i;
+      Arrays.sort(order, (a, b) -> {
+        int cmp = Float.compare(scores[b], scores[a]);
+        return cmp != 0 ? cmp : Integer.compare(ids[a], ids[b]);
+      });
+      return Arrays.stream(order).mapToInt(Integer::intValue).toArray();
+    }
+  }
+
+  /**
+   * Accumulates aggregated (account, publication, weight) interaction triples. Each pair must be added
+   * at most once. Not thread-safe.
+   */
+  public static final class Interactions {
+    private int[] accountIds = new int[1024];
+    private int[] pubIds = new int[1024];
+    private float[] weights = new float[1024];
+    private int size;
+
+    /**
+     * @param accountId the account id
+     * @param pubId the publication id
+     * @param weight the total interaction weight of the account on the publication
+     * @return this instance
+     */
+    public Interactions add(int accountId, int pubId, float weight) {
+      if (size == accountIds.length) {
+        accountIds = Arrays.copyOf(accountIds, size * 2);
+        pubIds = Arrays.copyOf(pubIds, size * 2);
+        weights = Arrays.copyOf(weights, size * 2);
+      }
+      accountIds[size] = accountId;
+      pubIds[size] = pubId;
+      weights[size] = weight;
+      size++;
+      return this;
+    }
+
+    /**
+     * @return the number of triples added
+     */
+    public int size() {
+      return size;
+    }
+  }
+}
@@ -0,0 +1,290 @@
+package com.airchive.recommendation;
+
+import com.airchive.entity.Interaction;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory, exponentially decayed interaction sums of every published publication, one per
+ * {@link Interaction} type.
+ * <p>
+ * A decayed sum {@code Σ exp(-(now - t_i) / τ)} does not have to be recomputed from every interaction:
+ * storing its value {@code v} as of a time {@code t0} is enough, since its value at any later time is
+ * {@code v * exp(-(now - t0) / τ)}. Recording an interaction therefore rescales the publication's sums
+ * to the current time and adds one, in constant time and without touching the database.
+ * <p>
+ * Publications whose sums changed are marked dirty, and {@link #drainDirty(long)} hands them over to be
+ * persisted. The popularity score of a publication is its weighted sum of interactions divided by its
+ * age in hours, plus an offset, raised to the power of the gravity.
+ * <p>
+ * Until {@link #loadAll(List)} is first called the accumulators are not loaded and record nothing.
+ * <p>
+ * Reloading the accumulators from an exact recompute loses nothing recorded while the recompute runs:
+ * {@link #beginCapture()} starts logging every recorded interaction, and {@link #loadAll(List)} replays
+ * the log onto the reloaded sums. Until then, {@link #drainDirty(long)} hands nothing over, so stale
+ * sums never overwrite the recomputed rows.
+ * <p>
+ * Instances are thread-safe. Recording shares a read lock with other recorders and otherwise only
+ * locks the accumulator of the publication concerned; reloading takes the write lock, so no interaction
+ * is recorded into the replaced accumulators.
+ */
+public final class PopularityAccumulators {
+
+  private static final Interaction[] TYPES = Interaction.values();
+  private static final long MILLIS_PER_HOUR = 3_600_000L;
+
+  /** The decay time constant of each interaction type, in milliseconds, indexed by ordinal. */
+  private final double[] decayMillis = new double[TYPES.length];
+  private final double gravity;
+  private final int ageOffsetHours;
+
+  private volatile Map<Integer, Accumulator> accumulators;
+  private final Set<Integer> dirty = ConcurrentHashMap.newKeySet();
+  /** The interactions recorded since {@link #beginCapture()}, or {@code null} when not capturing. */
+  private volatile Queue<Recorded> captured;
+  private final ReadWriteLock reloadLock = new ReentrantReadWriteLock();
+
+  /**
+   * @param decayHours the decay time constant of each interaction type, in hours
+   * @param gravity the exponent applied to the publication's age
+   * @param ageOffsetHours the offset added to the publication's age, in hours
+   */
+  public PopularityAccumulators(Map<Interaction, Integer> decayHours, double gravity, int ageOffsetHours) {
+    for (Interaction type : TYPES) {
+      decayMillis[type.ordinal()] = decayHours.get(type) * (double) MILLIS_PER_HOUR;
+    }
+    this.gravity = gravity;
+    this.ageOffsetHours = ageOffsetHours;
+  }
+
+  /**
+   * @return {@code true} once the accumulators have been loaded
+   */
+  public boolean isLoaded() {
+    return accumulators != null;
+  }
+
+  /**
+   * @param pubId the publication id
+   * @return {@code true} if the publication's sums are held in memory
+   */
+  public boolean tracks(int pubId) {
+    Map<Integer, Accumulator> current = accumulators;
+    return current != null && current.containsKey(pubId);
+  }
+
+  /**
+   * Replaces every accumulator with the given ones and clears the dirty set. If a capture is in
+   * progress, the interactions recorded since it began are replayed onto the new accumulators and
+   * marked dirty, and the capture ends.
+   *
+   * @param entries the published publications with their sums, as of {@code asOf} in each entry
+   */
+  public synchronized void loadAll(List<Entry> entries) {
+    Map<Integer, Accumulator> loaded = new ConcurrentHashMap<>(entries.size() * 4 / 3 + 1);
+    for (Entry entry : entries) {
+      loaded.put(entry.pubId(), new Accumulator(entry.submittedAt(), entry.sums().clone(), entry.asOf()));
+    }
+
+    reloadLock.writeLock().lock();
+    try {
+      dirty.clear();
+      Queue<Recorded> log = captured;
+      if (log != null) {
+        for (Recorded recorded : log) {
+          Accumulator accumulator = loaded.get(recorded.pubId());
+          if (accumulator == null) continue;
+          accumulator.add(recorded.type().ordinal(), recorded.at());
+          dirty.add(recorded.pubId());
+        }
+        captured = null;
+      }
+      accumulators = loaded;
+    } finally {
+      reloadLock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Starts logging every recorded interaction until the next {@link #loadAll(List)} or
+   * {@link #endCapture()}, and holds back dirty accumulators meanwhile. Call it before starting the
+   * recompute whose result is passed to the next {@link #loadAll(List)}.
+   */
+  public void beginCapture() {
+    reloadLock.writeLock().lock();
+    try {
+      captured = new ConcurrentLinkedQueue<>();
+    } finally {
+      reloadLock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Stops a capture that was not consumed by {@link #loadAll(List)}, e.g. because the recompute failed.
+   * The interactions it logged are already in the current accumulators and stay dirty.
+   */
+  public void endCapture() {
+    reloadLock.writeLock().lock();
+    try {
+      captured = null;
+    } finally {
+      reloadLock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Starts tracking a newly published publication with empty sums. Does nothing if the publication is
+   * already tracked or the accumulators are not loaded.
+   *
+   * @param pubId the publication id
+   * @param submittedAt the time the publication was submitted, in epoch milliseconds
+   * @param now the current time, in epoch milliseconds
+   */
+  public void register(int pubId, long submittedAt, long now) {
+    Map<Integer, Accumulator> current = accumulators;
+    if (current != null) {
+      current.putIfAbsent(pubId, new Accumulator(submittedAt, new double[TYPES.length], now));
+    }
+  }
+
+  /**
+   * Rescales a publication's sums to the current time and adds one interaction.
+   *
+   * @param pubId the publication id
+   * @param type the interaction type
+   * @param now the current time, in epoch milliseconds
+   * @return the publication's new popularity score, or {@code NaN} if the publication is not tracked
+   */
+  public double record(int pubId, Interaction type, long now) {
+    reloadLock.readLock().lock();
+    try {
+      Map<Integer, Accumulator> current = accumulators;
+      Accumulator accumulator = current == null ? null : current.get(pubId);
+      if (accumulator == null) return Double.NaN;
+
+      double score = accumulator.add(type.ordinal(), now);
+      dirty.add(pubId);
+      Queue<Recorded> log = captured;
+      if (log != null) log.add(new Recorded(pubId, type, now));
+      return score;
+    } finally {
+      reloadLock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Returns the accumulators changed since the last call, rescaled to the current time, and clears
+   * their dirty mark. Returns nothing while a capture is in progress.
+   *
+   * @param now the current time, in epoch milliseconds
+   * @return the changed accumulators
+   */
+  public synchronized List<Entry> drainDirty(long now) {
+    Map<Integer, Accumulator> current = accumulators;
+    List<Entry> drained = new ArrayList<>();
+    if (current == null || captured != null) return drained;
+
+    for (Integer pubId : dirty) {
+      dirty.remove(pubId);
+      Accumulator accumulator = current.get(pubId);
+      if (accumulator != null) drained.add(accumulator.snapshot(pubId, now));
+    }
+    return drained;
+  }
+
+  /**
+   * Returns every accumulator rescaled to the current time, and clears the dirty set.
+   *
+   * @param now the current time, in epoch milliseconds
+   * @return all accumulators
+   */
+  public synchronized List<Entry> drainAll(long now) {
+    Map<Integer, Accumulator> current = accumulators;
+    List<Entry> drained = new ArrayList<>();
+    if (current == null) return drained;
+
+    dirty.clear();
+    current.forEach((pubId, accumulator) -> drained.add(accumulator.snapshot(pubId, now)));
+    return drained;
+  }
+
+  /**
+   * Computes the popularity score of a publication from its sums.
+   *
+   * @param entry the publication's sums
+   * @param now the current time, in epoch milliseconds
+   * @return the popularity score
+   */
+  public double score(Entry entry, long now) {
+    return score(entry.submittedAt(), entry.sums(), now);
+  }
+
+  private double score(long submittedAt, double[] sums, long now) {
+    double weighted = 0;
+    for (Interaction type : TYPES) {
+      weighted += sums[type.ordinal()] * type.getAffinityWeight();
+    }
+    long ageHours = Math.max(1, Math.floorDiv(now - submittedAt, MILLIS_PER_HOUR));
+    return weighted / Math.pow(ageHours + ageOffsetHours, gravity);
+  }
+
+  /**
+   * The decayed sums of one publication.
+   *
+   * @param pubId the publication id
+   * @param submittedAt the time the publication was submitted, in epoch milliseconds
+   * @param sums the decayed sum of each interaction type, indexed by {@link Interaction} ordinal
+   * @param asOf the time the sums were decayed to, in epoch milliseconds
+   */
+  public record Entry(int pubId, long submittedAt, double[] sums, long asOf) {
+
+    /**
+     * @param type the interaction type
+     * @return the decayed sum of that type
+     */
+    public double sum(Interaction type) {
+      return sums[type.ordinal()];
+    }
+  }
+
+  private record Recorded(int pubId, Interaction type, long at) {}
+
+  private final class Accumulator {
+    private final long submittedAt;
+    private final double[] sums;
+    private long decayedAt;
+
+    Accumulator(long submittedAt, double[] sums, long decayedAt) {
+      this.submittedAt = submittedAt;
+      this.sums = sums;
+      this.decayedAt = decayedAt;
+    }
+
+    synchronized double add(int type, long now) {
+      decayTo(now);
+      sums[type] += 1;
+      return score(submittedAt, sums, now);
+    }
+
+    synchronized Entry snapshot(int pubId, long now) {
+      decayTo(now);
+      return new Entry(pubId, submittedAt, sums.clone(), decayedAt);
+    }
+
+    /** Rescales the sums to {@code now}; never moves backwards, so late callers add at the newest time. */
+    private void decayTo(long now) {
+      if (now <= decayedAt) return;
+      for (int t = 0; t < sums.length; t++) {
+        sums[t] *= Math.exp(-(now - decayedAt) / decayMillis[t]);
+      }
+      decayedAt = now;
+    }
+  }
+}
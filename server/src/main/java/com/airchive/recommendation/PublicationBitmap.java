@@ -0,0 +1,264 @@
+package com.airchive.recommendation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntPredicate;
+
+/**
+ * An immutable, compressed set of publication ids in the layout of a Roaring bitmap.
+ * <p>
+ * Ids are split by their high 16 bits into chunks. Each chunk stores its low 16 bits in a container:
+ * a sorted {@code char[]} while the chunk holds at most {@value #ARRAY_MAX} ids, or a 65536-bit
+ * {@code long[]} bitmap once it is denser. Small sets stay small, dense sets cost one bit per id, and
+ * intersections and unions work container by container, mostly with word-wide bit operations.
+ */
+public final class PublicationBitmap {
+
+  /** The largest cardinality stored as a sorted array; denser chunks use a bitmap. */
+  private static final int ARRAY_MAX = 4096;
+  private static final int BITMAP_WORDS = 1024;
+
+  private static final PublicationBitmap EMPTY = new PublicationBitmap(new char[0], new Container[0]);
+
+  private final char[] keys;
+  private final Container[] containers;
+
+  private PublicationBitmap(char[] keys, Container[] containers) {
+    this.keys = keys;
+    this.containers = containers;
+  }
+
+  /**
+   * @return the empty bitmap
+   */
+  public static PublicationBitmap empty() {
+    return EMPTY;
+  }
+
+  /**
+   * Creates a bitmap from publication ids in any order. Duplicates are ignored.
+   *
+   * @param ids the non-negative publication ids
+   * @return the new bitmap
+   */
+  public static PublicationBitmap of(int[] ids) {
+    int[] sorted = Arrays.stream(ids).sorted().distinct().toArray();
+    List<Character> keys = new ArrayList<>();
+    List<Container> containers = new ArrayList<>();
+
+    for (int start = 0; start < sorted.length; ) {
+      int key = sorted[start] >>> 16;
+      int end = start;
+      while (end < sorted.length && sorted[end] >>> 16 == key) end++;
+
+      char[] values = new char[end - start];
+      for (int i = start; i < end; i++) values[i - start] = (char) sorted[i];
+      keys.add((char) key);
+      containers.add(Container.fromSorted(values, values.length));
+      start = end;
+    }
+    return build(keys, containers);
+  }
+
+  /**
+   * @return the number of ids in the bitmap
+   */
+  public int cardinality() {
+    int total = 0;
+    for (Container c : containers) total += c.cardinality;
+    return total;
+  }
+
+  /**
+   * Intersects this bitmap with another one.
+   *
+   * @param other the other bitmap
+   * @return the ids present in both bitmaps
+   */
+  public PublicationBitmap and(PublicationBitmap other) {
+    List<Character> keys = new ArrayList<>();
+    List<Container> containers = new ArrayList<>();
+    int i = 0, j = 0;
+    while (i < this.keys.length && j < other.keys.length) {
+      if (this.keys[i] < other.keys[j]) {
+        i++;
+      } else if (this.keys[i] > other.keys[j]) {
+        j++;
+      } else {
+        Container c = this.containers[i].and(other.containers[j]);
+        if (c.cardinality > 0) {
+          keys.add(this.keys[i]);
+          containers.add(c);
+        }
+        i++;
+        j++;
+      }
+    }
+    return build(keys, containers);
+  }
+
+  /**
+   * Unites this bitmap with another one.
+   *
+   * @param other the other bitmap
+   * @return the ids present in either bitmap
+   */
+  public PublicationBitmap or(PublicationBitmap other) {
+    List<Character> keys = new ArrayList<>();
+    List<Container> containers = new ArrayList<>();
+    int i = 0, j = 0;
+    while (i < this.keys.length || j < other.keys.length) {
+      if (j >= other.keys.length || (i < this.keys.length && this.keys[i] < other.keys[j])) {
+        keys.add(this.keys[i]);
+        containers.add(this.containers[i++]);
+      } else if (i >= this.keys.length || this.keys[i] > other.keys[j]) {
+        keys.add(other.keys[j]);
+        containers.add(other.containers[j++]);
+      } else {
+        keys.add(this.keys[i]);
+        containers.add(this.containers[i++].or(other.containers[j++]));
+      }
+    }
+    return build(keys, containers);
+  }
+
+  /**
+   * Visits the ids in descending order until the action returns {@code false}.
+   *
+   * @param action the callback receiving each id; returns {@code false} to stop
+   */
+  public void forEachDescending(IntPredicate action) {
+    for (int k = keys.length - 1; k >= 0; k--) {
+      int high = keys[k] << 16;
+      if (!containers[k].forEachDescending(low -> action.test(high | low))) return;
+    }
+  }
+
+  private static PublicationBitmap build(List<Character> keys, List<Container> containers) {
+    if (keys.isEmpty()) return EMPTY;
+    char[] keyArray = new char[keys.size()];
+    for (int i = 0; i < keyArray.length; i++) keyArray[i] = keys.get(i);
+    return new PublicationBitmap(keyArray, containers.toArray(new Container[0]));
+  }
+
+  /**
+   * The low 16 bits of the ids in one chunk. Exactly one of {@code values} and {@code words} is set.
+   */
+  private static final class Container {
+    private final char[] values;
+    private final long[] words;
+    private final int cardinality;
+
+    private Container(char[] values, long[] words, int cardinality) {
+      this.values = values;
+      this.words = words;
+      this.cardinality = cardinality;
+    }
+
+    static Container fromSorted(char[] values, int count) {
+      if (count <= ARRAY_MAX) {
+        return new Container(Arrays.copyOf(values, count), null, count);
+      }
+      long[] words = new long[BITMAP_WORDS];
+      for (int i = 0; i < count; i++) words[values[i] >>> 6] |= 1L << values[i];
+      return new Container(null, words, count);
+    }
+
+    static Container fromWords(long[] words) {
+      int count = 0;
+      for (long w : words) count += Long.bitCount(w);
+      if (count > ARRAY_MAX) return new Container(null, words, count);
+
+      char[] values = new char[count];
+      int n = 0;
+      for (int w = 0; w < words.length; w++) {
+        for (long bits = words[w]; bits != 0; bits &= bits - 1) {
+          values[n++] = (char) (w * 64 + Long.numberOfTrailingZeros(bits));
+        }
+      }
+      return new Container(values, null, count);
+    }
+
+    boolean contains(char value) {
+      return words != null
+          ? (words[value >>> 6] & (1L << value)) != 0
+          : Arrays.binarySearch(values, 0, cardinality, value) >= 0;
+    }
+
+    Container and(Container other) {
+      if (words != null && other.words != null) {
+        long[] result = new long[BITMAP_WORDS];
+        for (int w = 0; w < BITMAP_WORDS; w++) result[w] = words[w] & other.words[w];
+        return fromWords(result);
+      }
+
+      Container small = words == null ? this : other;
+      Container large = small == this ? other : this;
+      char[] result = new char[small.cardinality];
+      int n = 0;
+      if (large.words != null) {
+        for (int i = 0; i < small.cardinality; i++) {
+          if (large.contains(small.values[i])) result[n++] = small.values[i];
+        }
+      } else {
+        int i = 0, j = 0;
+        while (i < small.cardinality && j < large.cardinality) {
+          if (small.values[i] < large.values[j]) i++;
+          else if (small.values[i] > large.values[j]) j++;
+          else {
+            result[n++] = small.values[i];
+            i++;
+            j++;
+          }
+        }
+      }
+      return fromSorted(result, n);
+    }
+
+    Container or(Container other) {
+      if (words == null && other.words == null && cardinality + other.cardinality <= ARRAY_MAX) {
+        char[] result = new char[cardinality + other.cardinality];
+        int i = 0, j = 0, n = 0;
+        while (i < cardinality || j < other.cardinality) {
+          if (j >= other.cardinality || (i < cardinality && values[i] < other.values[j])) {
+            result[n++] = values[i++];
+          } else if (i >= cardinality || values[i] > other.values[j]) {
+            result[n++] = other.values[j++];
+          } else {
+            result[n++] = values[i++];
+            j++;
+          }
+        }
+        return fromSorted(result, n);
+      }
+
+      long[] result = new long[BITMAP_WORDS];
+      for (Container c : new Container[] {this, other}) {
+        if (c.words != null) {
+          for (int w = 0; w < BITMAP_WORDS; w++) result[w] |= c.words[w];
+        } else {
+          for (int i = 0; i < c.cardinality; i++) result[c.values[i] >>> 6] |= 1L << c.values[i];
+        }
+      }
+      return fromWords(result);
+    }
+
+    boolean forEachDescending(IntPredicate action) {
+      if (words == null) {
+        for (int i = cardinality - 1; i >= 0; i--) {
+          if (!action.test(values[i])) return false;
+        }
+        return true;
+      }
+      for (int w = BITMAP_WORDS - 1; w >= 0; w--) {
+        for (long bits = words[w]; bits != 0; ) {
+          int bit = 63 - Long.numberOfLeadingZeros(bits);
+          if (!action.test(w * 64 + bit)) return false;
+          bits &= ~(1L << bit);
+        }
+      }
+      return true;
+    }
+  }
+}
@@ -0,0 +1,122 @@
+package com.airchive.recommendation;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-memory view and like counts of every publication, so detail pages and publication cards read
+ * them in constant time instead of counting {@code publication_view} and {@code publication_like} rows.
+ * <p>
+ * Each publication has a pair of {@link LongAdder} cells. Concurrent increments of a popular
+ * publication land on different stripes of its cells instead of contending on a single value, and a
+ * read sums the stripes, so neither costs more as the publication's history grows.
+ * <p>
+ * The counts are seeded once from {@code publication_stats} by {@link #loadAll(Map)} and kept current
+ * by the same writers that maintain that table. Until the counters are loaded, they record nothing and
+ * readers must query the table.
+ * <p>
+ * This class is thread-safe.
+ */
+public final class PublicationCounters {
+
+  private volatile Map<Integer, Cells> counters;
+
+  /**
+   * @return {@code true} once the counters have been loaded
+   */
+  public boolean isLoaded() {
+    return counters != null;
+  }
+
+  /**
+   * Replaces every counter with the given counts.
+   *
+   * @param counts the view and like counts by publication id
+   */
+  public synchronized void loadAll(Map<Integer, Counts> counts) {
+    Map<Integer, Cells> loaded = new ConcurrentHashMap<>(counts.size() * 4 / 3 + 1);
+    counts.forEach((pubId, count) -> {
+      Cells cells = new Cells();
+      cells.views.add(count.views());
+      cells.likes.add(count.likes());
+      loaded.put(pubId, cells);
+    });
+    counters = loaded;
+  }
+
+  /**
+   * Adds to a publication's view count. Does nothing if the counters are not loaded.
+   *
+   * @param pubId the publication id
+   * @param delta the number of views added
+   */
+  public void addViews(int pubId, long delta) {
+    Cells cells = cells(pubId);
+    if (cells == null) return;
+    cells.views.add(delta);
+  }
+
+  /**
+   * Adds to a publication's like count, which may be negative when likes are removed. Does nothing if
+   * the counters are not loaded.
+   *
+   * @param pubId the publication id
+   * @param delta the number of likes added
+   */
+  public void addLikes(int pubId, long delta) {
+    Cells cells = cells(pubId);
+    if (cells == null) return;
+    cells.likes.add(delta);
+  }
+
+  /**
+   * @param pubId the publication id
+   * @return the publication's counts, or {@code null} if the counters are not loaded
+   */
+  public Counts get(int pubId) {
+    Map<Integer, Cells> current = counters;
+    if (current == null) return null;
+    Cells cells = current.get(pubId);
+    return cells == null ? new Counts(0, 0) : cells.counts();
+  }
+
+  /**
+   * @param pubIds the publication ids
+   * @return the counts of each publication, or {@code null} if the counters are not loaded
+   */
+  public Map<Integer, Counts> getAll(List<Integer> pubIds) {
+    Map<Integer, Cells> current = counters;
+    if (current == null) return null;
+    Map<Integer, Counts> counts = new HashMap<>(pubIds.size() * 4 / 3 + 1);
+    for (Integer pubId : pubIds) {
+      Cells cells = current.get(pubId);
+      counts.put(pubId, cells == null ? new Counts(0, 0) : cells.counts());
+    }
+    return counts;
+  }
+
+  private Cells cells(int pubId) {
+    Map<Integer, Cells> current = counters;
+    return current == null ? null : current.computeIfAbsent(pubId, id -> new Cells());
+  }
+
+  /**
+   * The view and like counts of a publication.
+   *
+   * @param views the number of views
+   * @param likes the number of likes
+   */
+  public record Counts(long views, long likes) {}
+
+  private static final class Cells {
+    private final LongAdder views = new LongAdder();
+    private final LongAdder likes = new LongAdder();
+
+    Counts counts() {
+      return new Counts(views.sum(), Math.max(0, likes.sum()));
+    }
+  }
+}
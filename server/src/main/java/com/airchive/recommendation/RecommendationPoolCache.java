@@ -0,0 +1,311 @@
+package com.airchive.recommendation;
+
+import com.airchive.entity.Publication;
+import com.airchive.exception.ValidationException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A bounded, expiring cache of ranked recommendation pools, one per account and kind filter.
+ * <p>
+ * Building a personalized pool costs several queries, while paging through it is free. The cache lets
+ * every page of a user's infinite-scroll feed be sliced from the same pool instead of recomputing a
+ * larger pool for each page. A pool is dropped when:
+ * <ul>
+ *   <li>it is older than the configured time-to-live,</li>
+ *   <li>the account's affinity has shifted by more than the configured threshold since it was built
+ *   (see {@link #recordAffinityChange(int, double)}), or</li>
+ *   <li>the cache is full and the pool is the least recently used one.</li>
+ * </ul>
+ * A dropped or replaced pool is no longer served to new feeds, but is retired rather than forgotten:
+ * for another time-to-live it stays reachable by its version, so a client already paging through it
+ * keeps getting the rest of the same ranking instead of an offset into a different one.
+ * <p>
+ * The cache also encodes and decodes the opaque paging cursors handed to clients. A cursor carries the
+ * version of the pool it was cut from and the position in that pool, but clients must treat it as an
+ * opaque string.
+ * <p>
+ * This class is thread-safe.
+ */
+public class RecommendationPoolCache {
+
+  private static final String CURSOR_PREFIX = "p2:";
+  private static final String OFFSET_CURSOR_PREFIX = "p1:";
+
+  private final int maxEntries;
+  private final long ttlMillis;
+  private final double invalidationThreshold;
+  private final Map<Key, Pool> pools;
+  private final Map<Long, Retired> retired;
+  private final Map<Integer, Double> affinityDrift;
+  // Starts at a random version so that cursors issued before a restart do not match new pools
+  private long nextVersion = ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE / 2);
+
+  /**
+   * @param maxEntries the maximum number of pools kept in memory
+   * @param ttlMillis how long a pool may be served after it was built, in milliseconds
+   * @param invalidationThreshold the total absolute affinity weight an account may accumulate before
+   * its pools are dropped
+   */
+  public RecommendationPoolCache(int maxEntries, long ttlMillis, double invalidationThreshold) {
+    this.maxEntries = maxEntries;
+    this.ttlMillis = ttlMillis;
+    this.invalidationThreshold = invalidationThreshold;
+    this.pools = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Key, Pool> eldest) {
+        return size() > RecommendationPoolCache.this.maxEntries;
+      }
+    };
+    this.retired = new LinkedHashMap<>() {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Long, Retired> eldest) {
+        return size() > RecommendationPoolCache.this.maxEntries;
+      }
+    };
+    this.affinityDrift = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Integer, Double> eldest) {
+        return size() > RecommendationPoolCache.this.maxEntries;
+      }
+    };
+  }
+
+  /**
+   * Returns the cached pool for an account and kind filter, if one exists, has not expired and holds at
+   * least {@code minSize} ids or is known to be exhaustive.
+   *
+   * @param accountId the account id
+   * @param kinds the kind filter, or {@code null}/empty for all kinds
+   * @param minSize the number of ranked ids the caller needs
+   * @return the pool, or {@code null} on a miss
+   */
+  public synchronized Pool get(int accountId, List<Publication.Kind> kinds, int minSize) {
+    Key key = Key.of(accountId, kinds);
+    Pool pool = pools.get(key);
+    if (pool == null) return null;
+
+    long now = System.currentTimeMillis();
+    if (now - pool.createdAt > ttlMillis) {
+      retire(key, pools.remove(key), now);
+      return null;
+    }
+    return pool.covers(minSize) ? pool : null;
+  }
+
+  /**
+   * Returns the pool a cursor was cut from, whether it is still the current pool or was retired less than
+   * a time-to-live ago.
+   *
+   * @param accountId the account id
+   * @param kinds the kind filter, or {@code null}/empty for all kinds
+   * @param version the pool version carried by the cursor
+   * @return the pool, or {@code null} if it is no longer kept
+   */
+  public synchronized Pool find(int accountId, List<Publication.Kind> kinds, long version) {
+    Key key = Key.of(accountId, kinds);
+    Pool pool = pools.get(key);
+    if (pool != null && pool.version == version) return pool;
+
+    long now = System.currentTimeMillis();
+    purgeRetired(now);
+    Retired entry = retired.get(version);
+    return entry != null && entry.key.equals(key) ? entry.pool : null;
+  }
+
+  /**
+   * Stores a freshly built pool, retiring the one it replaces.
+   *
+   * @param accountId the account id
+   * @param kinds the kind filter, or {@code null}/empty for all kinds
+   * @param ids the ranked publication ids
+   * @param exhaustive whether the pool contains every candidate, i.e. it was built with more room than it filled
+   * @return the stored pool
+   */
+  public synchronized Pool put(int accountId, List<Publication.Kind> kinds, int[] ids, boolean exhaustive) {
+    Key key = Key.of(accountId, kinds);
+    long now = System.currentTimeMillis();
+    Pool pool = new Pool(nextVersion++, ids, exhaustive, now);
+    retire(key, pools.put(key, pool), now);
+    affinityDrift.remove(accountId);
+    return pool;
+  }
+
+  /**
+   * Stores a pool that must not be served to new feeds, such as one missing a source that did not finish
+   * in time, but that the cursors cut from it can still page through.
+   *
+   * @param accountId the account id
+   * @param kinds the kind filter, or {@code null}/empty for all kinds
+   * @param ids the ranked publication ids
+   * @return the stored pool
+   */
+  public synchronized Pool retain(int accountId, List<Publication.Kind> kinds, int[] ids) {
+    long now = System.currentTimeMillis();
+    Pool pool = new Pool(nextVersion++, ids, false, now);
+    retire(Key.of(accountId, kinds), pool, now);
+    return pool;
+  }
+
+  /**
+   * Records an affinity change for an account. Once the accumulated absolute change exceeds the
+   * invalidation threshold, all of the account's pools are dropped so the next page is ranked against
+   * the updated profile.
+   *
+   * @param accountId the account id
+   * @param weight the affinity weight that was applied (may be negative)
+   */
+  public synchronized void recordAffinityChange(int accountId, double weight) {
+    double drift = affinityDrift.merge(accountId, Math.abs(weight), Double::sum);
+    if (drift >= invalidationThreshold) {
+      invalidate(accountId);
+    }
+  }
+
+  /**
+   * Drops every pool of an account.
+   *
+   * @param accountId the account id
+   */
+  public synchronized void invalidate(int accountId) {
+    long now = System.currentTimeMillis();
+    for (Iterator<Map.Entry<Key, Pool>> it = pools.entrySet().iterator(); it.hasNext(); ) {
+      Map.Entry<Key, Pool> entry = it.next();
+      if (entry.getKey().accountId() == accountId) {
+        retire(entry.getKey(), entry.getValue(), now);
+        it.remove();
+      }
+    }
+    affinityDrift.remove(accountId);
+  }
+
+  /**
+   * Continues a pool a client was paging through with a freshly built ranking: the ids already served from
+   * the old pool keep their positions, followed by the fresh ids that were not among them. A cursor cut
+   * from the old pool therefore stays valid against the result.
+   *
+   * @param served the pool the client was paging through, or {@code null} if there is none
+   * @param position the number of ids already served from it
+   * @param fresh the freshly built ranking
+   * @return the continued ranking
+   */
+  public static int[] continueFrom(Pool served, int position, int[] fresh) {
+    if (served == null || position == 0) return fresh;
+    int prefix = Math.min(position, served.ids.length);
+    Set<Integer> seen = new HashSet<>();
+    int[] ids = Arrays.copyOf(served.ids, prefix + fresh.length);
+    for (int i = 0; i < prefix; i++) seen.add(ids[i]);
+
+    int size = prefix;
+    for (int pubId : fresh) {
+      if (!seen.contains(pubId)) ids[size++] = pubId;
+    }
+    return Arrays.copyOf(ids, size);
+  }
+
+  /**
+   * Encodes a pool version and position into an opaque cursor.
+   *
+   * @param cursor the cursor to encode
+   * @return the cursor string
+   */
+  public static String encodeCursor(Cursor cursor) {
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(
+        (CURSOR_PREFIX + cursor.poolVersion() + ":" + cursor.position()).getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Decodes a cursor produced by {@link #encodeCursor(Cursor)}. Cursors issued before pools were versioned
+   * decode to their position in no particular pool.
+   *
+   * @param cursor the cursor string, may be {@code null}
+   * @return the decoded cursor, or {@link Cursor#START} if the cursor is missing
+   * @throws ValidationException if the cursor is malformed
+   */
+  public static Cursor decodeCursor(String cursor) {
+    if (cursor == null || cursor.isBlank()) return Cursor.START;
+    try {
+      String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+      if (decoded.startsWith(CURSOR_PREFIX)) {
+        String[] parts = decoded.substring(CURSOR_PREFIX.length()).split(":", -1);
+        if (parts.length == 2) {
+          long version = Long.parseLong(parts[0]);
+          int position = Integer.parseInt(parts[1]);
+          if (version >= 0 && position >= 0) return new Cursor(version, position);
+        }
+      } else if (decoded.startsWith(OFFSET_CURSOR_PREFIX)) {
+        int position = Integer.parseInt(decoded.substring(OFFSET_CURSOR_PREFIX.length()));
+        if (position >= 0) return new Cursor(0, position);
+      }
+    } catch (IllegalArgumentException e) {
+      // Not Base64 or not a number; rejected below
+    }
+    throw new ValidationException("Invalid cursor.");
+  }
+
+  private void retire(Key key, Pool pool, long now) {
+    if (pool == null) return;
+    purgeRetired(now);
+    retired.put(pool.version, new Retired(key, pool, now));
+  }
+
+  private void purgeRetired(long now) {
+    Iterator<Retired> it = retired.values().iterator();
+    while (it.hasNext() && now - it.next().retiredAt > ttlMillis) {
+      it.remove();
+    }
+  }
+
+  /**
+   * A position in a versioned pool.
+   *
+   * @param poolVersion the version of the pool the position refers to, or {@code 0} for none
+   * @param position the index of the next id to serve
+   */
+  public record Cursor(long poolVersion, int position) {
+    public static final Cursor START = new Cursor(0, 0);
+  }
+
+  /**
+   * A ranked pool as it was built.
+   *
+   * @param version the version cursors cut from this pool carry, unique within the cache
+   * @param ids the ranked publication ids
+   * @param exhaustive whether the pool contains every candidate
+   * @param createdAt when the pool was built, in epoch milliseconds
+   */
+  public record Pool(long version, int[] ids, boolean exhaustive, long createdAt) {
+    /** Returns whether the pool can serve the first {@code size} ids of the ranking. */
+    public boolean covers(int size) {
+      return ids.length >= size || exhaustive;
+    }
+  }
+
+  /**
+   * A page of ids together with the cursor of the following page.
+   *
+   * @param ids the ids of the page
+   * @param next where the following page starts
+   */
+  public record Slice(List<Integer> ids, Cursor next) {}
+
+  private record Retired(Key key, Pool pool, long retiredAt) {}
+
+  private record Key(int accountId, long kindMask) {
+    static Key of(int accountId, List<Publication.Kind> kinds) {
+      long mask = 0;
+      if (kinds != null) {
+        for (Publication.Kind kind : kinds) mask |= 1L << kind.ordinal();
+      }
+      return new Key(accountId, mask);
+    }
+  }
+}
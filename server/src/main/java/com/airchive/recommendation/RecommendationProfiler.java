@@ -0,0 +1,250 @@
+package com.airchive.recommendation;
+
+import com.airchive.db.DbConnectionManager;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToIntFunction;
+
+/**
+ * Measures the stages of the recommendation pipeline: the pool cache lookup, each candidate source,
+ * loading the publications and hydrating them into feed items.
+ * <p>
+ * Every request gets a {@link Trace}. Each stage timed through it records its wall time, the number of
+ * rows it returned, the number of rows later discarded while de-duplicating, and the number of database
+ * connections it borrowed. The trace is returned to administrators in explain mode, while the wall
+ * times of all requests are aggregated into one latency histogram per stage, so the stage behind tail
+ * latency can be identified in production.
+ * <p>
+ * Histograms use power-of-two microsecond buckets, so reported percentiles are upper bounds accurate to
+ * a factor of two. Instances are thread-safe.
+ */
+public class RecommendationProfiler {
+
+  /** The number of histogram buckets; the last one holds everything above about 67 seconds. */
+  private static final int BUCKETS = 28;
+
+  private final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+
+  /**
+   * @return a new, empty trace for one request
+   */
+  public Trace newTrace() {
+    return new Trace();
+  }
+
+  /**
+   * Summarizes the latency histogram of every stage recorded so far.
+   *
+   * @return one summary per stage, sorted by stage name
+   */
+  public List<StageSummary> summaries() {
+    List<StageSummary> summaries = new ArrayList<>();
+    histograms.forEach((stage, histogram) -> summaries.add(histogram.summarize(stage)));
+    summaries.sort((a, b) -> a.stage().compareTo(b.stage()));
+    return summaries;
+  }
+
+  private void record(String stage, long nanos) {
+    histograms.computeIfAbsent(stage, s -> new Histogram()).record(nanos);
+  }
+
+  /**
+   * The measured stages of one request. Stages may be timed concurrently from several threads.
+   */
+  public final class Trace {
+    private final List<StageMeasurement> stages = new ArrayList<>();
+
+    private Trace() {}
+
+    /**
+     * Runs a stage on the current thread and records its measurements. The stage is recorded even if it
+     * fails.
+     *
+     * @param stage the stage name
+     * @param body the stage, returning the rows it produced
+     * @return the rows returned by {@code body}
+     * @throws Exception if {@code body} fails
+     */
+    public <T> List<T> time(String stage, Callable<List<T>> body) throws Exception {
+      return time(stage, body, List::size);
+    }
+
+    /**
+     * Runs a stage on the current thread and records its measurements. The stage is recorded even if it
+     * fails.
+     *
+     * @param stage the stage name
+     * @param body the stage
+     * @param rowCount counts the rows of a non-null result
+     * @return the result of {@code body}
+     * @throws Exception if {@code body} fails
+     */
+    public <T> T time(String stage, Callable<T> body, ToIntFunction<T> rowCount) throws Exception {
+      StageMeasurement measurement = new StageMeasurement(stage);
+      synchronized (stages) {
+        stages.add(measurement);
+      }
+
+      int borrowedBefore = DbConnectionManager.borrowedByCurrentThread();
+      long start = System.nanoTime();
+      boolean completed = false;
+      T result = null;
+      try {
+        result = body.call();
+        completed = true;
+        return result;
+      } finally {
+        long nanos = System.nanoTime() - start;
+        synchronized (stages) {
+          measurement.nanos = nanos;
+          measurement.rows = completed && result != null ? rowCount.applyAsInt(result) : 0;
+          measurement.connections = DbConnectionManager.borrowedByCurrentThread() - borrowedBefore;
+          measurement.finished = true;
+        }
+        record(stage, nanos);
+      }
+    }
+
+    /**
+     * Like {@link #time(String, Callable)}, for stages that throw no checked exceptions.
+     */
+    public <T> List<T> timeUnchecked(String stage, Callable<List<T>> body) {
+      return timeUnchecked(stage, body, List::size);
+    }
+
+    /**
+     * Like {@link #time(String, Callable, ToIntFunction)}, for stages that throw no checked exceptions.
+     */
+    public <T> T timeUnchecked(String stage, Callable<T> body, ToIntFunction<T> rowCount) {
+      try {
+        return time(stage, body, rowCount);
+      } catch (RuntimeException e) {
+        throw e;
+      } catch (Exception e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    /**
+     * Adds rows of a recorded stage that were discarded, e.g. as duplicates of an earlier stage.
+     *
+     * @param stage the stage name
+     * @param count the number of discarded rows
+     */
+    public void discarded(String stage, int count) {
+      synchronized (stages) {
+        for (StageMeasurement m : stages) {
+          if (m.name.equals(stage)) {
+            m.discarded += count;
+            return;
+          }
+        }
+      }
+    }
+
+    /**
+     * Returns the stages recorded so far, in start order. Stages that have not finished yet, such as
+     * candidate sources that missed their deadline, are reported as unfinished.
+     *
+     * @return the stage reports
+     */
+    public List<StageReport> stages() {
+      synchronized (stages) {
+        return stages.stream()
+            .map(m -> new StageReport(m.name, m.nanos / 1_000_000.0, m.rows, m.discarded, m.connections, m.finished))
+            .toList();
+      }
+    }
+  }
+
+  private static final class StageMeasurement {
+    private final String name;
+    private long nanos;
+    private int rows;
+    private int discarded;
+    private int connections;
+    private boolean finished;
+
+    StageMeasurement(String name) {
+      this.name = name;
+    }
+  }
+
+  /**
+   * A stage of one request.
+   *
+   * @param stage the stage name
+   * @param wallMillis the wall time of the stage, in milliseconds
+   * @param rows the number of rows the stage returned
+   * @param discarded the number of those rows discarded as duplicates
+   * @param connections the number of database connections the stage borrowed
+   * @param finished {@code false} if the stage was still running when the report was taken
+   */
+  public record StageReport(String stage, double wallMillis, int rows, int discarded, int connections,
+      boolean finished) {}
+
+  /**
+   * The aggregated latency of a stage over all requests.
+   *
+   * @param stage the stage name
+   * @param count the number of recorded runs
+   * @param meanMillis the mean wall time, in milliseconds
+   * @param p50Millis the upper bound of the median wall time, in milliseconds
+   * @param p95Millis the upper bound of the 95th percentile wall time, in milliseconds
+   * @param p99Millis the upper bound of the 99th percentile wall time, in milliseconds
+   * @param maxMillis the maximum wall time, in milliseconds
+   */
+  public record StageSummary(String stage, long count, double meanMillis, double p50Millis, double p95Millis,
+      double p99Millis, double maxMillis) {}
+
+  /**
+   * A lock-free latency histogram with power-of-two microsecond buckets: bucket {@code b} counts
+   * durations below {@code 2^b} microseconds that did not fit in bucket {@code b - 1}.
+   */
+  private static final class Histogram {
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+    void record(long nanos) {
+      long micros = Math.max(0, nanos / 1000);
+      int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+      buckets.incrementAndGet(bucket);
+      count.increment();
+      totalNanos.add(nanos);
+      maxNanos.accumulate(nanos);
+    }
+
+    StageSummary summarize(String stage) {
+      long[] counts = new long[BUCKETS];
+      long total = 0;
+      for (int b = 0; b < BUCKETS; b++) {
+        counts[b] = buckets.get(b);
+        total += counts[b];
+      }
+      double max = maxNanos.get() / 1_000_000.0;
+      double mean = total == 0 ? 0 : totalNanos.sum() / 1_000_000.0 / count.sum();
+      return new StageSummary(stage, total, mean, percentile(counts, total, 0.50, max),
+          percentile(counts, total, 0.95, max), percentile(counts, total, 0.99, max), max);
+    }
+
+    private static double percentile(long[] counts, long total, double quantile, double max) {
+      long rank = (long) Math.ceil(total * quantile);
+      long seen = 0;
+      for (int b = 0; b < BUCKETS; b++) {
+        seen += counts[b];
+        if (seen >= rank && seen > 0) {
+          return Math.min(max, (1L << b) / 1000.0);
+        }
+      }
+      return max;
+    }
+  }
+}
@@ -0,0 +1,591 @@
+package com.airchive.recommendation;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * An in-memory "more like this" index over the text of published publications.
+ * <p>
+ * Each publication is turned into a TF-IDF vector of its title and content: tokens are lower-cased
+ * words, title words count {@value #TITLE_WEIGHT} times, term frequencies are dampened logarithmically,
+ * and only the {@code maxTerms} heaviest terms are kept before normalizing the vector. Terms are
+ * identified by a 64-bit hash of their text, so no vocabulary has to be stored.
+ * <p>
+ * Vectors are indexed with random-hyperplane locality-sensitive hashing: each of {@code tables} hash
+ * tables buckets a vector by the signs of its projections on {@code bits} pseudo-random hyperplanes,
+ * derived from the term hashes rather than stored. Vectors with a small angle between them are likely to
+ * share a bucket in at least one table. A query gathers the publications sharing a bucket with the given
+ * one, up to {@code maxCandidates}, and ranks them by exact cosine similarity, so answering it does not
+ * depend on the size of the catalogue.
+ * <p>
+ * Publications can be added incrementally as they are published; they are weighted with the document
+ * frequencies known at that time, which drift slightly until the next full {@link Builder build}.
+ * A replaced publication keeps counting towards the frequencies of its original terms, as only its
+ * heaviest terms are kept, and its new terms are not counted, so edits drift them further until then.
+ * Instances are thread-safe; queries run concurrently with each other.
+ * <p>
+ * An index can be saved to a snapshot file with {@link #writeSnapshot(Path, long)} and read back with
+ * {@link #readSnapshot(Path, int, int, int, int)}, in the layout of the {@link CandidateIndex} snapshot:
+ * the document frequencies and every weighted vector with its bucket keys, followed by a CRC-32.
+ */
+public final class RelatedPublicationIndex {
+
+  /** How many times a title word counts compared to a content word. */
+  private static final int TITLE_WEIGHT = 3;
+  /** The maximum number of content tokens read per publication. */
+  private static final int MAX_TOKENS = 20_000;
+  private static final int MIN_TOKEN_LENGTH = 3;
+  private static final int MAX_TOKEN_LENGTH = 30;
+  /** The number of term counts kept per publication while a full build collects document frequencies. */
+  private static final int PENDING_TERMS_FACTOR = 8;
+
+  /** The first bytes of a snapshot file, "AIRI". */
+  private static final int SNAPSHOT_MAGIC = 0x41495249;
+  /** The snapshot layout version, bumped whenever the layout or the weighting changes. */
+  private static final int SNAPSHOT_VERSION = 1;
+
+  private static final Set<String> STOP_WORDS = Set.of(
+      "the", "and", "for", "are", "but", "not", "you", "all", "any", "can", "had", "her", "was", "one",
+      "our", "out", "has", "have", "his", "how", "its", "may", "new", "now", "see", "two", "who", "did",
+      "does", "this", "that", "with", "from", "they", "will", "would", "there", "their", "what", "when",
+      "where", "which", "while", "about", "into", "than", "then", "them", "these", "those", "been", "being",
+      "were", "also", "such", "more", "most", "some", "only", "other", "over", "each", "both", "between",
+      "through", "under", "very", "just", "should", "could", "using", "used", "use", "based", "here");
+
+  private final int tables;
+  private final int bits;
+  private final int maxTerms;
+  private final int maxCandidates;
+
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+  private final Map<Long, Integer> documentFrequency = new HashMap<>();
+  private final Map<Integer, Document> documents = new HashMap<>();
+  private final List<Map<Integer, IntList>> buckets;
+
+  /**
+   * @param tables the number of hash tables (L); more tables raise recall and query cost
+   * @param bits the number of hyperplanes per table (K), at most 31; more bits make buckets smaller
+   * @param maxTerms the number of heaviest terms kept per publication vector
+   * @param maxCandidates the maximum number of bucket candidates scored exactly per query
+   */
+  public RelatedPublicationIndex(int tables, int bits, int maxTerms, int maxCandidates) {
+    if (bits < 1 || bits > 31) {
+      throw new IllegalArgumentException("bits must be between 1 and 31");
+    }
+    this.tables = tables;
+    this.bits = bits;
+    this.maxTerms = maxTerms;
+    this.maxCandidates = maxCandidates;
+    this.buckets = new ArrayList<>(tables);
+    for (int t = 0; t < tables; t++) buckets.add(new HashMap<>());
+  }
+
+  /**
+   * Creates a builder for a full build, which weights every publication with the final document
+   * frequencies of the whole catalogue.
+   *
+   * @param tables the number of hash tables
+   * @param bits the number of hyperplanes per table
+   * @param maxTerms the number of heaviest terms kept per publication vector
+   * @param maxCandidates the maximum number of bucket candidates scored exactly per query
+   * @return an empty builder
+   */
+  public static Builder builder(int tables, int bits, int maxTerms, int maxCandidates) {
+    return new Builder(new RelatedPublicationIndex(tables, bits, maxTerms, maxCandidates));
+  }
+
+  /**
+   * @return the number of indexed publications
+   */
+  public int size() {
+    lock.readLock().lock();
+    try {
+      return documents.size();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Adds a publication, or replaces it if it is already indexed. Only a new publication is added to the
+   * document frequencies; a replaced one is not counted twice.
+   *
+   * @param pubId the publication id
+   * @param title the publication title
+   * @param content the publication content, possibly {@code null}
+   */
+  public void index(int pubId, String title, String content) {
+    TermCounts counts = tokenize(title, content);
+    lock.writeLock().lock();
+    try {
+      boolean added = !documents.containsKey(pubId);
+      if (added) {
+        for (long term : counts.terms) documentFrequency.merge(term, 1, Integer::sum);
+      }
+      insert(pubId, counts, documents.size() + (added ? 1 : 0));
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Returns the publications most similar to the given one, found through the LSH buckets.
+   *
+   * @param pubId the publication id
+   * @param limit the maximum number of ids to return
+   * @return the related publication ids, most similar first; empty if the publication is not indexed
+   */
+  public List<Integer> findRelated(int pubId, int limit) {
+    lock.readLock().lock();
+    try {
+      Document query = documents.get(pubId);
+      if (query == null) return List.of();
+
+      Set<Integer> candidates = new HashSet<>();
+      for (int t = 0; t < tables && candidates.size() < maxCandidates; t++) {
+        IntList bucket = buckets.get(t).get(query.keys[t]);
+        for (int i = 0; i < bucket.size && candidates.size() < maxCandidates; i++) {
+          if (bucket.values[i] != pubId) candidates.add(bucket.values[i]);
+        }
+      }
+      return topK(query, candidates, limit);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Returns the publications most similar to the given one by scoring every indexed publication. Meant
+   * as the exact reference for {@link #benchmark(int, int)}, not for serving.
+   *
+   * @param pubId the publication id
+   * @param limit the maximum number of ids to return
+   * @return the related publication ids, most similar first; empty if the publication is not indexed
+   */
+  public List<Integer> findRelatedExact(int pubId, int limit) {
+    lock.readLock().lock();
+    try {
+      Document query = documents.get(pubId);
+      if (query == null) return List.of();
+
+      Set<Integer> candidates = new HashSet<>(documents.keySet());
+      candidates.remove(pubId);
+      return topK(query, candidates, limit);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Measures recall and latency of {@link #findRelated} against {@link #findRelatedExact} on a random
+   * sample of indexed publications. Recall@k is the share of the exact top-k neighbours (with a
+   * positive similarity) that the LSH query also returned.
+   *
+   * @param samples the number of publications to query, at least one
+   * @param k the number of neighbours per query, at least one
+   * @return the measurements
+   */
+  public BenchmarkResult benchmark(int samples, int k) {
+    if (samples < 1 || k < 1) {
+      throw new IllegalArgumentException("samples and k must be positive");
+    }
+    List<Integer> ids;
+    lock.readLock().lock();
+    try {
+      ids = new ArrayList<>(documents.keySet());
+    } finally {
+      lock.readLock().unlock();
+    }
+    Collections.shuffle(ids, new Random(42));
+    ids = ids.subList(0, Math.min(samples, ids.size()));
+
+    long approximateNanos = 0;
+    long exactNanos = 0;
+    int expected = 0;
+    int found = 0;
+    for (int pubId : ids) {
+      long start = System.nanoTime();
+      List<Integer> approximate = findRelated(pubId, k);
+      approximateNanos += System.nanoTime() - start;
+
+      start = System.nanoTime();
+      List<Integer> exact = findRelatedExact(pubId, k);
+      exactNanos += System.nanoTime() - start;
+
+      expected += exact.size();
+      Set<Integer> approximateSet = new HashSet<>(approximate);
+      for (int id : exact) {
+        if (approximateSet.contains(id)) found++;
+      }
+    }
+
+    int n = Math.max(ids.size(), 1);
+    return new BenchmarkResult(ids.size(), k, expected == 0 ? 1.0 : (double) found / expected,
+        approximateNanos / 1000.0 / n, exactNanos / 1000.0 / n);
+  }
+
+  /**
+   * Writes this index to a snapshot file. The file is written next to the target and then moved over
+   * it, so a crash never leaves a partially written snapshot behind.
+   *
+   * @param file the snapshot file
+   * @param savedAt the time the index was current, in epoch milliseconds
+   * @throws IOException if the file cannot be written
+   */
+  public void writeSnapshot(Path file, long savedAt) throws IOException {
+    Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+    lock.readLock().lock();
+    try (OutputStream raw = new BufferedOutputStream(Files.newOutputStream(temp))) {
+      CheckedOutputStream checked = new CheckedOutputStream(raw, new CRC32());
+      DataOutputStream out = new DataOutputStream(checked);
+      out.writeInt(SNAPSHOT_MAGIC);
+      out.writeInt(SNAPSHOT_VERSION);
+      out.writeLong(savedAt);
+      out.writeInt(tables);
+      out.writeInt(bits);
+      out.writeInt(maxTerms);
+
+      out.writeInt(documentFrequency.size());
+      for (Map.Entry<Long, Integer> entry : documentFrequency.entrySet()) {
+        out.writeLong(entry.getKey());
+        out.writeInt(entry.getValue());
+      }
+      out.writeInt(documents.size());
+      for (Map.Entry<Integer, Document> entry : documents.entrySet()) {
+        Document document = entry.getValue();
+        out.writeInt(entry.getKey());
+        out.writeInt(document.terms.length);
+        for (long term : document.terms) out.writeLong(term);
+        for (float weight : document.weights) out.writeFloat(weight);
+        for (int key : document.keys) out.writeInt(key);
+      }
+      out.flush();
+      new DataOutputStream(raw).writeLong(checked.getChecksum().getValue());
+    } finally {
+      lock.readLock().unlock();
+    }
+    Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Reads an index from a snapshot file written by {@link #writeSnapshot(Path, long)}.
+   *
+   * @param file the snapshot file
+   * @param tables the number of hash tables the index must have been built with
+   * @param bits the number of hyperplanes per table the index must have been built with
+   * @param maxTerms the number of terms per vector the index must have been built with
+   * @param maxCandidates the maximum number of bucket candidates scored exactly per query
+   * @return the index, with the time it was saved
+   * @throws IOException if the file cannot be read, is corrupt, has another layout version, or was built
+   * with other parameters
+   */
+  public static SavedIndex readSnapshot(Path file, int tables, int bits, int maxTerms, int maxCandidates)
+      throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      int payloadEnd = buffer.capacity() - Long.BYTES;
+      if (payloadEnd < 5 * Integer.BYTES + Long.BYTES) {
+        throw new IOException("Related publications snapshot is truncated: " + file);
+      }
+
+      CRC32 crc = new CRC32();
+      crc.update(buffer.duplicate().limit(payloadEnd));
+      if (crc.getValue() != buffer.getLong(payloadEnd)) {
+        throw new IOException("Related publications snapshot checksum mismatch: " + file);
+      }
+      if (buffer.getInt() != SNAPSHOT_MAGIC || buffer.getInt() != SNAPSHOT_VERSION) {
+        throw new IOException("Unsupported related publications snapshot: " + file);
+      }
+      long savedAt = buffer.getLong();
+      if (buffer.getInt() != tables || buffer.getInt() != bits || buffer.getInt() != maxTerms) {
+        throw new IOException("Related publications snapshot was built with other parameters: " + file);
+      }
+
+      RelatedPublicationIndex index = new RelatedPublicationIndex(tables, bits, maxTerms, maxCandidates);
+      for (int i = buffer.getInt(); i > 0; i--) {
+        index.documentFrequency.put(buffer.getLong(), buffer.getInt());
+      }
+      for (int i = buffer.getInt(); i > 0; i--) {
+        int pubId = buffer.getInt();
+        long[] terms = new long[buffer.getInt()];
+        float[] weights = new float[terms.length];
+        int[] keys = new int[tables];
+        for (int t = 0; t < terms.length; t++) terms[t] = buffer.getLong();
+        for (int t = 0; t < weights.length; t++) weights[t] = buffer.getFloat();
+        for (int t = 0; t < tables; t++) keys[t] = buffer.getInt();
+
+        index.documents.put(pubId, new Document(terms, weights, keys));
+        for (int t = 0; t < tables; t++) {
+          index.buckets.get(t).computeIfAbsent(keys[t], k -> new IntList()).add(pubId);
+        }
+      }
+      return new SavedIndex(index, savedAt);
+    }
+  }
+
+  /**
+   * An index read from a snapshot file.
+   *
+   * @param index the index
+   * @param savedAt the time the index was current, in epoch milliseconds
+   */
+  public record SavedIndex(RelatedPublicationIndex index, long savedAt) {}
+
+  /**
+   * The outcome of a {@link #benchmark(int, int)} run.
+   *
+   * @param samples the number of queried publications
+   * @param k the number of neighbours per query
+   * @param recall the share of exact top-k neighbours also returned by the LSH query
+   * @param lshMicros the mean latency of an LSH query, in microseconds
+   * @param exactMicros the mean latency of a brute-force query, in microseconds
+   */
+  public record BenchmarkResult(int samples, int k, double recall, double lshMicros, double exactMicros) {}
+
+  private List<Integer> topK(Document query, Set<Integer> candidates, int limit) {
+    if (limit <= 0) return List.of();
+    PriorityQueue<Scored> top = new PriorityQueue<>(Math.min(limit, candidates.size()) + 1,
+        (a, b) -> a.score != b.score ? Float.compare(a.score, b.score) : Integer.compare(b.pubId, a.pubId));
+    for (int id : candidates) {
+      float score = cosine(query, documents.get(id));
+      if (score <= 0) continue;
+      top.add(new Scored(id, score));
+      if (top.size() > limit) top.poll();
+    }
+
+    Integer[] result = new Integer[top.size()];
+    for (int i = result.length - 1; i >= 0; i--) result[i] = top.poll().pubId;
+    return Arrays.asList(result);
+  }
+
+  private record Scored(int pubId, float score) {}
+
+  /** Both vectors are normalized and sorted by term, so this is a merge of their terms. */
+  private static float cosine(Document a, Document b) {
+    float dot = 0;
+    int i = 0, j = 0;
+    while (i < a.terms.length && j < b.terms.length) {
+      if (a.terms[i] < b.terms[j]) i++;
+      else if (a.terms[i] > b.terms[j]) j++;
+      else dot += a.weights[i++] * b.weights[j++];
+    }
+    return dot;
+  }
+
+  /**
+   * Weights, truncates and normalizes a publication's term counts and adds it to the buckets. Must be
+   * called with the write lock held, or by a {@link Builder} before the index is shared.
+   */
+  private void insert(int pubId, TermCounts counts, int documentCount) {
+    int n = counts.terms.length;
+    Integer[] order = new Integer[n];
+    double[] weights = new double[n];
+    for (int i = 0; i < n; i++) {
+      int df = documentFrequency.getOrDefault(counts.terms[i], 1);
+      weights[i] = (1 + Math.log(counts.counts[i])) * (Math.log((1.0 + documentCount) / (1.0 + df)) + 1);
+      order[i] = i;
+    }
+    Arrays.sort(order, (a, b) -> Double.compare(weights[b], weights[a]));
+
+    int kept = Math.min(n, maxTerms);
+    Integer[] keptOrder = Arrays.copyOf(order, kept);
+    Arrays.sort(keptOrder, (a, b) -> Long.compare(counts.terms[a], counts.terms[b]));
+    double norm = 0;
+    for (int i = 0; i < kept; i++) norm += weights[keptOrder[i]] * weights[keptOrder[i]];
+    norm = Math.sqrt(norm);
+
+    long[] terms = new long[kept];
+    float[] normalized = new float[kept];
+    for (int i = 0; i < kept; i++) {
+      terms[i] = counts.terms[keptOrder[i]];
+      normalized[i] = norm == 0 ? 0 : (float) (weights[keptOrder[i]] / norm);
+    }
+
+    int[] keys = new int[tables];
+    double[] projections = new double[bits];
+    for (int t = 0; t < tables; t++) {
+      Arrays.fill(projections, 0);
+      for (int i = 0; i < kept; i++) {
+        long signs = mix(terms[i] + (t + 1) * 0x9E3779B97F4A7C15L);
+        for (int b = 0; b < bits; b++) {
+          projections[b] += ((signs >>> b) & 1) == 1 ? normalized[i] : -normalized[i];
+        }
+      }
+      for (int b = 0; b < bits; b++) {
+        if (projections[b] >= 0) keys[t] |= 1 << b;
+      }
+    }
+
+    Document previous = documents.put(pubId, new Document(terms, normalized, keys));
+    for (int t = 0; t < tables; t++) {
+      if (previous != null) buckets.get(t).get(previous.keys[t]).remove(pubId);
+      buckets.get(t).computeIfAbsent(keys[t], k -> new IntList()).add(pubId);
+    }
+  }
+
+  /**
+   * Splits a publication's text into its distinct terms and their counts.
+   */
+  private static TermCounts tokenize(String title, String content) {
+    Map<Long, Integer> counts = new HashMap<>();
+    addTokens(title, TITLE_WEIGHT, counts);
+    addTokens(content, 1, counts);
+
+    long[] terms = new long[counts.size()];
+    int[] termCounts = new int[counts.size()];
+    int i = 0;
+    for (Map.Entry<Long, Integer> entry : counts.entrySet()) {
+      terms[i] = entry.getKey();
+      termCounts[i++] = entry.getValue();
+    }
+    return new TermCounts(terms, termCounts);
+  }
+
+  private static void addTokens(String text, int weight, Map<Long, Integer> counts) {
+    if (text == null) return;
+    StringBuilder token = new StringBuilder();
+    int tokens = 0;
+    for (int i = 0; i <= text.length() && tokens < MAX_TOKENS; i++) {
+      char c = i < text.length() ? text.charAt(i) : ' ';
+      if (Character.isLetterOrDigit(c)) {
+        token.append(Character.toLowerCase(c));
+        continue;
+      }
+      if (token.length() >= MIN_TOKEN_LENGTH && token.length() <= MAX_TOKEN_LENGTH
+          && !STOP_WORDS.contains(token.toString()) && !isNumber(token)) {
+        counts.merge(hash(token), weight, Integer::sum);
+        tokens++;
+      }
+      token.setLength(0);
+    }
+  }
+
+  private static boolean isNumber(CharSequence token) {
+    for (int i = 0; i < token.length(); i++) {
+      if (!Character.isDigit(token.charAt(i))) return false;
+    }
+    return true;
+  }
+
+  /** The 64-bit FNV-1a hash of a term. */
+  private static long hash(CharSequence term) {
+    long h = 0xcbf29ce484222325L;
+    for (int i = 0; i < term.length(); i++) {
+      h ^= term.charAt(i);
+      h *= 0x100000001b3L;
+    }
+    return h;
+  }
+
+  /** A 64-bit finalizer spreading the bits of a term hash into independent hyperplane signs. */
+  private static long mix(long z) {
+    z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+    z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+    return z ^ (z >>> 31);
+  }
+
+  private record TermCounts(long[] terms, int[] counts) {
+
+    /** Returns the {@code max} most frequent terms, or this instance if there are not more. */
+    TermCounts mostFrequent(int max) {
+      if (terms.length <= max) return this;
+      Integer[] order = new Integer[terms.length];
+      for (int i = 0; i < order.length; i++) order[i] = i;
+      Arrays.sort(order, (a, b) -> Integer.compare(counts[b], counts[a]));
+
+      long[] keptTerms = new long[max];
+      int[] keptCounts = new int[max];
+      for (int i = 0; i < max; i++) {
+        keptTerms[i] = terms[order[i]];
+        keptCounts[i] = counts[order[i]];
+      }
+      return new TermCounts(keptTerms, keptCounts);
+    }
+  }
+
+  /**
+   * A normalized vector, sorted by term hash, and its bucket key in every table.
+   */
+  private record Document(long[] terms, float[] weights, int[] keys) {}
+
+  /** A growable list of publication ids. */
+  private static final class IntList {
+    private int[] values = new int[4];
+    private int size;
+
+    void add(int value) {
+      if (size == values.length) values = Arrays.copyOf(values, size * 2);
+      values[size++] = value;
+    }
+
+    void remove(int value) {
+      for (int i = 0; i < size; i++) {
+        if (values[i] == value) {
+          values[i] = values[--size];
+          return;
+        }
+      }
+    }
+  }
+
+  /**
+   * Collects publications for a full build. Document frequencies are counted over all added
+   * publications before any vector is weighted. Builders are not thread-safe.
+   */
+  public static final class Builder {
+    private final RelatedPublicationIndex index;
+    private final List<Integer> pubIds = new ArrayList<>();
+    private final List<TermCounts> pending = new ArrayList<>();
+
+    private Builder(RelatedPublicationIndex index) {
+      this.index = index;
+    }
+
+    /**
+     * @param pubId the publication id
+     * @param title the publication title
+     * @param content the publication content, possibly {@code null}
+     * @return this builder
+     */
+    public Builder add(int pubId, String title, String content) {
+      TermCounts counts = tokenize(title, content);
+      for (long term : counts.terms) index.documentFrequency.merge(term, 1, Integer::sum);
+      pubIds.add(pubId);
+      pending.add(counts.mostFrequent(index.maxTerms * PENDING_TERMS_FACTOR));
+      return this;
+    }
+
+    /**
+     * @return the index containing every added publication
+     */
+    public RelatedPublicationIndex build() {
+      for (int i = 0; i < pubIds.size(); i++) {
+        index.insert(pubIds.get(i), pending.get(i), pubIds.size());
+        pending.set(i, null);
+      }
+      return index;
+    }
+  }
+}
@@ -0,0 +1,116 @@
+package com.airchive.recommendation;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A Bloom filter over the publication ids an account has already viewed.
+ * <p>
+ * The filter never reports a viewed publication as unseen. It may report an unseen publication as seen
+ * with a small probability, which only costs a candidate in the feed. The filter is sized for twice the
+ * number of ids it was created with, at a one percent false-positive rate. Once more ids than that have
+ * been added, {@link #isSaturated()} returns {@code true} and the owner should rebuild it from the
+ * database with more room.
+ * <p>
+ * This class is thread-safe.
+ */
+public final class SeenFilter {
+
+  private static final double FALSE_POSITIVE_RATE = 0.01;
+  private static final int MIN_CAPACITY = 64;
+
+  private final long[] bits;
+  private final int bitCount;
+  private final int hashCount;
+  private final int capacity;
+  private int size;
+
+  private SeenFilter(int capacity) {
+    this.capacity = capacity;
+    long optimalBits = (long) Math.ceil(-capacity * Math.log(FALSE_POSITIVE_RATE) / (Math.log(2) * Math.log(2)));
+    this.bits = new long[(int) ((optimalBits + 63) / 64)];
+    this.bitCount = bits.length * 64;
+    this.hashCount = Math.max(1, (int) Math.round((double) bitCount / capacity * Math.log(2)));
+  }
+
+  /**
+   * Creates a filter containing the given publication ids.
+   *
+   * @param pubIds the ids of the viewed publications
+   * @return the new filter
+   */
+  public static SeenFilter of(Collection<Integer> pubIds) {
+    SeenFilter filter = new SeenFilter(Math.max(MIN_CAPACITY, pubIds.size() * 2));
+    pubIds.forEach(filter::add);
+    return filter;
+  }
+
+  /**
+   * Adds a publication id.
+   *
+   * @param pubId the id of the viewed publication
+   */
+  public synchronized void add(int pubId) {
+    if (!mightContain(pubId)) size++;
+    int h1 = mix(pubId);
+    int h2 = mix(h1 ^ pubId) | 1;
+    for (int i = 0; i < hashCount; i++) {
+      int bit = Math.floorMod(h1 + i * h2, bitCount);
+      bits[bit >>> 6] |= 1L << bit;
+    }
+  }
+
+  /**
+   * @param pubId a publication id
+   * @return {@code false} if the publication was definitely not viewed, {@code true} if it probably was
+   */
+  public synchronized boolean mightContain(int pubId) {
+    int h1 = mix(pubId);
+    int h2 = mix(h1 ^ pubId) | 1;
+    for (int i = 0; i < hashCount; i++) {
+      int bit = Math.floorMod(h1 + i * h2, bitCount);
+      if ((bits[bit >>> 6] & (1L << bit)) == 0) return false;
+    }
+    return true;
+  }
+
+  /**
+   * Drops the ids that might have been viewed from a ranked list, then applies the requested page.
+   *
+   * @param ranked the ranked publication ids
+   * @param limit the maximum number of ids to return
+   * @param offset the number of unseen ids to skip
+   * @return the unseen ids of the page, in ranked order
+   */
+  public List<Integer> unseen(List<Integer> ranked, int limit, int offset) {
+    return ranked.stream()
+        .filter(pubId -> !mightContain(pubId))
+        .skip(offset)
+        .limit(limit)
+        .toList();
+  }
+
+  /**
+   * @return the approximate number of distinct ids added
+   */
+  public synchronized int size() {
+    return size;
+  }
+
+  /**
+   * @return {@code true} if more ids were added than the filter was sized for
+   */
+  public synchronized boolean isSaturated() {
+    return size > capacity;
+  }
+
+  /** The MurmurHash3 32-bit finalizer. */
+  private static int mix(int h) {
+    h ^= h >>> 16;
+    h *= 0x85ebca6b;
+    h ^= h >>> 13;
+    h *= 0xc2b2ae35;
+    h ^= h >>> 16;
+    return h;
+  }
+}
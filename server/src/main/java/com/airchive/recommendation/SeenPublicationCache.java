@@ -0,0 +1,68 @@
+package com.airchive.recommendation;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded, least-recently-used cache of per-account {@link SeenFilter}s, used to drop already viewed
+ * publications from recommendation candidates in Java instead of anti-joining {@code publication_view}.
+ * <p>
+ * Filters are loaded lazily by the reader on a miss and kept up to date by the view writer through
+ * {@link #recordView(int, int)}. Views of accounts without a cached filter are not tracked, since the
+ * next load reads them from the database. A filter that outgrows its capacity is evicted so the next
+ * load sizes it for the larger history.
+ * <p>
+ * This class is thread-safe.
+ */
+public class SeenPublicationCache {
+
+  private final Map<Integer, SeenFilter> filters;
+
+  /**
+   * @param maxEntries the maximum number of accounts whose filters are kept in memory
+   */
+  public SeenPublicationCache(int maxEntries) {
+    this.filters = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Integer, SeenFilter> eldest) {
+        return size() > maxEntries;
+      }
+    };
+  }
+
+  /**
+   * @param accountId the account id
+   * @return the account's filter, or {@code null} if it is not loaded
+   */
+  public synchronized SeenFilter get(int accountId) {
+    return filters.get(accountId);
+  }
+
+  /**
+   * Stores a freshly loaded filter, unless another one was stored for the account in the meantime.
+   *
+   * @param accountId the account id
+   * @param filter the filter built from the account's view history
+   * @return the filter now cached for the account
+   */
+  public synchronized SeenFilter put(int accountId, SeenFilter filter) {
+    SeenFilter existing = filters.putIfAbsent(accountId, filter);
+    return existing != null ? existing : filter;
+  }
+
+  /**
+   * Adds a new view to the account's filter, if it is loaded.
+   *
+   * @param accountId the account id
+   * @param pubId the id of the viewed publication
+   */
+  public synchronized void recordView(int accountId, int pubId) {
+    SeenFilter filter = filters.get(accountId);
+    if (filter == null) return;
+
+    filter.add(pubId);
+    if (filter.isSaturated()) {
+      filters.remove(accountId);
+    }
+  }
+}
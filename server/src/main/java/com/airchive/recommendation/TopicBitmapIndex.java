@@ -0,0 +1,88 @@
+package com.airchive.recommendation;
+
+import com.airchive.entity.Publication;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable index of published publication ids as {@link PublicationBitmap}s: one bitmap per topic and
+ * one per {@link Publication.Kind}. Finding the publications tagged with all of a set of topics is an
+ * intersection of their topic bitmaps, further intersected with the union of the requested kinds.
+ * <p>
+ * Instances are derived from a {@link CandidateIndex} snapshot and replaced together with it.
+ */
+public final class TopicBitmapIndex {
+
+  private final Map<Integer, PublicationBitmap> byTopic;
+  private final PublicationBitmap[] byKind;
+
+  private TopicBitmapIndex(Map<Integer, PublicationBitmap> byTopic, PublicationBitmap[] byKind) {
+    this.byTopic = byTopic;
+    this.byKind = byKind;
+  }
+
+  /**
+   * Builds the bitmaps of every topic and kind in a candidate index.
+   *
+   * @param index the candidate index snapshot
+   * @return the new bitmap index
+   */
+  public static TopicBitmapIndex of(CandidateIndex index) {
+    Map<Integer, List<Integer>> topicIds = new HashMap<>();
+    index.forEachTopicEdge((topicId, ordinal) ->
+        topicIds.computeIfAbsent(topicId, t -> new ArrayList<>()).add(index.pubId(ordinal)));
+
+    Map<Integer, PublicationBitmap> byTopic = new HashMap<>();
+    topicIds.forEach((topicId, ids) ->
+        byTopic.put(topicId, PublicationBitmap.of(ids.stream().mapToInt(Integer::intValue).toArray())));
+
+    Publication.Kind[] kinds = Publication.Kind.values();
+    PublicationBitmap[] byKind = new PublicationBitmap[kinds.length];
+    for (Publication.Kind kind : kinds) {
+      int[] ids = new int[index.size()];
+      int n = 0;
+      for (int ordinal = 0; ordinal < index.size(); ordinal++) {
+        if (index.kind(ordinal) == kind) ids[n++] = index.pubId(ordinal);
+      }
+      byKind[kind.ordinal()] = PublicationBitmap.of(Arrays.copyOf(ids, n));
+    }
+    return new TopicBitmapIndex(byTopic, byKind);
+  }
+
+  /**
+   * Returns a page of the publications tagged with every given topic, in descending id order.
+   *
+   * @param topicIds the topic ids that must all be present
+   * @param kinds the kinds to include, or {@code null}/empty for all kinds
+   * @param limit the maximum number of ids to return
+   * @param offset the number of ids to skip
+   * @return the matching publication ids
+   */
+  public List<Integer> findWithAllTopics(List<Integer> topicIds, List<Publication.Kind> kinds, int limit, int offset) {
+    if (topicIds.isEmpty() || limit <= 0) return List.of();
+
+    PublicationBitmap result = null;
+    for (int topicId : topicIds) {
+      PublicationBitmap topic = byTopic.getOrDefault(topicId, PublicationBitmap.empty());
+      result = result == null ? topic : result.and(topic);
+      if (result.cardinality() == 0) return List.of();
+    }
+
+    if (kinds != null && !kinds.isEmpty()) {
+      PublicationBitmap kindFilter = PublicationBitmap.empty();
+      for (Publication.Kind kind : kinds) kindFilter = kindFilter.or(byKind[kind.ordinal()]);
+      result = result.and(kindFilter);
+    }
+
+    List<Integer> page = new ArrayList<>(Math.min(limit, result.cardinality()));
+    int[] skipped = {0};
+    result.forEachDescending(pubId -> {
+      if (skipped[0]++ >= offset) page.add(pubId);
+      return page.size() < limit;
+    });
+    return page;
+  }
+}
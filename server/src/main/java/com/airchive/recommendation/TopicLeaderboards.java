@@ -0,0 +1,259 @@
+package com.airchive.recommendation;
+
+import com.airchive.entity.Publication;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.function.IntPredicate;
+
+/**
+ * Bounded, per-topic leaderboards of the most popular published publications: one for every topic, and
+ * one for every topic and {@link Publication.Kind}. Each holds at most {@code capacity} publications in
+ * descending decayed popularity.
+ * <p>
+ * Leaderboards are rebuilt from a {@link CandidateIndex} snapshot whenever it is loaded or its popularity
+ * is refreshed, and are updated in between as interactions change a publication's popularity score.
+ * Ranking the publications of a few topics, each weighted by the reader's affinity for it, is then a
+ * k-way merge of a few short sorted lists instead of a scan of every tagged publication.
+ * <p>
+ * A leaderboard that has ever dropped a publication to stay within its capacity is <em>truncated</em>:
+ * a merge that would have to read past its end cannot be answered exactly, and {@link #rank} returns
+ * {@code null} so callers fall back to a full ranking.
+ * <p>
+ * Each leaderboard is an immutable snapshot replaced on update, so readers never lock. Updates are
+ * synchronized.
+ */
+public final class TopicLeaderboards {
+
+  private static final Publication.Kind[] KINDS = Publication.Kind.values();
+
+  private final int capacity;
+
+  /** The leaderboards of each topic: index 0 for all kinds, then one per kind ordinal. */
+  private volatile Map<Integer, Board[]> boards = Map.of();
+  /** The topics and kind of every publication on any leaderboard's source index. */
+  private volatile Map<Integer, Tags> tags = Map.of();
+
+  /**
+   * @param capacity the maximum number of publications kept per leaderboard
+   */
+  public TopicLeaderboards(int capacity) {
+    this.capacity = capacity;
+  }
+
+  /**
+   * Replaces every leaderboard with the most popular publications of each topic in the given index.
+   *
+   * @param index the candidate index snapshot
+   */
+  public synchronized void rebuild(CandidateIndex index) {
+    Map<Integer, List<Integer>> byTopic = new HashMap<>();
+    Map<Integer, List<Integer>> topicsByOrdinal = new HashMap<>();
+    index.forEachTopicEdge((topicId, ordinal) -> {
+      byTopic.computeIfAbsent(topicId, t -> new ArrayList<>()).add(ordinal);
+      topicsByOrdinal.computeIfAbsent(ordinal, o -> new ArrayList<>()).add(topicId);
+    });
+
+    Map<Integer, Board[]> rebuilt = new HashMap<>();
+    byTopic.forEach((topicId, ordinals) -> {
+      ordinals.sort((a, b) -> compare(index.popularity(a), index.pubId(a), index.popularity(b), index.pubId(b)));
+      Board[] topicBoards = new Board[KINDS.length + 1];
+      topicBoards[0] = Board.of(index, ordinals, capacity, null);
+      for (Publication.Kind kind : KINDS) {
+        topicBoards[kind.ordinal() + 1] = Board.of(index, ordinals, capacity, kind);
+      }
+      rebuilt.put(topicId, topicBoards);
+    });
+
+    Map<Integer, Tags> rebuiltTags = new HashMap<>();
+    topicsByOrdinal.forEach((ordinal, topicIds) -> rebuiltTags.put(index.pubId(ordinal),
+        new Tags(index.kind(ordinal), topicIds.stream().mapToInt(Integer::intValue).toArray())));
+
+    boards = rebuilt;
+    tags = rebuiltTags;
+  }
+
+  /**
+   * @param pubId the publication id
+   * @return {@code true} if the publication's topics are known, so that {@link #update} can place it
+   */
+  public boolean tracks(int pubId) {
+    return tags.containsKey(pubId);
+  }
+
+  /**
+   * Records a publication's new popularity score on the leaderboards of its topics and kind.
+   * Publications unknown to the last rebuild are ignored.
+   *
+   * @param pubId the publication id
+   * @param score the publication's current popularity score
+   */
+  public synchronized void update(int pubId, double score) {
+    Tags tagged = tags.get(pubId);
+    if (tagged == null) return;
+
+    for (int topicId : tagged.topicIds()) {
+      Board[] topicBoards = boards.get(topicId);
+      if (topicBoards == null) continue;
+      int kindBoard = tagged.kind().ordinal() + 1;
+      topicBoards[0] = topicBoards[0].upsert(pubId, score, capacity);
+      topicBoards[kindBoard] = topicBoards[kindBoard].upsert(pubId, score, capacity);
+    }
+  }
+
+  /**
+   * Ranks the publications tagged with any of the given topics by {@code weight(topic) * popularity},
+   * each publication keeping its best topic, in descending score order with ties broken by descending id.
+   *
+   * @param topicWeights the weight of each topic; topics with a non-positive weight are ignored
+   * @param kinds the kinds to include, or {@code null}/empty for all kinds
+   * @param excluded ids to skip
+   * @param limit the maximum number of ids to return
+   * @param offset the number of top-ranked ids to skip
+   * @return the ranked ids, or {@code null} if a truncated leaderboard is too short to answer exactly
+   */
+  public List<Integer> rank(Map<Integer, Double> topicWeights, List<Publication.Kind> kinds,
+      IntPredicate excluded, int limit, int offset) {
+    Map<Integer, Board[]> current = boards;
+    PriorityQueue<Cursor> heads = new PriorityQueue<>(
+        (a, b) -> compare(a.score(), a.pubId(), b.score(), b.pubId()));
+
+    Set<Publication.Kind> distinctKinds = kinds == null || kinds.isEmpty() ? null : new LinkedHashSet<>(kinds);
+    topicWeights.forEach((topicId, weight) -> {
+      Board[] topicBoards = current.get(topicId);
+      if (topicBoards == null || weight <= 0) return;
+      if (distinctKinds == null) {
+        new Cursor(topicBoards[0], weight).offerTo(heads);
+      } else {
+        for (Publication.Kind kind : distinctKinds) {
+          new Cursor(topicBoards[kind.ordinal() + 1], weight).offerTo(heads);
+        }
+      }
+    });
+
+    // Saturates instead of overflowing, as the page size and offset come from the request
+    int needed = (int) Math.min((long) offset + limit, Integer.MAX_VALUE);
+    Set<Integer> seen = new HashSet<>();
+    List<Integer> ranked = new ArrayList<>();
+    while (ranked.size() < needed && !heads.isEmpty()) {
+      Cursor head = heads.poll();
+      int pubId = head.pubId();
+      if (seen.add(pubId) && !excluded.test(pubId)) ranked.add(pubId);
+
+      head.position++;
+      if (head.position < head.board.ids.length) {
+        heads.add(head);
+      } else if (head.board.truncated && ranked.size() < needed) {
+        return null;
+      }
+    }
+
+    if (offset >= ranked.size()) return List.of();
+    return ranked.subList(offset, Math.min(needed, ranked.size()));
+  }
+
+  /** Orders by descending score, then descending id. */
+  private static int compare(double scoreA, int idA, double scoreB, int idB) {
+    int cmp = Double.compare(scoreB, scoreA);
+    return cmp != 0 ? cmp : Integer.compare(idB, idA);
+  }
+
+  private record Tags(Publication.Kind kind, int[] topicIds) {}
+
+  /**
+   * A reading position in a leaderboard whose scores are multiplied by a topic weight.
+   */
+  private static final class Cursor {
+    private final Board board;
+    private final double weight;
+    private int position;
+
+    Cursor(Board board, double weight) {
+      this.board = board;
+      this.weight = weight;
+    }
+
+    /** Adds this cursor to the merge unless the leaderboard is empty, which only untruncated ones can be. */
+    void offerTo(PriorityQueue<Cursor> heads) {
+      if (board.ids.length > 0) heads.add(this);
+    }
+
+    int pubId() {
+      return board.ids[position];
+    }
+
+    double score() {
+      return weight * board.scores[position];
+    }
+  }
+
+  /**
+   * An immutable leaderboard: ids in descending score order, with their scores.
+   */
+  private static final class Board {
+    private final int[] ids;
+    private final double[] scores;
+    private final boolean truncated;
+
+    private Board(int[] ids, double[] scores, boolean truncated) {
+      this.ids = ids;
+      this.scores = scores;
+      this.truncated = truncated;
+    }
+
+    /** Keeps the first {@code capacity} of the popularity-sorted ordinals of the given kind. */
+    static Board of(CandidateIndex index, List<Integer> sortedOrdinals, int capacity, Publication.Kind kind) {
+      int[] ids = new int[Math.min(capacity, sortedOrdinals.size())];
+      double[] scores = new double[ids.length];
+      int n = 0;
+      boolean truncated = false;
+      for (int ordinal : sortedOrdinals) {
+        if (kind != null && index.kind(ordinal) != kind) continue;
+        if (n == capacity) {
+          truncated = true;
+          break;
+        }
+        ids[n] = index.pubId(ordinal);
+        scores[n++] = index.popularity(ordinal);
+      }
+      return new Board(Arrays.copyOf(ids, n), Arrays.copyOf(scores, n), truncated);
+    }
+
+    /**
+     * Returns a copy with the publication moved to its new score, dropping the last one if over capacity.
+     * A truncated leaderboard must stay an exact prefix of the full ranking, so a publication that would
+     * land past its end is dropped instead, as publications dropped earlier may outrank it.
+     */
+    Board upsert(int pubId, double score, int capacity) {
+      int[] newIds = new int[ids.length + 1];
+      double[] newScores = new double[ids.length + 1];
+      int n = 0;
+      boolean inserted = false;
+      for (int i = 0; i < ids.length; i++) {
+        if (ids[i] == pubId) continue;
+        if (!inserted && compare(score, pubId, scores[i], ids[i]) < 0) {
+          newIds[n] = pubId;
+          newScores[n++] = score;
+          inserted = true;
+        }
+        newIds[n] = ids[i];
+        newScores[n++] = scores[i];
+      }
+      if (!inserted && !truncated) {
+        newIds[n] = pubId;
+        newScores[n++] = score;
+      }
+
+      if (n <= capacity) {
+        return new Board(Arrays.copyOf(newIds, n), Arrays.copyOf(newScores, n), truncated);
+      }
+      return new Board(Arrays.copyOf(newIds, capacity), Arrays.copyOf(newScores, capacity), true);
+    }
+  }
+}
@@ -0,0 +1,173 @@
+package com.airchive.recommendation;
+
+import com.airchive.entity.Interaction;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.IntPredicate;
+
+/**
+ * Sliding-window interaction counters used to detect publications that are trending right now.
+ * <p>
+ * Every publication with recent interactions has a ring buffer of per-minute buckets covering the last
+ * {@code windowMinutes}. Each bucket packs the minute it belongs to and the weighted number of
+ * interactions recorded during it into one {@code long}, so recording is a single compare-and-set that
+ * also recycles the bucket of an expired minute, without any lock. Interactions are weighted by their
+ * {@link Interaction} affinity weight, in half units.
+ * <p>
+ * A publication trends when it receives interactions faster than usual: its score compares the
+ * interactions of the last {@code recentMinutes} with the number expected from its rate over the rest
+ * of the window, {@code (recent - expected) / sqrt(expected + 1)}. {@link #refresh(long)} ranks every
+ * counted publication by that score and drops the counters that have been idle for a whole window; the
+ * resulting snapshot is served by {@link #page}.
+ */
+public final class TrendingCounters {
+
+  private static final long MILLIS_PER_MINUTE = 60_000L;
+  /** The minimum weighted interactions in the recent window, in half units, for a publication to trend. */
+  private static final int MIN_RECENT_UNITS = 6;
+
+  private final int windowMinutes;
+  private final int recentMinutes;
+  private final Map<Integer, Ring> rings = new ConcurrentHashMap<>();
+  private volatile int[] ranked = new int[0];
+
+  /**
+   * @param windowMinutes the number of minutes counted per publication
+   * @param recentMinutes the number of most recent minutes compared against the rest of the window; must
+   * be smaller than {@code windowMinutes}
+   */
+  public TrendingCounters(int windowMinutes, int recentMinutes) {
+    if (recentMinutes <= 0 || recentMinutes >= windowMinutes) {
+      throw new IllegalArgumentException("recentMinutes must be between 1 and windowMinutes - 1");
+    }
+    this.windowMinutes = windowMinutes;
+    this.recentMinutes = recentMinutes;
+  }
+
+  /**
+   * Counts one interaction with a publication.
+   *
+   * @param pubId the publication id
+   * @param type the interaction type
+   * @param now the current time, in epoch milliseconds
+   */
+  public void record(int pubId, Interaction type, long now) {
+    int minute = (int) (now / MILLIS_PER_MINUTE);
+    rings.computeIfAbsent(pubId, id -> new Ring(windowMinutes)).add(minute, units(type));
+  }
+
+  /**
+   * Ranks every counted publication by its trending score, replacing the snapshot served by
+   * {@link #page}, and drops the counters of publications without interactions in the whole window.
+   * An interaction recorded while its counter is being dropped may be lost.
+   *
+   * @param now the current time, in epoch milliseconds
+   */
+  public void refresh(long now) {
+    int minute = (int) (now / MILLIS_PER_MINUTE);
+    int recentFrom = minute - recentMinutes + 1;
+    int windowFrom = minute - windowMinutes + 1;
+    double baselineToRecent = (double) recentMinutes / (windowMinutes - recentMinutes);
+
+    List<int[]> trending = new ArrayList<>();
+    List<Double> scores = new ArrayList<>();
+    rings.forEach((pubId, ring) -> {
+      if (ring.lastMinute < windowFrom) {
+        rings.remove(pubId, ring);
+        return;
+      }
+      long recent = ring.sum(recentFrom, minute);
+      if (recent < MIN_RECENT_UNITS) return;
+
+      double expected = ring.sum(windowFrom, recentFrom - 1) * baselineToRecent;
+      double score = (recent - expected) / Math.sqrt(expected + 1);
+      if (score > 0) {
+        trending.add(new int[] {pubId, scores.size()});
+        scores.add(score);
+      }
+    });
+
+    trending.sort((a, b) -> {
+      int cmp = Double.compare(scores.get(b[1]), scores.get(a[1]));
+      return cmp != 0 ? cmp : Integer.compare(b[0], a[0]);
+    });
+    ranked = trending.stream().mapToInt(entry -> entry[0]).toArray();
+  }
+
+  /**
+   * Returns a page of the last ranking computed by {@link #refresh(long)}.
+   *
+   * @param included the ids eligible for the page
+   * @param limit the maximum number of ids to return
+   * @param offset the number of eligible top-ranked ids to skip
+   * @return the trending ids, most trending first
+   */
+  public List<Integer> page(IntPredicate included, int limit, int offset) {
+    List<Integer> page = new ArrayList<>(Math.min(limit, 64));
+    int skipped = 0;
+    for (int pubId : ranked) {
+      if (page.size() >= limit) break;
+      if (!included.test(pubId)) continue;
+      if (skipped++ < offset) continue;
+      page.add(pubId);
+    }
+    return page;
+  }
+
+  /**
+   * @return every id of the last ranking, most trending first
+   */
+  public int[] ranked() {
+    int[] current = ranked;
+    return Arrays.copyOf(current, current.length);
+  }
+
+  private static int units(Interaction type) {
+    return (int) Math.round(type.getAffinityWeight() * 2);
+  }
+
+  /**
+   * The per-minute buckets of one publication. The upper 32 bits of a bucket hold its minute, the lower
+   * 32 bits its weighted count.
+   */
+  private static final class Ring {
+    private final AtomicLongArray buckets;
+    private volatile int lastMinute;
+
+    Ring(int size) {
+      buckets = new AtomicLongArray(size);
+    }
+
+    void add(int minute, int units) {
+      int slot = Math.floorMod(minute, buckets.length());
+      while (true) {
+        long current = buckets.get(slot);
+        int bucketMinute = (int) (current >>> 32);
+        long next;
+        if (bucketMinute == minute) {
+          next = current + units;
+        } else if (bucketMinute < minute) {
+          next = ((long) minute << 32) | units;
+        } else {
+          return; // a late interaction whose bucket was already recycled
+        }
+        if (buckets.compareAndSet(slot, current, next)) break;
+      }
+      if (minute > lastMinute) lastMinute = minute;
+    }
+
+    long sum(int fromMinute, int toMinute) {
+      long sum = 0;
+      for (int i = 0; i < buckets.length(); i++) {
+        long bucket = buckets.get(i);
+        int bucketMinute = (int) (bucket >>> 32);
+        if (bucketMinute >= fromMinute && bucketMinute <= toMinute) sum += (int) bucket;
+      }
+      return sum;
+    }
+  }
+}
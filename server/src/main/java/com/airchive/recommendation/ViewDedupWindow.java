@@ -0,0 +1,145 @@
+package com.airchive.recommendation;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded, expiring set of recent (account, publication) views, used to count at most one view per
+ * user and publication per window, so page refreshes and re-rendered components do not insert a view
+ * row and bump affinity every time.
+ * <p>
+ * Each pair is remembered with the time of its last counted view, in one of several independently
+ * locked stripes so concurrent viewers rarely contend. A stripe keeps its pairs in the order they were
+ * counted, which is also the order they expire in, so expired pairs are dropped from its head as new
+ * ones are added. When a stripe is full its oldest pair is dropped before it expires, and a repeated
+ * view of that pair is counted again: the memory bound wins over exact de-duplication.
+ * <p>
+ * This class is thread-safe.
+ */
+public class ViewDedupWindow {
+
+  private static final int STRIPES = 16;
+
+  private final long windowMillis;
+  private final Stripe[] stripes;
+  private final LongAdder counted = new LongAdder();
+  private final LongAdder suppressed = new LongAdder();
+
+  /**
+   * @param windowMillis the length of the window, in milliseconds; zero or less counts every view
+   * @param maxEntries the maximum number of pairs remembered
+   */
+  public ViewDedupWindow(long windowMillis, int maxEntries) {
+    this.windowMillis = windowMillis;
+    this.stripes = new Stripe[STRIPES];
+    int perStripe = Math.max(1, maxEntries / STRIPES);
+    for (int i = 0; i < STRIPES; i++) {
+      stripes[i] = new Stripe(perStripe);
+    }
+  }
+
+  /**
+   * Records a view unless the same account already had a counted view of the publication within the
+   * window.
+   *
+   * @param accountId the account id
+   * @param pubId the id of the viewed publication
+   * @param now the current time, in epoch milliseconds
+   * @return {@code true} if the view counts, {@code false} if it is suppressed
+   */
+  public boolean tryRecord(int accountId, int pubId, long now) {
+    if (windowMillis <= 0) {
+      counted.increment();
+      return true;
+    }
+
+    long key = key(accountId, pubId);
+    Map<Long, Long> pairs = stripe(key).pairs;
+    synchronized (pairs) {
+      Long last = pairs.get(key);
+      if (last != null && now - last < windowMillis) {
+        suppressed.increment();
+        return false;
+      }
+      pairs.remove(key);
+      pairs.put(key, now);
+
+      Iterator<Long> oldest = pairs.values().iterator();
+      while (oldest.hasNext() && now - oldest.next() >= windowMillis) {
+        oldest.remove();
+      }
+    }
+    counted.increment();
+    return true;
+  }
+
+  /**
+   * Forgets a view counted by {@link #tryRecord(int, int, long)} that could not be written, so a retry
+   * is counted instead of being suppressed. Does nothing if a later view of the pair was counted since.
+   *
+   * @param accountId the account id
+   * @param pubId the id of the viewed publication
+   * @param recordedAt the time passed to {@link #tryRecord(int, int, long)}, in epoch milliseconds
+   */
+  public void release(int accountId, int pubId, long recordedAt) {
+    if (windowMillis <= 0) {
+      counted.decrement();
+      return;
+    }
+
+    long key = key(accountId, pubId);
+    Map<Long, Long> pairs = stripe(key).pairs;
+    synchronized (pairs) {
+      if (pairs.remove(key, recordedAt)) counted.decrement();
+    }
+  }
+
+  private static long key(int accountId, int pubId) {
+    return ((long) accountId << 32) | (pubId & 0xFFFFFFFFL);
+  }
+
+  private Stripe stripe(long key) {
+    return stripes[Math.floorMod(Long.hashCode(key * 0x9E3779B97F4A7C15L), STRIPES)];
+  }
+
+  /**
+   * @return the counters of this window since it was created
+   */
+  public Stats stats() {
+    int tracked = 0;
+    for (Stripe stripe : stripes) {
+      synchronized (stripe.pairs) {
+        tracked += stripe.pairs.size();
+      }
+    }
+    return new Stats(counted.sum(), suppressed.sum(), tracked);
+  }
+
+  /**
+   * The counters of a view de-duplication window.
+   *
+   * @param counted the number of views counted
+   * @param suppressed the number of views suppressed as duplicates
+   * @param tracked the number of (account, publication) pairs currently remembered
+   */
+  public record Stats(long counted, long suppressed, int tracked) {}
+
+  /**
+   * The pairs of one stripe with the time of their last counted view, in the order they were counted.
+   * Its map is also its lock.
+   */
+  private static final class Stripe {
+    private final Map<Long, Long> pairs;
+
+    Stripe(int capacity) {
+      this.pairs = new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Long> eldest) {
+          return size() > capacity;
+        }
+      };
+    }
+  }
+}
@@ -176,6 +176,28 @@ public abstract class BaseRepository {
     }
   }
 
+  /**
+   * Executes the same INSERT, UPDATE or DELETE statement once per parameter row as a single JDBC batch.
+   *
+   * @param conn the database connection to use
+   * @param sql the SQL statement to execute for every row
+   * @param rows the parameters of each execution, bound to the placeholders in the SQL statement
+   * @return the number of rows affected by each execution
+   * @throws DataAccessException if an error occurs while preparing, setting parameters,
+   * or executing the batch
+   */
+  protected int[] executeBatch(Connection conn, String sql, List<Object[]> rows) {
+    try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+      for (Object[] row : rows) {
+        setParameters(stmt, row);
+        stmt.addBatch();
+      }
+      return stmt.executeBatch();
+    } catch (SQLException e) {
+      throw new DataAccessException("Batch update failed", e);
+    }
+  }
+
   /**
    * Sets positional parameters on a {@link PreparedStatement}.
    *
@@ -1,10 +1,32 @@
 package com.airchive.repository;
 
+import com.airchive.entity.Interaction;
 import java.sql.Connection;
 import java.util.List;
 
+/**
+ * Repository for collection items.
+ * <p>
+ * Adding or removing an item also maintains the collection's topic profile in
+ * {@code collection_topic_profile}: the number of its publications tagged with each topic, which
+ * {@link CollectionRepository} uses to rank public collections without aggregating their items,
+ * and the publication's save count in {@code publication_stats}.
+ */
 public class CollectionItemRepository extends BaseRepository {
 
+  private static final String INCREMENT_PROFILE_SQL =
+      "INSERT INTO collection_topic_profile (collection_id, topic_id, weight) ";
+  private static final String INCREMENT_PROFILE_SUFFIX = " ON DUPLICATE KEY UPDATE weight = weight + 1";
+
+  private final PopularityRepository popularityRepository;
+  private final PublicationStatsRepository publicationStatsRepository;
+
+  public CollectionItemRepository(PopularityRepository popularityRepository,
+      PublicationStatsRepository publicationStatsRepository) {
+    this.popularityRepository = popularityRepository;
+    this.publicationStatsRepository = publicationStatsRepository;
+  }
+
   /**
    * Adds a publication to a collection. If already present, INSERT IGNORE ile atlanır.
    */
@@ -20,7 +42,12 @@ public class CollectionItemRepository extends BaseRepository {
    */
   public void add(int collectionId, int pubId, Connection conn) {
     String sql = "INSERT IGNORE INTO collection_item (collection_id, pub_id) VALUES (?, ?)";
-    executeUpdate(conn, sql, collectionId, pubId);
+    if (executeUpdate(conn, sql, collectionId, pubId) > 0) {
+      popularityRepository.recordInteraction(pubId, Interaction.SAVE, conn);
+      publicationStatsRepository.recordSaves(pubId, 1, conn);
+      executeUpdate(conn, INCREMENT_PROFILE_SQL + "SELECT ?, topic_id, 1 FROM publication_topic WHERE pub_id = ?"
+          + INCREMENT_PROFILE_SUFFIX, collectionId, pubId);
+    }
   }
 
   /**
@@ -44,7 +71,17 @@ public class CollectionItemRepository extends BaseRepository {
       WHERE account_id = ? AND is_default = TRUE
       """;
 
-    executeUpdate(conn, sql, pubId, accountId);
+    int rows = executeUpdate(conn, sql, pubId, accountId);
+    if (rows > 0) {
+      popularityRepository.recordInteraction(pubId, Interaction.SAVE, conn);
+      publicationStatsRepository.recordSaves(pubId, rows, conn);
+      executeUpdate(conn, INCREMENT_PROFILE_SQL + """
+          SELECT c.collection_id, pt.topic_id, 1
+          FROM collection c
+          JOIN publication_topic pt ON pt.pub_id = ?
+          WHERE c.account_id = ? AND c.is_default = TRUE
+          """ + INCREMENT_PROFILE_SUFFIX, pubId, accountId);
+    }
   }
 
   /**
@@ -62,12 +99,14 @@ public class CollectionItemRepository extends BaseRepository {
    */
   public void deleteFromDefault(int accountId, int pubId, Connection conn) {
     String sql = """
-      DELETE ci FROM collection_item ci
+      SELECT ci.collection_id FROM collection_item ci
       JOIN collection c ON ci.collection_id = c.collection_id
       WHERE c.account_id = ? AND c.is_default = TRUE AND ci.pub_id = ?
       """;
 
-    executeUpdate(conn, sql, accountId, pubId);
+    for (int collectionId : findColumnMany(conn, sql, Integer.class, accountId, pubId)) {
+      deleteFromCollection(collectionId, pubId, conn);
+    }
   }
 
   /**
@@ -85,7 +124,17 @@ public class CollectionItemRepository extends BaseRepository {
    */
   public void deleteFromCollection(int collectionId, int pubId, Connection conn) {
     String sql = "DELETE FROM collection_item WHERE collection_id = ? AND pub_id = ?";
-    executeUpdate(conn, sql, collectionId, pubId);
+    int rows = executeUpdate(conn, sql, collectionId, pubId);
+    if (rows > 0) {
+      publicationStatsRepository.recordSaves(pubId, -rows, conn);
+      executeUpdate(conn, """
+          UPDATE collection_topic_profile ctp
+          JOIN publication_topic pt ON ctp.topic_id = pt.topic_id
+          SET ctp.weight = ctp.weight - 1
+          WHERE ctp.collection_id = ? AND pt.pub_id = ?
+          """, collectionId, pubId);
+      executeUpdate(conn, "DELETE FROM collection_topic_profile WHERE collection_id = ? AND weight <= 0", collectionId);
+    }
   }
 
   /**
@@ -1,21 +1,29 @@
 package com.airchive.repository;
 
+import com.airchive.db.Transaction;
 import com.airchive.dto.CreateOrUpdateCollectionRequest;
 import com.airchive.entity.Collection;
 import com.airchive.exception.EntityNotFoundException;
 import com.airchive.exception.ValidationException;
+import com.airchive.recommendation.CollectionProfileIndex;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 
 public class CollectionRepository extends BaseRepository {
 
+  private volatile CollectionProfileIndex profileIndex;
+
   public Collection createDefaultCollection(int accountId) {
     return withConnection(conn -> createDefaultCollection(accountId, conn));
   }
@@ -114,33 +122,90 @@ public class CollectionRepository extends BaseRepository {
         accountId);
   }
 
+  /**
+   * Returns a page of public collections recommended for an account. Collections are ranked by the dot
+   * product of their topic profile with the account's decayed topic affinities, then filled with the
+   * newest public collections. Anonymous callers get the newest public collections.
+   * <p>
+   * Once the {@link CollectionProfileIndex} is loaded, ranking happens in memory and only the returned
+   * page is read from the database; until then the ranking is computed from
+   * {@code collection_topic_profile} in SQL.
+   */
   public List<Collection> findRecommendedPublic(int accountId, int limit, int offset) {
-    if (accountId <= 0) {
-      return findRecentPublic(limit, offset);
-    }
-
     return withConnection(conn -> {
-      int poolSize = offset + limit + 50;
-
-      Set<Collection> recommended = new LinkedHashSet<>();
+      CollectionProfileIndex index = profileIndex;
+      if (index == null) {
+        return accountId <= 0
+            ? findRecentPublic(limit, offset, conn)
+            : page(findRecommendedPublicFromDatabase(accountId, offset + limit + 50, conn), limit, offset);
+      }
 
-      recommended.addAll(findAffinityBasedPublic(accountId, poolSize, conn));
+      if (accountId <= 0) {
+        return findPublicByIds(index.recent(limit, offset), conn);
+      }
 
+      int poolSize = offset + limit + 50;
+      Set<Integer> recommended = new LinkedHashSet<>(index.rank(findTopicAffinities(accountId, conn), poolSize));
       if (recommended.size() < poolSize) {
-        recommended.addAll(findRecentPublic(poolSize, 0, conn));
+        recommended.addAll(index.recent(poolSize, 0));
       }
+      return findPublicByIds(page(new ArrayList<>(recommended), limit, offset), conn);
+    });
+  }
 
-      List<Collection> finalList = new ArrayList<>(recommended);
-      if (offset >= finalList.size()) {
-        return List.of();
-      }
-      int toIndex = Math.min(offset + limit, finalList.size());
-      return finalList.subList(offset, toIndex);
+  /**
+   * Loads the public collections and their topic profiles and swaps in a new
+   * {@link CollectionProfileIndex}, replacing any previous snapshot.
+   */
+  public synchronized void refreshProfileIndex() {
+    profileIndex = withConnection(conn -> {
+      CollectionProfileIndex.Builder builder = CollectionProfileIndex.builder();
+      findMany(conn, "SELECT collection_id FROM collection WHERE is_public = TRUE ORDER BY created_at DESC, collection_id DESC",
+          rs -> builder.addCollection(rs.getInt("collection_id")));
+      findMany(conn, """
+          SELECT ctp.collection_id, ctp.topic_id, ctp.weight
+          FROM collection_topic_profile ctp
+          JOIN collection c ON ctp.collection_id = c.collection_id
+          WHERE c.is_public = TRUE
+          """,
+          rs -> builder.addWeight(rs.getInt("collection_id"), rs.getInt("topic_id"), rs.getInt("weight")));
+      return builder.build();
     });
   }
 
-  private List<Collection> findRecentPublic(int limit, int offset) {
-    return withConnection(conn -> findRecentPublic(limit, offset, conn));
+  /**
+   * Recomputes every collection's topic profile from its items, repairing any drift of the
+   * incrementally maintained weights, e.g. after publication topics were edited.
+   */
+  public void rebuildTopicProfiles() {
+    try (Transaction tx = new Transaction()) {
+      tx.begin();
+      Connection conn = tx.getConnection();
+      executeUpdate(conn, "DELETE FROM collection_topic_profile");
+      executeUpdate(conn, """
+          INSERT INTO collection_topic_profile (collection_id, topic_id, weight)
+          SELECT ci.collection_id, pt.topic_id, COUNT(*)
+          FROM collection_item ci
+          JOIN publication_topic pt ON ci.pub_id = pt.pub_id
+          GROUP BY ci.collection_id, pt.topic_id
+          """);
+      tx.commit();
+    }
+  }
+
+  private static <T> List<T> page(List<T> pool, int limit, int offset) {
+    if (offset >= pool.size()) {
+      return List.of();
+    }
+    return pool.subList(offset, Math.min(offset + limit, pool.size()));
+  }
+
+  private List<Collection> findRecommendedPublicFromDatabase(int accountId, int poolSize, Connection conn) {
+    Set<Collection> recommended = new LinkedHashSet<>(findAffinityBasedPublic(accountId, poolSize, conn));
+    if (recommended.size() < poolSize) {
+      recommended.addAll(findRecentPublic(poolSize, 0, conn));
+    }
+    return new ArrayList<>(recommended);
   }
 
   private List<Collection> findRecentPublic(int limit, int offset, Connection conn) {
@@ -149,20 +214,44 @@ public class CollectionRepository extends BaseRepository {
   }
 
   private List<Collection> findAffinityBasedPublic(int accountId, int limit, Connection conn) {
-    String sql = """
-      SELECT c.*, SUM(ta.score) AS total_affinity
+    String sql = String.format("""
+      SELECT c.*, SUM(ctp.weight * ta.score) AS total_affinity
       FROM collection c
-      JOIN collection_item ci ON c.collection_id = ci.collection_id
-      JOIN publication_topic pt ON ci.pub_id = pt.pub_id
-      JOIN topic_affinity ta ON pt.topic_id = ta.topic_id
+      JOIN collection_topic_profile ctp ON c.collection_id = ctp.collection_id
+      JOIN %s ta ON ctp.topic_id = ta.topic_id
       WHERE c.is_public = TRUE AND ta.account_id = ?
       GROUP BY c.collection_id
       ORDER BY total_affinity DESC
       LIMIT ?
-    """;
+    """, RecommendationRepository.decayedAffinityTable("topic_affinity", "topic_id"));
     return findMany(conn, sql, this::mapRowToCollection, accountId, limit);
   }
 
+  private Map<Integer, Double> findTopicAffinities(int accountId, Connection conn) {
+    Map<Integer, Double> affinities = new HashMap<>();
+    findMany(conn, "SELECT topic_id, score FROM "
+        + RecommendationRepository.decayedAffinityTable("topic_affinity", "topic_id") + " ta WHERE account_id = ?",
+        rs -> affinities.put(rs.getInt("topic_id"), rs.getDouble("score")),
+        accountId);
+    return affinities;
+  }
+
+  /**
+   * Loads the given collections in the given order, skipping those that no longer exist or are no
+   * longer public.
+   */
+  private List<Collection> findPublicByIds(List<Integer> ids, Connection conn) {
+    if (ids.isEmpty()) {
+      return List.of();
+    }
+    String placeholders = String.join(",", Collections.nCopies(ids.size(), "?"));
+    Map<Integer, Collection> byId = new HashMap<>();
+    findMany(conn, "SELECT * FROM collection WHERE is_public = TRUE AND collection_id IN (" + placeholders + ")",
+        this::mapRowToCollection, ids.toArray())
+        .forEach(c -> byId.put(c.collectionId(), c));
+    return ids.stream().map(byId::get).filter(Objects::nonNull).toList();
+  }
+
   public void delete(int collectionId) {
     withConnection(conn -> {
       delete(collectionId, conn);
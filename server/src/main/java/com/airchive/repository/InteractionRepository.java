@@ -1,23 +1,80 @@
 package com.airchive.repository;
 
+import com.airchive.db.Transaction;
+import com.airchive.db.WriteBehindQueue;
 import com.airchive.dto.InteractionSummary;
+import com.airchive.entity.Interaction;
 import com.airchive.exception.DataAccessException;
+import com.airchive.recommendation.SeenPublicationCache;
+import com.airchive.recommendation.ViewDedupWindow;
+import com.airchive.util.PropertyUtils;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 /**
  * Manages data persistence for user interactions with publications, such as
  * likes and views. This repository handles operations on the `publication_like`
  * and `publication_view` tables.
+ * <p>
+ * New likes and views are also folded into the {@code publication_popularity} table through
+ * {@link PopularityRepository} on the same connection, and new views are added to the account's
+ * already-seen filter in {@link SeenPublicationCache} if it is loaded.
+ * <p>
+ * Views are the highest-volume write of the application. Unless {@code views.writeBehind} is disabled,
+ * {@link #addView(int, int)} only buffers them in a bounded {@link WriteBehindQueue}, which writes them
+ * in batches of multi-row inserts, each in one transaction. {@link #shutdown()} must be called when the
+ * application stops so that buffered views are written. Repeated views of a publication by the same
+ * user within {@code views.dedupeWindowMinutes} are suppressed by a {@link ViewDedupWindow} before they
+ * reach the buffer.
+ * <p>
+ * Every like, unlike and view is also counted in the publication's {@code publication_stats} row
+ * through {@link PublicationStatsRepository}, on the connection of the write, which is where
+ * per-publication counts are read from.
  */
 public class InteractionRepository extends BaseRepository {
 
+  /** The temporary table written by {@link #benchmarkViewWrites(int, int)}. */
+  private static final String BENCHMARK_TABLE = "publication_view_benchmark";
+
+  private final PopularityRepository popularityRepository;
+  private final SeenPublicationCache seenPublications;
+  private final PublicationStatsRepository publicationStatsRepository;
+  private final WriteBehindQueue<View> views;
+  private final int viewBatchSize;
+  private final ViewDedupWindow viewDedup;
+
+  public InteractionRepository(PopularityRepository popularityRepository, SeenPublicationCache seenPublications,
+      PublicationStatsRepository publicationStatsRepository) {
+    this.popularityRepository = popularityRepository;
+    this.seenPublications = seenPublications;
+    this.publicationStatsRepository = publicationStatsRepository;
+    this.viewBatchSize = PropertyUtils.getIntProperty("views.batchSize", 500);
+    this.viewDedup = new ViewDedupWindow(
+        PropertyUtils.getIntProperty("views.dedupeWindowMinutes", 30) * 60_000L,
+        PropertyUtils.getIntProperty("views.dedupeMaxEntries", 100000));
+    this.views = PropertyUtils.getBooleanProperty("views.writeBehind", true)
+        ? new WriteBehindQueue<>("airchive-view-writer",
+            PropertyUtils.getIntProperty("views.queueCapacity", 10000),
+            viewBatchSize,
+            PropertyUtils.getIntProperty("views.flushMillis", 200),
+            PropertyUtils.getIntProperty("views.enqueueTimeoutMillis", 50),
+            PropertyUtils.getIntProperty("views.writeAttempts", 3),
+            this::writeViews)
+        : null;
+  }
+
   /**
    * Records a "like" for a publication by a user. If the user has already
    * liked the publication, this method updates the timestamp of the existing like.
@@ -33,12 +90,17 @@ public class InteractionRepository extends BaseRepository {
         """;
 
     withConnection(conn -> {
-      executeUpdate(
+      int rows = executeUpdate(
           conn,
           sql,
           accountId,
           pubId
       );
+      // 1 = new like, 2 = existing like refreshed; only new likes count towards popularity
+      if (rows == 1) {
+        popularityRepository.recordInteraction(pubId, Interaction.LIKE, conn);
+      }
+      publicationStatsRepository.recordLikes(pubId, rows == 1 ? 1 : 0, conn);
       return null;
     });
   }
@@ -51,12 +113,15 @@ public class InteractionRepository extends BaseRepository {
    */
   public void unlike(int accountId, int pubId) {
     withConnection(conn -> {
-      executeUpdate(
+      int rows = executeUpdate(
           conn,
           "DELETE FROM publication_like WHERE account_id = ? AND pub_id = ?",
           accountId,
           pubId
       );
+      if (rows > 0) {
+        publicationStatsRepository.recordLikes(pubId, -rows, conn);
+      }
       return null;
     });
   }
@@ -88,32 +153,6 @@ public class InteractionRepository extends BaseRepository {
     );
   }
 
-  /**
-   * Counts the total number of likes for a specific publication.
-   *
-   * @param pubId The ID of the publication.
-   * @return The total number of likes.
-   */
-  public int countLikes(int pubId) {
-    return withConnection(conn -> countLikes(pubId, conn));
-  }
-
-  /**
-   * Counts the likes for a publication using a provided connection.
-   *
-   * @param pubId The ID of the publication.
-   * @param conn The active database connection.
-   * @return The total number of likes.
-   */
-  public int countLikes(int pubId, Connection conn) {
-    return findColumnMany(
-        conn,
-        "SELECT COUNT(*) FROM publication_like WHERE pub_id = ?",
-        Integer.class,
-        pubId
-    ).stream().findFirst().orElse(0);
-  }
-
   /**
    * Counts the total number of likes across all publications in the system.
    *
@@ -127,58 +166,175 @@ public class InteractionRepository extends BaseRepository {
   }
 
   /**
-   * Records a "view" for a publication by a user. Multiple views by the
-   * same user are recorded as separate entries.
+   * Records a "view" for a publication by a user, unless the same user already had a view of the
+   * publication recorded within the de-duplication window. Views outside the window are recorded as
+   * separate entries.
+   * <p>
+   * The view is buffered and written in the background, timestamped with the time of this call. It is
+   * added to the already-seen filter right away. When the buffer stays full for
+   * {@code views.enqueueTimeoutMillis}, the view is written synchronously instead, so a saturated
+   * database slows callers down rather than losing views. If that write fails, or the publication no
+   * longer exists, the view is removed from the de-duplication window again, so a retry is recorded.
    *
    * @param accountId The ID of the user viewing the publication.
    * @param pubId The ID of the publication being viewed.
+   * @return {@code true} if the view was recorded, {@code false} if it was suppressed as a duplicate or
+   * its publication no longer exists
    */
-  public void addView(int accountId, int pubId) {
-    withConnection(conn -> {
-      addView(accountId, pubId, conn);
-      return null;
-    });
+  public boolean addView(int accountId, int pubId) {
+    long now = System.currentTimeMillis();
+    if (!viewDedup.tryRecord(accountId, pubId, now)) return false;
+
+    View view = new View(accountId, pubId, LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS));
+    if (views != null && views.offer(view)) {
+      seenPublications.recordView(accountId, pubId);
+      return true;
+    }
+    boolean written = false;
+    try {
+      written = !writeViews(List.of(view)).isEmpty();
+    } finally {
+      // The view was not recorded, so a retry must not be suppressed as its duplicate
+      if (!written) viewDedup.release(accountId, pubId, now);
+    }
+    return written;
   }
 
   /**
-   * Records a "view" for a publication using a provided connection.
+   * Writes a batch of views in one transaction: views of publications that no longer exist are
+   * dropped, the others are inserted with multi-row statements and counted in the popularity sums and
+   * the publication stats. Identical views, i.e. by the same user on the same publication within the
+   * same second, are recorded once.
+   * <p>
+   * The in-memory popularity accumulators, topic leaderboards, trending counters, view counters and
+   * already-seen filters are only updated once the transaction commits, so a batch that fails changes
+   * nothing and can be written again.
    *
-   * @param accountId The ID of the user.
-   * @param pubId The ID of the publication.
-   * @param conn The active database connection.
+   * @return the views written
    */
-  public void addView(int accountId, int pubId, Connection conn) {
-    executeUpdate(conn,
-        "INSERT INTO publication_view (account_id, pub_id) VALUES (?, ?)",
-        accountId,
-        pubId
-    );
+  private List<View> writeViews(List<View> batch) {
+    List<View> unique = new ArrayList<>(new LinkedHashSet<>(batch));
+    Map<Integer, Integer> viewsByPub = new HashMap<>();
+    Map<Integer, Double> storedPopularity;
+
+    try (Transaction tx = new Transaction()) {
+      tx.begin();
+      Connection conn = tx.getConnection();
+
+      List<Integer> pubIds = unique.stream().map(View::pubId).distinct().toList();
+      Set<Integer> existing = new HashSet<>(findColumnMany(conn,
+          "SELECT pub_id FROM publication WHERE pub_id IN ("
+              + pubIds.stream().map(id -> "?").collect(Collectors.joining(", ")) + ")",
+          Integer.class, pubIds.toArray()));
+      unique.removeIf(view -> !existing.contains(view.pubId()));
+      if (unique.isEmpty()) return unique;
+
+      insertViews(unique, "publication_view", conn);
+      for (View view : unique) {
+        viewsByPub.merge(view.pubId(), 1, Integer::sum);
+      }
+      storedPopularity = popularityRepository.recordStoredViews(viewsByPub, conn);
+      publicationStatsRepository.recordViews(viewsByPub, conn);
+      tx.commit();
+    }
+
+    popularityRepository.applyViews(viewsByPub, storedPopularity);
+    publicationStatsRepository.applyViews(viewsByPub);
+    for (View view : unique) {
+      seenPublications.recordView(view.accountId(), view.pubId());
+    }
+    return unique;
   }
 
   /**
-   * Counts the total number of views for a specific publication.
-   *
-   * @param pubId The ID of the publication.
-   * @return The total number of views.
+   * Inserts views into a table shaped like {@code publication_view} with multi-row
+   * {@code INSERT IGNORE} statements of at most {@code views.batchSize} rows, so that a view already
+   * recorded in the same second does not fail the whole batch.
    */
-  public int countViews(int pubId) {
-    return withConnection(conn -> countViews(pubId, conn));
+  private void insertViews(List<View> rows, String table, Connection conn) {
+    for (int from = 0; from < rows.size(); from += viewBatchSize) {
+      List<View> chunk = rows.subList(from, Math.min(rows.size(), from + viewBatchSize));
+      Object[] params = new Object[chunk.size() * 3];
+      for (int i = 0; i < chunk.size(); i++) {
+        params[i * 3] = chunk.get(i).accountId();
+        params[i * 3 + 1] = chunk.get(i).pubId();
+        params[i * 3 + 2] = chunk.get(i).viewedAt();
+      }
+      executeUpdate(conn,
+          "INSERT IGNORE INTO " + table + " (account_id, pub_id, viewed_at) VALUES "
+              + String.join(", ", Collections.nCopies(chunk.size(), "(?, ?, ?)")),
+          params);
+    }
   }
 
   /**
-   * Counts the views for a publication using a provided connection.
+   * Compares the cost of writing views one per transaction, as the synchronous path does, with
+   * writing them in multi-row batches, as the write-behind path does. Both paths write the same views
+   * to a temporary copy of {@code publication_view} on a single connection and commit them, so the
+   * per-view commits that batching saves are measured, but not the pool checkout of the synchronous
+   * path. The temporary table is dropped afterwards, and {@code publication_view} is never written.
    *
-   * @param pubId The ID of the publication.
-   * @param conn The active database connection.
-   * @return The total number of views.
+   * @param accountId The ID of the account the views are attributed to.
+   * @param events The number of views written by each path.
+   * @return the measurements, together with the write-behind counters since startup
    */
-  public int countViews(int pubId, Connection conn) {
-    return findColumnMany(
-        conn,
-        "SELECT COUNT(*) FROM publication_view WHERE pub_id = ?",
-        Integer.class,
-        pubId
-    ).stream().findFirst().orElse(0);
+  public ViewWriteBenchmark benchmarkViewWrites(int accountId, int events) {
+    LocalDateTime base = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
+    List<View> rows = new ArrayList<>(events);
+    for (int i = 0; i < events; i++) {
+      rows.add(new View(accountId, i % 1000 + 1, base.plusSeconds(i)));
+    }
+
+    return withConnection(conn -> {
+      executeUpdate(conn, "CREATE TEMPORARY TABLE " + BENCHMARK_TABLE + " LIKE publication_view");
+      try {
+        long start = System.nanoTime();
+        for (View view : rows) {
+          executeUpdate(conn, "INSERT INTO " + BENCHMARK_TABLE + " (account_id, pub_id, viewed_at) VALUES (?, ?, ?)",
+              view.accountId(), view.pubId(), view.viewedAt());
+        }
+        long perRowNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        conn.setAutoCommit(false);
+        try {
+          insertViews(rows, BENCHMARK_TABLE, conn);
+          conn.commit();
+        } finally {
+          conn.setAutoCommit(true);
+        }
+        long batchedNanos = System.nanoTime() - start;
+
+        return new ViewWriteBenchmark(events, viewBatchSize, perRowNanos / 1000.0 / events,
+            batchedNanos / 1000.0 / events, viewStats());
+      } finally {
+        executeUpdate(conn, "DROP TEMPORARY TABLE IF EXISTS " + BENCHMARK_TABLE);
+      }
+    });
+  }
+
+  /**
+   * @return the counters of the view write-behind buffer, or {@code null} if views are written
+   * synchronously
+   */
+  public WriteBehindQueue.Stats viewStats() {
+    return views == null ? null : views.stats();
+  }
+
+  /**
+   * @return the counters of the view de-duplication window and of the view write-behind buffer
+   */
+  public ViewIngestionStats viewIngestionStats() {
+    return new ViewIngestionStats(viewDedup.stats(), viewStats());
+  }
+
+  /**
+   * Writes every buffered view and stops the background writer.
+   */
+  public void shutdown() {
+    if (views != null) {
+      views.close();
+    }
   }
 
   /**
@@ -255,34 +411,6 @@ public class InteractionRepository extends BaseRepository {
     });
   }
 
-  public Map<Integer, Integer> getViewCounts(List<Integer> pubIds) {
-    return withConnection(conn -> getViewCounts(pubIds, conn));
-  }
-
-  public Map<Integer, Integer> getViewCounts(List<Integer> pubIds, Connection conn) {
-    if (pubIds.isEmpty()) return Map.of();
-
-    String placeholders = pubIds.stream().map(id -> "?").collect(Collectors.joining(", "));
-    String sql = "SELECT pub_id, COUNT(*) AS views FROM publication_view WHERE pub_id IN (" + placeholders + ") GROUP BY pub_id";
-
-    return findMany(conn, sql, rs -> Map.entry(rs.getInt("pub_id"), rs.getInt("views")), pubIds.toArray())
-        .stream().collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
-  }
-
-  public Map<Integer, Integer> getLikeCounts(List<Integer> pubIds) {
-    return withConnection(conn -> getLikeCounts(pubIds, conn));
-  }
-
-  public Map<Integer, Integer> getLikeCounts(List<Integer> pubIds, Connection conn) {
-    if (pubIds == null || pubIds.isEmpty()) return Map.of();
-
-    String placeholders = pubIds.stream().map(id -> "?").collect(Collectors.joining(", "));
-    String sql = "SELECT pub_id, COUNT(*) AS likes FROM publication_like WHERE pub_id IN (" + placeholders + ") GROUP BY pub_id";
-
-    return findMany(conn, sql, rs -> Map.entry(rs.getInt("pub_id"), rs.getInt("likes")), pubIds.toArray())
-        .stream().collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
-  }
-
   public int countViewsByAccount(int accountId) {
     return withConnection(conn ->
         findOne(conn,
@@ -337,4 +465,29 @@ public class InteractionRepository extends BaseRepository {
       throw new DataAccessException("Unknown interaction_type: " + typeStr, e);
     }
   }
-}
\ No newline at end of file
+
+  /**
+   * A buffered view.
+   */
+  private record View(int accountId, int pubId, LocalDateTime viewedAt) {}
+
+  /**
+   * The outcome of a {@link #benchmarkViewWrites(int, int)} run.
+   *
+   * @param events the number of views written by each path
+   * @param batchSize the maximum number of rows per multi-row insert
+   * @param perRowMicros the mean cost of a view written in its own transaction, in microseconds
+   * @param batchedMicros the mean cost of a view written in a batch, in microseconds
+   * @param writeBehind the counters of the view write-behind buffer, or {@code null} if it is disabled
+   */
+  public record ViewWriteBenchmark(int events, int batchSize, double perRowMicros, double batchedMicros,
+      WriteBehindQueue.Stats writeBehind) {}
+
+  /**
+   * The counters of view ingestion since startup.
+   *
+   * @param dedupe the counted and suppressed views of the de-duplication window
+   * @param writeBehind the counters of the view write-behind buffer, or {@code null} if it is disabled
+   */
+  public record ViewIngestionStats(ViewDedupWindow.Stats dedupe, WriteBehindQueue.Stats writeBehind) {}
+}
@@ -0,0 +1,356 @@
+package com.airchive.repository;
+
+import com.airchive.entity.Interaction;
+import com.airchive.recommendation.PopularityAccumulators;
+import com.airchive.recommendation.TopicLeaderboards;
+import com.airchive.recommendation.TrendingCounters;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Manages the materialized {@code publication_popularity} table used to rank publications by
+ * time-decayed interaction volume.
+ * <p>
+ * Each row stores the decayed view, like and save sums of a published publication as of
+ * {@code decayed_at}, together with the resulting {@code popularity_score}, so ranking queries only
+ * have to join this table instead of aggregating the raw interaction tables on every request.
+ * <p>
+ * The sums are owned by in-memory {@link PopularityAccumulators}, loaded from the table by
+ * {@link #rebuildAll()}. Recording an interaction updates them in constant time without touching the
+ * database, and {@link #persist()} periodically writes the changed rows back in one batch. Until the
+ * accumulators are loaded, and for publications they do not track yet, interactions are folded into
+ * the row directly in SQL instead.
+ * <p>
+ * Because the score also carries an age penalty (gravity) that changes with time, {@link #decayAll()}
+ * should be run periodically to rescale every row to the current time. {@link #rebuildAll()} recomputes
+ * the sums exactly from the raw interaction rows, which repairs the drift left behind by unlikes and
+ * removals that are not subtracted incrementally.
+ * <p>
+ * Each recorded interaction also moves the publication on the in-memory {@link TopicLeaderboards} of its
+ * topics, so they stay current between two rebuilds, and is counted by the {@link TrendingCounters}.
+ */
+public class PopularityRepository extends BaseRepository {
+
+  /** The exponent applied to the publication's age when computing the popularity score. */
+  private static final double GRAVITY = 1.8;
+  /** Offset in hours added to the publication's age so new publications are not over-boosted. */
+  private static final int AGE_OFFSET_HOURS = 2;
+
+  /** The decay rate for view interactions, in hours. */
+  private static final int VIEW_DECAY_HOURS = 72;
+  /** The decay rate for like interactions, in hours. */
+  private static final int LIKE_DECAY_HOURS = 168;
+  /** The decay rate for save interactions, in hours. */
+  private static final int SAVE_DECAY_HOURS = 336;
+
+  private final TopicLeaderboards topicLeaderboards;
+  private final TrendingCounters trendingCounters;
+  private final PopularityAccumulators accumulators = new PopularityAccumulators(
+      Map.of(Interaction.VIEW, VIEW_DECAY_HOURS, Interaction.LIKE, LIKE_DECAY_HOURS,
+          Interaction.SAVE, SAVE_DECAY_HOURS),
+      GRAVITY, AGE_OFFSET_HOURS);
+
+  /**
+   * @param topicLeaderboards the per-topic leaderboards to keep updated with new popularity scores
+   * @param trendingCounters the sliding-window counters every interaction is counted by
+   */
+  public PopularityRepository(TopicLeaderboards topicLeaderboards, TrendingCounters trendingCounters) {
+    this.topicLeaderboards = topicLeaderboards;
+    this.trendingCounters = trendingCounters;
+  }
+
+  /**
+   * Folds a single interaction into the popularity row of a publication.
+   *
+   * @param pubId The ID of the publication that was interacted with.
+   * @param type The type of interaction.
+   */
+  public void recordInteraction(int pubId, Interaction type) {
+    withConnection(conn -> {
+      recordInteraction(pubId, type, conn);
+      return null;
+    });
+  }
+
+  /**
+   * Folds a single interaction into the popularity row of a publication using a provided connection.
+   * <p>
+   * The sums are first decayed to the current time, then the new interaction is added with a weight of
+   * one. This happens in memory when the publication's accumulator is loaded, and in the stored row
+   * otherwise, in which case the connection is used. Interactions on unpublished publications are
+   * ignored. The publication's new score is applied to the topic leaderboards, and the interaction is
+   * counted for the trending feed.
+   *
+   * @param pubId The ID of the publication that was interacted with.
+   * @param type The type of interaction.
+   * @param conn The active database connection.
+   */
+  public void recordInteraction(int pubId, Interaction type, Connection conn) {
+    long now = System.currentTimeMillis();
+    trendingCounters.record(pubId, type, now);
+    double score = accumulators.record(pubId, type, now);
+    if (!Double.isNaN(score)) {
+      topicLeaderboards.update(pubId, score);
+      return;
+    }
+
+    upsertStored(pubId, type, 1, conn);
+    if (topicLeaderboards.tracks(pubId)) {
+      findStoredScore(pubId, conn).ifPresent(stored -> topicLeaderboards.update(pubId, stored));
+    }
+  }
+
+  /**
+   * Folds views into the stored popularity rows of the publications whose sums are not held in memory,
+   * using a provided connection, without changing any in-memory state. Once the connection's
+   * transaction commits, the result must be passed to {@link #applyViews(Map, Map)}, so that a batch
+   * that rolls back leaves the accumulators, the topic leaderboards and the trending counters alone.
+   *
+   * @param views The number of views, by publication ID.
+   * @param conn The active database connection.
+   * @return the new scores of the publications whose stored rows were updated, by publication ID;
+   * {@code NaN} when the score is not needed by the topic leaderboards
+   */
+  public Map<Integer, Double> recordStoredViews(Map<Integer, Integer> views, Connection conn) {
+    Map<Integer, Double> stored = new HashMap<>();
+    views.forEach((pubId, count) -> {
+      if (accumulators.tracks(pubId)) return;
+      upsertStored(pubId, Interaction.VIEW, count, conn);
+      stored.put(pubId, topicLeaderboards.tracks(pubId)
+          ? findStoredScore(pubId, conn).orElse(Double.NaN) : Double.NaN);
+    });
+    return stored;
+  }
+
+  /**
+   * Records committed views in memory: in the accumulators of the publications that were not folded
+   * into their stored rows by {@link #recordStoredViews(Map, Connection)}, on the topic leaderboards, and
+   * in the trending counters.
+   *
+   * @param views The number of views, by publication ID.
+   * @param stored The result of {@link #recordStoredViews(Map, Connection)} for the same views.
+   */
+  public void applyViews(Map<Integer, Integer> views, Map<Integer, Double> stored) {
+    long now = System.currentTimeMillis();
+    views.forEach((pubId, count) -> {
+      double score = stored.getOrDefault(pubId, Double.NaN);
+      for (int i = 0; i < count; i++) {
+        trendingCounters.record(pubId, Interaction.VIEW, now);
+        if (!stored.containsKey(pubId)) score = accumulators.record(pubId, Interaction.VIEW, now);
+      }
+      if (!Double.isNaN(score)) topicLeaderboards.update(pubId, score);
+    });
+  }
+
+  /**
+   * Decays the stored sums of a published publication to the current time and adds {@code count}
+   * interactions of the given type, creating its row if needed.
+   */
+  private void upsertStored(int pubId, Interaction type, int count, Connection conn) {
+    String sql = """
+    INSERT INTO publication_popularity (pub_id, view_score, like_score, save_score, popularity_score, decayed_at)
+    SELECT p.pub_id, ?, ?, ?, 0, NOW()
+    FROM publication p
+    WHERE p.pub_id = ? AND p.status = 'PUBLISHED'
+    ON DUPLICATE KEY UPDATE
+    """ + decayAssignments("VALUES(view_score)", "VALUES(like_score)", "VALUES(save_score)")
+        + ", popularity_score = " + scoreExpression("");
+
+    executeUpdate(conn, sql,
+        type == Interaction.VIEW ? count : 0,
+        type == Interaction.LIKE ? count : 0,
+        type == Interaction.SAVE ? count : 0,
+        pubId);
+  }
+
+  private Optional<Double> findStoredScore(int pubId, Connection conn) {
+    return findOne(conn, "SELECT popularity_score FROM publication_popularity WHERE pub_id = ?",
+        rs -> rs.getDouble("popularity_score"), pubId);
+  }
+
+  /**
+   * Creates an empty popularity row for a newly published publication, so it is ranked before its
+   * first interaction arrives, and starts accumulating its interactions in memory.
+   *
+   * @param pubId The ID of the published publication.
+   * @param conn The active database connection.
+   */
+  public void ensureRow(int pubId, Connection conn) {
+    executeUpdate(conn, "INSERT IGNORE INTO publication_popularity (pub_id) VALUES (?)", pubId);
+    if (accumulators.isLoaded()) {
+      long now = System.currentTimeMillis();
+      findOne(conn, "SELECT TIMESTAMPDIFF(SECOND, submitted_at, NOW()) AS age FROM publication WHERE pub_id = ?",
+          rs -> rs.getLong("age"), pubId)
+          .ifPresent(age -> accumulators.register(pubId, now - age * 1000, now));
+    }
+  }
+
+  /**
+   * Writes the popularity rows of every publication whose sums changed in memory since the last call.
+   */
+  public void persist() {
+    write(accumulators.drainDirty(System.currentTimeMillis()));
+  }
+
+  /**
+   * Rescales every stored sum to the current time and recomputes all popularity scores.
+   * This is cheap compared to {@link #rebuildAll()} as it only touches one row per publication. Once
+   * the accumulators are loaded, the rescaled rows are computed in memory and written in one batch.
+   */
+  public void decayAll() {
+    if (accumulators.isLoaded()) {
+      write(accumulators.drainAll(System.currentTimeMillis()));
+      return;
+    }
+    withConnection(conn -> {
+      executeUpdate(conn, "UPDATE publication_popularity SET "
+          + decayAssignments("0", "0", "0"));
+      refreshScores(conn);
+      return null;
+    });
+  }
+
+  /**
+   * Recomputes every popularity row exactly from the raw {@code publication_view},
+   * {@code publication_like} and {@code collection_item} rows, refreshes all scores, and reloads the
+   * in-memory accumulators from the result. Increments accumulated in memory but not yet persisted
+   * are already counted by the raw rows.
+   * <p>
+   * Interactions recorded while the recompute runs are captured and replayed onto the reloaded
+   * accumulators, and nothing is persisted until then. An interaction whose transaction commits just
+   * before the recompute reads the raw rows, but that was recorded after the capture began, is counted
+   * twice; the next rebuild corrects it.
+   */
+  public void rebuildAll() {
+    accumulators.beginCapture();
+    try {
+      rebuildRows();
+    } finally {
+      accumulators.endCapture();
+    }
+  }
+
+  private void rebuildRows() {
+    withConnection(conn -> {
+      String sql = String.format("""
+      INSERT INTO publication_popularity (pub_id, view_score, like_score, save_score, popularity_score, decayed_at)
+      SELECT p.pub_id, COALESCE(v.score, 0), COALESCE(l.score, 0), COALESCE(s.score, 0), 0, NOW()
+      FROM publication p
+      LEFT JOIN (
+        SELECT pub_id, SUM(EXP(-TIMESTAMPDIFF(SECOND, viewed_at, NOW()) / %1$d)) AS score
+        FROM publication_view GROUP BY pub_id
+      ) v ON v.pub_id = p.pub_id
+      LEFT JOIN (
+        SELECT pub_id, SUM(EXP(-TIMESTAMPDIFF(SECOND, liked_at, NOW()) / %2$d)) AS score
+        FROM publication_like GROUP BY pub_id
+      ) l ON l.pub_id = p.pub_id
+      LEFT JOIN (
+        SELECT pub_id, SUM(EXP(-TIMESTAMPDIFF(SECOND, added_at, NOW()) / %3$d)) AS score
+        FROM collection_item GROUP BY pub_id
+      ) s ON s.pub_id = p.pub_id
+      WHERE p.status = 'PUBLISHED'
+      ON DUPLICATE KEY UPDATE
+        view_score = VALUES(view_score),
+        like_score = VALUES(like_score),
+        save_score = VALUES(save_score),
+        decayed_at = VALUES(decayed_at)
+      """, VIEW_DECAY_HOURS * 3600, LIKE_DECAY_HOURS * 3600, SAVE_DECAY_HOURS * 3600);
+
+      executeUpdate(conn, sql);
+      refreshScores(conn);
+      accumulators.loadAll(findAccumulatorEntries(conn));
+      return null;
+    });
+  }
+
+  /**
+   * Loads the in-memory accumulators from the stored popularity rows as they are, without the exact
+   * recompute of {@link #rebuildAll()}. Used on startup when the recompute is deferred.
+   */
+  public void loadAccumulators() {
+    withConnection(conn -> {
+      accumulators.loadAll(findAccumulatorEntries(conn));
+      return null;
+    });
+  }
+
+  private List<PopularityAccumulators.Entry> findAccumulatorEntries(Connection conn) {
+    long now = System.currentTimeMillis();
+    String sql = String.format("""
+    SELECT pp.pub_id, TIMESTAMPDIFF(SECOND, p.submitted_at, NOW()) AS age,
+      pp.view_score * EXP(-TIMESTAMPDIFF(SECOND, pp.decayed_at, NOW()) / %1$d) AS view_score,
+      pp.like_score * EXP(-TIMESTAMPDIFF(SECOND, pp.decayed_at, NOW()) / %2$d) AS like_score,
+      pp.save_score * EXP(-TIMESTAMPDIFF(SECOND, pp.decayed_at, NOW()) / %3$d) AS save_score
+    FROM publication_popularity pp
+    JOIN publication p ON p.pub_id = pp.pub_id
+    WHERE p.status = 'PUBLISHED'
+    """, VIEW_DECAY_HOURS * 3600, LIKE_DECAY_HOURS * 3600, SAVE_DECAY_HOURS * 3600);
+
+    return findMany(conn, sql, rs -> {
+      double[] sums = new double[Interaction.values().length];
+      sums[Interaction.VIEW.ordinal()] = rs.getDouble("view_score");
+      sums[Interaction.LIKE.ordinal()] = rs.getDouble("like_score");
+      sums[Interaction.SAVE.ordinal()] = rs.getDouble("save_score");
+      return new PopularityAccumulators.Entry(rs.getInt("pub_id"), now - rs.getLong("age") * 1000, sums, now);
+    });
+  }
+
+  /**
+   * Writes the given in-memory sums and their scores to the popularity rows in one batch. Rows of
+   * publications deleted in the meantime are skipped.
+   */
+  private void write(List<PopularityAccumulators.Entry> entries) {
+    if (entries.isEmpty()) return;
+
+    List<Object[]> rows = new ArrayList<>(entries.size());
+    for (PopularityAccumulators.Entry entry : entries) {
+      rows.add(new Object[] {
+          entry.sum(Interaction.VIEW), entry.sum(Interaction.LIKE), entry.sum(Interaction.SAVE),
+          accumulators.score(entry, entry.asOf()), entry.pubId()});
+    }
+    withConnection(conn -> executeBatch(conn, """
+    UPDATE publication_popularity
+    SET view_score = ?, like_score = ?, save_score = ?, popularity_score = ?, decayed_at = NOW()
+    WHERE pub_id = ?
+    """, rows));
+  }
+
+  private void refreshScores(Connection conn) {
+    executeUpdate(conn, """
+    UPDATE publication_popularity pp
+    JOIN publication p ON p.pub_id = pp.pub_id
+    """ + "SET pp.popularity_score = " + scoreExpression("pp."));
+  }
+
+  /**
+   * Builds the expression that turns the stored sums into a popularity score: the weighted sum of
+   * interactions divided by the publication's age raised to {@link #GRAVITY}. The publication table
+   * must be joined as {@code p}.
+   */
+  private static String scoreExpression(String prefix) {
+    return "(" + prefix + "view_score * " + Interaction.VIEW.getAffinityWeight()
+        + " + " + prefix + "like_score * " + Interaction.LIKE.getAffinityWeight()
+        + " + " + prefix + "save_score * " + Interaction.SAVE.getAffinityWeight()
+        + ") / POWER(GREATEST(1, TIMESTAMPDIFF(HOUR, p.submitted_at, NOW())) + "
+        + AGE_OFFSET_HOURS + ", " + GRAVITY + ")";
+  }
+
+  /**
+   * Builds the assignment list that decays the stored sums from {@code decayed_at} to the current
+   * time and adds the given increments. {@code decayed_at} is assigned last, since MySQL evaluates
+   * single-table assignments from left to right.
+   */
+  private static String decayAssignments(String viewIncrement, String likeIncrement, String saveIncrement) {
+    return String.format("""
+      view_score = view_score * EXP(-TIMESTAMPDIFF(SECOND, decayed_at, NOW()) / %d) + %s,
+      like_score = like_score * EXP(-TIMESTAMPDIFF(SECOND, decayed_at, NOW()) / %d) + %s,
+      save_score = save_score * EXP(-TIMESTAMPDIFF(SECOND, decayed_at, NOW()) / %d) + %s,
+      decayed_at = NOW()""", VIEW_DECAY_HOURS * 3600, viewIncrement,
+        LIKE_DECAY_HOURS * 3600, likeIncrement,
+        SAVE_DECAY_HOURS * 3600, saveIncrement);
+  }
+}
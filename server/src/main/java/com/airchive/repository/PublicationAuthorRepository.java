@@ -17,6 +17,10 @@ import java.util.stream.Collectors;
  * Manages the relationship between publications and their authors by interacting
  * with the `publication_author` relationship table. This repository provides methods
  * to add, remove, and query the authors associated with a publication.
+ * <p>
+ * Changing the authors of a published publication does not update the recommendation candidate index;
+ * callers must queue the publication with {@link RecommendationRepository#indexPublication(int)} once
+ * the change is committed.
  */
 public class PublicationAuthorRepository extends BaseRepository {
 
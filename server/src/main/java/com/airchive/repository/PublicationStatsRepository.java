@@ -0,0 +1,251 @@
+package com.airchive.repository;
+
+import com.airchive.db.Transaction;
+import com.airchive.recommendation.PublicationCounters;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Manages the denormalized {@code publication_stats} table: one row per publication with its number
+ * of views, likes and saves and the time of its latest interaction, so that counts are read with a
+ * primary-key lookup instead of counting {@code publication_view}, {@code publication_like} and
+ * {@code collection_item} rows.
+ * <p>
+ * Rows are maintained by {@link InteractionRepository} and {@link CollectionItemRepository} on the
+ * connection of the interaction write, so both commit together. View and like counts are also kept in
+ * the in-memory {@link PublicationCounters}, seeded from the table by {@link #loadCounters()}, and
+ * served from there once loaded. Views are added to the counters only after their batch commits.
+ * <p>
+ * Removals the writers do not see, such as the interactions cascaded away with a deleted account or
+ * collection, or writes rolled back by a caller's transaction, make the table drift.
+ * {@link #reconcile(int)} recounts the raw rows and repairs it, and applies the same corrections to the
+ * in-memory counters; a rolled-back write leaves the counters ahead until the next restart.
+ */
+public class PublicationStatsRepository extends BaseRepository {
+
+  private static final String UPSERT_PREFIX =
+      "INSERT INTO publication_stats (pub_id, view_count, like_count, save_count, last_interaction_at) VALUES ";
+
+  private static final String UPSERT_SUFFIX = """
+
+      ON DUPLICATE KEY UPDATE
+        view_count = view_count + VALUES(view_count),
+        like_count = like_count + VALUES(like_count),
+        save_count = save_count + VALUES(save_count),
+        last_interaction_at = VALUES(last_interaction_at)
+      """;
+
+  private final PublicationCounters counters;
+
+  public PublicationStatsRepository(PublicationCounters counters) {
+    this.counters = counters;
+  }
+
+  /**
+   * Adds views to the stats of publications using a provided connection, with a single multi-row
+   * upsert. The in-memory counters are left alone until {@link #applyViews(Map)} is called once the
+   * connection's transaction commits.
+   *
+   * @param views The number of views added, by publication ID.
+   * @param conn The active database connection.
+   */
+  public void recordViews(Map<Integer, Integer> views, Connection conn) {
+    if (views.isEmpty()) return;
+
+    List<Object> params = new ArrayList<>(views.size() * 4);
+    views.forEach((pubId, count) -> {
+      params.add(pubId);
+      params.add(count);
+      params.add(0);
+      params.add(0);
+    });
+    executeUpdate(conn, UPSERT_PREFIX + String.join(", ", Collections.nCopies(views.size(), "(?, ?, ?, ?, NOW())"))
+        + UPSERT_SUFFIX, params.toArray());
+  }
+
+  /**
+   * Adds views recorded by {@link #recordViews(Map, Connection)} to the in-memory counters, once their
+   * transaction committed.
+   *
+   * @param views The number of views added, by publication ID.
+   */
+  public void applyViews(Map<Integer, Integer> views) {
+    views.forEach(counters::addViews);
+  }
+
+  /**
+   * Adds to the like count of a publication using a provided connection. A non-negative delta also
+   * updates the time of its latest interaction, so a refreshed like passes zero.
+   *
+   * @param pubId The ID of the publication.
+   * @param delta The number of likes added, negative when likes are removed.
+   * @param conn The active database connection.
+   */
+  public void recordLikes(int pubId, int delta, Connection conn) {
+    record(pubId, 0, delta, 0, conn);
+    counters.addLikes(pubId, delta);
+  }
+
+  /**
+   * Adds to the save count of a publication using a provided connection. A non-negative delta also
+   * updates the time of its latest interaction.
+   *
+   * @param pubId The ID of the publication.
+   * @param delta The number of saves added, negative when saves are removed.
+   * @param conn The active database connection.
+   */
+  public void recordSaves(int pubId, int delta, Connection conn) {
+    record(pubId, 0, 0, delta, conn);
+  }
+
+  /**
+   * Adds to the counts of a publication. Increments are upserted and update the time of its latest
+   * interaction; decrements only update an existing row, and never take a count below zero.
+   */
+  private void record(int pubId, int views, int likes, int saves, Connection conn) {
+    if (views >= 0 && likes >= 0 && saves >= 0) {
+      executeUpdate(conn, UPSERT_PREFIX + "(?, ?, ?, ?, NOW())" + UPSERT_SUFFIX, pubId, views, likes, saves);
+    } else {
+      executeUpdate(conn, """
+          UPDATE publication_stats SET
+            view_count = GREATEST(0, view_count + ?),
+            like_count = GREATEST(0, like_count + ?),
+            save_count = GREATEST(0, save_count + ?)
+          WHERE pub_id = ?
+          """, views, likes, saves, pubId);
+    }
+  }
+
+  /**
+   * Returns the view and like counts of a publication.
+   *
+   * @param pubId The ID of the publication.
+   * @return the counts, zero if the publication has no stats row
+   */
+  public PublicationCounters.Counts findCounts(int pubId) {
+    return findCounts(List.of(pubId)).get(pubId);
+  }
+
+  /**
+   * Returns the view and like counts of publications, from memory once the counters are loaded and
+   * with a primary-key lookup otherwise.
+   *
+   * @param pubIds The IDs of the publications.
+   * @return the counts of every requested publication, zero if it has no stats row
+   */
+  public Map<Integer, PublicationCounters.Counts> findCounts(List<Integer> pubIds) {
+    if (pubIds.isEmpty()) return Map.of();
+    Map<Integer, PublicationCounters.Counts> counts = counters.getAll(pubIds);
+    if (counts != null) return counts;
+
+    Map<Integer, PublicationCounters.Counts> stored = new HashMap<>(pubIds.size() * 4 / 3 + 1);
+    for (Integer pubId : pubIds) {
+      stored.put(pubId, new PublicationCounters.Counts(0, 0));
+    }
+    withConnection(conn -> findMany(conn,
+        "SELECT pub_id, view_count, like_count FROM publication_stats WHERE pub_id IN ("
+            + String.join(", ", Collections.nCopies(pubIds.size(), "?")) + ")",
+        rs -> Map.entry(rs.getInt("pub_id"),
+            new PublicationCounters.Counts(rs.getLong("view_count"), rs.getLong("like_count"))),
+        pubIds.toArray()))
+        .forEach(entry -> stored.put(entry.getKey(), entry.getValue()));
+    return stored;
+  }
+
+  /**
+   * Seeds the in-memory view and like counters from {@code publication_stats}.
+   *
+   * @return the number of publications with a stats row
+   */
+  public int loadCounters() {
+    Map<Integer, PublicationCounters.Counts> counts = new HashMap<>();
+    withConnection(conn -> findMany(conn, "SELECT pub_id, view_count, like_count FROM publication_stats",
+        rs -> Map.entry(rs.getInt("pub_id"),
+            new PublicationCounters.Counts(rs.getLong("view_count"), rs.getLong("like_count")))))
+        .forEach(entry -> counts.put(entry.getKey(), entry.getValue()));
+    counters.loadAll(counts);
+    return counts.size();
+  }
+
+  /**
+   * Recounts the views, likes and saves of every publication from the raw rows and repairs the stats
+   * rows that drifted, including missing ones. Meant to run offline, from a scheduled job.
+   * <p>
+   * Publications are processed in ranges of {@code chunkSize} IDs, each in its own transaction that
+   * locks the range's stats rows, so concurrent writers of those publications wait for the recount
+   * instead of racing it. The differences found are applied to the in-memory counters.
+   *
+   * @param chunkSize The number of publication IDs recounted per transaction.
+   * @return the number of publications whose stats were repaired
+   */
+  public int reconcile(int chunkSize) {
+    int maxPubId = withConnection(conn -> findOne(conn, "SELECT COALESCE(MAX(pub_id), 0) AS max_id FROM publication",
+        rs -> rs.getInt("max_id")).orElse(0));
+
+    // GREATEST is NULL if any of its arguments is, so each latest-interaction argument below falls back
+    // to the other two
+    String recount = """
+    INSERT INTO publication_stats (pub_id, view_count, like_count, save_count, last_interaction_at)
+    SELECT p.pub_id, COALESCE(v.cnt, 0), COALESCE(l.cnt, 0), COALESCE(s.cnt, 0),
+           GREATEST(COALESCE(v.last_at, l.last_at, s.last_at), COALESCE(l.last_at, s.last_at, v.last_at),
+                    COALESCE(s.last_at, v.last_at, l.last_at))
+    FROM publication p
+    LEFT JOIN (SELECT pub_id, COUNT(*) AS cnt, MAX(viewed_at) AS last_at FROM publication_view
+               WHERE pub_id BETWEEN ? AND ? GROUP BY pub_id) v ON v.pub_id = p.pub_id
+    LEFT JOIN (SELECT pub_id, COUNT(*) AS cnt, MAX(liked_at) AS last_at FROM publication_like
+               WHERE pub_id BETWEEN ? AND ? GROUP BY pub_id) l ON l.pub_id = p.pub_id
+    LEFT JOIN (SELECT pub_id, COUNT(*) AS cnt, MAX(added_at) AS last_at FROM collection_item
+               WHERE pub_id BETWEEN ? AND ? GROUP BY pub_id) s ON s.pub_id = p.pub_id
+    WHERE p.pub_id BETWEEN ? AND ?
+    ON DUPLICATE KEY UPDATE
+      view_count = VALUES(view_count),
+      like_count = VALUES(like_count),
+      save_count = VALUES(save_count),
+      last_interaction_at = VALUES(last_interaction_at)
+    """;
+    String select = """
+    SELECT pub_id, view_count, like_count, save_count FROM publication_stats
+    WHERE pub_id BETWEEN ? AND ?
+    """;
+
+    int repaired = 0;
+    for (int from = 1; from <= maxPubId; from += chunkSize) {
+      int to = from + chunkSize - 1;
+      Map<Integer, long[]> before = new HashMap<>();
+      Map<Integer, long[]> after = new HashMap<>();
+
+      try (Transaction tx = new Transaction()) {
+        tx.begin();
+        Connection conn = tx.getConnection();
+        findMany(conn, select + " FOR UPDATE", this::mapRowToCounts, from, to)
+            .forEach(row -> before.put((int) row[0], row));
+        executeUpdate(conn, recount, from, to, from, to, from, to, from, to);
+        findMany(conn, select, this::mapRowToCounts, from, to)
+            .forEach(row -> after.put((int) row[0], row));
+        tx.commit();
+      }
+
+      for (Map.Entry<Integer, long[]> entry : after.entrySet()) {
+        long[] was = before.getOrDefault(entry.getKey(), new long[4]);
+        long[] now = entry.getValue();
+        if (was[1] != now[1] || was[2] != now[2] || was[3] != now[3]) {
+          counters.addViews(entry.getKey(), now[1] - was[1]);
+          counters.addLikes(entry.getKey(), now[2] - was[2]);
+          repaired++;
+        }
+      }
+    }
+    return repaired;
+  }
+
+  private long[] mapRowToCounts(ResultSet rs) throws SQLException {
+    return new long[] {rs.getInt("pub_id"), rs.getLong("view_count"), rs.getLong("like_count"),
+        rs.getLong("save_count")};
+  }
+}
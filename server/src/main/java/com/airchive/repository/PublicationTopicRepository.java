@@ -15,6 +15,10 @@ import java.util.stream.Collectors;
  * Manages the relationship between publications and topics by interacting
  * with the `publication_topic` relationship table. This repository provides methods
  * to associate publications with topics, remove associations, and query these relationships.
+ * <p>
+ * Changing the topics of a published publication does not update the recommendation candidate index;
+ * callers must queue the publication with {@link RecommendationRepository#indexPublication(int)} once
+ * the change is committed.
  */
 public class PublicationTopicRepository extends BaseRepository {
 
@@ -1,20 +1,59 @@
 package com.airchive.repository;
 
+import com.airchive.db.Transaction;
+import com.airchive.db.WriteBehindQueue;
 import com.airchive.entity.Interaction;
 import com.airchive.entity.Publication;
-
+import com.airchive.exception.ValidationException;
+
+import com.airchive.recommendation.AffinityProfileCache;
+import com.airchive.recommendation.AnonymousFeed;
+import com.airchive.recommendation.CandidateGenerator;
+import com.airchive.recommendation.CandidateIndex;
+import com.airchive.recommendation.ItemNeighbors;
+import com.airchive.recommendation.ItemSimilarityJob;
+import com.airchive.recommendation.RecommendationProfiler;
+import com.airchive.recommendation.RelatedPublicationIndex;
+import com.airchive.recommendation.SeenFilter;
+import com.airchive.recommendation.SeenPublicationCache;
+import com.airchive.recommendation.TopicBitmapIndex;
+import com.airchive.recommendation.TopicLeaderboards;
+import com.airchive.recommendation.TrendingCounters;
+import com.airchive.recommendation.RecommendationPoolCache;
+import com.airchive.util.PropertyUtils;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.Connection;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+import java.util.function.IntPredicate;
 import java.util.stream.Collectors;
 
 /**
- * Manages the business logic and data persistence for the recommendation engine.
- * This repository is responsible for calculating user-topic affinities, user-user
- * similarities, and generating various types of publication recommendations.
- * It uses a combination of content-based, collaborative, and popularity-based filtering.
+ * Manages the business logic and data persistence for the recommendation engine: the topic and author
+ * affinities of every account, the candidate sources and feeds built from them, and the maintenance of
+ * the in-memory structures of {@code com.airchive.recommendation} those sources are served from.
+ * <p>
+ * Popularity scores are read from the materialized {@code publication_popularity} table, which is
+ * maintained by {@link PopularityRepository}. Ranking belongs to the in-memory structures; this class
+ * loads, refreshes and combines them, and keeps the SQL queries each source falls back on before they
+ * are loaded.
  */
 public class RecommendationRepository extends BaseRepository {
 
@@ -32,14 +71,179 @@ public class RecommendationRepository extends BaseRepository {
   /** The decay rate for save interactions in affinity calculation, in hours. */
   private static final int AFFINITY_SAVE_DECAY_HOURS = 336;
 
+  /**
+   * The decay rate applied lazily to stored affinity scores, in hours. A stored score is valid as of its
+   * {@code last_updated} reference time and is decayed to the current time whenever it is read or
+   * incremented.
+   */
+  private static final int AFFINITY_DECAY_HOURS = 168;
+
+  /** The minimum affinity score for a topic or author to be used as a recommendation source. */
+  private static final double MIN_AFFINITY_SCORE = 0.5;
+  /**
+   * Whether candidates are served from the in-memory {@link CandidateIndex} once it is loaded, so a feed
+   * page only costs the primary-key lookups of the account's affinities and viewed publications.
+   */
+  private static final boolean USE_CANDIDATE_INDEX =
+      PropertyUtils.getBooleanProperty("recommendation.useCandidateIndex", true);
+
+  /** The number of ranked ids built into a personalized pool; deeper pages grow the pool on demand. */
+  private static final int POOL_SIZE = PropertyUtils.getIntProperty("recommendation.poolSize", 200);
+
+  /** The share of a hybrid pool filled from topic-affinity candidates. */
+  private static final double TOPIC_SHARE = 0.6;
+  /** The share of a hybrid pool filled from item-item collaborative candidates. */
+  private static final double COLLABORATIVE_SHARE = 0.2;
+  /** The number of the user's most recent interactions whose neighbours are collaborative candidates. */
+  private static final int RECENT_INTERACTIONS = 20;
+  /** The maximum number of extra rows a SQL source fetches to make up for filtered, already seen ones. */
+  private static final int MAX_SEEN_OVERFETCH = 1000;
+  /** The number of neighbour rows written per JDBC batch. */
+  private static final int NEIGHBOR_BATCH_SIZE = 1000;
+  /** The number of publication ids bound per {@code IN (...)} lookup. */
+  private static final int PUBLICATION_ID_CHUNK_SIZE = 1000;
+  /**
+   * How long before a snapshot was saved a publication may have changed and still be missing from it, in
+   * minutes: it covers publications still queued for indexing and clock skew with the database.
+   */
+  private static final int SNAPSHOT_SLACK_MINUTES =
+      PropertyUtils.getIntProperty("recommendation.indexSnapshotSlackMinutes", 10);
+
+  /** The number of ranked ids precomputed per active account by the offline batch. */
+  private static final int PRECOMPUTED_SIZE = PropertyUtils.getIntProperty("recommendation.precomputeSize", 200);
+  /**
+   * The total absolute affinity weight an account may accumulate after its pool was precomputed before
+   * the precomputed pool is ignored in favour of the live path.
+   */
+  private static final double PRECOMPUTED_DRIFT_THRESHOLD =
+      PropertyUtils.getIntProperty("recommendation.precomputeDriftThreshold", 5);
+  /**
+   * The age after which a precomputed pool is ignored in favour of the live path, in hours. Drift is only
+   * tracked since startup, so this also bounds how stale a pool computed before a restart can be.
+   */
+  private static final int PRECOMPUTED_MAX_AGE_HOURS =
+      PropertyUtils.getIntProperty("recommendation.precomputeMaxAgeHours", 36);
+
+  /** Computes the item-item similarity matrix behind collaborative candidates. */
+  private static final ItemSimilarityJob ITEM_SIMILARITY_JOB = new ItemSimilarityJob(
+      PropertyUtils.getIntProperty("recommendation.itemNeighbors", 20),
+      PropertyUtils.getIntProperty("recommendation.itemNeighborMinSupport", 2),
+      PropertyUtils.getIntProperty("recommendation.itemNeighborMaxItemsPerUser", 500),
+      PropertyUtils.getIntProperty("recommendation.itemNeighborParallelism",
+          Runtime.getRuntime().availableProcessors()));
+
+  /** The number of ranked ids kept per kind combination in the anonymous feed snapshot. */
+  private static final int ANONYMOUS_FEED_DEPTH = PropertyUtils.getIntProperty("recommendation.anonymousFeedDepth", 500);
+
+  /** The number of LSH hash tables of the related publications index. */
+  private static final int RELATED_TABLES = PropertyUtils.getIntProperty("recommendation.relatedTables", 32);
+  /** The number of hyperplanes per LSH hash table of the related publications index. */
+  private static final int RELATED_BITS = PropertyUtils.getIntProperty("recommendation.relatedBits", 12);
+  /** The number of heaviest TF-IDF terms kept per publication in the related publications index. */
+  private static final int RELATED_MAX_TERMS = PropertyUtils.getIntProperty("recommendation.relatedMaxTerms", 64);
+  /** The maximum number of LSH candidates scored per related publications query. */
+  private static final int RELATED_MAX_CANDIDATES =
+      PropertyUtils.getIntProperty("recommendation.relatedMaxCandidates", 1000);
+
+  /** The current candidate index snapshot, or {@code null} until the first load completes. */
+  private volatile CandidateIndex candidateIndex;
+
+  /** Per-topic and per-kind bitmaps derived from {@link #candidateIndex}, replaced together with it. */
+  private volatile TopicBitmapIndex topicBitmaps;
+
+  /** The current item-item neighbour lists, or {@code null} until the first rebuild completes. */
+  private volatile ItemNeighbors itemNeighbors;
+
+  /** The ranked feed served to anonymous visitors, or {@code null} until the first refresh completes. */
+  private volatile AnonymousFeed anonymousFeed;
+
+  /** The "more like this" text index, or {@code null} until the first build completes. */
+  private volatile RelatedPublicationIndex relatedIndex;
+
+  /** Publications published since the last {@link #applyPendingPublications()}, not yet indexed. */
+  private final Set<Integer> pendingPublications = ConcurrentHashMap.newKeySet();
+
+  /** Ranked personalized pools, so that every page of a feed is sliced from the same pool. */
+  private final RecommendationPoolCache poolCache = new RecommendationPoolCache(
+      PropertyUtils.getIntProperty("recommendation.poolCacheSize", 10000),
+      PropertyUtils.getIntProperty("recommendation.poolTtlMinutes", 10) * 60_000L,
+      PropertyUtils.getIntProperty("recommendation.poolInvalidationThreshold", 5));
+
+  /** The affinity weight accumulated per account since its pool was last precomputed. */
+  private final Map<Integer, Double> precomputedDrift = new ConcurrentHashMap<>();
+
+  /** The strongest topic and author affinities of recently active accounts. */
+  private final AffinityProfileCache affinityProfiles = new AffinityProfileCache(
+      PropertyUtils.getIntProperty("recommendation.affinityCacheSize", 10000),
+      MAX_AFFINITY_PER_USER, AFFINITY_DECAY_HOURS, MAX_SCORE);
+
+  /** The maximum number of rows per multi-row affinity upsert. */
+  private static final int AFFINITY_BATCH_SIZE = PropertyUtils.getIntProperty("recommendation.affinityBatchSize", 500);
+
+  /** Buffers interaction weights until they are coalesced and applied, or {@code null} to apply them inline. */
+  private final WriteBehindQueue<AffinityUpdate> affinityUpdates =
+      PropertyUtils.getBooleanProperty("recommendation.affinityWriteBehind", true)
+          ? new WriteBehindQueue<>("airchive-affinity-writer",
+              PropertyUtils.getIntProperty("recommendation.affinityQueueCapacity", 10000),
+              PropertyUtils.getIntProperty("recommendation.affinityWindowSize", 2000),
+              PropertyUtils.getIntProperty("recommendation.affinityFlushMillis", 1000),
+              PropertyUtils.getIntProperty("recommendation.affinityEnqueueTimeoutMillis", 50),
+              PropertyUtils.getIntProperty("recommendation.affinityWriteAttempts", 3),
+              this::applyAffinityUpdates)
+          : null;
+
+  /** Runs hybrid candidate sources concurrently, or {@code null} to build pools sequentially. */
+  private final CandidateGenerator candidateGenerator;
+
+  /** The per-account filters of already viewed publications, shared with the view writer. */
+  private final SeenPublicationCache seenPublications;
+
+  /** Aggregates the stage timings of every feed request. */
+  private final RecommendationProfiler profiler;
+
+  /** The most popular publications of every topic, rebuilt with {@link #candidateIndex}. */
+  private final TopicLeaderboards topicLeaderboards;
+
+  /** The per-minute interaction counters ranking the trending feed. */
+  private final TrendingCounters trendingCounters;
+
+  /**
+   * @param candidateGenerator the generator used to run candidate sources concurrently, or {@code null}
+   * to build every pool sequentially on a single connection
+   * @param seenPublications the per-account filters of already viewed publications
+   * @param profiler the profiler receiving the stage timings of feed requests
+   * @param topicLeaderboards the per-topic leaderboards, rebuilt from every candidate index snapshot
+   * @param trendingCounters the sliding-window interaction counters ranking the trending feed
+   */
+  public RecommendationRepository(CandidateGenerator candidateGenerator, SeenPublicationCache seenPublications,
+      RecommendationProfiler profiler, TopicLeaderboards topicLeaderboards, TrendingCounters trendingCounters) {
+    this.candidateGenerator = candidateGenerator;
+    this.seenPublications = seenPublications;
+    this.profiler = profiler;
+    this.topicLeaderboards = topicLeaderboards;
+    this.trendingCounters = trendingCounters;
+  }
 
+  /**
+   * Adds the weight of an interaction to the account's affinity for the publication's topics and
+   * authors. Unless {@code recommendation.affinityWriteBehind} is disabled, the weight is buffered and
+   * applied in the background together with the other weights of the same window; when the buffer stays
+   * full, it is applied synchronously instead.
+   */
   public void updateAffinityForInteraction(int accountId, int pubId, double weight) {
+    if (affinityUpdates != null && affinityUpdates.offer(new AffinityUpdate(accountId, pubId, weight))) return;
     withConnection(conn -> {
       updateAffinityForInteraction(accountId, pubId, weight, conn);
       return null;
     });
   }
 
+  /**
+   * Adds the weight of an interaction to the account's affinity for the publication's topics and
+   * authors. Existing scores are first decayed from their reference time to now, so each interaction
+   * costs a single upsert per table and the stored pair stays exact. If the account's affinity profile
+   * is cached, the same increment is then applied to it in place.
+   */
   public void updateAffinityForInteraction(int accountId, int pubId, double weight, Connection conn) {
     String topicSql = """
     INSERT INTO topic_affinity (account_id, topic_id, score, last_updated)
@@ -48,7 +252,7 @@ public class RecommendationRepository extends BaseRepository {
     WHERE pt.pub_id = ?
     GROUP BY pt.topic_id
     ON DUPLICATE KEY UPDATE
-      score = LEAST(?, score + VALUES(score)),
+      score = LEAST(?, score * EXP(-TIMESTAMPDIFF(SECOND, last_updated, NOW()) / ?) + VALUES(score)),
       last_updated = VALUES(last_updated)
     """;
 
@@ -59,12 +263,142 @@ public class RecommendationRepository extends BaseRepository {
     WHERE pa.pub_id = ?
     GROUP BY pa.person_id
     ON DUPLICATE KEY UPDATE
-      score = LEAST(?, score + VALUES(score)),
+      score = LEAST(?, score * EXP(-TIMESTAMPDIFF(SECOND, last_updated, NOW()) / ?) + VALUES(score)),
       last_updated = VALUES(last_updated)
     """;
 
-    executeUpdate(conn, topicSql, accountId, MAX_SCORE, weight, pubId, MAX_SCORE);
-    executeUpdate(conn, authorSql, accountId, MAX_SCORE, weight, pubId, MAX_SCORE);
+    executeUpdate(conn, topicSql, accountId, MAX_SCORE, weight, pubId, MAX_SCORE, AFFINITY_DECAY_HOURS * 3600);
+    executeUpdate(conn, authorSql, accountId, MAX_SCORE, weight, pubId, MAX_SCORE, AFFINITY_DECAY_HOURS * 3600);
+    poolCache.recordAffinityChange(accountId, weight);
+    precomputedDrift.merge(accountId, Math.abs(weight), Double::sum);
+
+    if (affinityProfiles.isTracked(accountId)) {
+      long now = System.currentTimeMillis();
+      int[] topicIds = findColumnMany(conn, "SELECT topic_id FROM publication_topic WHERE pub_id = ?",
+          Integer.class, pubId).stream().mapToInt(Integer::intValue).toArray();
+      int[] authorIds = findColumnMany(conn, "SELECT person_id FROM publication_author WHERE pub_id = ?",
+          Integer.class, pubId).stream().mapToInt(Integer::intValue).toArray();
+      affinityProfiles.recordInteraction(accountId, AffinityProfileCache.Dimension.TOPIC, topicIds, weight, now);
+      affinityProfiles.recordInteraction(accountId, AffinityProfileCache.Dimension.AUTHOR, authorIds, weight, now);
+    }
+  }
+
+  /**
+   * Applies a window of buffered interaction weights in one transaction. Each interaction weighs on
+   * every topic and author of its publication, and the weights are summed per (account, topic) and
+   * (account, author) before being written, so a pair costs one upsert however many interactions it
+   * received. The summed weight is clamped like a single increment, as if the interactions had
+   * happened at once. The pool cache, the precomputed pool drift and the cached profiles are updated
+   * once the transaction is committed.
+   */
+  private void applyAffinityUpdates(List<AffinityUpdate> updates) {
+    Map<Long, Double> pubWeights = new HashMap<>();
+    Map<Integer, Double> drift = new HashMap<>();
+    for (AffinityUpdate update : updates) {
+      pubWeights.merge(pairKey(update.accountId(), update.pubId()), update.weight(), Double::sum);
+      drift.merge(update.accountId(), Math.abs(update.weight()), Double::sum);
+    }
+    List<Integer> pubIds = updates.stream().map(AffinityUpdate::pubId).distinct().toList();
+
+    Map<Long, Double> topicDeltas;
+    Map<Long, Double> authorDeltas;
+    try (Transaction tx = new Transaction()) {
+      tx.begin();
+      Connection conn = tx.getConnection();
+      topicDeltas = affinityDeltas(pubWeights, findPublicationLinks(
+          "SELECT pub_id, topic_id AS linked_id FROM publication_topic WHERE pub_id IN (%s)", pubIds, conn));
+      authorDeltas = affinityDeltas(pubWeights, findPublicationLinks(
+          "SELECT pub_id, person_id AS linked_id FROM publication_author WHERE pub_id IN (%s)", pubIds, conn));
+      upsertAffinityDeltas("topic_affinity", "topic_id", topicDeltas, conn);
+      upsertAffinityDeltas("author_affinity", "author_id", authorDeltas, conn);
+      tx.commit();
+    }
+
+    drift.forEach((accountId, weight) -> {
+      poolCache.recordAffinityChange(accountId, weight);
+      precomputedDrift.merge(accountId, weight, Double::sum);
+    });
+    long now = System.currentTimeMillis();
+    topicDeltas.forEach((key, delta) -> affinityProfiles.recordInteraction((int) (key >>> 32),
+        AffinityProfileCache.Dimension.TOPIC, new int[] {key.intValue()}, delta, now));
+    authorDeltas.forEach((key, delta) -> affinityProfiles.recordInteraction((int) (key >>> 32),
+        AffinityProfileCache.Dimension.AUTHOR, new int[] {key.intValue()}, delta, now));
+  }
+
+  /**
+   * @return the ids linked to each of the publications by the query, which selects {@code pub_id} and
+   * {@code linked_id} and has a {@code %s} placeholder for the publication ids
+   */
+  private Map<Integer, List<Integer>> findPublicationLinks(String sql, List<Integer> pubIds, Connection conn) {
+    String placeholders = String.join(", ", Collections.nCopies(pubIds.size(), "?"));
+    Map<Integer, List<Integer>> links = new HashMap<>();
+    findMany(conn, sql.formatted(placeholders), rs -> new int[] {rs.getInt("pub_id"), rs.getInt("linked_id")},
+        pubIds.toArray())
+        .forEach(link -> links.computeIfAbsent(link[0], id -> new ArrayList<>()).add(link[1]));
+    return links;
+  }
+
+  /**
+   * Spreads the summed weight of every (account, publication) pair over the ids linked to the
+   * publication, and clamps each (account, id) sum between zero and {@link #MAX_SCORE}. Pairs whose
+   * clamped sum is zero are left out, since adding zero does not change a stored score.
+   *
+   * @return the clamped sums keyed by account id in the upper and linked id in the lower 32 bits
+   */
+  private Map<Long, Double> affinityDeltas(Map<Long, Double> pubWeights, Map<Integer, List<Integer>> links) {
+    Map<Long, Double> deltas = new HashMap<>();
+    pubWeights.forEach((key, weight) -> {
+      int accountId = (int) (key >>> 32);
+      for (int linkedId : links.getOrDefault(key.intValue(), List.of())) {
+        deltas.merge(pairKey(accountId, linkedId), weight, Double::sum);
+      }
+    });
+    deltas.replaceAll((key, delta) -> Math.max(0, Math.min(MAX_SCORE, delta)));
+    deltas.values().removeIf(delta -> delta == 0);
+    return deltas;
+  }
+
+  /**
+   * Adds clamped sums to an affinity table with multi-row upserts of at most
+   * {@code recommendation.affinityBatchSize} rows, in primary key order. Existing scores are decayed to
+   * now before the sum is added, as in {@link #updateAffinityForInteraction(int, int, double, Connection)}.
+   */
+  private void upsertAffinityDeltas(String table, String idColumn, Map<Long, Double> deltas, Connection conn) {
+    List<Long> keys = deltas.keySet().stream().sorted().toList();
+    for (int from = 0; from < keys.size(); from += AFFINITY_BATCH_SIZE) {
+      List<Long> chunk = keys.subList(from, Math.min(keys.size(), from + AFFINITY_BATCH_SIZE));
+      String sql = "INSERT INTO " + table + " (account_id, " + idColumn + ", score, last_updated) VALUES "
+          + String.join(", ", Collections.nCopies(chunk.size(), "(?, ?, ?, NOW())"))
+          + """
+
+          ON DUPLICATE KEY UPDATE
+            score = LEAST(?, score * EXP(-TIMESTAMPDIFF(SECOND, last_updated, NOW()) / ?) + VALUES(score)),
+            last_updated = VALUES(last_updated)
+          """;
+
+      List<Object> params = new ArrayList<>(chunk.size() * 3 + 2);
+      for (long key : chunk) {
+        params.add((int) (key >>> 32));
+        params.add((int) key);
+        params.add(deltas.get(key));
+      }
+      params.add(MAX_SCORE);
+      params.add(AFFINITY_DECAY_HOURS * 3600);
+      executeUpdate(conn, sql, params.toArray());
+    }
+  }
+
+  private static long pairKey(int accountId, int id) {
+    return ((long) accountId << 32) | (id & 0xFFFFFFFFL);
+  }
+
+  /**
+   * Applies every buffered interaction weight and stops the background writer.
+   */
+  public void shutdown() {
+    if (affinityUpdates != null) {
+      affinityUpdates.close();
+    }
   }
 
   public void updateFullAffinityScores(int accountId) {
@@ -75,113 +409,177 @@ public class RecommendationRepository extends BaseRepository {
   }
 
   public void updateFullAffinityScores(int accountId, Connection conn) {
-    executeUpdate(conn, "DELETE FROM topic_affinity WHERE account_id = ?", accountId);
-    executeUpdate(conn, "DELETE FROM author_affinity WHERE account_id = ?", accountId);
+    poolCache.invalidate(accountId);
+    updateFullAffinityScores(List.of(accountId), conn);
+    affinityProfiles.invalidate(accountId);
+    precomputedDrift.put(accountId, Double.POSITIVE_INFINITY);
+  }
+
+  /**
+   * Recomputes the topic and author affinities of every account with recent interactions or stored
+   * affinity rows, in set-based passes over chunks of accounts. Each chunk is rebuilt in its own
+   * transaction with one DELETE and one INSERT ... SELECT per affinity table, and the rebuild sleeps
+   * between chunks so it does not starve request traffic. Stored scores decay on read and before each
+   * incremental upsert, so this is only needed to repair removed interactions or apply new weights.
+   *
+   * @param chunkSize the number of accounts rebuilt per pass
+   * @param pauseMillis how long to sleep between passes, in milliseconds
+   * @param progress receives the number of processed accounts and the total after every pass
+   * @return the number of accounts rebuilt, which is less than the total if the thread was interrupted
+   */
+  public int rebuildAllAffinityScores(int chunkSize, long pauseMillis, BiConsumer<Integer, Integer> progress) {
+    List<Integer> accountIds = withConnection(this::findAffinityAccountIds);
+    progress.accept(0, accountIds.size());
+
+    int processed = 0;
+    while (processed < accountIds.size()) {
+      List<Integer> chunk = accountIds.subList(processed, Math.min(accountIds.size(), processed + chunkSize));
+      try (Transaction tx = new Transaction()) {
+        tx.begin();
+        updateFullAffinityScores(chunk, tx.getConnection());
+        tx.commit();
+      }
+      chunk.forEach(poolCache::invalidate);
+      chunk.forEach(affinityProfiles::invalidate);
+      chunk.forEach(accountId -> precomputedDrift.put(accountId, Double.POSITIVE_INFINITY));
+      processed += chunk.size();
+      progress.accept(processed, accountIds.size());
+
+      if (pauseMillis > 0 && processed < accountIds.size()) {
+        try {
+          Thread.sleep(pauseMillis);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          break;
+        }
+      }
+    }
+    return processed;
+  }
 
-    String userInteractionsSubquery = getUserInteractionsSubquery();
+  /**
+   * Replaces the topic and author affinities of the given accounts with scores recomputed from their
+   * interactions of the last {@link #LOOKBACK_DAYS} days, keeping at most {@link #MAX_AFFINITY_PER_USER}
+   * topics and authors per account.
+   */
+  private void updateFullAffinityScores(List<Integer> accountIds, Connection conn) {
+    String placeholders = accountIds.stream().map(id -> "?").collect(Collectors.joining(", "));
+    executeUpdate(conn, "DELETE FROM topic_affinity WHERE account_id IN (" + placeholders + ")", accountIds.toArray());
+    executeUpdate(conn, "DELETE FROM author_affinity WHERE account_id IN (" + placeholders + ")", accountIds.toArray());
+
+    String userInteractionsSubquery = getUserInteractionsSubquery(placeholders);
+
+    List<Object> params = new ArrayList<>();
+    params.add(MAX_SCORE);
+    for (Interaction type : List.of(Interaction.VIEW, Interaction.LIKE, Interaction.SAVE)) {
+      params.add(type.getAffinityWeight());
+      params.add(switch (type) {
+        case VIEW -> AFFINITY_VIEW_DECAY_HOURS;
+        case LIKE -> AFFINITY_LIKE_DECAY_HOURS;
+        case SAVE -> AFFINITY_SAVE_DECAY_HOURS;
+      });
+      params.addAll(accountIds);
+      params.add(LOOKBACK_DAYS);
+    }
+    params.add(MAX_AFFINITY_PER_USER);
 
     String affinitySql = String.format("""
     INSERT INTO topic_affinity (account_id, topic_id, score, last_updated)
-    SELECT ?, pt.topic_id, LEAST(?, SUM(ui.weighted_score)), NOW()
-    FROM (%s) AS ui
-    JOIN publication_topic pt ON ui.pub_id = pt.pub_id
-    GROUP BY pt.topic_id ORDER BY 3 DESC LIMIT ?;
+    SELECT account_id, topic_id, score, NOW()
+    FROM (
+      SELECT ui.account_id, pt.topic_id, LEAST(?, SUM(ui.weighted_score)) AS score,
+             ROW_NUMBER() OVER (PARTITION BY ui.account_id ORDER BY SUM(ui.weighted_score) DESC) AS affinity_rank
+      FROM (%s) AS ui
+      JOIN publication_topic pt ON ui.pub_id = pt.pub_id
+      GROUP BY ui.account_id, pt.topic_id
+    ) ranked
+    WHERE affinity_rank <= ?
     """, userInteractionsSubquery);
 
-    executeUpdate(conn, affinitySql,
-        accountId, MAX_SCORE,
-        Interaction.VIEW.getAffinityWeight(), AFFINITY_VIEW_DECAY_HOURS, accountId, LOOKBACK_DAYS,
-        Interaction.LIKE.getAffinityWeight(), AFFINITY_LIKE_DECAY_HOURS, accountId, LOOKBACK_DAYS,
-        Interaction.SAVE.getAffinityWeight(), AFFINITY_SAVE_DECAY_HOURS, accountId, LOOKBACK_DAYS,
-        MAX_AFFINITY_PER_USER);
+    executeUpdate(conn, affinitySql, params.toArray());
 
     String authorSql = String.format("""
     INSERT INTO author_affinity (account_id, author_id, score, last_updated)
-    SELECT ?, pa.person_id, LEAST(?, SUM(ui.weighted_score)), NOW()
-    FROM (%s) AS ui
-    JOIN publication_author pa ON ui.pub_id = pa.pub_id
-    GROUP BY pa.person_id ORDER BY 3 DESC LIMIT ?;
+    SELECT account_id, person_id, score, NOW()
+    FROM (
+      SELECT ui.account_id, pa.person_id, LEAST(?, SUM(ui.weighted_score)) AS score,
+             ROW_NUMBER() OVER (PARTITION BY ui.account_id ORDER BY SUM(ui.weighted_score) DESC) AS affinity_rank
+      FROM (%s) AS ui
+      JOIN publication_author pa ON ui.pub_id = pa.pub_id
+      GROUP BY ui.account_id, pa.person_id
+    ) ranked
+    WHERE affinity_rank <= ?
     """, userInteractionsSubquery);
 
-    executeUpdate(conn, authorSql,
-        accountId, MAX_SCORE,
-        Interaction.VIEW.getAffinityWeight(), AFFINITY_VIEW_DECAY_HOURS, accountId, LOOKBACK_DAYS,
-        Interaction.LIKE.getAffinityWeight(), AFFINITY_LIKE_DECAY_HOURS, accountId, LOOKBACK_DAYS,
-        Interaction.SAVE.getAffinityWeight(), AFFINITY_SAVE_DECAY_HOURS, accountId, LOOKBACK_DAYS,
-        MAX_AFFINITY_PER_USER);
+    executeUpdate(conn, authorSql, params.toArray());
   }
 
-  private boolean hasAnyAffinity(int accountId, Connection conn) {
-    String topicSql = "SELECT EXISTS(SELECT 1 FROM topic_affinity WHERE account_id = ?)";
-    boolean hasTopicAffinity = findOne(conn, topicSql, rs -> rs.getBoolean(1), accountId)
-        .orElse(false);
-
-    if (hasTopicAffinity) {
-      return true;
+  public List<Integer> getTopicBasedRecommendations(int accountId, int limit, int offset, List<Publication.Kind> kinds) {
+    CandidateIndex index = getCandidateIndex();
+    if (index != null) {
+      return withConnection(conn -> index.rankByTopicAffinity(findTopicAffinities(accountId, conn), kinds,
+          findSeenFilter(accountId, conn)::mightContain, limit, offset));
     }
-    String authorSql = "SELECT EXISTS(SELECT 1 FROM author_affinity WHERE account_id = ?)";
-    return findOne(conn, authorSql, rs -> rs.getBoolean(1), accountId)
-        .orElse(false);
-  }
-
 
-  public List<Integer> getTopicBasedRecommendations(int accountId, int limit, int offset, List<Publication.Kind> kinds) {
     return withConnection(conn -> {
-      StringBuilder sql = new StringBuilder(getPopularityCTE());
-
-      sql.append("""
+      StringBuilder sql = new StringBuilder(String.format("""
       SELECT p.pub_id
       FROM publication p
       JOIN publication_topic pt ON pt.pub_id = p.pub_id
-      JOIN topic_affinity ta ON ta.topic_id = pt.topic_id
+      JOIN %s ta ON ta.topic_id = pt.topic_id
       JOIN publication_popularity pp ON p.pub_id = pp.pub_id
       WHERE ta.account_id = ? AND ta.score > 0.5 AND p.status = 'PUBLISHED'
-      AND NOT EXISTS (SELECT 1 FROM publication_view pv WHERE pv.account_id = ? AND pv.pub_id = p.pub_id)
-      """);
+      """, decayedAffinityTable("topic_affinity", "topic_id")));
 
-      List<Object> params = new ArrayList<>(List.of(accountId, accountId));
+      SeenFilter seen = findSeenFilter(accountId, conn);
+      List<Object> params = new ArrayList<>(List.of(accountId));
       addKindFilter(sql, kinds, params);
 
       sql.append(" GROUP BY p.pub_id, pp.popularity_score");
-      sql.append(" ORDER BY (MAX(ta.score) * pp.popularity_score) DESC LIMIT ? OFFSET ?");
-      params.add(limit);
-      params.add(offset);
+      sql.append(" ORDER BY (MAX(ta.score) * pp.popularity_score) DESC LIMIT ?");
+      params.add(offset + limit + Math.min(seen.size(), MAX_SEEN_OVERFETCH));
 
-      return findColumnMany(conn, sql.toString(), Integer.class, params.toArray());
+      return seen.unseen(findColumnMany(conn, sql.toString(), Integer.class, params.toArray()), limit, offset);
     });
   }
 
   public List<Integer> getAuthorBasedRecommendations(int accountId, int limit, int offset, List<Publication.Kind> kinds) {
-    return withConnection(conn -> {
-      StringBuilder sql = new StringBuilder(getPopularityCTE());
+    CandidateIndex index = getCandidateIndex();
+    if (index != null) {
+      return withConnection(conn -> index.rankByAuthorAffinity(findAuthorAffinities(accountId, conn), kinds,
+          findSeenFilter(accountId, conn)::mightContain, limit, offset));
+    }
 
-      sql.append("""
+    return withConnection(conn -> {
+      StringBuilder sql = new StringBuilder(String.format("""
       SELECT p.pub_id
       FROM publication p
       JOIN publication_author pa ON pa.pub_id = p.pub_id
-      JOIN author_affinity aa ON aa.author_id = pa.person_id
+      JOIN %s aa ON aa.author_id = pa.person_id
       JOIN publication_popularity pp ON p.pub_id = pp.pub_id
       WHERE aa.account_id = ? AND aa.score > 0.5 AND p.status = 'PUBLISHED'
-      AND NOT EXISTS (SELECT 1 FROM publication_view pv WHERE pv.account_id = ? AND pv.pub_id = p.pub_id)
-      """);
+      """, decayedAffinityTable("author_affinity", "author_id")));
 
-      List<Object> params = new ArrayList<>(List.of(accountId, accountId));
+      SeenFilter seen = findSeenFilter(accountId, conn);
+      List<Object> params = new ArrayList<>(List.of(accountId));
       addKindFilter(sql, kinds, params);
 
       sql.append(" GROUP BY p.pub_id, pp.popularity_score");
-      sql.append(" ORDER BY (MAX(aa.score) * pp.popularity_score) DESC LIMIT ? OFFSET ?");
-      params.add(limit);
-      params.add(offset);
+      sql.append(" ORDER BY (MAX(aa.score) * pp.popularity_score) DESC LIMIT ?");
+      params.add(offset + limit + Math.min(seen.size(), MAX_SEEN_OVERFETCH));
 
-      return findColumnMany(conn, sql.toString(), Integer.class, params.toArray());
+      return seen.unseen(findColumnMany(conn, sql.toString(), Integer.class, params.toArray()), limit, offset);
     });
   }
 
   public List<Integer> getPopularRecommendations(int limit, int offset, List<Publication.Kind> kinds) {
-    return withConnection(conn -> {
-      StringBuilder sql = new StringBuilder(getPopularityCTE());
+    CandidateIndex index = getCandidateIndex();
+    if (index != null) {
+      return index.pageByPopularity(kinds, limit, offset);
+    }
 
-      sql.append("""
+    return withConnection(conn -> {
+      StringBuilder sql = new StringBuilder("""
       SELECT pp.pub_id
       FROM publication_popularity pp
       """);
@@ -202,49 +600,418 @@ public class RecommendationRepository extends BaseRepository {
   }
 
 
+  /**
+   * Returns publications similar, by co-interaction, to the account's most recent interactions, from the
+   * {@link ItemNeighbors} built by {@link #rebuildItemNeighbors()}. Each candidate scores the sum of its
+   * similarities to those interactions. Publications the account has
+   * already viewed or interacted with are excluded.
+   *
+   * @param accountId the ID of the account to recommend for
+   * @param limit the maximum number of ids to return
+   * @param offset the number of top-ranked ids to skip
+   * @param kinds the kinds to include, or {@code null}/empty for all kinds
+   * @return the ranked publication ids
+   */
+  public List<Integer> getCollaborativeRecommendations(int accountId, int limit, int offset, List<Publication.Kind> kinds) {
+    return withConnection(conn -> getCollaborativeRecommendations(accountId, limit, offset, kinds, conn));
+  }
+
+  private List<Integer> getCollaborativeRecommendations(int accountId, int limit, int offset,
+      List<Publication.Kind> kinds, Connection conn) {
+    CandidateIndex index = getCandidateIndex();
+    ItemNeighbors neighbors = itemNeighbors;
+    if (index != null && neighbors != null) {
+      SeenFilter seen = findSeenFilter(accountId, conn);
+      return neighbors.rank(findRecentInteractionIds(accountId, conn),
+          pubId -> seen.mightContain(pubId) || !index.contains(pubId, kinds), limit, offset);
+    }
+
+    StringBuilder sql = new StringBuilder(String.format("""
+    SELECT pn.neighbor_id
+    FROM publication_neighbor pn
+    JOIN (%s) recent ON recent.pub_id = pn.pub_id
+    JOIN publication p ON p.pub_id = pn.neighbor_id
+    WHERE p.status = 'PUBLISHED'
+    """, getRecentInteractionsSubquery()));
+
+    SeenFilter seen = findSeenFilter(accountId, conn);
+    List<Object> params = new ArrayList<>(List.of(accountId, accountId, accountId, LOOKBACK_DAYS,
+        RECENT_INTERACTIONS));
+    addKindFilter(sql, kinds, params);
+
+    sql.append(" GROUP BY pn.neighbor_id");
+    sql.append(" ORDER BY SUM(pn.similarity) DESC, pn.neighbor_id DESC LIMIT ?");
+    params.add(offset + limit + Math.min(seen.size(), MAX_SEEN_OVERFETCH));
+
+    return seen.unseen(findColumnMany(conn, sql.toString(), Integer.class, params.toArray()), limit, offset);
+  }
+
+  /**
+   * Returns hybrid recommendation candidates: topic-affinity candidates first (60% of the limit), then
+   * collaborative candidates (20%), then author-affinity candidates, then popular publications to fill
+   * the remaining room.
+   *
+   * @param accountId the ID of the account to recommend for
+   * @param limit the maximum number of ids to return
+   * @param kinds the kinds to include, or {@code null}/empty for all kinds
+   * @return the ranked, de-duplicated publication ids
+   */
   public List<Integer> getHybridRecommendations(int accountId, int limit, List<Publication.Kind> kinds) {
-    Set<Integer> combined = new LinkedHashSet<>();
-    int split = (int) (limit * 0.8);
+    return buildHybridPool(accountId, limit, kinds, profiler.newTrace()).ids();
+  }
+
+  /**
+   * Builds a hybrid pool. With a {@link CandidateGenerator}, each source borrows its own connection on a
+   * generator thread and the pool is merged from the sources that finished before the deadline;
+   * otherwise the whole pool is built on one connection.
+   */
+  private HybridPool buildHybridPool(int accountId, int limit, List<Publication.Kind> kinds,
+      RecommendationProfiler.Trace trace) {
+    if (candidateGenerator == null) {
+      return new HybridPool(trace.timeUnchecked("hybrid",
+          () -> withConnection(conn -> getHybridRecommendations(accountId, limit, kinds, conn))), true);
+    }
 
-    combined.addAll(getTopicBasedRecommendations(accountId, split, 0, kinds));
-    combined.addAll(getAuthorBasedRecommendations(accountId, limit - split, 0, kinds));
+    int topicLimit = (int) (limit * TOPIC_SHARE);
+    int collaborativeLimit = (int) (limit * COLLABORATIVE_SHARE);
+    int authorLimit = limit - topicLimit - collaborativeLimit;
+    List<CandidateGenerator.Source> sources = List.of(
+        new CandidateGenerator.Source("topic", () -> getTopicBasedRecommendations(accountId, topicLimit, 0, kinds)),
+        new CandidateGenerator.Source("collaborative",
+            () -> getCollaborativeRecommendations(accountId, collaborativeLimit, 0, kinds)),
+        new CandidateGenerator.Source("author", () -> getAuthorBasedRecommendations(accountId, authorLimit, 0, kinds)),
+        new CandidateGenerator.Source("popular", () -> getPopularRecommendations(limit, 0, kinds)));
+    CandidateGenerator.Result result = candidateGenerator.generate(sources.stream()
+        .map(source -> new CandidateGenerator.Source(source.name(), () -> trace.time(source.name(), source.task())))
+        .toList());
 
-    return new ArrayList<>(combined);
+    Set<Integer> combined = new LinkedHashSet<>();
+    for (int i = 0; i < sources.size(); i++) {
+      int duplicates = 0;
+      for (Integer id : result.results().get(i)) {
+        if (combined.size() >= limit) break;
+        if (!combined.add(id)) duplicates++;
+      }
+      trace.discarded(sources.get(i).name(), duplicates);
+    }
+    return new HybridPool(new ArrayList<>(combined), result.complete());
   }
 
-  public List<Integer> getSmartRecommendations(int accountId, int limit, int offset, List<Publication.Kind> kinds) {
-    return withConnection(conn -> {
-      int desiredPoolSize = offset + limit + 20;
-      Set<Integer> combinedRecs = new LinkedHashSet<>();
+  /**
+   * Returns hybrid recommendation candidates using a provided connection. No other connection is
+   * borrowed from the pool while this method runs.
+   * <p>
+   * When the {@link CandidateIndex} is loaded, the user's affinities are read once and the topic, author
+   * and popularity sources are scored in memory. Otherwise all four sources are produced by a single SQL
+   * statement; already viewed publications are then dropped from the personalized sources, each source
+   * is cut to its share, and each publication keeps the position of the first source that produced it.
+   *
+   * @param accountId the ID of the account to recommend for
+   * @param limit the maximum number of ids to return
+   * @param kinds the kinds to include, or {@code null}/empty for all kinds
+   * @param conn the active database connection
+   * @return the ranked, de-duplicated publication ids
+   */
+  public List<Integer> getHybridRecommendations(int accountId, int limit, List<Publication.Kind> kinds, Connection conn) {
+    int topicLimit = (int) (limit * TOPIC_SHARE);
+    int collaborativeLimit = (int) (limit * COLLABORATIVE_SHARE);
+    int authorLimit = limit - topicLimit - collaborativeLimit;
+
+    CandidateIndex index = getCandidateIndex();
+    if (index != null) {
+      IntPredicate viewed = findSeenFilter(accountId, conn)::mightContain;
+      Set<Integer> combined = new LinkedHashSet<>();
+      combined.addAll(index.rankByTopicAffinity(findTopicAffinities(accountId, conn), kinds, viewed, topicLimit, 0));
+      combined.addAll(getCollaborativeRecommendations(accountId, collaborativeLimit, 0, kinds, conn));
+      combined.addAll(index.rankByAuthorAffinity(findAuthorAffinities(accountId, conn), kinds, viewed, authorLimit, 0));
+      index.forEachByPopularity(kinds, ordinal -> {
+        combined.add(index.pubId(ordinal));
+        return combined.size() < limit;
+      });
+      return new ArrayList<>(combined);
+    }
+
+    StringBuilder kindFilter = new StringBuilder();
+    List<Object> kindParams = new ArrayList<>();
+    addKindFilter(kindFilter, kinds, kindParams);
 
-      boolean hasAffinity = hasAnyAffinity(accountId, conn);
-      if (hasAffinity) {
-        combinedRecs.addAll(getHybridRecommendations(accountId, desiredPoolSize, kinds));
+    String sql = """
+    WITH topic_candidates AS (
+      SELECT p.pub_id, MAX(ta.score) * pp.popularity_score AS score
+      FROM publication p
+      JOIN publication_topic pt ON pt.pub_id = p.pub_id
+      JOIN %3$s ta ON ta.topic_id = pt.topic_id
+      JOIN publication_popularity pp ON p.pub_id = pp.pub_id
+      WHERE ta.account_id = ? AND ta.score > 0.5 AND p.status = 'PUBLISHED'
+      %1$s
+      GROUP BY p.pub_id, pp.popularity_score
+      ORDER BY score DESC LIMIT ?
+    ),
+    collaborative_candidates AS (
+      SELECT pn.neighbor_id AS pub_id, SUM(pn.similarity) AS score
+      FROM publication_neighbor pn
+      JOIN (%2$s) recent ON recent.pub_id = pn.pub_id
+      JOIN publication p ON p.pub_id = pn.neighbor_id
+      WHERE p.status = 'PUBLISHED'
+      %1$s
+      GROUP BY pn.neighbor_id
+      ORDER BY score DESC LIMIT ?
+    ),
+    author_candidates AS (
+      SELECT p.pub_id, MAX(aa.score) * pp.popularity_score AS score
+      FROM publication p
+      JOIN publication_author pa ON pa.pub_id = p.pub_id
+      JOIN %4$s aa ON aa.author_id = pa.person_id
+      JOIN publication_popularity pp ON p.pub_id = pp.pub_id
+      WHERE aa.account_id = ? AND aa.score > 0.5 AND p.status = 'PUBLISHED'
+      %1$s
+      GROUP BY p.pub_id, pp.popularity_score
+      ORDER BY score DESC LIMIT ?
+    ),
+    popular_candidates AS (
+      SELECT pp.pub_id, pp.popularity_score AS score
+      FROM publication_popularity pp
+      JOIN publication p ON pp.pub_id = p.pub_id
+      WHERE p.status = 'PUBLISHED'
+      %1$s
+      ORDER BY pp.popularity_score DESC LIMIT ?
+    ),
+    candidates AS (
+      SELECT pub_id, 1 AS source, score FROM topic_candidates
+      UNION ALL
+      SELECT pub_id, 2 AS source, score FROM collaborative_candidates
+      UNION ALL
+      SELECT pub_id, 3 AS source, score FROM author_candidates
+      UNION ALL
+      SELECT pub_id, 4 AS source, score FROM popular_candidates
+    )
+    SELECT pub_id, source FROM candidates
+    ORDER BY source, score DESC, pub_id DESC
+    """.formatted(kindFilter, getRecentInteractionsSubquery(),
+        decayedAffinityTable("topic_affinity", "topic_id"), decayedAffinityTable("author_affinity", "author_id"));
+
+    SeenFilter seen = findSeenFilter(accountId, conn);
+    int overfetch = Math.min(seen.size(), MAX_SEEN_OVERFETCH);
+
+    List<Object> params = new ArrayList<>(List.of(accountId));
+    params.addAll(kindParams);
+    params.add(topicLimit + overfetch);
+    params.addAll(List.of(accountId, accountId, accountId, LOOKBACK_DAYS, RECENT_INTERACTIONS));
+    params.addAll(kindParams);
+    params.add(collaborativeLimit + overfetch);
+    params.add(accountId);
+    params.addAll(kindParams);
+    params.add(authorLimit + overfetch);
+    params.addAll(kindParams);
+    params.add(limit);
+
+    // Sources are numbered 1 to 4 in candidate order; the last one, popular, is not filtered by views.
+    int[] sourceLimits = {topicLimit, collaborativeLimit, authorLimit, limit};
+    int[] sourceCounts = new int[sourceLimits.length];
+    Set<Integer> combined = new LinkedHashSet<>();
+    findMany(conn, sql, rs -> {
+      int pubId = rs.getInt("pub_id");
+      int source = rs.getInt("source") - 1;
+      boolean personalized = source < sourceLimits.length - 1;
+      if (sourceCounts[source] < sourceLimits[source] && !(personalized && seen.mightContain(pubId))) {
+        sourceCounts[source]++;
+        combined.add(pubId);
       }
+      return null;
+    }, params.toArray());
 
-      if (combinedRecs.size() < offset + limit) {
-        List<Integer> fallback = getPopularRecommendations(desiredPoolSize, 0, kinds);
-        for (Integer pubId : fallback) {
-          if (combinedRecs.size() >= offset + limit) break;
-          combinedRecs.add(pubId);
-        }
+    return combined.stream().limit(limit).toList();
+  }
+
+  /**
+   * Returns a page of personalized recommendations, sliced from the account's cached ranked pool.
+   * <p>
+   * The pool is built once (hybrid affinity candidates first, then popular publications) and reused for
+   * every following page until it expires, the account's affinity shifts noticeably, or a page
+   * reaches past its end, in which case a larger pool is built. Pools missing a source that did not
+   * finish in time are only kept for the cursors cut from them, so the next feed retries the full build.
+   * <p>
+   * A cursor pins the pool it was cut from, which keeps being served while the cache still holds it, even
+   * after it was replaced. A larger pool built for a cursor keeps the ids already served in their
+   * positions and drops them from the rest of the ranking; a cursor whose pool is gone restarts the feed.
+   *
+   * @param accountId the ID of the account to recommend for
+   * @param limit the page size
+   * @param from where the page starts
+   * @param kinds the kinds to include, or {@code null}/empty for all kinds
+   * @return the ranked publication ids of the requested page and the cursor of the next one
+   */
+  public RecommendationPoolCache.Slice getSmartRecommendations(int accountId, int limit,
+      RecommendationPoolCache.Cursor from, List<Publication.Kind> kinds) {
+    return getSmartRecommendations(accountId, limit, from, kinds, profiler.newTrace());
+  }
+
+  private RecommendationPoolCache.Slice getSmartRecommendations(int accountId, int limit,
+      RecommendationPoolCache.Cursor from, List<Publication.Kind> kinds, RecommendationProfiler.Trace trace) {
+    RecommendationPoolCache.Pool pinned = from.poolVersion() == 0 ? null
+        : poolCache.find(accountId, kinds, from.poolVersion());
+    int offset = (pinned == null && from.poolVersion() != 0) ? 0 : from.position();
+    int needed = offset + limit;
+
+    RecommendationPoolCache.Pool pool = (pinned != null && pinned.covers(needed)) ? pinned
+        : trace.timeUnchecked("pool cache", () -> poolCache.get(accountId, kinds, needed),
+            cached -> cached == null ? 0 : cached.ids().length);
+    if (pool != null && pinned != null && pool != pinned) {
+      pool = poolCache.put(accountId, kinds, RecommendationPoolCache.continueFrom(pinned, offset, pool.ids()),
+          pool.exhaustive());
+    }
+
+    if (pool == null) {
+      int[] precomputed = trace.timeUnchecked("precomputed", () -> findPrecomputedPool(accountId, kinds, needed),
+          ids -> ids == null ? 0 : ids.length);
+      if (precomputed != null) {
+        pool = poolCache.put(accountId, kinds, RecommendationPoolCache.continueFrom(pinned, offset, precomputed),
+            false);
       }
+    }
 
-      List<Integer> finalRecs = new ArrayList<>(combinedRecs);
-      if (offset >= finalRecs.size()) return List.of();
-      return finalRecs.subList(offset, Math.min(offset + limit, finalRecs.size()));
-    });
+    if (pool == null) {
+      int poolSize = Math.max(POOL_SIZE, needed + 20);
+      HybridPool built = buildHybridPool(accountId, poolSize, kinds, trace);
+      int[] ids = RecommendationPoolCache.continueFrom(pinned, offset,
+          built.ids().stream().mapToInt(Integer::intValue).toArray());
+      pool = built.complete()
+          ? poolCache.put(accountId, kinds, ids, built.ids().size() < poolSize)
+          : poolCache.retain(accountId, kinds, ids);
+    }
+
+    int[] ids = pool.ids();
+    List<Integer> page = offset >= ids.length ? List.of()
+        : Arrays.stream(ids, offset, Math.min(needed, ids.length)).boxed().toList();
+    return new RecommendationPoolCache.Slice(page,
+        new RecommendationPoolCache.Cursor(pool.version(), offset + page.size()));
   }
 
+  public RecommendationPoolCache.Slice getRecommendations(int accountId, int limit,
+      RecommendationPoolCache.Cursor from, List<Publication.Kind> kinds) {
+    return getRecommendations(accountId, limit, from, kinds, profiler.newTrace());
+  }
 
-  public List<Integer> getRecommendations(int accountId, int limit, int offset, List<Publication.Kind> kinds) {
+  /**
+   * Like {@link #getRecommendations(int, int, RecommendationPoolCache.Cursor, List)}, recording each stage
+   * of the pipeline in the given trace.
+   */
+  public RecommendationPoolCache.Slice getRecommendations(int accountId, int limit,
+      RecommendationPoolCache.Cursor from, List<Publication.Kind> kinds, RecommendationProfiler.Trace trace) {
     if (accountId <= 0) {
-      return getPopularRecommendations(limit, offset, kinds);
+      List<Integer> page = trace.timeUnchecked("popular",
+          () -> getAnonymousRecommendations(limit, from.position(), kinds));
+      return new RecommendationPoolCache.Slice(page,
+          new RecommendationPoolCache.Cursor(0, from.position() + page.size()));
     }
-    return getSmartRecommendations(accountId, limit, offset, kinds);
+    return getSmartRecommendations(accountId, limit, from, kinds, trace);
+  }
+
+  /**
+   * Returns a page of the anonymous feed, sliced from the in-memory {@link AnonymousFeed} snapshot when
+   * it covers the page, and from the popularity source otherwise.
+   */
+  private List<Integer> getAnonymousRecommendations(int limit, int offset, List<Publication.Kind> kinds) {
+    AnonymousFeed feed = anonymousFeed;
+    List<Integer> page = feed == null ? null : feed.page(kinds, limit, offset);
+    return page != null ? page : getPopularRecommendations(limit, offset, kinds);
   }
 
+  /**
+   * Returns a page of the publications trending right now, as ranked by the last
+   * {@link #refreshTrending()}. Kinds are filtered through the candidate index when it is loaded, and
+   * otherwise with a single query over the ranked ids.
+   *
+   * @param kinds the kinds to include, or {@code null}/empty for all kinds
+   * @param limit the maximum number of ids to return
+   * @param offset the number of ids to skip
+   * @return the trending publication ids, most trending first
+   */
+  public List<Integer> getTrending(List<Publication.Kind> kinds, int limit, int offset) {
+    if (kinds == null || kinds.isEmpty()) {
+      return trendingCounters.page(pubId -> true, limit, offset);
+    }
+
+    CandidateIndex index = getCandidateIndex();
+    if (index != null) {
+      return trendingCounters.page(pubId -> index.contains(pubId, kinds), limit, offset);
+    }
+
+    int[] ranked = trendingCounters.ranked();
+    if (ranked.length == 0) return List.of();
+    return withConnection(conn -> {
+      StringBuilder sql = new StringBuilder("SELECT p.pub_id FROM publication p WHERE p.pub_id IN (")
+          .append(Arrays.stream(ranked).mapToObj(id -> "?").collect(Collectors.joining(", ")))
+          .append(")");
+      List<Object> params = new ArrayList<>();
+      Arrays.stream(ranked).forEach(params::add);
+      addKindFilter(sql, kinds, params);
+
+      Set<Integer> matching = new HashSet<>(findColumnMany(conn, sql.toString(), Integer.class, params.toArray()));
+      return trendingCounters.page(matching::contains, limit, offset);
+    });
+  }
+
+  /**
+   * Re-ranks the trending feed from the current interaction counters.
+   */
+  public void refreshTrending() {
+    trendingCounters.refresh(System.currentTimeMillis());
+  }
+
+  /**
+   * Recomputes the ranked anonymous feed of every kind combination and swaps it in. The ranking is read
+   * from the {@link CandidateIndex} when it is loaded, and otherwise with a single query per refresh.
+   */
+  public void refreshAnonymousFeed() {
+    CandidateIndex index = getCandidateIndex();
+    if (index != null) {
+      anonymousFeed = AnonymousFeed.of(ANONYMOUS_FEED_DEPTH, index);
+      return;
+    }
+
+    List<List<Integer>> rankedByKind = new ArrayList<>();
+    for (int k = 0; k < Publication.Kind.values().length; k++) rankedByKind.add(new ArrayList<>());
+    Map<Integer, Double> scores = new HashMap<>();
+    withConnection(conn -> findMany(conn, """
+        SELECT pub_id, kind, popularity_score FROM (
+          SELECT p.pub_id, p.kind, pp.popularity_score,
+                 ROW_NUMBER() OVER (PARTITION BY p.kind ORDER BY pp.popularity_score DESC, p.pub_id DESC) AS kind_rank
+          FROM publication_popularity pp
+          JOIN publication p ON pp.pub_id = p.pub_id
+          WHERE p.status = 'PUBLISHED'
+        ) ranked
+        WHERE kind_rank <= ?
+        ORDER BY kind_rank
+        """, rs -> {
+          int pubId = rs.getInt("pub_id");
+          rankedByKind.get(Publication.Kind.valueOf(rs.getString("kind")).ordinal()).add(pubId);
+          return scores.put(pubId, rs.getDouble("popularity_score"));
+        }, ANONYMOUS_FEED_DEPTH));
+
+    int[][] ranked = rankedByKind.stream()
+        .map(ids -> ids.stream().mapToInt(Integer::intValue).toArray())
+        .toArray(int[][]::new);
+    anonymousFeed = AnonymousFeed.of(ANONYMOUS_FEED_DEPTH, ranked, pubId -> scores.getOrDefault(pubId, 0.0));
+  }
+
+  /**
+   * Returns a page of the publications tagged with all the given topics. Once the candidate index is
+   * loaded this is an intersection of in-memory topic bitmaps, paged by descending publication id;
+   * otherwise a grouped SQL scan ordered by submission time.
+   *
+   * @param topicIds the topic ids that must all be present
+   * @param kinds the kinds to include, or {@code null}/empty for all kinds
+   * @param limit the maximum number of ids to return
+   * @param offset the number of ids to skip
+   * @return the matching publication ids, newest first
+   */
   public List<Integer> getPublicationsByTopics(List<Integer> topicIds, List<Publication.Kind> kinds, int limit, int offset) {
+    TopicBitmapIndex bitmaps = getCandidateIndex() != null ? topicBitmaps : null;
+    if (bitmaps != null) {
+      return topicIds == null || topicIds.isEmpty() ? List.of() : bitmaps.findWithAllTopics(topicIds, kinds, limit, offset);
+    }
+
     return withConnection(conn -> {
       if (topicIds == null || topicIds.isEmpty()) return List.of();
 
@@ -283,20 +1050,42 @@ public class RecommendationRepository extends BaseRepository {
     });
   }
 
+  /**
+   * Returns a page of the publications tagged with any of the given topics, ranked by the account's
+   * affinity for their best topic times their popularity. Once the candidate index is loaded, the
+   * {@link TopicLeaderboards} of the topics are merged, and every tagged publication is only scored when
+   * a leaderboard is too short for the page.
+   *
+   * @param accountId the ID of the account to rank for
+   * @param topicIds the topic ids to browse
+   * @param kinds the kinds to include, or {@code null}/empty for all kinds
+   * @param limit the maximum number of ids to return
+   * @param offset the number of top-ranked ids to skip
+   * @return the ranked publication ids
+   */
   public List<Integer> getRecommendedByTopics(int accountId, List<Integer> topicIds, List<Publication.Kind> kinds, int limit, int offset) {
-    return withConnection(conn -> {
-      if (topicIds == null || topicIds.isEmpty()) return List.of();
+    if (topicIds == null || topicIds.isEmpty()) return List.of();
+
+    CandidateIndex index = getCandidateIndex();
+    if (index != null) {
+      return withConnection(conn -> {
+        Map<Integer, Double> affinities = findTopicAffinities(accountId, conn);
+        affinities.keySet().retainAll(topicIds);
+        List<Integer> ranked = topicLeaderboards.rank(affinities, kinds, pubId -> false, limit, offset);
+        return ranked != null ? ranked : index.rankByTopicAffinity(affinities, kinds, pubId -> false, limit, offset);
+      });
+    }
 
-      StringBuilder sql = new StringBuilder(getPopularityCTE());
+    return withConnection(conn -> {
 
-      sql.append("""
+      StringBuilder sql = new StringBuilder(String.format("""
       SELECT p.pub_id
       FROM publication p
       JOIN publication_topic pt ON pt.pub_id = p.pub_id
-      JOIN topic_affinity ta ON ta.topic_id = pt.topic_id
+      JOIN %s ta ON ta.topic_id = pt.topic_id
       JOIN publication_popularity pp ON p.pub_id = pp.pub_id
       WHERE ta.account_id = ? AND ta.score > 0.5 AND pt.topic_id IN (
-      """);
+      """, decayedAffinityTable("topic_affinity", "topic_id")));
 
       String topicPlaceholders = topicIds.stream().map(id -> "?").collect(Collectors.joining(", "));
       sql.append(topicPlaceholders).append(") AND p.status = 'PUBLISHED'");
@@ -336,18 +1125,694 @@ public class RecommendationRepository extends BaseRepository {
   }
 
 
-  private String getUserInteractionsSubquery() {
+  /**
+   * Loads the {@link CandidateIndex} from the database and swaps it in, replacing any previous snapshot.
+   */
+  public synchronized void refreshCandidateIndex() {
+    if (!USE_CANDIDATE_INDEX) return;
+    publishCandidateIndex(withConnection(this::loadCandidateIndex));
+  }
+
+  /**
+   * Restores the {@link CandidateIndex} from a snapshot file written by {@link #saveCandidateIndex(Path)}
+   * and brings it up to date with the publications changed since it was saved, which are reloaded or
+   * dropped with their current kind, topics, authors and popularity score. A publication changes
+   * whenever it is published, which is also when its topics and authors are written, so its
+   * {@code submitted_at}, updated on every write, serves as the watermark. The only other change to
+   * postings, deleting a topic, cascades without touching the publications, so those tagged with a topic
+   * that no longer exists are reloaded too. The other popularity scores are kept from the snapshot until
+   * the next {@link #refreshCandidatePopularity()}.
+   *
+   * @param file the snapshot file
+   * @return {@code true} if the index was restored; {@code false} if there is no usable snapshot, in
+   * which case the index must be loaded with {@link #refreshCandidateIndex()}
+   */
+  public synchronized boolean restoreCandidateIndex(Path file) {
+    if (!USE_CANDIDATE_INDEX || !Files.exists(file)) return false;
+
+    CandidateIndex.SavedIndex saved;
+    try {
+      saved = CandidateIndex.readSnapshot(file);
+    } catch (IOException | RuntimeException e) {
+      System.err.println("Ignoring unreadable candidate index snapshot: " + file);
+      e.printStackTrace();
+      return false;
+    }
+
+    publishCandidateIndex(withConnection(conn -> applySnapshotDelta(saved, conn)));
+    return true;
+  }
+
+  /**
+   * Writes the current {@link CandidateIndex} to a snapshot file. Does nothing if the index has not been
+   * loaded yet.
+   *
+   * @param file the snapshot file
+   * @throws UncheckedIOException if the file cannot be written
+   */
+  public void saveCandidateIndex(Path file) {
+    CandidateIndex index = candidateIndex;
+    if (index == null) return;
+    try {
+      index.writeSnapshot(file, System.currentTimeMillis());
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to write candidate index snapshot: " + file, e);
+    }
+  }
+
+  private CandidateIndex applySnapshotDelta(CandidateIndex.SavedIndex saved, Connection conn) {
+    CandidateIndex snapshot = saved.index();
+    Set<Integer> changed = new HashSet<>();
+    Map<Integer, Publication.Kind> published = new HashMap<>();
+    findMany(conn, "SELECT pub_id, kind, status FROM publication WHERE submitted_at >= FROM_UNIXTIME(?)",
+        rs -> {
+          int pubId = rs.getInt("pub_id");
+          changed.add(pubId);
+          if ("PUBLISHED".equals(rs.getString("status"))) {
+            published.put(pubId, Publication.Kind.valueOf(rs.getString("kind")));
+          }
+          return null;
+        }, snapshotWatermark(saved.savedAt()));
+
+    Set<Integer> topicIds = new HashSet<>(findColumnMany(conn, "SELECT topic_id FROM topic", Integer.class));
+    snapshot.forEachTopic(topicId -> {
+      if (topicIds.contains(topicId)) return;
+      snapshot.forEachWithTopic(topicId, null, ordinal -> {
+        int pubId = snapshot.pubId(ordinal);
+        if (changed.add(pubId)) published.put(pubId, snapshot.kind(ordinal));
+      });
+    });
+
+    List<Integer> reloaded = changed.stream()
+        .filter(pubId -> published.containsKey(pubId) || snapshot.ordinalOf(pubId) >= 0)
+        .sorted()
+        .toList();
+    if (reloaded.isEmpty()) return snapshot;
+
+    CandidateIndex.Builder builder = snapshot.toBuilder();
+    reloaded.forEach(builder::remove);
+    List<Integer> added = reloaded.stream().filter(published::containsKey).toList();
+    addPublications(builder, added, published, conn);
+    findPopularityScores(added, conn).forEach(builder::setPopularity);
+    return builder.build();
+  }
+
+  /**
+   * Returns the epoch second from which publications may be missing from a snapshot saved at the given
+   * time.
+   */
+  private static long snapshotWatermark(long savedAt) {
+    return (savedAt - SNAPSHOT_SLACK_MINUTES * 60_000L) / 1000;
+  }
+
+  /**
+   * Adds publications of known kinds to an index builder, with their topics and authors loaded in
+   * chunks.
+   */
+  private void addPublications(CandidateIndex.Builder builder, List<Integer> pubIds,
+      Map<Integer, Publication.Kind> kinds, Connection conn) {
+    for (int from = 0; from < pubIds.size(); from += PUBLICATION_ID_CHUNK_SIZE) {
+      List<Integer> chunk = pubIds.subList(from, Math.min(pubIds.size(), from + PUBLICATION_ID_CHUNK_SIZE));
+      String placeholders = chunk.stream().map(id -> "?").collect(Collectors.joining(", "));
+      chunk.forEach(pubId -> builder.add(pubId, kinds.get(pubId), List.of(), List.of()));
+      findMany(conn, "SELECT pub_id, topic_id FROM publication_topic WHERE pub_id IN (" + placeholders + ")",
+          rs -> builder.addTopic(rs.getInt("pub_id"), rs.getInt("topic_id")), chunk.toArray());
+      findMany(conn, "SELECT pub_id, person_id FROM publication_author WHERE pub_id IN (" + placeholders + ")",
+          rs -> builder.addAuthor(rs.getInt("pub_id"), rs.getInt("person_id")), chunk.toArray());
+    }
+  }
+
+  /**
+   * Reloads only the popularity scores of the current {@link CandidateIndex}, keeping its postings.
+   * Does nothing if the index has not been loaded yet.
+   */
+  public synchronized void refreshCandidatePopularity() {
+    CandidateIndex index = candidateIndex;
+    if (index == null) return;
+    CandidateIndex refreshed = index.withPopularity(withConnection(this::findPopularityScores));
+    topicLeaderboards.rebuild(refreshed);
+    candidateIndex = refreshed;
+  }
+
+  /**
+   * Queues a newly published publication, or a published one whose topics or authors changed, for the
+   * candidate and related publications indexes. It is reindexed by the next
+   * {@link #applyPendingPublications()}; this method does no I/O and cannot fail. Callers must queue
+   * the publication after committing the change.
+   *
+   * @param pubId the ID of the publication that was published or changed
+   */
+  public void indexPublication(int pubId) {
+    pendingPublications.add(pubId);
+  }
+
+  /**
+   * Queues every indexed publication tagged with a topic for reindexing, e.g. once the topic was
+   * deleted and its {@code publication_topic} rows cascaded away. Does nothing if the index has not
+   * been loaded yet, since its first load will read the current rows.
+   *
+   * @param topicId the ID of the topic
+   */
+  public void reindexTopic(int topicId) {
+    CandidateIndex index = getCandidateIndex();
+    if (index == null) return;
+    index.forEachWithTopic(topicId, null, ordinal -> pendingPublications.add(index.pubId(ordinal)));
+  }
+
+  /**
+   * Reindexes the publications queued by {@link #indexPublication(int)}: their entries in the current
+   * {@link CandidateIndex} are replaced with their current kind, topics and authors, or dropped if they
+   * are no longer published, with a single rebuild of its snapshot, and they are added to the related
+   * publications index. An index that has not been loaded yet is skipped, since its first load will
+   * include them. If this fails, the publications stay queued for the next run. Meant to run from a
+   * scheduled job.
+   */
+  public synchronized void applyPendingPublications() {
+    if (pendingPublications.isEmpty()) return;
+    List<Integer> pubIds = pendingPublications.stream().sorted().toList();
+    pubIds.forEach(pendingPublications::remove);
+
+    try {
+      withConnection(conn -> {
+        String placeholders = pubIds.stream().map(id -> "?").collect(Collectors.joining(", "));
+        Map<Integer, Publication.Kind> kinds = new HashMap<>();
+        RelatedPublicationIndex related = relatedIndex;
+        findMany(conn, "SELECT pub_id, kind, title, content FROM publication WHERE status = 'PUBLISHED' "
+                + "AND pub_id IN (" + placeholders + ")",
+            rs -> {
+              int pubId = rs.getInt("pub_id");
+              kinds.put(pubId, Publication.Kind.valueOf(rs.getString("kind")));
+              if (related != null) related.index(pubId, rs.getString("title"), rs.getString("content"));
+              return pubId;
+            }, pubIds.toArray());
+
+        CandidateIndex index = getCandidateIndex();
+        if (index == null) return null;
+        List<Integer> changed = pubIds.stream()
+            .filter(pubId -> kinds.containsKey(pubId) || index.ordinalOf(pubId) >= 0)
+            .toList();
+        if (changed.isEmpty()) return null;
+
+        CandidateIndex.Builder builder = index.toBuilder();
+        changed.forEach(builder::remove);
+        addPublications(builder, changed.stream().filter(kinds::containsKey).toList(), kinds, conn);
+        for (int pubId : changed) {
+          int ordinal = index.ordinalOf(pubId);
+          if (ordinal >= 0) builder.setPopularity(pubId, index.popularity(ordinal));
+        }
+        publishCandidateIndex(builder.build());
+        return null;
+      });
+    } catch (RuntimeException e) {
+      pendingPublications.addAll(pubIds);
+      throw e;
+    }
+  }
+
+  /**
+   * Builds the related publications index from the title and content of every published publication and
+   * swaps it in. Meant to run offline, from a scheduled job.
+   */
+  public void rebuildRelatedIndex() {
+    RelatedPublicationIndex.Builder builder = RelatedPublicationIndex.builder(
+        RELATED_TABLES, RELATED_BITS, RELATED_MAX_TERMS, RELATED_MAX_CANDIDATES);
+    withConnection(conn -> findMany(conn,
+        "SELECT pub_id, title, content FROM publication WHERE status = 'PUBLISHED'",
+        rs -> builder.add(rs.getInt("pub_id"), rs.getString("title"), rs.getString("content"))));
+    relatedIndex = builder.build();
+  }
+
+  /**
+   * Restores the related publications index from a snapshot file written by
+   * {@link #saveRelatedIndex(Path)} and reindexes the publications published or edited since it was saved,
+   * as {@link #restoreCandidateIndex(Path)} does.
+   *
+   * @param file the snapshot file
+   * @return {@code true} if the index was restored; {@code false} if there is no usable snapshot, in
+   * which case the index must be built with {@link #rebuildRelatedIndex()}
+   */
+  public boolean restoreRelatedIndex(Path file) {
+    if (!Files.exists(file)) return false;
+
+    RelatedPublicationIndex.SavedIndex saved;
+    try {
+      saved = RelatedPublicationIndex.readSnapshot(file, RELATED_TABLES, RELATED_BITS, RELATED_MAX_TERMS,
+          RELATED_MAX_CANDIDATES);
+    } catch (IOException | RuntimeException e) {
+      System.err.println("Ignoring unreadable related publications snapshot: " + file);
+      e.printStackTrace();
+      return false;
+    }
+
+    RelatedPublicationIndex index = saved.index();
+    withConnection(conn -> findMany(conn, "SELECT pub_id, title, content FROM publication "
+            + "WHERE status = 'PUBLISHED' AND submitted_at >= FROM_UNIXTIME(?)",
+        rs -> {
+          index.index(rs.getInt("pub_id"), rs.getString("title"), rs.getString("content"));
+          return null;
+        }, snapshotWatermark(saved.savedAt())));
+    relatedIndex = index;
+    return true;
+  }
+
+  /**
+   * Writes the current related publications index to a snapshot file. Does nothing if the index has not
+   * been built yet.
+   *
+   * @param file the snapshot file
+   * @throws UncheckedIOException if the file cannot be written
+   */
+  public void saveRelatedIndex(Path file) {
+    RelatedPublicationIndex index = relatedIndex;
+    if (index == null) return;
+    try {
+      index.writeSnapshot(file, System.currentTimeMillis());
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to write related publications snapshot: " + file, e);
+    }
+  }
+
+  /**
+   * Returns the publications whose text is most similar to the given publication's.
+   *
+   * @param pubId the publication ID
+   * @param limit the maximum number of ids to return
+   * @return the related publication ids, most similar first; empty until the index is built
+   */
+  public List<Integer> getRelatedPublications(int pubId, int limit) {
+    RelatedPublicationIndex index = relatedIndex;
+    return index == null ? List.of() : index.findRelated(pubId, limit);
+  }
+
+  /**
+   * Compares the recall and latency of related publications queries against brute-force cosine
+   * similarity on a sample of the indexed publications.
+   *
+   * @param samples the number of publications to query
+   * @param k the number of related publications per query
+   * @return the measurements
+   * @throws ValidationException if the index has not been built yet
+   */
+  public RelatedPublicationIndex.BenchmarkResult benchmarkRelatedPublications(int samples, int k) {
+    RelatedPublicationIndex index = relatedIndex;
+    if (index == null) {
+      throw new ValidationException("The related publications index is not built yet.");
+    }
+    return index.benchmark(samples, k);
+  }
+
+  /**
+   * Swaps in a new candidate index snapshot, together with the topic bitmaps and leaderboards derived
+   * from it.
+   */
+  private void publishCandidateIndex(CandidateIndex index) {
+    topicBitmaps = TopicBitmapIndex.of(index);
+    topicLeaderboards.rebuild(index);
+    candidateIndex = index;
+  }
+
+  /**
+   * Rebuilds the item-item similarity matrix from likes, saves and recent views, replaces the stored
+   * {@code publication_neighbor} rows and swaps the in-memory neighbour lists. Meant to run offline,
+   * from a scheduled job.
+   */
+  public void rebuildItemNeighbors() {
+    ItemSimilarityJob.Interactions interactions = withConnection(this::findCoInteractions);
+    ItemNeighbors neighbors = ITEM_SIMILARITY_JOB.compute(interactions);
+
+    try (Transaction tx = new Transaction()) {
+      tx.begin();
+      Connection conn = tx.getConnection();
+      executeUpdate(conn, "DELETE FROM publication_neighbor");
+
+      List<Object[]> rows = new ArrayList<>();
+      neighbors.forEachEdge((pubId, neighborId, similarity) -> rows.add(new Object[] {pubId, neighborId, similarity}));
+      for (int from = 0; from < rows.size(); from += NEIGHBOR_BATCH_SIZE) {
+        executeBatch(conn, "INSERT INTO publication_neighbor (pub_id, neighbor_id, similarity) VALUES (?, ?, ?)",
+            rows.subList(from, Math.min(rows.size(), from + NEIGHBOR_BATCH_SIZE)));
+      }
+      tx.commit();
+    }
+
+    itemNeighbors = neighbors;
+  }
+
+  /**
+   * Loads the neighbour lists stored by the last {@link #rebuildItemNeighbors()} into memory, so a restart
+   * does not have to recompute them.
+   *
+   * @return the number of loaded neighbour edges
+   */
+  public int loadItemNeighbors() {
+    ItemNeighbors.Builder builder = ItemNeighbors.builder();
+    int[] edges = new int[1];
+    withConnection(conn -> findMany(conn,
+        "SELECT pub_id, neighbor_id, similarity FROM publication_neighbor ORDER BY pub_id, similarity DESC",
+        rs -> {
+          builder.add(rs.getInt("pub_id"), rs.getInt("neighbor_id"), rs.getFloat("similarity"));
+          edges[0]++;
+          return null;
+        }));
+    itemNeighbors = builder.build();
+    return edges[0];
+  }
+
+  /**
+   * Precomputes the hybrid pool of every account active in the last {@code activeDays} days and stores
+   * its top {@code recommendation.precomputeSize} ids in {@code precomputed_recommendation}, so the
+   * feeds of the most engaged users skip ranking at request time. Meant to run offline, from a scheduled
+   * job.
+   * <p>
+   * Accounts are split into chunks ranked concurrently by a pool of worker threads. Each chunk is
+   * ranked on one connection and its rows replaced in one transaction with a single batch. Rows of
+   * accounts no longer active are deleted once every chunk has been written. A failed chunk is logged
+   * and skipped, and its accounts fall back to the live path.
+   *
+   * @param activeDays the number of days of interactions that make an account active
+   * @param threads the number of worker threads
+   * @param chunkSize the number of accounts ranked and written per chunk
+   * @return the number of accounts whose pool was precomputed
+   */
+  public int precomputeRecommendations(int activeDays, int threads, int chunkSize) {
+    LocalDateTime runStart = withConnection(conn -> findOne(conn, "SELECT NOW() AS now",
+        rs -> rs.getObject("now", LocalDateTime.class)).orElseThrow());
+    List<Integer> accountIds = withConnection(conn -> findActiveAccountIds(activeDays, conn));
+
+    ExecutorService workers = Executors.newFixedThreadPool(threads, r -> {
+      Thread t = new Thread(r, "airchive-precompute");
+      t.setDaemon(true);
+      return t;
+    });
+    int precomputed = 0;
+    try {
+      List<Future<Integer>> chunks = new ArrayList<>();
+      for (int from = 0; from < accountIds.size(); from += chunkSize) {
+        List<Integer> chunk = accountIds.subList(from, Math.min(accountIds.size(), from + chunkSize));
+        chunks.add(workers.submit(() -> precomputeChunk(chunk)));
+      }
+      for (Future<Integer> chunk : chunks) {
+        try {
+          precomputed += chunk.get();
+        } catch (ExecutionException e) {
+          System.err.println("Failed to precompute a chunk of recommendations");
+          e.getCause().printStackTrace();
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return precomputed;
+    } finally {
+      workers.shutdownNow();
+    }
+
+    withConnection(conn -> executeUpdate(conn,
+        "DELETE FROM precomputed_recommendation WHERE computed_at < ?", runStart));
+    return precomputed;
+  }
+
+  /**
+   * @param maxAgeHours the age of the newest precomputed pool above which a run is due, in hours
+   * @return {@code true} if no pool was precomputed in the last {@code maxAgeHours} hours
+   */
+  public boolean isPrecomputeDue(int maxAgeHours) {
+    return withConnection(conn -> !exists(conn,
+        "SELECT EXISTS(SELECT 1 FROM precomputed_recommendation WHERE computed_at > DATE_SUB(NOW(), INTERVAL ? HOUR))",
+        maxAgeHours));
+  }
+
+  private int precomputeChunk(List<Integer> accountIds) {
+    List<Object[]> rows = new ArrayList<>();
+    withConnection(conn -> {
+      for (int accountId : accountIds) {
+        precomputedDrift.remove(accountId);
+        List<Integer> ranked = getHybridRecommendations(accountId, PRECOMPUTED_SIZE, null, conn);
+        for (int position = 0; position < ranked.size(); position++) {
+          rows.add(new Object[] {accountId, position, ranked.get(position)});
+        }
+      }
+      return null;
+    });
+
+    String placeholders = accountIds.stream().map(id -> "?").collect(Collectors.joining(", "));
+    try (Transaction tx = new Transaction()) {
+      tx.begin();
+      Connection conn = tx.getConnection();
+      executeUpdate(conn, "DELETE FROM precomputed_recommendation WHERE account_id IN (" + placeholders + ")",
+          accountIds.toArray());
+      executeBatch(conn, "INSERT INTO precomputed_recommendation (account_id, position, pub_id, computed_at) "
+          + "VALUES (?, ?, ?, NOW())", rows);
+      tx.commit();
+    }
+    return accountIds.size();
+  }
+
+  /**
+   * Returns the account's precomputed pool without the publications it has viewed since, restricted to
+   * the given kinds, or {@code null} if the account has none, it is older than
+   * {@link #PRECOMPUTED_MAX_AGE_HOURS}, its affinity drifted too far since, it is shorter than
+   * {@code minSize} once filtered, or kinds cannot be filtered without the candidate index.
+   */
+  private int[] findPrecomputedPool(int accountId, List<Publication.Kind> kinds, int minSize) {
+    if (precomputedDrift.getOrDefault(accountId, 0.0) > PRECOMPUTED_DRIFT_THRESHOLD) return null;
+    CandidateIndex index = getCandidateIndex();
+    boolean filterKinds = kinds != null && !kinds.isEmpty();
+    if (filterKinds && index == null) return null;
+
+    return withConnection(conn -> {
+      List<Integer> ids = findColumnMany(conn,
+          "SELECT pub_id FROM precomputed_recommendation "
+              + "WHERE account_id = ? AND computed_at > DATE_SUB(NOW(), INTERVAL ? HOUR) ORDER BY position",
+          Integer.class, accountId, PRECOMPUTED_MAX_AGE_HOURS);
+      if (ids.size() < minSize) return null;
+
+      SeenFilter seen = findSeenFilter(accountId, conn);
+      int[] pool = ids.stream()
+          .filter(pubId -> !seen.mightContain(pubId))
+          .filter(pubId -> index == null || index.ordinalOf(pubId) >= 0)
+          .filter(pubId -> !filterKinds || kinds.contains(index.kind(index.ordinalOf(pubId))))
+          .mapToInt(Integer::intValue)
+          .toArray();
+      return pool.length >= minSize ? pool : null;
+    });
+  }
+
+  /**
+   * Returns the ids of accounts that viewed, liked or saved a publication in the last
+   * {@code activeDays} days, in ascending order.
+   */
+  private List<Integer> findActiveAccountIds(int activeDays, Connection conn) {
+    return findColumnMany(conn, """
+    SELECT account_id FROM publication_view WHERE viewed_at > DATE_SUB(NOW(), INTERVAL ? DAY)
+    UNION
+    SELECT account_id FROM publication_like WHERE liked_at > DATE_SUB(NOW(), INTERVAL ? DAY)
+    UNION
+    SELECT c.account_id FROM collection_item ci JOIN collection c ON ci.collection_id = c.collection_id
+    WHERE ci.added_at > DATE_SUB(NOW(), INTERVAL ? DAY)
+    ORDER BY account_id
+    """, Integer.class, activeDays, activeDays, activeDays);
+  }
+
+  /**
+   * A hybrid pool and whether every candidate source contributed to it.
+   */
+  private record HybridPool(List<Integer> ids, boolean complete) {}
+
+  /**
+   * A buffered interaction weight.
+   */
+  private record AffinityUpdate(int accountId, int pubId, double weight) {}
+
+  private CandidateIndex getCandidateIndex() {
+    return USE_CANDIDATE_INDEX ? candidateIndex : null;
+  }
+
+  private CandidateIndex loadCandidateIndex(Connection conn) {
+    CandidateIndex.Builder builder = CandidateIndex.builder();
+
+    findMany(conn, "SELECT pub_id, kind FROM publication WHERE status = 'PUBLISHED'",
+        rs -> builder.add(rs.getInt("pub_id"), Publication.Kind.valueOf(rs.getString("kind")), List.of(), List.of()));
+    findMany(conn, "SELECT pub_id, topic_id FROM publication_topic",
+        rs -> builder.addTopic(rs.getInt("pub_id"), rs.getInt("topic_id")));
+    findMany(conn, "SELECT pub_id, person_id FROM publication_author",
+        rs -> builder.addAuthor(rs.getInt("pub_id"), rs.getInt("person_id")));
+    findPopularityScores(conn).forEach(builder::setPopularity);
+
+    return builder.build();
+  }
+
+  private Map<Integer, Double> findPopularityScores(Connection conn) {
+    Map<Integer, Double> scores = new HashMap<>();
+    findMany(conn, "SELECT pub_id, popularity_score FROM publication_popularity",
+        rs -> scores.put(rs.getInt("pub_id"), rs.getDouble("popularity_score")));
+    return scores;
+  }
+
+  private Map<Integer, Double> findPopularityScores(List<Integer> pubIds, Connection conn) {
+    Map<Integer, Double> scores = new HashMap<>();
+    for (int from = 0; from < pubIds.size(); from += PUBLICATION_ID_CHUNK_SIZE) {
+      List<Integer> chunk = pubIds.subList(from, Math.min(pubIds.size(), from + PUBLICATION_ID_CHUNK_SIZE));
+      String placeholders = chunk.stream().map(id -> "?").collect(Collectors.joining(", "));
+      findMany(conn, "SELECT pub_id, popularity_score FROM publication_popularity WHERE pub_id IN (" + placeholders
+          + ")", rs -> scores.put(rs.getInt("pub_id"), rs.getDouble("popularity_score")), chunk.toArray());
+    }
+    return scores;
+  }
+
+  private Map<Integer, Double> findTopicAffinities(int accountId, Connection conn) {
+    return findAffinities(accountId, AffinityProfileCache.Dimension.TOPIC, "topic_affinity", "topic_id", conn);
+  }
+
+  private Map<Integer, Double> findAuthorAffinities(int accountId, Connection conn) {
+    return findAffinities(accountId, AffinityProfileCache.Dimension.AUTHOR, "author_affinity", "author_id", conn);
+  }
+
+  /**
+   * Returns the account's affinities above {@link #MIN_AFFINITY_SCORE} from its cached profile, loading
+   * its strongest rows into the cache on a miss. One row more than the profile holds is read, so the
+   * cache knows whether the profile was truncated.
+   */
+  private Map<Integer, Double> findAffinities(int accountId, AffinityProfileCache.Dimension dimension,
+      String table, String keyColumn, Connection conn) {
+    long now = System.currentTimeMillis();
+    Map<Integer, Double> cached = affinityProfiles.get(accountId, dimension, MIN_AFFINITY_SCORE, now);
+    if (cached != null) return cached;
+
+    long version = affinityProfiles.acquire(accountId);
+    List<double[]> rows = findMany(conn, "SELECT " + keyColumn + ", score FROM " + decayedAffinityTable(table, keyColumn)
+        + " a WHERE account_id = ? ORDER BY score DESC LIMIT ?",
+        rs -> new double[] {rs.getInt(keyColumn), rs.getDouble("score")},
+        accountId, affinityProfiles.maxEntries() + 1);
+
+    int[] ids = rows.stream().mapToInt(row -> (int) row[0]).toArray();
+    double[] scores = rows.stream().mapToDouble(row -> row[1]).toArray();
+    affinityProfiles.put(accountId, dimension, ids, scores, now, version);
+
+    Map<Integer, Double> affinities = new HashMap<>();
+    for (int i = 0; i < ids.length && i < affinityProfiles.maxEntries(); i++) {
+      if (scores[i] > MIN_AFFINITY_SCORE) affinities.put(ids[i], scores[i]);
+    }
+    return affinities;
+  }
+
+  /**
+   * Returns the ids of accounts with interactions in the last {@link #LOOKBACK_DAYS} days or with stored
+   * affinity rows, in ascending order.
+   */
+  private List<Integer> findAffinityAccountIds(Connection conn) {
+    return findColumnMany(conn, """
+    SELECT account_id FROM publication_view WHERE viewed_at > DATE_SUB(NOW(), INTERVAL ? DAY)
+    UNION
+    SELECT account_id FROM publication_like WHERE liked_at > DATE_SUB(NOW(), INTERVAL ? DAY)
+    UNION
+    SELECT c.account_id FROM collection_item ci JOIN collection c ON ci.collection_id = c.collection_id
+    WHERE ci.added_at > DATE_SUB(NOW(), INTERVAL ? DAY)
+    UNION
+    SELECT account_id FROM topic_affinity
+    UNION
+    SELECT account_id FROM author_affinity
+    ORDER BY account_id
+    """, Integer.class, LOOKBACK_DAYS, LOOKBACK_DAYS, LOOKBACK_DAYS);
+  }
+
+  /**
+   * Loads the aggregated interaction weight of every (account, published publication) pair: likes and
+   * saves of all time, plus views within {@link #LOOKBACK_DAYS}.
+   */
+  private ItemSimilarityJob.Interactions findCoInteractions(Connection conn) {
+    String sql = """
+    SELECT i.account_id, i.pub_id, SUM(i.weight) AS weight
+    FROM (
+      SELECT account_id, pub_id, ? AS weight FROM publication_like
+      UNION ALL
+      SELECT c.account_id, ci.pub_id, ? FROM collection_item ci
+      JOIN collection c ON ci.collection_id = c.collection_id
+      UNION ALL
+      SELECT DISTINCT account_id, pub_id, ? FROM publication_view
+      WHERE viewed_at > DATE_SUB(NOW(), INTERVAL ? DAY)
+    ) i
+    JOIN publication p ON p.pub_id = i.pub_id
+    WHERE p.status = 'PUBLISHED'
+    GROUP BY i.account_id, i.pub_id
+    """;
+
+    ItemSimilarityJob.Interactions interactions = new ItemSimilarityJob.Interactions();
+    findMany(conn, sql,
+        rs -> interactions.add(rs.getInt("account_id"), rs.getInt("pub_id"), rs.getFloat("weight")),
+        Interaction.LIKE.getAffinityWeight(), Interaction.SAVE.getAffinityWeight(),
+        Interaction.VIEW.getAffinityWeight(), LOOKBACK_DAYS);
+    return interactions;
+  }
+
+  private List<Integer> findRecentInteractionIds(int accountId, Connection conn) {
+    return findColumnMany(conn, getRecentInteractionsSubquery(), Integer.class,
+        accountId, accountId, accountId, LOOKBACK_DAYS, RECENT_INTERACTIONS);
+  }
+
+  /**
+   * Returns the account's filter of viewed publications, loading it from {@code publication_view} on a
+   * cache miss. Sources drop viewed publications through it instead of anti-joining
+   * {@code publication_view} in every query.
+   */
+  private SeenFilter findSeenFilter(int accountId, Connection conn) {
+    SeenFilter filter = seenPublications.get(accountId);
+    if (filter != null) return filter;
+
+    return seenPublications.put(accountId, SeenFilter.of(findColumnMany(conn,
+        "SELECT DISTINCT pub_id FROM publication_view WHERE account_id = ?", Integer.class, accountId)));
+  }
+
+  /**
+   * Returns a derived table exposing the rows of an affinity table with their scores decayed from
+   * {@code last_updated} to the current time, so queries can keep reading {@code score}. MySQL merges
+   * the derived table into the outer query, so filters on {@code account_id} still use the primary key.
+   *
+   * @param table the affinity table, {@code topic_affinity} or {@code author_affinity}
+   * @param keyColumn the table's topic or author key column
+   */
+  static String decayedAffinityTable(String table, String keyColumn) {
+    return "(SELECT account_id, " + keyColumn + ", score * EXP(-TIMESTAMPDIFF(SECOND, last_updated, NOW()) / "
+        + AFFINITY_DECAY_HOURS * 3600 + ") AS score FROM " + table + ")";
+  }
+
+  /**
+   * Returns the ids of the account's most recently liked, saved or viewed publications. Takes the
+   * account id three times, the view lookback in days and the number of ids to return.
+   */
+  private String getRecentInteractionsSubquery() {
     return """
-      SELECT pub_id, ? * EXP(-TIMESTAMPDIFF(HOUR, viewed_at, NOW()) / ?) AS weighted_score
-      FROM publication_view WHERE account_id = ? AND viewed_at > DATE_SUB(NOW(), INTERVAL ? DAY)
+      SELECT pub_id FROM (
+        SELECT pub_id, liked_at AS interacted_at FROM publication_like WHERE account_id = ?
+        UNION ALL
+        SELECT ci.pub_id, ci.added_at FROM collection_item ci
+        JOIN collection c ON ci.collection_id = c.collection_id WHERE c.account_id = ?
+        UNION ALL
+        SELECT pub_id, viewed_at FROM publication_view
+        WHERE account_id = ? AND viewed_at > DATE_SUB(NOW(), INTERVAL ? DAY)
+      ) recent_interactions
+      GROUP BY pub_id
+      ORDER BY MAX(interacted_at) DESC
+      LIMIT ?
+    """;
+  }
+
+  /**
+   * Returns the decayed, weighted interactions of a set of accounts. For each of views, likes and saves
+   * the subquery takes the weight, the decay in hours, the account ids and the lookback in days.
+   *
+   * @param accountPlaceholders the comma-separated placeholders of the account ids
+   */
+  private String getUserInteractionsSubquery(String accountPlaceholders) {
+    return """
+      SELECT account_id, pub_id, ? * EXP(-TIMESTAMPDIFF(HOUR, viewed_at, NOW()) / ?) AS weighted_score
+      FROM publication_view WHERE account_id IN (%1$s) AND viewed_at > DATE_SUB(NOW(), INTERVAL ? DAY)
       UNION ALL
-      SELECT pub_id, ? * EXP(-TIMESTAMPDIFF(HOUR, liked_at, NOW()) / ?) AS weighted_score
-      FROM publication_like WHERE account_id = ? AND liked_at > DATE_SUB(NOW(), INTERVAL ? DAY)
+      SELECT account_id, pub_id, ? * EXP(-TIMESTAMPDIFF(HOUR, liked_at, NOW()) / ?) AS weighted_score
+      FROM publication_like WHERE account_id IN (%1$s) AND liked_at > DATE_SUB(NOW(), INTERVAL ? DAY)
       UNION ALL
-      SELECT ci.pub_id, ? * EXP(-TIMESTAMPDIFF(HOUR, ci.added_at, NOW()) / ?) AS weighted_score
+      SELECT c.account_id, ci.pub_id, ? * EXP(-TIMESTAMPDIFF(HOUR, ci.added_at, NOW()) / ?) AS weighted_score
       FROM collection_item ci JOIN collection c ON ci.collection_id = c.collection_id
-      WHERE c.account_id = ? AND ci.added_at > DATE_SUB(NOW(), INTERVAL ? DAY)
-    """;
+      WHERE c.account_id IN (%1$s) AND ci.added_at > DATE_SUB(NOW(), INTERVAL ? DAY)
+    """.formatted(accountPlaceholders);
   }
 
   private void addKindFilter(StringBuilder sql, Publication.Kind kind) {
@@ -371,33 +1836,4 @@ public class RecommendationRepository extends BaseRepository {
       params.add(kind.name());
     }
   }
-
-  private String getPopularityCTE() {
-    final double GRAVITY = 1.8;
-    final int AGE_OFFSET_HOURS = 2;
-    final double VIEW_WEIGHT = Interaction.VIEW.getAffinityWeight();
-    final int VIEW_DECAY_HOURS = 72;
-    final double LIKE_WEIGHT = Interaction.LIKE.getAffinityWeight();
-    final int LIKE_DECAY_HOURS = 168;
-    final double SAVE_WEIGHT = Interaction.SAVE.getAffinityWeight();
-    final int SAVE_DECAY_HOURS = 336;
-
-    return String.format("""
-    WITH publication_popularity AS (
-      SELECT
-        p.pub_id,
-        (
-          COALESCE(SUM(EXP(-TIMESTAMPDIFF(HOUR, pv.viewed_at, NOW()) / %d.0)), 0) * %f +
-          COALESCE(SUM(EXP(-TIMESTAMPDIFF(HOUR, pl.liked_at, NOW()) / %d.0)), 0) * %f +
-          COALESCE(SUM(EXP(-TIMESTAMPDIFF(HOUR, ci.added_at, NOW()) / %d.0)), 0) * %f
-        ) / POWER(GREATEST(1, TIMESTAMPDIFF(HOUR, p.submitted_at, NOW())) + %d, %f) AS popularity_score
-      FROM publication p
-      LEFT JOIN publication_view pv ON p.pub_id = pv.pub_id
-      LEFT JOIN publication_like pl ON p.pub_id = pl.pub_id
-      LEFT JOIN collection_item ci ON p.pub_id = ci.pub_id
-      WHERE p.status = 'PUBLISHED'
-      GROUP BY p.pub_id
-    )
-    """, VIEW_DECAY_HOURS, VIEW_WEIGHT, LIKE_DECAY_HOURS, LIKE_WEIGHT, SAVE_DECAY_HOURS, SAVE_WEIGHT, AGE_OFFSET_HOURS, GRAVITY);
-  }
-}
\ No newline at end of file
+}
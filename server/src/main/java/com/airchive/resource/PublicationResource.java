@@ -4,9 +4,11 @@ import com.airchive.dto.Draft;
 import com.airchive.dto.MiniPublication;
 import com.airchive.dto.PublicationResponse;
 import com.airchive.dto.PublishRequest;
+import com.airchive.dto.RecommendationPage;
 import com.airchive.dto.SessionUser;
 import com.airchive.entity.Person;
 import com.airchive.entity.Publication;
+import com.airchive.exception.ValidationException;
 import com.airchive.service.PersonAccountService;
 import com.airchive.service.PublicationService;
 import com.airchive.util.SecurityUtils;
@@ -45,11 +47,24 @@ import javax.ws.rs.core.Response;
  *   <li>{@code GET /publications/{id}} - get a publication by id</li>
  *   <li>{@code GET /publications/my} - get all publications created by the requesting user</li>
  *   <li>{@code GET /publications/search} - search for publications by title</li>
- *   <li>{@code GET /publications/recommendations} - get personalized or popular publication recommendations</li>
+ *   <li>{@code GET /publications/recommendations} - get personalized or popular publication recommendations,
+ *   at most 100 per page; the cursor for the next page is returned in the {@code X-Next-Cursor} header;
+ *   with {@code explain=true}, admins get the personal page together with the timings of each pipeline
+ *   stage; with {@code mode=trending}, get the publications trending right now instead, which cannot be
+ *   explained</li>
+ *   <li>{@code GET /publications/recommendations/profile} - get the latency histograms of the recommendation
+ *   pipeline stages (admin only)</li>
+ *   <li>{@code GET /publications/{id}/related} - get publications with similar title and content</li>
+ *   <li>{@code GET /publications/related/benchmark} - compare the recall and latency of related publications
+ *   against brute-force similarity (admin only)</li>
  *   <li>{@code POST /publications/{id}/like} - like a publication for the requesting user</li>
  *   <li>{@code DELETE /publications/{id}/like} - unlike a publication for the requesting user</li>
  *   <li>{@code GET /publications/{id}/like} - check if a publication is liked by the requesting user</li>
  *   <li>{@code POST /publications/{id}/view} - register a view interaction for the requesting user</li>
+ *   <li>{@code POST /publications/views/benchmark} - compare the cost of committing views one by one and
+ *   in batches, to a temporary table, and get the view write-behind counters (admin only)</li>
+ *   <li>{@code GET /publications/views/stats} - get the number of counted and suppressed duplicate views
+ *   and the view write-behind counters (admin only)</li>
  *   <li>{@code GET /publications/person-by-email/{email}} - search for a person by email</li>
  *   <li>{@code POST /publications/create-author} - create a new person/author</li>
  * </ul>
@@ -63,6 +78,8 @@ import javax.ws.rs.core.Response;
 @Consumes(MediaType.APPLICATION_JSON)
 public class PublicationResource {
 
+  private static final int MAX_PAGE_SIZE = 100;
+
   // Used to retrieve service instances injected via AppBootstrap
   @Context private ServletContext ctx;
 
@@ -135,7 +152,10 @@ public class PublicationResource {
       @QueryParam("kinds") List<String> kindListStr,
       @QueryParam("topicId") List<Integer> topicIds,
       @QueryParam("page") @DefaultValue("1") int page,
-      @QueryParam("pageSize") @DefaultValue("10") int pageSize
+      @QueryParam("pageSize") @DefaultValue("10") int pageSize,
+      @QueryParam("cursor") String cursor,
+      @QueryParam("explain") @DefaultValue("false") boolean explain,
+      @QueryParam("mode") @DefaultValue("personal") String mode
   ) {
     List<Publication.Kind> kinds = null;
 
@@ -147,13 +167,75 @@ public class PublicationResource {
 
     SessionUser user = SecurityUtils.getSessionUserOrNull(request);
 
+    if (page < 1 || pageSize < 1) {
+      throw new ValidationException("page and pageSize must be positive");
+    }
+    pageSize = Math.min(pageSize, MAX_PAGE_SIZE);
+
+    if (!mode.equalsIgnoreCase("personal") && !mode.equalsIgnoreCase("trending")) {
+      throw new ValidationException("Unknown feed mode: " + mode);
+    }
+
     if (topicIds != null && !topicIds.isEmpty()) {
       List<MiniPublication> results = getPublicationService().getByTopicsAndKinds(topicIds, kinds, page, pageSize, user);
       return Response.ok(results).build();
     }
 
-    List<MiniPublication> recs = getPublicationService().getRecommendations(user, kinds, page, pageSize);
-    return Response.ok(recs).build();
+    if (explain && mode.equalsIgnoreCase("trending")) {
+      throw new ValidationException("explain is only supported with mode=personal");
+    }
+
+    if (explain) {
+      return Response.ok(getPublicationService().explainRecommendations(user, kinds, cursor, page, pageSize)).build();
+    }
+
+    RecommendationPage recs = mode.equalsIgnoreCase("trending")
+        ? getPublicationService().getTrending(kinds, cursor, page, pageSize)
+        : getPublicationService().getRecommendations(user, kinds, cursor, page, pageSize);
+    Response.ResponseBuilder response = Response.ok(recs.items());
+    if (recs.nextCursor() != null) {
+      response.header("X-Next-Cursor", recs.nextCursor());
+    }
+    return response.build();
+  }
+
+  @GET
+  @Path("/recommendations/profile")
+  public Response recommendationProfile() {
+    SessionUser user = SecurityUtils.getSessionUserOrThrow(request);
+    return Response.ok(getPublicationService().getRecommendationProfile(user)).build();
+  }
+
+
+  @GET
+  @Path("/{id}/related")
+  public Response related(@PathParam("id") int pubId, @QueryParam("limit") @DefaultValue("5") int limit) {
+    return Response.ok(getPublicationService().getRelatedPublications(pubId, limit)).build();
+  }
+
+  @GET
+  @Path("/related/benchmark")
+  public Response benchmarkRelated(
+      @QueryParam("samples") @DefaultValue("100") int samples,
+      @QueryParam("k") @DefaultValue("10") int k
+  ) {
+    SessionUser user = SecurityUtils.getSessionUserOrThrow(request);
+    return Response.ok(getPublicationService().benchmarkRelatedPublications(user, samples, k)).build();
+  }
+
+
+  @POST
+  @Path("/views/benchmark")
+  public Response benchmarkViewWrites(@QueryParam("events") @DefaultValue("1000") int events) {
+    SessionUser user = SecurityUtils.getSessionUserOrThrow(request);
+    return Response.ok(getPublicationService().benchmarkViewWrites(user, events)).build();
+  }
+
+  @GET
+  @Path("/views/stats")
+  public Response viewStats() {
+    SessionUser user = SecurityUtils.getSessionUserOrThrow(request);
+    return Response.ok(getPublicationService().getViewIngestionStats(user)).build();
   }
 
 
@@ -1,5 +1,6 @@
 package com.airchive.resource;
 
+import com.airchive.dto.AffinityRebuildStatus;
 import com.airchive.dto.InteractionSummary;
 import com.airchive.dto.SessionUser;
 import com.airchive.service.InteractionService;
@@ -26,6 +27,8 @@ import java.util.Map;
  *   <li>{@code GET /users/me/interactions} - get the user's most recent publication interactions</li>
  *   <li>{@code GET /users/stats/platform} - get platform-wide statistics</li>
  *   <li>{@code POST /users/me/affinities} - trigger affinity score recalculation for the requesting user</li>
+ *   <li>{@code POST /users/affinities/rebuild} - start recalculating the affinity scores of all accounts (admin only)</li>
+ *   <li>{@code GET /users/affinities/rebuild} - get the progress of the bulk affinity recalculation (admin only)</li>
  * </ul>
  *
  * <p>
@@ -82,4 +85,19 @@ public class UserResource {
     getPersonAccountService().updateUserAffinitiesAsync(user.accountId());
     return Response.status(Response.Status.ACCEPTED).build();
   }
+
+  @POST
+  @Path("/affinities/rebuild")
+  public Response rebuildAllAffinities() {
+    SessionUser user = SecurityUtils.getSessionUserOrThrow(request);
+    AffinityRebuildStatus status = getPersonAccountService().rebuildAllAffinitiesAsync(user);
+    return Response.status(Response.Status.ACCEPTED).entity(status).build();
+  }
+
+  @GET
+  @Path("/affinities/rebuild")
+  public Response getAffinityRebuildStatus() {
+    SessionUser user = SecurityUtils.getSessionUserOrThrow(request);
+    return Response.ok(getPersonAccountService().getAffinityRebuildStatus(user)).build();
+  }
 }
\ No newline at end of file
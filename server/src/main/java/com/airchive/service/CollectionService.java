@@ -16,9 +16,9 @@ import com.airchive.exception.EntityNotFoundException;
 import com.airchive.exception.ValidationException;
 import com.airchive.repository.CollectionItemRepository;
 import com.airchive.repository.CollectionRepository;
-import com.airchive.repository.InteractionRepository;
 import com.airchive.repository.PublicationAuthorRepository;
 import com.airchive.repository.PublicationRepository;
+import com.airchive.repository.PublicationStatsRepository;
 import com.airchive.repository.PublicationTopicRepository;
 import com.airchive.repository.RecommendationRepository;
 import com.airchive.util.ValidationUtils;
@@ -32,7 +32,7 @@ public class CollectionService {
   private final CollectionRepository collectionRepository;
   private final CollectionItemRepository collectionItemRepository;
   private final RecommendationRepository recommendationRepository;
-  private final InteractionRepository interactionRepository;
+  private final PublicationStatsRepository publicationStatsRepository;
   private final PublicationAuthorRepository publicationAuthorRepository;
   private final PublicationTopicRepository publicationTopicRepository;
   private final PublicationRepository publicationRepository;
@@ -41,7 +41,7 @@ public class CollectionService {
       CollectionRepository collectionRepository,
       CollectionItemRepository collectionItemRepository,
       RecommendationRepository recommendationRepository,
-      InteractionRepository interactionRepository,
+      PublicationStatsRepository publicationStatsRepository,
       PublicationAuthorRepository publicationAuthorRepository,
       PublicationTopicRepository publicationTopicRepository,
       PublicationRepository publicationRepository
@@ -49,7 +49,7 @@ public class CollectionService {
     this.collectionRepository = collectionRepository;
     this.collectionItemRepository = collectionItemRepository;
     this.recommendationRepository = recommendationRepository;
-    this.interactionRepository = interactionRepository;
+    this.publicationStatsRepository = publicationStatsRepository;
     this.publicationAuthorRepository = publicationAuthorRepository;
     this.publicationTopicRepository = publicationTopicRepository;
     this.publicationRepository = publicationRepository;
@@ -171,7 +171,7 @@ public class CollectionService {
   }
 
   private List<MiniPublication> toMiniPublications(List<Publication> publications) {
-    return getMiniPublications(publications, interactionRepository, publicationAuthorRepository,
+    return getMiniPublications(publications, publicationStatsRepository, publicationAuthorRepository,
         publicationTopicRepository);
   }
 }
@@ -1,6 +1,7 @@
 package com.airchive.service;
 
 import com.airchive.db.Transaction;
+import com.airchive.dto.AffinityRebuildStatus;
 import com.airchive.dto.SessionUser;
 import com.airchive.entity.Account;
 import com.airchive.entity.Person;
@@ -12,10 +13,13 @@ import com.airchive.repository.CollectionRepository;
 import com.airchive.repository.PersonRepository;
 import com.airchive.repository.RecommendationRepository;
 import com.airchive.util.PasswordUtils;
+import com.airchive.util.PropertyUtils;
 import com.airchive.util.SecurityUtils;
 import com.airchive.util.ValidationUtils;
 import java.sql.Connection;
+import java.time.LocalDateTime;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class PersonAccountService {
 
@@ -24,6 +28,16 @@ public class PersonAccountService {
   private final CollectionRepository collectionRepository;
   private final RecommendationRepository recommendationRepository;
 
+  /** The number of accounts rebuilt per pass of a bulk affinity rebuild. */
+  private static final int AFFINITY_REBUILD_CHUNK_SIZE =
+      PropertyUtils.getIntProperty("recommendation.affinityRebuildChunkSize", 500);
+  /** The pause between passes of a bulk affinity rebuild, in milliseconds. */
+  private static final int AFFINITY_REBUILD_PAUSE_MILLIS =
+      PropertyUtils.getIntProperty("recommendation.affinityRebuildPauseMillis", 200);
+
+  private final AtomicReference<AffinityRebuildStatus> affinityRebuildStatus =
+      new AtomicReference<>(new AffinityRebuildStatus(false, 0, 0, null, null, null));
+
   public PersonAccountService(
       PersonRepository personRepository,
       AccountRepository accountRepository,
@@ -138,6 +152,51 @@ public class PersonAccountService {
     });
   }
 
+  /**
+   * Starts recomputing the affinities of every account in the background, in throttled chunks.
+   * Only one bulk rebuild may run at a time.
+   *
+   * @param requester the admin starting the rebuild
+   * @return the status of the newly started rebuild
+   */
+  public AffinityRebuildStatus rebuildAllAffinitiesAsync(SessionUser requester) {
+    SecurityUtils.requireAdmin(requester);
+
+    AffinityRebuildStatus current = affinityRebuildStatus.get();
+    AffinityRebuildStatus started = new AffinityRebuildStatus(true, 0, 0, LocalDateTime.now(), null, null);
+    if (current.running() || !affinityRebuildStatus.compareAndSet(current, started)) {
+      throw new ValidationException("An affinity rebuild is already running.");
+    }
+
+    CompletableFuture.runAsync(() -> {
+      try {
+        int processed = recommendationRepository.rebuildAllAffinityScores(
+            AFFINITY_REBUILD_CHUNK_SIZE, AFFINITY_REBUILD_PAUSE_MILLIS,
+            (done, total) -> affinityRebuildStatus.set(
+                new AffinityRebuildStatus(true, done, total, started.startedAt(), null, null)));
+        AffinityRebuildStatus last = affinityRebuildStatus.get();
+        affinityRebuildStatus.set(new AffinityRebuildStatus(false, processed, last.totalAccounts(),
+            started.startedAt(), LocalDateTime.now(), null));
+      } catch (Exception e) {
+        System.err.println("Future completed with exception: Could not rebuild affinities for all accounts");
+        e.printStackTrace();
+        AffinityRebuildStatus last = affinityRebuildStatus.get();
+        affinityRebuildStatus.set(new AffinityRebuildStatus(false, last.processedAccounts(), last.totalAccounts(),
+            started.startedAt(), LocalDateTime.now(), e.getMessage()));
+      }
+    });
+    return started;
+  }
+
+  /**
+   * @param requester the admin asking for the status
+   * @return the progress of the running or last bulk affinity rebuild
+   */
+  public AffinityRebuildStatus getAffinityRebuildStatus(SessionUser requester) {
+    SecurityUtils.requireAdmin(requester);
+    return affinityRebuildStatus.get();
+  }
+
   public Account getAccountById(int accountId) {
     return accountRepository.findById(accountId)
         .orElseThrow(() -> new EntityNotFoundException("Account not found."));
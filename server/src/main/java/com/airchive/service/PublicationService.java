@@ -6,6 +6,8 @@ import com.airchive.dto.MiniPerson;
 import com.airchive.dto.MiniPublication;
 import com.airchive.dto.PublicationResponse;
 import com.airchive.dto.PublishRequest;
+import com.airchive.dto.RecommendationExplain;
+import com.airchive.dto.RecommendationPage;
 import com.airchive.dto.SessionUser;
 import com.airchive.entity.Person;
 import com.airchive.entity.Publication;
@@ -14,11 +16,17 @@ import com.airchive.entity.Topic;
 import com.airchive.exception.AuthenticationException;
 import com.airchive.exception.EntityNotFoundException;
 import com.airchive.exception.ValidationException;
+import com.airchive.recommendation.PublicationCounters;
+import com.airchive.recommendation.RecommendationPoolCache;
+import com.airchive.recommendation.RecommendationProfiler;
+import com.airchive.recommendation.RelatedPublicationIndex;
 import com.airchive.repository.CollectionItemRepository;
 import com.airchive.repository.InteractionRepository;
 import com.airchive.repository.PersonRepository;
+import com.airchive.repository.PopularityRepository;
 import com.airchive.repository.PublicationAuthorRepository;
 import com.airchive.repository.PublicationRepository;
+import com.airchive.repository.PublicationStatsRepository;
 import com.airchive.repository.PublicationTopicRepository;
 import com.airchive.repository.RecommendationRepository;
 import com.airchive.repository.TopicRepository;
@@ -35,10 +43,13 @@ public class PublicationService {
   private final PublicationTopicRepository publicationTopicRepository;
   private final PublicationAuthorRepository publicationAuthorRepository;
   private final InteractionRepository interactionRepository;
+  private final PublicationStatsRepository publicationStatsRepository;
   private final RecommendationRepository recommendationRepository;
   private final PersonRepository personRepository;
   private final TopicRepository topicRepository;
   private final CollectionItemRepository collectionItemRepository;
+  private final PopularityRepository popularityRepository;
+  private final RecommendationProfiler recommendationProfiler;
 
   private static final int PUBLICATION_PAGE_SIZE = 10;
 
@@ -47,19 +58,25 @@ public class PublicationService {
       PublicationTopicRepository publicationTopicRepository,
       PublicationAuthorRepository publicationAuthorRepository,
       InteractionRepository interactionRepository,
+      PublicationStatsRepository publicationStatsRepository,
       RecommendationRepository recommendationRepository,
       PersonRepository personRepository,
       TopicRepository topicRepository,
-      CollectionItemRepository collectionItemRepository
+      CollectionItemRepository collectionItemRepository,
+      PopularityRepository popularityRepository,
+      RecommendationProfiler recommendationProfiler
   ) {
     this.publicationRepository = publicationRepository;
     this.publicationTopicRepository = publicationTopicRepository;
     this.publicationAuthorRepository = publicationAuthorRepository;
     this.interactionRepository = interactionRepository;
+    this.publicationStatsRepository = publicationStatsRepository;
     this.recommendationRepository = recommendationRepository;
     this.personRepository = personRepository;
     this.topicRepository = topicRepository;
     this.collectionItemRepository = collectionItemRepository;
+    this.popularityRepository = popularityRepository;
+    this.recommendationProfiler = recommendationProfiler;
   }
 
   public PublicationResponse createDraft(SessionUser user, Draft request) {
@@ -160,16 +177,20 @@ public class PublicationService {
       LocalDateTime publishTime = (request.publishedAt() != null)
           ? request.publishedAt() : LocalDateTime.now();
       publicationRepository.updateStatusAndPublishedAt(pubId, Publication.Status.PUBLISHED, publishTime, conn);
+      popularityRepository.ensureRow(pubId, conn);
 
       tx.commit();
+      recommendationRepository.indexPublication(pubId);
       return toPublicationResponse(publicationRepository.findById(pubId, conn)
           .orElseThrow(() -> new EntityNotFoundException("Publication not found")));
     }
   }
 
   public void viewPublication(SessionUser requester, int pubId) {
-    interactionRepository.addView(requester.accountId(), pubId);
-    recommendationRepository.updateAffinityForInteraction(requester.accountId(), pubId, Interaction.VIEW.getAffinityWeight());
+    if (interactionRepository.addView(requester.accountId(), pubId)) {
+      recommendationRepository.updateAffinityForInteraction(requester.accountId(), pubId,
+          Interaction.VIEW.getAffinityWeight());
+    }
   }
 
   public void likePublication(SessionUser requester, int pubId) {
@@ -217,13 +238,104 @@ public class PublicationService {
     return toMiniPublications(pubs);
   }
 
-  public List<MiniPublication> getRecommendations(SessionUser user, List<Publication.Kind> kinds, int page, int pageSize) {
+  public RecommendationPage getRecommendations(SessionUser user, List<Publication.Kind> kinds, String cursor,
+      int page, int pageSize) {
+    return getRecommendations(user, kinds, cursor, page, pageSize, recommendationProfiler.newTrace());
+  }
+
+  /**
+   * Returns a page of the publications trending right now, i.e. receiving views, likes and saves faster
+   * than over the past few hours.
+   */
+  public RecommendationPage getTrending(List<Publication.Kind> kinds, String cursor, int page, int pageSize) {
+    int offset = (cursor != null && !cursor.isBlank())
+        ? RecommendationPoolCache.decodeCursor(cursor).position() : (page - 1) * pageSize;
+
+    List<Integer> pubIds = recommendationRepository.getTrending(kinds, pageSize, offset);
+    List<MiniPublication> items = toMiniPublications(publicationRepository.findByIdsInOrder(pubIds));
+
+    String nextCursor = (pubIds.size() < pageSize) ? null
+        : RecommendationPoolCache.encodeCursor(new RecommendationPoolCache.Cursor(0, offset + pubIds.size()));
+    return new RecommendationPage(items, nextCursor);
+  }
+
+  /**
+   * Builds the same page as {@link #getRecommendations}, together with the wall time, rows, duplicates
+   * and borrowed connections of each pipeline stage. Admin only.
+   */
+  public RecommendationExplain explainRecommendations(SessionUser user, List<Publication.Kind> kinds, String cursor,
+      int page, int pageSize) {
+    SecurityUtils.requireAdmin(user);
+    RecommendationProfiler.Trace trace = recommendationProfiler.newTrace();
+    RecommendationPage recs = getRecommendations(user, kinds, cursor, page, pageSize, trace);
+    return new RecommendationExplain(recs.items(), recs.nextCursor(), trace.stages());
+  }
+
+  /**
+   * Returns the latency histogram summary of every recommendation pipeline stage since startup. Admin only.
+   */
+  public List<RecommendationProfiler.StageSummary> getRecommendationProfile(SessionUser user) {
+    SecurityUtils.requireAdmin(user);
+    return recommendationProfiler.summaries();
+  }
+
+  private RecommendationPage getRecommendations(SessionUser user, List<Publication.Kind> kinds, String cursor,
+      int page, int pageSize, RecommendationProfiler.Trace trace) {
     int accountId = (user != null) ? user.accountId() : -1;
-    int offset = (page - 1) * pageSize;
+    RecommendationPoolCache.Cursor from = (cursor != null && !cursor.isBlank())
+        ? RecommendationPoolCache.decodeCursor(cursor) : new RecommendationPoolCache.Cursor(0, (page - 1) * pageSize);
 
-    List<Integer> pubIds = recommendationRepository.getRecommendations(accountId, pageSize, offset, kinds);
-    List<Publication> pubs = publicationRepository.findByIdsInOrder(pubIds);
-    return toMiniPublications(pubs);
+    RecommendationPoolCache.Slice slice = recommendationRepository.getRecommendations(accountId, pageSize, from, kinds,
+        trace);
+    List<Integer> pubIds = slice.ids();
+    List<Publication> pubs = trace.timeUnchecked("publications", () -> publicationRepository.findByIdsInOrder(pubIds));
+    List<MiniPublication> items = trace.timeUnchecked("hydration", () -> toMiniPublications(pubs));
+
+    String nextCursor = (pubIds.size() < pageSize) ? null : RecommendationPoolCache.encodeCursor(slice.next());
+    return new RecommendationPage(items, nextCursor);
+  }
+
+  public List<MiniPublication> getRelatedPublications(int pubId, int limit) {
+    if (limit < 1 || limit > 50) {
+      throw new ValidationException("limit must be between 1 and 50.");
+    }
+    List<Integer> pubIds = recommendationRepository.getRelatedPublications(pubId, limit);
+    return toMiniPublications(publicationRepository.findByIdsInOrder(pubIds));
+  }
+
+  /**
+   * Measures the recall and latency of related publications against brute-force similarity, on at most
+   * 1000 sampled publications with at most 50 neighbours each. Admin only.
+   */
+  public RelatedPublicationIndex.BenchmarkResult benchmarkRelatedPublications(SessionUser user, int samples, int k) {
+    SecurityUtils.requireAdmin(user);
+    if (samples < 1 || samples > 1000) {
+      throw new ValidationException("samples must be between 1 and 1000.");
+    }
+    if (k < 1 || k > 50) {
+      throw new ValidationException("k must be between 1 and 50.");
+    }
+    return recommendationRepository.benchmarkRelatedPublications(samples, k);
+  }
+
+  /**
+   * Measures committing views one per transaction against committing them in batches, to a temporary
+   * table. Admin only.
+   */
+  public InteractionRepository.ViewWriteBenchmark benchmarkViewWrites(SessionUser user, int events) {
+    SecurityUtils.requireAdmin(user);
+    if (events < 1 || events > 10000) {
+      throw new ValidationException("events must be between 1 and 10000.");
+    }
+    return interactionRepository.benchmarkViewWrites(user.accountId(), events);
+  }
+
+  /**
+   * Returns the counted and suppressed views and the view write-behind counters since startup. Admin only.
+   */
+  public InteractionRepository.ViewIngestionStats getViewIngestionStats(SessionUser user) {
+    SecurityUtils.requireAdmin(user);
+    return interactionRepository.viewIngestionStats();
   }
 
   public List<MiniPublication> getMyPublications(SessionUser requester) {
@@ -245,37 +357,36 @@ public class PublicationService {
     List<Integer> topicIds = publicationTopicRepository.findTopicIdsByPublication(pub.pubId());
     List<Topic> topics = topicRepository.findByIds(topicIds);
 
-    int viewCount = interactionRepository.countViews(pub.pubId());
-    int likeCount = interactionRepository.countLikes(pub.pubId());
+    PublicationCounters.Counts counts = publicationStatsRepository.findCounts(pub.pubId());
 
-    return PublicationResponse.from(pub, viewCount, likeCount, authors, topics);
+    return PublicationResponse.from(pub, (int) counts.views(), (int) counts.likes(), authors, topics);
   }
 
   private List<MiniPublication> toMiniPublications(List<Publication> publications) {
-    return getMiniPublications(publications, interactionRepository, publicationAuthorRepository,
+    return getMiniPublications(publications, publicationStatsRepository, publicationAuthorRepository,
         publicationTopicRepository);
   }
 
   static List<MiniPublication> getMiniPublications(List<Publication> publications,
-      InteractionRepository interactionRepository,
+      PublicationStatsRepository publicationStatsRepository,
       PublicationAuthorRepository publicationAuthorRepository,
       PublicationTopicRepository publicationTopicRepository) {
     if (publications == null || publications.isEmpty()) return List.of();
 
     List<Integer> pubIds = publications.stream().map(Publication::pubId).toList();
 
-    Map<Integer, Integer> viewCounts = interactionRepository.getViewCounts(pubIds);
-    Map<Integer, Integer> likeCounts = interactionRepository.getLikeCounts(pubIds);
+    Map<Integer, PublicationCounters.Counts> counts = publicationStatsRepository.findCounts(pubIds);
     Map<Integer, MiniPerson> firstAuthors = publicationAuthorRepository.getFirstAuthorMap(pubIds);
     Map<Integer, List<Topic>> topicsMap = publicationTopicRepository.getTopicsMap(pubIds);
 
     List<MiniPublication> result = new ArrayList<>();
     for (Publication pub : publications) {
       int pubId = pub.pubId();
+      PublicationCounters.Counts count = counts.get(pubId);
       result.add(MiniPublication.from(
           pub,
-          viewCounts.getOrDefault(pubId, 0),
-          likeCounts.getOrDefault(pubId, 0),
+          (int) count.views(),
+          (int) count.likes(),
           firstAuthors.get(pubId),
           topicsMap.getOrDefault(pubId, List.of())
       ));
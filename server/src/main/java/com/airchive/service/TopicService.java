@@ -4,6 +4,7 @@ import com.airchive.dto.SessionUser;
 import com.airchive.entity.Topic;
 import com.airchive.exception.EntityNotFoundException;
 import com.airchive.exception.ValidationException;
+import com.airchive.repository.RecommendationRepository;
 import com.airchive.repository.TopicRepository;
 import com.airchive.util.SecurityUtils;
 import com.airchive.util.ValidationUtils;
@@ -12,9 +13,11 @@ import java.util.List;
 public class TopicService {
 
   private final TopicRepository topicRepository;
+  private final RecommendationRepository recommendationRepository;
 
-  public TopicService(TopicRepository topicRepository) {
+  public TopicService(TopicRepository topicRepository, RecommendationRepository recommendationRepository) {
     this.topicRepository = topicRepository;
+    this.recommendationRepository = recommendationRepository;
   }
 
   public Topic createTopic(SessionUser user, Topic topic) {
@@ -50,6 +53,7 @@ public class TopicService {
     SecurityUtils.requireAdmin(user);
 
     topicRepository.delete(topicId);
+    recommendationRepository.reindexTopic(topicId);
   }
 
   public List<Topic> getAllTopics() {
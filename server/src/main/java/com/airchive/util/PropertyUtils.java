@@ -52,4 +52,15 @@ public class PropertyUtils {
     String value = properties.getProperty(key);
     return (value != null) ? Boolean.parseBoolean(value) : defaultValue;
   }
+
+  /**
+   * Retrieves the integer property value by key with a default fallback.
+   * @param key the name of the property
+   * @param defaultValue the default value to return if the property is not present
+   * @return the parsed integer value of the property, or {@code defaultValue} if not set
+   */
+  public static int getIntProperty(String key, int defaultValue) {
+    String value = properties.getProperty(key);
+    return (value != null && !value.isBlank()) ? Integer.parseInt(value.trim()) : defaultValue;
+  }
 }
@@ -0,0 +1,104 @@
+package com.airchive.db;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+class WriteBehindQueueTest {
+
+  @Test
+  void writesEveryItemInBatchesBeforeClosing() {
+    List<List<Integer>> batches = Collections.synchronizedList(new ArrayList<>());
+    WriteBehindQueue<Integer> queue = new WriteBehindQueue<>("test-writer", 1000, 10, 50, 100, 1,
+        batch -> batches.add(new ArrayList<>(batch)));
+
+    for (int i = 0; i < 95; i++) assertTrue(queue.offer(i));
+    queue.close();
+
+    List<Integer> written = batches.stream().flatMap(List::stream).toList();
+    assertEquals(IntStream.range(0, 95).boxed().toList(), written);
+    assertTrue(batches.stream().allMatch(batch -> batch.size() <= 10));
+    assertEquals(95, queue.stats().written());
+    assertEquals(0, queue.stats().pending());
+  }
+
+  @Test
+  void refusesItemsOnceClosed() {
+    WriteBehindQueue<Integer> queue = new WriteBehindQueue<>("test-writer", 10, 10, 10, 10, 1, batch -> { });
+
+    queue.close();
+    queue.close();
+
+    assertFalse(queue.offer(1));
+    assertEquals(1, queue.stats().rejected());
+  }
+
+  @Test
+  void refusesItemsWhileTheBufferStaysFull() throws InterruptedException {
+    CountDownLatch writing = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    WriteBehindQueue<Integer> queue = new WriteBehindQueue<>("test-writer", 1, 1, 10, 20, 1, batch -> {
+      writing.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+
+    assertTrue(queue.offer(1));
+    assertTrue(writing.await(5, TimeUnit.SECONDS));
+    assertTrue(queue.offer(2));
+    assertFalse(queue.offer(3));
+
+    release.countDown();
+    queue.close();
+    assertEquals(new WriteBehindQueue.Stats(2, 1, 0, 2, 2, 0, 0, 1, queue.stats().meanFlushMillis()),
+        queue.stats());
+  }
+
+  @Test
+  void retriesAFailedBatch() {
+    AtomicInteger attempts = new AtomicInteger();
+    List<Integer> written = Collections.synchronizedList(new ArrayList<>());
+    WriteBehindQueue<Integer> queue = new WriteBehindQueue<>("test-writer", 10, 10, 5, 10, 3, batch -> {
+      if (attempts.incrementAndGet() < 3) throw new IllegalStateException("database unavailable");
+      written.addAll(batch);
+    });
+
+    queue.offer(1);
+    queue.offer(2);
+    queue.close();
+
+    assertEquals(List.of(1, 2), written);
+    WriteBehindQueue.Stats stats = queue.stats();
+    assertEquals(2, stats.written());
+    assertEquals(2, stats.retried());
+    assertEquals(0, stats.failed());
+  }
+
+  @Test
+  void dropsABatchThatFailsEveryAttempt() {
+    AtomicInteger attempts = new AtomicInteger();
+    WriteBehindQueue<Integer> queue = new WriteBehindQueue<>("test-writer", 10, 10, 5, 10, 2, batch -> {
+      attempts.incrementAndGet();
+      throw new IllegalStateException("database unavailable");
+    });
+
+    queue.offer(1);
+    queue.close();
+
+    assertEquals(2, attempts.get());
+    assertEquals(1, queue.stats().failed());
+    assertEquals(0, queue.stats().written());
+  }
+}
@@ -0,0 +1,130 @@
+package com.airchive.recommendation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.airchive.entity.Publication;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class CandidateIndexSnapshotTest {
+
+  @TempDir
+  Path dir;
+
+  @Test
+  void roundTripsThroughASnapshotFile() throws IOException {
+    CandidateIndex index = sampleIndex();
+    Path file = dir.resolve("index.bin");
+
+    index.writeSnapshot(file, 1_700_000_000_000L);
+    CandidateIndex.SavedIndex saved = CandidateIndex.readSnapshot(file);
+    CandidateIndex restored = saved.index();
+
+    assertEquals(1_700_000_000_000L, saved.savedAt());
+    assertEquals(index.size(), restored.size());
+    for (int ordinal = 0; ordinal < index.size(); ordinal++) {
+      assertEquals(index.pubId(ordinal), restored.pubId(ordinal));
+      assertEquals(index.kind(ordinal), restored.kind(ordinal));
+      assertEquals(index.popularity(ordinal), restored.popularity(ordinal));
+      assertEquals(ordinal, restored.ordinalOf(index.pubId(ordinal)));
+    }
+    assertEquals(List.of(10, 11), topics(restored));
+    assertEquals(withTopic(index, 10, null), withTopic(restored, 10, null));
+    assertEquals(withTopic(index, 10, List.of(Publication.Kind.BLOG)),
+        withTopic(restored, 10, List.of(Publication.Kind.BLOG)));
+    assertEquals(withAuthor(index, 100), withAuthor(restored, 100));
+    assertEquals(byPopularity(index), byPopularity(restored));
+  }
+
+  @Test
+  void leavesNoTemporaryFileBehind() throws IOException {
+    Path file = dir.resolve("index.bin");
+
+    sampleIndex().writeSnapshot(file, 1L);
+    sampleIndex().writeSnapshot(file, 2L);
+
+    try (var files = Files.list(dir)) {
+      assertEquals(List.of(file), files.toList());
+    }
+    assertEquals(2L, CandidateIndex.readSnapshot(file).savedAt());
+  }
+
+  @Test
+  void rejectsACorruptSnapshot() throws IOException {
+    Path file = dir.resolve("index.bin");
+    sampleIndex().writeSnapshot(file, 1L);
+
+    byte[] bytes = Files.readAllBytes(file);
+    bytes[bytes.length / 2] ^= 0x01;
+    Files.write(file, bytes);
+
+    IOException e = assertThrows(IOException.class, () -> CandidateIndex.readSnapshot(file));
+    assertEquals("Candidate index snapshot checksum mismatch: " + file, e.getMessage());
+  }
+
+  @Test
+  void rejectsATruncatedSnapshot() throws IOException {
+    Path file = dir.resolve("index.bin");
+    sampleIndex().writeSnapshot(file, 1L);
+
+    byte[] bytes = Files.readAllBytes(file);
+    Files.write(file, Arrays.copyOf(bytes, 12));
+
+    assertThrows(IOException.class, () -> CandidateIndex.readSnapshot(file));
+  }
+
+  @Test
+  void roundTripsAnEmptyIndex() throws IOException {
+    Path file = dir.resolve("index.bin");
+
+    CandidateIndex.builder().build().writeSnapshot(file, 3L);
+
+    CandidateIndex restored = CandidateIndex.readSnapshot(file).index();
+    assertEquals(0, restored.size());
+    assertEquals(List.of(), topics(restored));
+    assertEquals(List.of(), byPopularity(restored));
+  }
+
+  private static CandidateIndex sampleIndex() {
+    return CandidateIndex.builder()
+        .add(7, Publication.Kind.PAPER, List.of(10, 11), List.of(100))
+        .add(3, Publication.Kind.BLOG, List.of(10), List.of(100, 101))
+        .add(12, Publication.Kind.ARTICLE, List.of(11), List.of(102))
+        .add(5, Publication.Kind.BLOG, List.of(), List.of())
+        .setPopularity(7, 1.5)
+        .setPopularity(3, 4.25)
+        .setPopularity(12, 0.75)
+        .build();
+  }
+
+  private static List<Integer> withTopic(CandidateIndex index, int topicId, List<Publication.Kind> kinds) {
+    List<Integer> ids = new ArrayList<>();
+    index.forEachWithTopic(topicId, kinds, ordinal -> ids.add(index.pubId(ordinal)));
+    return ids;
+  }
+
+  private static List<Integer> withAuthor(CandidateIndex index, int personId) {
+    List<Integer> ids = new ArrayList<>();
+    index.forEachWithAuthor(personId, null, ordinal -> ids.add(index.pubId(ordinal)));
+    return ids;
+  }
+
+  private static List<Integer> byPopularity(CandidateIndex index) {
+    List<Integer> ids = new ArrayList<>();
+    index.forEachByPopularity(null, ordinal -> ids.add(index.pubId(ordinal)));
+    return ids;
+  }
+
+  private static List<Integer> topics(CandidateIndex index) {
+    List<Integer> ids = new ArrayList<>();
+    index.forEachTopic(ids::add);
+    return ids;
+  }
+}
@@ -0,0 +1,84 @@
+package com.airchive.recommendation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.airchive.entity.Publication;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class CandidateIndexTest {
+
+  private static final int TOPIC_A = 10;
+  private static final int TOPIC_B = 11;
+  private static final int AUTHOR = 100;
+
+  @Test
+  void ranksByBestAffinityTimesPopularity() {
+    CandidateIndex index = sampleIndex();
+
+    assertEquals(List.of(2, 1), index.rankByTopicAffinity(Map.of(TOPIC_A, 1.0, TOPIC_B, 5.0), null,
+        id -> false, 10, 0));
+    assertEquals(List.of(1, 2), index.rankByTopicAffinity(Map.of(TOPIC_A, 1.0), null, id -> false, 10, 0));
+    assertEquals(List.of(2), index.rankByTopicAffinity(Map.of(TOPIC_A, 0.0, TOPIC_B, 1.0), null,
+        id -> false, 10, 0));
+    assertEquals(List.of(), index.rankByTopicAffinity(Map.of(), null, id -> false, 10, 0));
+  }
+
+  @Test
+  void ranksByAuthorAffinity() {
+    CandidateIndex index = sampleIndex();
+
+    assertEquals(List.of(3, 1), index.rankByAuthorAffinity(Map.of(AUTHOR, 1.0), null, id -> false, 10, 0));
+    assertEquals(List.of(1), index.rankByAuthorAffinity(Map.of(AUTHOR, 1.0), List.of(Publication.Kind.PAPER),
+        id -> false, 10, 0));
+  }
+
+  @Test
+  void breaksTiesByDescendingIdAndPagesAfterExclusions() {
+    CandidateIndex index = CandidateIndex.builder()
+        .add(1, Publication.Kind.PAPER, List.of(TOPIC_A), List.of())
+        .add(2, Publication.Kind.PAPER, List.of(TOPIC_A), List.of())
+        .add(3, Publication.Kind.PAPER, List.of(TOPIC_A), List.of())
+        .setPopularity(1, 1)
+        .setPopularity(2, 1)
+        .setPopularity(3, 1)
+        .build();
+    Map<Integer, Double> affinities = Map.of(TOPIC_A, 1.0);
+
+    assertEquals(List.of(3, 2, 1), index.rankByTopicAffinity(affinities, null, id -> false, 10, 0));
+    assertEquals(List.of(1), index.rankByTopicAffinity(affinities, null, id -> id == 3, 1, 1));
+  }
+
+  @Test
+  void pagesByPopularity() {
+    CandidateIndex index = sampleIndex();
+
+    assertEquals(List.of(3, 1), index.pageByPopularity(null, 2, 0));
+    assertEquals(List.of(2), index.pageByPopularity(null, 2, 2));
+    assertEquals(List.of(3, 2), index.pageByPopularity(List.of(Publication.Kind.BLOG), 10, 0));
+  }
+
+  @Test
+  void containsOnlyIndexedPublicationsOfTheGivenKinds() {
+    CandidateIndex index = sampleIndex();
+
+    assertTrue(index.contains(1, null));
+    assertTrue(index.contains(1, List.of(Publication.Kind.PAPER)));
+    assertFalse(index.contains(1, List.of(Publication.Kind.BLOG)));
+    assertFalse(index.contains(99, null));
+  }
+
+  private static CandidateIndex sampleIndex() {
+    return CandidateIndex.builder()
+        .add(1, Publication.Kind.PAPER, List.of(TOPIC_A), List.of(AUTHOR))
+        .add(2, Publication.Kind.BLOG, List.of(TOPIC_A, TOPIC_B), List.of())
+        .add(3, Publication.Kind.BLOG, List.of(), List.of(AUTHOR))
+        .setPopularity(1, 4)
+        .setPopularity(2, 1)
+        .setPopularity(3, 5)
+        .build();
+  }
+}
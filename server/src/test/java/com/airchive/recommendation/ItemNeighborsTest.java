@@ -0,0 +1,36 @@
+package com.airchive.recommendation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class ItemNeighborsTest {
+
+  @Test
+  void ranksNeighboursBySummedSimilarityWithoutTheSeeds() {
+    ItemNeighbors neighbors = ItemNeighbors.builder()
+        .add(1, 3, 0.5f)
+        .add(1, 2, 0.4f)
+        .add(1, 4, 0.1f)
+        .add(2, 4, 0.5f)
+        .add(2, 1, 0.4f)
+        .build();
+
+    assertEquals(List.of(4, 3), neighbors.rank(List.of(1, 2), id -> false, 10, 0));
+    assertEquals(List.of(3, 2, 4), neighbors.rank(List.of(1), id -> false, 10, 0));
+  }
+
+  @Test
+  void breaksTiesByDescendingIdAndPagesAfterExclusions() {
+    ItemNeighbors neighbors = ItemNeighbors.builder()
+        .add(1, 2, 0.5f)
+        .add(1, 3, 0.5f)
+        .add(1, 4, 0.5f)
+        .build();
+
+    assertEquals(List.of(4, 3, 2), neighbors.rank(List.of(1), id -> false, 10, 0));
+    assertEquals(List.of(2), neighbors.rank(List.of(1), id -> id == 3, 1, 1));
+    assertEquals(List.of(), neighbors.rank(List.of(99), id -> false, 10, 0));
+  }
+}
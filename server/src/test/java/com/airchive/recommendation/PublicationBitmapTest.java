@@ -0,0 +1,126 @@
+package com.airchive.recommendation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+class PublicationBitmapTest {
+
+  @Test
+  void iteratesDescendingAcrossChunks() {
+    PublicationBitmap bitmap = PublicationBitmap.of(new int[] {65537, 1, 200000, 3, 65536, 3});
+
+    assertEquals(List.of(200000, 65537, 65536, 3, 1), descending(bitmap));
+    assertEquals(5, bitmap.cardinality());
+  }
+
+  @Test
+  void stopsIteratingWhenTheActionReturnsFalse() {
+    PublicationBitmap bitmap = PublicationBitmap.of(new int[] {1, 2, 70000, 140000});
+    List<Integer> visited = new ArrayList<>();
+
+    bitmap.forEachDescending(id -> {
+      visited.add(id);
+      return visited.size() < 2;
+    });
+
+    assertEquals(List.of(140000, 70000), visited);
+  }
+
+  @Test
+  void intersectsArrayAndBitmapContainers() {
+    // 4097 ids make a bitmap container, 4096 ids stay a sorted array
+    PublicationBitmap dense = PublicationBitmap.of(IntStream.rangeClosed(0, 4096).toArray());
+    PublicationBitmap sparse = PublicationBitmap.of(IntStream.range(0, 4096).map(i -> i * 2).toArray());
+
+    PublicationBitmap both = dense.and(sparse);
+
+    assertEquals(2049, both.cardinality());
+    assertEquals(expected(IntStream.rangeClosed(0, 2048).map(i -> i * 2).toArray()), descending(both));
+  }
+
+  @Test
+  void intersectionOfBitmapsShrinksBackToAnArray() {
+    PublicationBitmap a = PublicationBitmap.of(IntStream.range(0, 10000).toArray());
+    PublicationBitmap b = PublicationBitmap.of(IntStream.range(7000, 15000).toArray());
+
+    PublicationBitmap both = a.and(b);
+
+    assertEquals(3000, both.cardinality());
+    assertEquals(expected(IntStream.range(7000, 10000).toArray()), descending(both));
+  }
+
+  @Test
+  void unionOfArraysGrowsIntoABitmap() {
+    PublicationBitmap evens = PublicationBitmap.of(IntStream.range(0, 3000).map(i -> i * 2).toArray());
+    PublicationBitmap odds = PublicationBitmap.of(IntStream.range(0, 3000).map(i -> i * 2 + 1).toArray());
+
+    PublicationBitmap union = evens.or(odds);
+
+    assertEquals(6000, union.cardinality());
+    assertEquals(expected(IntStream.range(0, 6000).toArray()), descending(union));
+  }
+
+  @Test
+  void unionAtTheArrayLimitStaysExact() {
+    PublicationBitmap a = PublicationBitmap.of(IntStream.range(0, 2048).toArray());
+    PublicationBitmap b = PublicationBitmap.of(IntStream.range(2048, 4097).toArray());
+
+    assertEquals(4097, a.or(b).cardinality());
+    assertEquals(4096, a.or(PublicationBitmap.of(IntStream.range(2048, 4096).toArray())).cardinality());
+  }
+
+  @Test
+  void matchesASortedSetOnRandomIds() {
+    Random random = new Random(42);
+    for (int round = 0; round < 20; round++) {
+      int[] left = random.ints(random.nextInt(20000), 0, 300000).toArray();
+      int[] right = random.ints(random.nextInt(20000), 0, 300000).toArray();
+      TreeSet<Integer> leftSet = toSet(left);
+      TreeSet<Integer> rightSet = toSet(right);
+
+      TreeSet<Integer> and = new TreeSet<>(leftSet);
+      and.retainAll(rightSet);
+      TreeSet<Integer> or = new TreeSet<>(leftSet);
+      or.addAll(rightSet);
+
+      PublicationBitmap a = PublicationBitmap.of(left);
+      PublicationBitmap b = PublicationBitmap.of(right);
+      assertEquals(new ArrayList<>(and.descendingSet()), descending(a.and(b)));
+      assertEquals(new ArrayList<>(or.descendingSet()), descending(a.or(b)));
+    }
+  }
+
+  @Test
+  void emptyBitmapHasNoIds() {
+    PublicationBitmap bitmap = PublicationBitmap.of(new int[] {1, 2, 3});
+
+    assertEquals(0, PublicationBitmap.empty().cardinality());
+    assertEquals(List.of(), descending(bitmap.and(PublicationBitmap.empty())));
+    assertEquals(List.of(3, 2, 1), descending(bitmap.or(PublicationBitmap.empty())));
+  }
+
+  private static List<Integer> descending(PublicationBitmap bitmap) {
+    List<Integer> ids = new ArrayList<>();
+    bitmap.forEachDescending(id -> {
+      ids.add(id);
+      return true;
+    });
+    return ids;
+  }
+
+  private static List<Integer> expected(int[] ids) {
+    return new ArrayList<>(toSet(ids).descendingSet());
+  }
+
+  private static TreeSet<Integer> toSet(int[] ids) {
+    TreeSet<Integer> set = new TreeSet<>();
+    for (int id : ids) set.add(id);
+    return set;
+  }
+}
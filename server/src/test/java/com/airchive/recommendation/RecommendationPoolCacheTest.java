@@ -0,0 +1,103 @@
+package com.airchive.recommendation;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.airchive.entity.Publication;
+import com.airchive.exception.ValidationException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class RecommendationPoolCacheTest {
+
+  private static final List<Publication.Kind> ALL_KINDS = null;
+
+  @Test
+  void roundTripsACursor() {
+    RecommendationPoolCache.Cursor cursor = new RecommendationPoolCache.Cursor(1234567890123L, 40);
+
+    assertEquals(cursor, RecommendationPoolCache.decodeCursor(RecommendationPoolCache.encodeCursor(cursor)));
+    assertEquals(RecommendationPoolCache.Cursor.START, RecommendationPoolCache.decodeCursor(null));
+    assertEquals(RecommendationPoolCache.Cursor.START, RecommendationPoolCache.decodeCursor(" "));
+  }
+
+  @Test
+  void decodesAnUnversionedCursorToItsPosition() {
+    String legacy = Base64.getUrlEncoder().withoutPadding().encodeToString("p1:20".getBytes(StandardCharsets.UTF_8));
+
+    assertEquals(new RecommendationPoolCache.Cursor(0, 20), RecommendationPoolCache.decodeCursor(legacy));
+  }
+
+  @Test
+  void rejectsAMalformedCursor() {
+    for (String cursor : List.of("not a cursor", encode("p2:12"), encode("p2:x:3"), encode("p2:1:-1"))) {
+      assertThrows(ValidationException.class, () -> RecommendationPoolCache.decodeCursor(cursor), cursor);
+    }
+  }
+
+  @Test
+  void keepsAReplacedPoolForItsCursors() {
+    RecommendationPoolCache cache = new RecommendationPoolCache(10, 60_000, 1.0);
+    RecommendationPoolCache.Pool first = cache.put(1, ALL_KINDS, new int[] {1, 2, 3}, true);
+    RecommendationPoolCache.Pool second = cache.put(1, ALL_KINDS, new int[] {3, 2, 1}, true);
+
+    assertNotEquals(first.version(), second.version());
+    assertSame(second, cache.get(1, ALL_KINDS, 3));
+    assertSame(first, cache.find(1, ALL_KINDS, first.version()));
+    assertSame(second, cache.find(1, ALL_KINDS, second.version()));
+    assertNull(cache.find(2, ALL_KINDS, first.version()));
+    assertNull(cache.find(1, List.of(Publication.Kind.PAPER), first.version()));
+  }
+
+  @Test
+  void keepsAnInvalidatedPoolForItsCursorsButNotForNewFeeds() {
+    RecommendationPoolCache cache = new RecommendationPoolCache(10, 60_000, 1.0);
+    RecommendationPoolCache.Pool pool = cache.put(1, ALL_KINDS, new int[] {1, 2, 3}, true);
+
+    cache.recordAffinityChange(1, 2.0);
+
+    assertNull(cache.get(1, ALL_KINDS, 1));
+    assertSame(pool, cache.find(1, ALL_KINDS, pool.version()));
+  }
+
+  @Test
+  void retainedPoolIsOnlyServedToItsCursors() {
+    RecommendationPoolCache cache = new RecommendationPoolCache(10, 60_000, 1.0);
+    RecommendationPoolCache.Pool pool = cache.retain(1, ALL_KINDS, new int[] {1, 2});
+
+    assertNull(cache.get(1, ALL_KINDS, 1));
+    assertSame(pool, cache.find(1, ALL_KINDS, pool.version()));
+  }
+
+  @Test
+  void forgetsPoolsRetiredLongerThanTheTimeToLive() throws InterruptedException {
+    RecommendationPoolCache cache = new RecommendationPoolCache(10, 20, 1.0);
+    RecommendationPoolCache.Pool first = cache.put(1, ALL_KINDS, new int[] {1}, true);
+    cache.put(1, ALL_KINDS, new int[] {2}, true);
+
+    Thread.sleep(50);
+
+    assertNull(cache.find(1, ALL_KINDS, first.version()));
+  }
+
+  @Test
+  void continuesAPoolWithoutRepeatingServedIds() {
+    RecommendationPoolCache cache = new RecommendationPoolCache(10, 60_000, 1.0);
+    RecommendationPoolCache.Pool served = cache.put(1, ALL_KINDS, new int[] {5, 4, 3, 2}, false);
+
+    assertArrayEquals(new int[] {5, 4, 1, 3, 2, 6},
+        RecommendationPoolCache.continueFrom(served, 2, new int[] {1, 3, 4, 2, 5, 6}));
+    assertArrayEquals(new int[] {1, 3}, RecommendationPoolCache.continueFrom(served, 0, new int[] {1, 3}));
+    assertArrayEquals(new int[] {1, 3}, RecommendationPoolCache.continueFrom(null, 2, new int[] {1, 3}));
+  }
+
+  private static String encode(String raw) {
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+  }
+}
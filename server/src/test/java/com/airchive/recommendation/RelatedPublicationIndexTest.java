@@ -0,0 +1,151 @@
+package com.airchive.recommendation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class RelatedPublicationIndexTest {
+
+  private static final int CLUSTERS = 8;
+  private static final int PER_CLUSTER = 25;
+
+  @TempDir
+  Path dir;
+
+  @Test
+  void exactNeighboursShareTheQueryTopic() {
+    RelatedPublicationIndex index = corpus();
+
+    for (int pubId = 0; pubId < CLUSTERS * PER_CLUSTER; pubId += 7) {
+      int cluster = pubId / PER_CLUSTER;
+      List<Integer> related = index.findRelatedExact(pubId, 5);
+      assertEquals(5, related.size());
+      assertTrue(related.stream().allMatch(id -> id / PER_CLUSTER == cluster), "neighbours of " + pubId);
+      assertFalse(related.contains(pubId));
+    }
+  }
+
+  @Test
+  void lshQueriesRecallMostExactNeighbours() {
+    RelatedPublicationIndex index = corpus();
+
+    RelatedPublicationIndex.BenchmarkResult result = index.benchmark(100, 10);
+
+    assertEquals(100, result.samples());
+    assertEquals(10, result.k());
+    assertTrue(result.recall() >= 0.9, "recall " + result.recall());
+  }
+
+  @Test
+  void findsIncrementallyIndexedAndReplacedPublications() {
+    RelatedPublicationIndex index = corpus();
+    int added = CLUSTERS * PER_CLUSTER;
+
+    index.index(added, title(2, new Random(1)), content(2, new Random(2)));
+    assertEquals(added + 1, index.size());
+    assertTrue(index.findRelatedExact(added, 5).stream().allMatch(id -> id / PER_CLUSTER == 2));
+
+    index.index(added, title(5, new Random(3)), content(5, new Random(4)));
+    assertEquals(added + 1, index.size());
+    assertTrue(index.findRelatedExact(added, 5).stream().allMatch(id -> id / PER_CLUSTER == 5));
+    assertTrue(index.findRelated(added, 5).stream().allMatch(id -> id / PER_CLUSTER == 5));
+  }
+
+  @Test
+  void returnsNothingForUnknownPublications() {
+    RelatedPublicationIndex index = corpus();
+
+    assertEquals(List.of(), index.findRelated(-1, 5));
+    assertEquals(List.of(), index.findRelatedExact(-1, 5));
+    assertEquals(List.of(), index.findRelated(0, 0));
+  }
+
+  @Test
+  void rejectsNonPositiveBenchmarkSizes() {
+    RelatedPublicationIndex index = corpus();
+
+    assertThrows(IllegalArgumentException.class, () -> index.benchmark(-1, 10));
+    assertThrows(IllegalArgumentException.class, () -> index.benchmark(10, 0));
+  }
+
+  @Test
+  void roundTripsThroughASnapshotFile() throws IOException {
+    RelatedPublicationIndex index = corpus();
+    Path file = dir.resolve("related.bin");
+
+    index.writeSnapshot(file, 1_700_000_000_000L);
+    RelatedPublicationIndex.SavedIndex saved = RelatedPublicationIndex.readSnapshot(file, 16, 4, 64, 1000);
+    RelatedPublicationIndex restored = saved.index();
+
+    assertEquals(1_700_000_000_000L, saved.savedAt());
+    assertEquals(index.size(), restored.size());
+    for (int pubId = 0; pubId < CLUSTERS * PER_CLUSTER; pubId += 3) {
+      assertEquals(index.findRelatedExact(pubId, 10), restored.findRelatedExact(pubId, 10));
+      assertEquals(index.findRelated(pubId, 10).stream().sorted().toList(),
+          restored.findRelated(pubId, 10).stream().sorted().toList());
+    }
+
+    int added = CLUSTERS * PER_CLUSTER;
+    restored.index(added, title(3, new Random(5)), content(3, new Random(6)));
+    assertTrue(restored.findRelatedExact(added, 5).stream().allMatch(id -> id / PER_CLUSTER == 3));
+  }
+
+  @Test
+  void rejectsASnapshotBuiltWithOtherParameters() throws IOException {
+    Path file = dir.resolve("related.bin");
+    corpus().writeSnapshot(file, 1L);
+
+    IOException e = assertThrows(IOException.class, () -> RelatedPublicationIndex.readSnapshot(file, 16, 8, 64, 1000));
+    assertEquals("Related publications snapshot was built with other parameters: " + file, e.getMessage());
+  }
+
+  @Test
+  void rejectsACorruptSnapshot() throws IOException {
+    Path file = dir.resolve("related.bin");
+    corpus().writeSnapshot(file, 1L);
+
+    byte[] bytes = Files.readAllBytes(file);
+    bytes[bytes.length / 2] ^= 0x01;
+    Files.write(file, bytes);
+
+    assertThrows(IOException.class, () -> RelatedPublicationIndex.readSnapshot(file, 16, 4, 64, 1000));
+  }
+
+  /** Publications 0 to 199, each written with the vocabulary of its cluster of 25. */
+  private static RelatedPublicationIndex corpus() {
+    Random random = new Random(42);
+    RelatedPublicationIndex.Builder builder = RelatedPublicationIndex.builder(16, 4, 64, 1000);
+    for (int pubId = 0; pubId < CLUSTERS * PER_CLUSTER; pubId++) {
+      int cluster = pubId / PER_CLUSTER;
+      builder.add(pubId, title(cluster, random), content(cluster, random));
+    }
+    return builder.build();
+  }
+
+  private static String title(int cluster, Random random) {
+    return words(cluster, 4, random);
+  }
+
+  private static String content(int cluster, Random random) {
+    return words(cluster, 120, random) + " " + words(random.nextInt(CLUSTERS), 10, random);
+  }
+
+  /** Random words from the 52-word vocabulary of a cluster, such as {@code "clustercwordqb"}. */
+  private static String words(int cluster, int count, Random random) {
+    StringBuilder text = new StringBuilder();
+    for (int i = 0; i < count; i++) {
+      text.append("cluster").append((char) ('a' + cluster)).append("word").append((char) ('a' + random.nextInt(26)))
+          .append((char) ('a' + random.nextInt(2))).append(' ');
+    }
+    return text.toString();
+  }
+}
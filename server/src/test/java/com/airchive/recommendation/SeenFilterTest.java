@@ -0,0 +1,58 @@
+package com.airchive.recommendation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+class SeenFilterTest {
+
+  @Test
+  void neverReportsAnAddedIdAsUnseen() {
+    List<Integer> viewed = IntStream.range(0, 5000).map(i -> i * 7).boxed().collect(Collectors.toList());
+    SeenFilter filter = SeenFilter.of(viewed);
+
+    for (int pubId : viewed) {
+      assertTrue(filter.mightContain(pubId), "viewed publication " + pubId);
+    }
+  }
+
+  @Test
+  void keepsFalsePositivesNearTheTargetRate() {
+    SeenFilter filter = SeenFilter.of(IntStream.range(0, 5000).boxed().collect(Collectors.toList()));
+
+    long falsePositives = IntStream.range(1_000_000, 1_100_000).filter(filter::mightContain).count();
+
+    // Sized for twice the ids it holds, the filter should do better than its one percent target
+    assertTrue(falsePositives < 1000, falsePositives + " false positives in 100000 probes");
+  }
+
+  @Test
+  void countsDistinctIdsAndSaturatesPastItsCapacity() {
+    SeenFilter filter = SeenFilter.of(List.of());
+    assertFalse(filter.mightContain(1));
+
+    filter.add(1);
+    filter.add(1);
+    assertTrue(filter.mightContain(1));
+    assertEquals(1, filter.size());
+
+    // An empty filter is sized for 64 ids
+    IntStream.range(2, 64).forEach(filter::add);
+    assertFalse(filter.isSaturated());
+    IntStream.range(64, 200).forEach(filter::add);
+    assertTrue(filter.isSaturated());
+  }
+
+  @Test
+  void pagesTheUnseenIdsOfARanking() {
+    SeenFilter filter = SeenFilter.of(List.of(2, 4));
+
+    assertEquals(List.of(5, 3, 1), filter.unseen(List.of(5, 4, 3, 2, 1), 10, 0));
+    assertEquals(List.of(3), filter.unseen(List.of(5, 4, 3, 2, 1), 1, 1));
+  }
+}
@@ -0,0 +1,152 @@
+package com.airchive.recommendation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.airchive.entity.Publication;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class TopicLeaderboardsTest {
+
+  private static final int TOPIC_A = 1;
+  private static final int TOPIC_B = 2;
+
+  @Test
+  void mergesTopicsByWeightedPopularity() {
+    CandidateIndex index = CandidateIndex.builder()
+        .add(1, Publication.Kind.PAPER, List.of(TOPIC_A), List.of())
+        .add(2, Publication.Kind.BLOG, List.of(TOPIC_A), List.of())
+        .add(3, Publication.Kind.PAPER, List.of(TOPIC_B), List.of())
+        .setPopularity(1, 10)
+        .setPopularity(2, 5)
+        .setPopularity(3, 8)
+        .build();
+    TopicLeaderboards leaderboards = new TopicLeaderboards(10);
+    leaderboards.rebuild(index);
+
+    assertEquals(List.of(1, 3, 2), leaderboards.rank(Map.of(TOPIC_A, 1.0, TOPIC_B, 1.0), null, id -> false, 10, 0));
+    assertEquals(List.of(1, 2, 3), leaderboards.rank(Map.of(TOPIC_A, 1.0, TOPIC_B, 0.5), null, id -> false, 10, 0));
+    assertEquals(List.of(1, 3), leaderboards.rank(Map.of(TOPIC_A, 1.0, TOPIC_B, 1.0),
+        List.of(Publication.Kind.PAPER), id -> false, 10, 0));
+    assertEquals(List.of(3), leaderboards.rank(Map.of(TOPIC_A, 0.0, TOPIC_B, 1.0), null, id -> false, 10, 0));
+  }
+
+  @Test
+  void keepsEachPublicationOnceAtItsBestTopic() {
+    CandidateIndex index = CandidateIndex.builder()
+        .add(1, Publication.Kind.PAPER, List.of(TOPIC_A, TOPIC_B), List.of())
+        .add(2, Publication.Kind.PAPER, List.of(TOPIC_A), List.of())
+        .setPopularity(1, 4)
+        .setPopularity(2, 6)
+        .build();
+    TopicLeaderboards leaderboards = new TopicLeaderboards(10);
+    leaderboards.rebuild(index);
+
+    assertEquals(List.of(1, 2), leaderboards.rank(Map.of(TOPIC_A, 1.0, TOPIC_B, 2.0), null, id -> false, 10, 0));
+  }
+
+  @Test
+  void pagesAndSkipsExcludedPublications() {
+    TopicLeaderboards leaderboards = new TopicLeaderboards(10);
+    leaderboards.rebuild(singleTopic(5));
+
+    Map<Integer, Double> weights = Map.of(TOPIC_A, 1.0);
+    assertEquals(List.of(4, 3), leaderboards.rank(weights, null, id -> false, 2, 1));
+    assertEquals(List.of(5, 3, 1), leaderboards.rank(weights, null, id -> id % 2 == 0, 10, 0));
+    assertEquals(List.of(), leaderboards.rank(weights, null, id -> false, 10, 5));
+  }
+
+  @Test
+  void saturatesAHugeLimitAndOffset() {
+    TopicLeaderboards leaderboards = new TopicLeaderboards(10);
+    leaderboards.rebuild(singleTopic(3));
+
+    Map<Integer, Double> weights = Map.of(TOPIC_A, 1.0);
+    assertEquals(List.of(2, 1), leaderboards.rank(weights, null, id -> false, Integer.MAX_VALUE, 1));
+    assertEquals(List.of(), leaderboards.rank(weights, null, id -> false, Integer.MAX_VALUE, Integer.MAX_VALUE));
+  }
+
+  @Test
+  void truncatedLeaderboardCannotAnswerPastItsEnd() {
+    TopicLeaderboards leaderboards = new TopicLeaderboards(2);
+    leaderboards.rebuild(singleTopic(3));
+
+    Map<Integer, Double> weights = Map.of(TOPIC_A, 1.0);
+    assertEquals(List.of(3, 2), leaderboards.rank(weights, null, id -> false, 2, 0));
+    assertNull(leaderboards.rank(weights, null, id -> false, 3, 0));
+    assertNull(leaderboards.rank(weights, null, id -> id == 3, 2, 0));
+  }
+
+  @Test
+  void upsertMovesAPublicationToItsNewScore() {
+    TopicLeaderboards leaderboards = new TopicLeaderboards(10);
+    leaderboards.rebuild(singleTopic(3));
+
+    leaderboards.update(1, 100);
+
+    assertEquals(List.of(1, 3, 2), leaderboards.rank(Map.of(TOPIC_A, 1.0), null, id -> false, 10, 0));
+  }
+
+  @Test
+  void upsertIntoAFullLeaderboardDropsTheLastAndTruncatesIt() {
+    CandidateIndex index = CandidateIndex.builder()
+        .add(1, Publication.Kind.PAPER, List.of(TOPIC_A), List.of())
+        .add(2, Publication.Kind.PAPER, List.of(TOPIC_A), List.of())
+        .add(3, Publication.Kind.PAPER, List.of(TOPIC_B), List.of())
+        .setPopularity(1, 2)
+        .setPopularity(2, 1)
+        .build();
+    TopicLeaderboards leaderboards = new TopicLeaderboards(2);
+    leaderboards.rebuild(index);
+    Map<Integer, Double> weights = Map.of(TOPIC_A, 1.0);
+    assertEquals(List.of(1, 2), leaderboards.rank(weights, null, id -> false, 3, 0));
+
+    // Publication 3 is not on topic A, so a new score for it leaves topic A alone
+    leaderboards.update(3, 50);
+    assertEquals(List.of(1, 2), leaderboards.rank(weights, null, id -> false, 3, 0));
+
+    leaderboards.update(1, 0.5);
+    assertEquals(List.of(2, 1), leaderboards.rank(weights, null, id -> false, 3, 0));
+  }
+
+  @Test
+  void truncatedLeaderboardDropsAPublicationThatLandsPastItsEnd() {
+    TopicLeaderboards leaderboards = new TopicLeaderboards(2);
+    leaderboards.rebuild(singleTopic(3));
+    Map<Integer, Double> weights = Map.of(TOPIC_A, 1.0);
+
+    // Publication 3 falls below the dropped publication 1, so it may no longer be on the board
+    leaderboards.update(3, 0.5);
+    assertEquals(List.of(2), leaderboards.rank(weights, null, id -> false, 1, 0));
+    assertNull(leaderboards.rank(weights, null, id -> false, 2, 0));
+
+    leaderboards.update(1, 10);
+    assertEquals(List.of(1, 2), leaderboards.rank(weights, null, id -> false, 2, 0));
+    assertNull(leaderboards.rank(weights, null, id -> false, 3, 0));
+  }
+
+  @Test
+  void ignoresPublicationsUnknownToTheLastRebuild() {
+    TopicLeaderboards leaderboards = new TopicLeaderboards(10);
+    leaderboards.rebuild(singleTopic(2));
+
+    leaderboards.update(99, 100);
+
+    assertTrue(leaderboards.tracks(1));
+    assertFalse(leaderboards.tracks(99));
+    assertEquals(List.of(2, 1), leaderboards.rank(Map.of(TOPIC_A, 1.0), null, id -> false, 10, 0));
+  }
+
+  /** Publications 1 to count on topic A, each as popular as its id. */
+  private static CandidateIndex singleTopic(int count) {
+    CandidateIndex.Builder builder = CandidateIndex.builder();
+    for (int pubId = 1; pubId <= count; pubId++) {
+      builder.add(pubId, Publication.Kind.PAPER, List.of(TOPIC_A), List.of()).setPopularity(pubId, pubId);
+    }
+    return builder.build();
+  }
+}
@@ -0,0 +1,91 @@
+package com.airchive.recommendation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class ViewDedupWindowTest {
+
+  @Test
+  void suppressesRepeatedViewsWithinTheWindow() {
+    ViewDedupWindow window = new ViewDedupWindow(1000, 1024);
+
+    assertTrue(window.tryRecord(1, 10, 0));
+    assertFalse(window.tryRecord(1, 10, 999));
+    assertTrue(window.tryRecord(2, 10, 999));
+    assertTrue(window.tryRecord(1, 11, 999));
+
+    assertEquals(new ViewDedupWindow.Stats(3, 1, 3), window.stats());
+  }
+
+  @Test
+  void countsAViewAgainOnceTheWindowExpires() {
+    ViewDedupWindow window = new ViewDedupWindow(1000, 1024);
+
+    assertTrue(window.tryRecord(1, 10, 0));
+    assertTrue(window.tryRecord(1, 10, 1000));
+    assertFalse(window.tryRecord(1, 10, 1500));
+    assertTrue(window.tryRecord(1, 10, 2000));
+  }
+
+  @Test
+  void dropsExpiredPairsAsNewOnesAreCounted() {
+    ViewDedupWindow window = new ViewDedupWindow(1000, 4096);
+    for (int pubId = 0; pubId < 500; pubId++) window.tryRecord(1, pubId, 0);
+    assertEquals(500, window.stats().tracked());
+
+    for (int pubId = 500; pubId < 1000; pubId++) window.tryRecord(1, pubId, 5000);
+
+    assertEquals(500, window.stats().tracked());
+  }
+
+  @Test
+  void evictsTheOldestPairsWhenFull() {
+    ViewDedupWindow window = new ViewDedupWindow(60_000, 64);
+    for (int pubId = 0; pubId < 1000; pubId++) window.tryRecord(1, pubId, 0);
+
+    assertTrue(window.stats().tracked() <= 64);
+
+    // Evicted pairs are counted again even though they are still within the window
+    int recounted = 0;
+    for (int pubId = 0; pubId < 1000; pubId++) {
+      if (window.tryRecord(1, pubId, 1)) recounted++;
+    }
+    assertTrue(recounted >= 1000 - 64, recounted + " views counted again");
+  }
+
+  @Test
+  void releasedViewIsCountedAgain() {
+    ViewDedupWindow window = new ViewDedupWindow(1000, 1024);
+
+    assertTrue(window.tryRecord(1, 10, 0));
+    window.release(1, 10, 0);
+
+    assertTrue(window.tryRecord(1, 10, 1));
+    assertEquals(new ViewDedupWindow.Stats(1, 0, 1), window.stats());
+  }
+
+  @Test
+  void releaseIgnoresAPairCountedAgainSince() {
+    ViewDedupWindow window = new ViewDedupWindow(1000, 1024);
+    window.tryRecord(1, 10, 0);
+    window.tryRecord(1, 10, 1000);
+
+    window.release(1, 10, 0);
+
+    assertFalse(window.tryRecord(1, 10, 1001));
+    assertEquals(new ViewDedupWindow.Stats(2, 1, 1), window.stats());
+  }
+
+  @Test
+  void countsEveryViewWithoutAWindow() {
+    ViewDedupWindow window = new ViewDedupWindow(0, 1024);
+
+    assertTrue(window.tryRecord(1, 10, 0));
+    assertTrue(window.tryRecord(1, 10, 0));
+
+    assertEquals(new ViewDedupWindow.Stats(2, 0, 0), window.stats());
+  }
+}